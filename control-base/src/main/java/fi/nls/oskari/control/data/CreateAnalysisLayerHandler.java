@@ -34,7 +34,12 @@ import org.oskari.permissions.PermissionService;
 import org.oskari.permissions.model.*;
 import org.oskari.service.util.ServiceFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 @OskariActionRoute("CreateAnalysisLayer")
@@ -80,6 +85,13 @@ public class CreateAnalysisLayerHandler extends RestActionHandler {
 
 
     final private static String GEOSERVER_PROXY_BASE_URL = PropertyUtil.getOptional("analysis.baseproxy.url");
+    // WPS results of these methods are modified as text before storing them, others are streamed from a file
+    final private static Set<String> TEXT_PROCESSED_METHODS = new HashSet<>(Arrays.asList(
+            AnalysisParser.UNION, AnalysisParser.INTERSECT, AnalysisParser.SPATIAL_JOIN,
+            AnalysisParser.SPATIAL_JOIN_STATISTICS, AnalysisParser.AGGREGATE, AnalysisParser.DIFFERENCE));
+    final private static int RESPONSE_HEAD_SIZE = 8192;
+    // set to false to compute aggregates with GeoServer WPS
+    final private static boolean AGGREGATE_WITHOUT_WPS = PropertyUtil.getOptional("analysis.aggregate.local", true);
 
     @Override
     public void init() {
@@ -128,6 +140,19 @@ public class CreateAnalysisLayerHandler extends RestActionHandler {
             } catch (ServiceException e) {
                 throw new ActionException(ERROR_UNABLE_TO_MERGE_ANALYSIS_DATA, e);
             }
+        } else if (!TEXT_PROCESSED_METHODS.contains(analysisLayer.getMethod())) {
+            // WPS result is stored as is - spool it to a file instead of reading it to memory
+            final File featureSet = executeWPSprocessToFile(analysisLayer);
+            try {
+                // Add extra TypeNames (depends on wps method)
+                analysisParser.fixTypeNames(analysisLayer, analyseJson);
+                analysis = analysisDataService.storeAnalysisData(
+                        featureSet, analysisLayer, analyse, params.getUser());
+            } catch (ServiceException e) {
+                throw new ActionException(ERROR_UNABLE_TO_STORE_ANALYSIS_DATA, e);
+            } finally {
+                deleteFile(featureSet);
+            }
         } else {
             // Generate WPS XML
             String featureSet = executeWPSprocess(analysisLayer);
@@ -285,6 +310,55 @@ public class CreateAnalysisLayerHandler extends RestActionHandler {
         return featureSet;
     }
 
+    /**
+     * Like executeWPSprocess() but writes the result to a file. The caller is responsible for removing the file.
+     */
+    private File executeWPSprocessToFile(AnalysisLayer analysisLayer) throws ActionParamsException {
+        final File featureSet;
+        try {
+            featureSet = wpsService.requestFeatureSetToFile(analysisLayer);
+        } catch (ServiceException e) {
+            throw new ActionParamsException(ERROR_UNABLE_TO_GET_WPS_FEATURES, e.getMessage());
+        }
+        try {
+            // exception report and numberOfFeatures attribute are at the start of the response
+            final String head = readHead(featureSet);
+            // Check, if exception result set
+            if (head.indexOf("ows:Exception") > -1) {
+                throw new ActionParamsException(ERROR_WPS_EXECUTE_RETURNS_EXCEPTION, head);
+            }
+            // Check, if any data in result set
+            if (head.isEmpty() || head.indexOf("numberOfFeatures=\"0\"") > -1) {
+                throw new ActionParamsException(ERROR_WPS_EXECUTE_RETURNS_NO_FEATURES);
+            }
+            return featureSet;
+        } catch (ActionParamsException e) {
+            deleteFile(featureSet);
+            throw e;
+        }
+    }
+
+    private String readHead(File file) throws ActionParamsException {
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] buf = new byte[RESPONSE_HEAD_SIZE];
+            int len = 0;
+            int n;
+            while (len < buf.length && (n = in.read(buf, len, buf.length - len)) != -1) {
+                len += n;
+            }
+            return new String(buf, 0, len, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ActionParamsException(ERROR_UNABLE_TO_GET_WPS_FEATURES, e.getMessage());
+        }
+    }
+
+    private void deleteFile(File file) {
+        if (!file.delete()) {
+            log.warn("Unable to remove temporary file:", file);
+            file.deleteOnExit();
+        }
+    }
+
     private Optional<Resource> getSourcePermission(final String layerId, final User user) throws ActionParamsException {
         if(layerId == null) {
             throw new ActionParamsException("Missing source layer id");
@@ -380,6 +454,14 @@ public class CreateAnalysisLayerHandler extends RestActionHandler {
 
         String featureSet = null;
         Boolean doRequest = true;
+        if (analysisLayer.getMethod().equals(AnalysisParser.AGGREGATE) && AGGREGATE_WITHOUT_WPS) {
+            try {
+                // all fields in one pass instead of WPS requests for each field
+                return wpsService.requestAggregateFeatureSet(analysisLayer);
+            } catch (ServiceException e) {
+                log.info("Unable to compute aggregate without WPS, using WPS instead:", e.getMessage());
+            }
+        }
         if (analysisLayer.getMethod().equals(AnalysisParser.AGGREGATE)) {
             StringBuilder sb = new StringBuilder();
             // Loop aggregate attribute fields
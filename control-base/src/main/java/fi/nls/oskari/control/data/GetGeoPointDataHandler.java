@@ -14,12 +14,25 @@ import fi.nls.oskari.map.data.service.GetGeoPointDataService;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.oskari.permissions.PermissionService;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static fi.nls.oskari.control.ActionConstants.*;
 
 @OskariActionRoute("GetFeatureInfoWMS")
@@ -38,11 +51,43 @@ public class GetGeoPointDataHandler extends ActionHandler {
     private static final String PARAM_ZOOM = "zoom";
     private static final String PARAM_PARAMS = "params";
 
+    private static final String PROP_THREADS = "gfi.threads";
+    private static final String PROP_QUEUE_SIZE = "gfi.queue.size";
+    private static final String PROP_TIMEOUT = "gfi.timeout.ms";
+
+    private static final String KEY_PARTIAL = "partial";
+
+    // GFI requests for the layers of a single click are made concurrently
+    private ThreadPoolExecutor executor;
+    private long timeoutMs;
+
     @Override
     public void init() {
         permissionHelper = new PermissionHelper(
                 OskariComponentManager.getComponentOfType(OskariLayerService.class),
                 OskariComponentManager.getComponentOfType(PermissionService.class));
+        int threads = Math.max(1, PropertyUtil.getOptional(PROP_THREADS, 16));
+        int queueSize = Math.max(1, PropertyUtil.getOptional(PROP_QUEUE_SIZE, 100));
+        timeoutMs = PropertyUtil.getOptional(PROP_TIMEOUT, 10000);
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "GetFeatureInfo-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // when the pool is saturated the layer is left out of the response instead of blocking the request
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void teardown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
     }
 
     @Override
@@ -56,8 +101,12 @@ public class GetGeoPointDataHandler extends ActionHandler {
         final double lon = ConversionHelper.getDouble(params.getHttpParam(PARAM_LON), -1);
         final int zoom = ConversionHelper.getInt(params.getHttpParam(PARAM_ZOOM), 0);
 
-        final JSONArray data = new JSONArray();
         final String srs = params.getHttpParam(PARAM_SRS, "EPSG:3067");
+        // requests are started in the order of layerIds and the results are collected in the same order
+        final List<Future<JSONObject>> requests = new ArrayList<>();
+        final List<Integer> requestLayerIds = new ArrayList<>();
+        // layers that didn't respond in time or couldn't be queued
+        final JSONArray partial = new JSONArray();
 
         for (String id : layerIdsArr) {
             final int layerId = ConversionHelper.getInt(id, -1);
@@ -82,6 +131,7 @@ public class GetGeoPointDataHandler extends ActionHandler {
             gfiParams.setLon(lon);
             gfiParams.setSRSName(srs);
 
+            final Callable<JSONObject> request;
             if (OskariLayer.TYPE_WMS.equals(layerType)) {
                 // additional wms params
                 gfiParams.setHeight(params.getHttpParam(PARAM_HEIGHT));
@@ -91,15 +141,41 @@ public class GetGeoPointDataHandler extends ActionHandler {
                 gfiParams.setZoom(zoom);
                 gfiParams.setAdditionalParams(allLayerAdditionalParams.optJSONObject(id));
 
-                final JSONObject response = geoPointService.getWMSFeatureInfo(gfiParams);
-                if (response != null) {
-                    data.put(response);
-                }
-            } else if (OskariLayer.TYPE_ARCGIS93.equals(layerType)) {
-                final JSONObject response = geoPointService.getRESTFeatureInfo((GFIRestQueryParams) gfiParams);
+                request = () -> geoPointService.getWMSFeatureInfo(gfiParams);
+            } else {
+                request = () -> geoPointService.getRESTFeatureInfo((GFIRestQueryParams) gfiParams);
+            }
+            try {
+                requests.add(executor.submit(request));
+                requestLayerIds.add(layerId);
+            } catch (RejectedExecutionException e) {
+                log.info("GFI queue is full, skipping layer:", layerId);
+                partial.put(layerId);
+            }
+        }
+
+        final JSONArray data = new JSONArray();
+        // all requests run concurrently so they share the deadline
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        for (int i = 0; i < requests.size(); i++) {
+            final Future<JSONObject> request = requests.get(i);
+            final int layerId = requestLayerIds.get(i);
+            try {
+                final long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                final JSONObject response = request.get(remaining, TimeUnit.MILLISECONDS);
                 if (response != null) {
                     data.put(response);
                 }
+            } catch (TimeoutException e) {
+                log.info("GFI request timed out for layer:", layerId);
+                request.cancel(true);
+                partial.put(layerId);
+            } catch (ExecutionException e) {
+                log.warn(e.getCause(), "GFI request failed for layer:", layerId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requests.forEach(r -> r.cancel(true));
+                throw new ActionException("Interrupted while waiting for GFI responses");
             }
         }
 
@@ -107,6 +183,9 @@ public class GetGeoPointDataHandler extends ActionHandler {
             final JSONObject rootJson = new JSONObject();
             rootJson.put("data", data);
             rootJson.put("layerCount", data.length());
+            if (partial.length() > 0) {
+                rootJson.put(KEY_PARTIAL, partial);
+            }
             ResponseHelper.writeResponse(params, rootJson);
         } catch (JSONException je) {
             throw new ActionException("Could not populate GFI JSON: " + log.getAsString(data), je);
@@ -0,0 +1,209 @@
+package fi.nls.oskari.control.export;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionCommonException;
+import fi.nls.oskari.control.ActionConstants;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.feature.GetWFSFeaturesHandler;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.TabularFileStreamer;
+import fi.nls.oskari.util.XLSXStreamer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.geopkg.FeatureEntry;
+import org.geotools.geopkg.GeoPackage;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.user.UserLayerService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Exports features of a WFS or user content layer as CSV, XLSX or GeoPackage.
+ * Unlike ExportTableFile the data is not posted by the client. Features are read from the
+ * service and written to the response one by one so big layers can be exported without
+ * the browser round-trip. Layer permissions are checked the same way as in GetWFSFeatures.
+ */
+@OskariActionRoute("ExportLayerFeatures")
+public class ExportLayerFeaturesHandler extends GetWFSFeaturesHandler {
+
+    private static final Logger log = LogFactory.getLogger(ExportLayerFeaturesHandler.class);
+
+    private static final String PARAM_BBOX = "bbox";
+    private static final String PARAM_FORMAT = "format";
+    private static final String PARAM_FIELDS = "fields";
+    private static final String PARAM_FILENAME = "filename";
+
+    static final String FORMAT_GPKG = "GPKG";
+    private static final String CONTENT_TYPE_GPKG = "application/geopackage+sqlite3";
+    private static final String EXTENSION_GPKG = "gpkg";
+
+    @Override
+    public void handleAction(ActionParameters params) throws ActionException {
+        String id = params.getRequiredParam(ActionConstants.PARAM_ID);
+        String bboxStr = params.getRequiredParam(PARAM_BBOX);
+        String format = params.getRequiredParam(PARAM_FORMAT);
+        String fileName = params.getHttpParam(PARAM_FILENAME, "export").replaceAll("[^a-zA-Z0-9.-]", "_");
+
+        Optional<UserLayerService> contentProcessor = getUserContentProsessor(id);
+        OskariLayer layer = findLayer(id, params.getUser(), contentProcessor);
+
+        String targetSRS = params.getHttpParam(ActionConstants.PARAM_SRS, "EPSG:3857");
+        CoordinateReferenceSystem targetCRS;
+        try {
+            targetCRS = CRSRegistry.decode(targetSRS, true);
+        } catch (Exception e) {
+            throw new ActionParamsException("Invalid " + ActionConstants.PARAM_SRS);
+        }
+
+        ReferencedEnvelope bbox = parseBbox(bboxStr, targetCRS);
+        layerAccessHandlers.forEach(handler -> handler.handle(layer, params.getUser()));
+        // features are read once while writing the file, see OskariFeatureClient.getFeaturesForSinglePass()
+        SimpleFeatureCollection fc = loadFeatures(() -> featureClient.getFeaturesForSinglePass(id, layer, bbox, targetCRS, contentProcessor));
+
+        if (FORMAT_GPKG.equals(format)) {
+            writeGeoPackage(params, fc, bbox, fileName);
+            return;
+        }
+
+        TabularFileStreamer fileStreamer = ExportTableFile.initTabularResponse(params, format, fileName);
+        String[] fields = getFields(fc.getSchema(), params.getHttpParam(PARAM_FIELDS, ""));
+        try (FeatureRowIterator rows = new FeatureRowIterator(fc.features(), fields)) {
+            OutputStream out = params.getResponse().getOutputStream();
+            fileStreamer.writeToStream(fields, rows, ExportTableFile.getAdditionalFields(params), out);
+        } catch (XLSXStreamer.TooManyRowsException e) {
+            throw new ActionParamsException(e.getMessage());
+        } catch (IOException e) {
+            throw new ActionException("Failed to write export file", e);
+        } catch (ServiceRuntimeException e) {
+            // next pages of the features are loaded while writing
+            throw new ActionCommonException(ERR_FAILED_TO_RETRIEVE_FEATURES, e);
+        }
+    }
+
+    /**
+     * Names of non-geometry attributes to export
+     * @param schema feature type
+     * @param requested comma-separated list of attribute names in preferred order, empty for all
+     * @return attribute names
+     */
+    static String[] getFields(SimpleFeatureType schema, String requested) {
+        List<String> fields = new ArrayList<>();
+        if (requested == null || requested.trim().isEmpty()) {
+            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                if (!(descriptor instanceof GeometryDescriptor)) {
+                    fields.add(descriptor.getLocalName());
+                }
+            }
+        } else {
+            for (String name : requested.split(",")) {
+                AttributeDescriptor descriptor = schema.getDescriptor(name.trim());
+                if (descriptor != null && !(descriptor instanceof GeometryDescriptor)) {
+                    fields.add(descriptor.getLocalName());
+                }
+            }
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * GeoPackage is an SQLite database so it's written to a temporary file that is then streamed to the client
+     */
+    private void writeGeoPackage(ActionParameters params, SimpleFeatureCollection fc,
+                                 ReferencedEnvelope bbox, String fileName) throws ActionException {
+        File file = null;
+        try {
+            file = Files.createTempFile("export", "." + EXTENSION_GPKG).toFile();
+            GeoPackage geopkg = new GeoPackage(file);
+            try {
+                geopkg.init();
+                FeatureEntry entry = new FeatureEntry();
+                entry.setTableName(fileName.replaceAll("[^a-zA-Z0-9_]", "_"));
+                entry.setIdentifier(fileName);
+                Integer srid = CRS.lookupEpsgCode(bbox.getCoordinateReferenceSystem(), false);
+                if (srid != null) {
+                    entry.setSrid(srid);
+                }
+                // use the requested area as bounds, otherwise add() would read the features an extra time to calculate them
+                entry.setBounds(bbox);
+                // features are written one by one in a single transaction
+                geopkg.add(entry, fc);
+            } finally {
+                geopkg.close();
+            }
+
+            HttpServletResponse response = params.getResponse();
+            response.setContentType(CONTENT_TYPE_GPKG);
+            response.setHeader("Content-Disposition", "attachment;filename=" + fileName + "." + EXTENSION_GPKG);
+            response.setContentLengthLong(file.length());
+            OutputStream out = response.getOutputStream();
+            Files.copy(file.toPath(), out);
+            out.flush();
+        } catch (Exception e) {
+            throw new ActionException("Failed to write GeoPackage", e);
+        } finally {
+            if (file != null && !file.delete()) {
+                log.warn("Failed to remove temporary file:", file.getAbsolutePath());
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads attribute values of features as rows while the file is being written
+     */
+    static class FeatureRowIterator implements Iterator<Object[]>, AutoCloseable {
+
+        private final SimpleFeatureIterator features;
+        private final String[] fields;
+
+        FeatureRowIterator(SimpleFeatureIterator features, String[] fields) {
+            this.features = features;
+            this.fields = Arrays.copyOf(fields, fields.length);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return features.hasNext();
+        }
+
+        @Override
+        public Object[] next() {
+            if (!features.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SimpleFeature feature = features.next();
+            Object[] row = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                row[i] = feature.getAttribute(fields[i]);
+            }
+            return row;
+        }
+
+        @Override
+        public void close() {
+            features.close();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.*;
@@ -27,8 +28,8 @@ public class ExportTableFile extends ActionHandler {
     private static final String CONTENT_TYPE_XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
     private static final String EXTENSION_CSV = "csv";
     private static final String EXTENSION_XLSX = "xlsx";
-    private static final String FORMAT_CSV = "CSV";
-    private static final String FORMAT_XLSX = "XLSX";
+    static final String FORMAT_CSV = "CSV";
+    static final String FORMAT_XLSX = "XLSX";
     private static final Logger log = LogFactory.getLogger(ExportTableFile.class);
 
     @Override
@@ -40,37 +41,12 @@ public class ExportTableFile extends ActionHandler {
         } catch (IOException ioe) {
             throw new ActionException(ioe.getMessage(), ioe);
         }
-        TabularFileStreamer fileStreamer;
-        String fileExtension;
         String format = params.getRequiredParam("format");
-        String delimiter;
         String fileName = params.getHttpParam("filename", "export").replaceAll("[^a-zA-Z0-9.-]", "_");
         String[] headers;
         Object[][] data;
 
-        if (FORMAT_CSV.equals(format)) {
-            fileStreamer = new CSVStreamer();
-            delimiter = params.getHttpParam("delimiter", ",");
-            if (delimiter.length() < 1) {
-                throw new ActionException("Invalid delimiter:\"" + delimiter + "\"");
-            }
-            if ("tab".equals(delimiter)) {
-                ((CSVStreamer) fileStreamer).setDelimiter('\t');
-            } else {
-                ((CSVStreamer) fileStreamer).setDelimiter(delimiter.charAt(0));
-            }
-            response.setContentType(CONTENT_TYPE_CSV);
-            response.setCharacterEncoding("UTF-8");
-            fileExtension = EXTENSION_CSV;
-        } else if (FORMAT_XLSX.equals(format)) {
-            fileStreamer = new XLSXStreamer();
-            response.setContentType(CONTENT_TYPE_XLSX);
-            fileExtension = EXTENSION_XLSX;
-        } else {
-            throw new ActionException("Unknown export format: \"" + format + "\"");
-        }
-
-        response.setHeader( "Content-Disposition", "attachment;filename=" + fileName + "." +  fileExtension);
+        TabularFileStreamer fileStreamer = initTabularResponse(params, format, fileName);
 
         try {
             int rowIndex = 0;
@@ -106,6 +82,63 @@ public class ExportTableFile extends ActionHandler {
             throw new ActionException(je.getMessage(), je);
         }
         // write additionalData (JSON array) after the actual data
+        Map<String, Object> additionalFields = getAdditionalFields(params);
+
+        try {
+            fileStreamer.writeToStream(headers, data, additionalFields, out);
+        } catch (XLSXStreamer.TooManyRowsException e) {
+            throw new ActionParamsException(e.getMessage());
+        } catch (IOException ioe) {
+            throw new ActionException(ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Selects the file streamer for the format and sets the response headers for the file.
+     * @param params
+     * @param format CSV or XLSX
+     * @param fileName file name without extension
+     * @return streamer for writing the file
+     * @throws ActionException if format or delimiter is not valid
+     */
+    static TabularFileStreamer initTabularResponse(ActionParameters params, String format, String fileName) throws ActionException {
+        final HttpServletResponse response = params.getResponse();
+        TabularFileStreamer fileStreamer;
+        String fileExtension;
+        String delimiter;
+
+        if (FORMAT_CSV.equals(format)) {
+            fileStreamer = new CSVStreamer();
+            delimiter = params.getHttpParam("delimiter", ",");
+            if (delimiter.length() < 1) {
+                throw new ActionException("Invalid delimiter:\"" + delimiter + "\"");
+            }
+            if ("tab".equals(delimiter)) {
+                ((CSVStreamer) fileStreamer).setDelimiter('\t');
+            } else {
+                ((CSVStreamer) fileStreamer).setDelimiter(delimiter.charAt(0));
+            }
+            response.setContentType(CONTENT_TYPE_CSV);
+            response.setCharacterEncoding("UTF-8");
+            fileExtension = EXTENSION_CSV;
+        } else if (FORMAT_XLSX.equals(format)) {
+            fileStreamer = new XLSXStreamer();
+            response.setContentType(CONTENT_TYPE_XLSX);
+            fileExtension = EXTENSION_XLSX;
+        } else {
+            throw new ActionException("Unknown export format: \"" + format + "\"");
+        }
+
+        response.setHeader( "Content-Disposition", "attachment;filename=" + fileName + "." +  fileExtension);
+        return fileStreamer;
+    }
+
+    /**
+     * Parses additionalData (JSON array) that is written after the actual data
+     * @param params
+     * @return name-value pairs in the same order as in the request
+     */
+    static Map<String, Object> getAdditionalFields(ActionParameters params) {
         JSONArray additionalData = JSONHelper.createJSONArray(params.getHttpParam("additionalData", "[]"));
         // Using LinkedHashMap to control the order of items
         Map<String, Object> additionalFields = new LinkedHashMap<String, Object>();
@@ -123,12 +156,7 @@ public class ExportTableFile extends ActionHandler {
             }
             additionalFields.put(item.optString("name"), value);
         }
-
-        try {
-            fileStreamer.writeToStream(headers, data, additionalFields, out);
-        } catch (IOException ioe) {
-            throw new ActionException(ioe.getMessage(), ioe);
-        }
+        return additionalFields;
     }
 
     /**
@@ -268,7 +296,7 @@ public class ExportTableFile extends ActionHandler {
      * @param uuid
      * @return
      */
-    private String getMetadataUrl(String uuid){
+    private static String getMetadataUrl(String uuid){
         String url = uuid;
         if(PropertyUtil.getOptional("service.metadata.url") != null) {
             url = PropertyUtil.getOptional("service.metadata.url") + "?Request=GetRecordById&service=CSW&version=2.0.2&id=";
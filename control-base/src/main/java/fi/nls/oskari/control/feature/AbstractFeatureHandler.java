@@ -16,6 +16,7 @@ import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.domain.map.wfs.WFSLayerAttributes;
 import fi.nls.oskari.domain.map.wfs.WFSLayerCapabilities;
 
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 
 import fi.nls.oskari.map.layer.OskariLayerService;
@@ -24,7 +25,6 @@ import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -131,7 +131,7 @@ public abstract class AbstractFeatureHandler extends RestActionHandler {
     protected Feature getFeature(JSONObject jsonObject, String layerId, String srsName, String featureId) throws ActionParamsException, JSONException, FactoryException {
         boolean flipFeature = PropertyUtil.getOptional("actionhandler.AbstractFeatureHandler.forceXY", false);
         Feature feature = initFeatureByLayer(layerId);
-        CoordinateReferenceSystem crs = CRS.decode(srsName);
+        CoordinateReferenceSystem crs = CRSRegistry.decode(srsName);
         if (featureId == null) {
             feature.setId(featureId);
         } else {
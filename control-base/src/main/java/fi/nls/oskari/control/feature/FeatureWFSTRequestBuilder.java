@@ -3,10 +3,10 @@ package fi.nls.oskari.control.feature;
 import fi.nls.oskari.domain.map.Feature;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.util.GML3Writer;
 
-import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -118,7 +118,7 @@ public class FeatureWFSTRequestBuilder extends WFSTRequestBuilder {
         if (geometry.getSRID() != 0) {
             String srsName = GML3Writer.getSrsName(geometry.getSRID());
             try {
-                CoordinateReferenceSystem crs = CRS.decode(srsName);
+                CoordinateReferenceSystem crs = CRSRegistry.decode(srsName);
                 xyOrder = !ProjectionHelper.isFirstAxisNorth(crs);
                 LOG.debug("srsName:", srsName, "xyOrder:", xyOrder);
             } catch (FactoryException e) {
@@ -5,12 +5,12 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.service.user.UserLayerService;
 import org.oskari.service.wfs.client.OskariWFSClient;
@@ -25,6 +25,7 @@ import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.ResponseHelper;
 
@@ -59,7 +60,7 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
         String targetSRS = params.getHttpParam(ActionConstants.PARAM_SRS, "EPSG:3857");
         CoordinateReferenceSystem targetCRS;
         try {
-            targetCRS = CRS.decode(targetSRS, true);
+            targetCRS = CRSRegistry.decode(targetSRS, true);
         } catch (Exception e) {
             throw new ActionParamsException("Invalid " + ActionConstants.PARAM_SRS);
         }
@@ -109,8 +110,15 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
 
     private SimpleFeatureCollection getFeatures(String id, OskariLayer layer, ReferencedEnvelope bbox,
             CoordinateReferenceSystem targetCRS, Optional<UserLayerService> contentProcessor) throws ActionException {
+        return loadFeatures(() -> featureClient.getFeatures(id, layer, bbox, targetCRS, contentProcessor));
+    }
+
+    /**
+     * Maps the failures of loading features from the service to ActionExceptions
+     */
+    protected SimpleFeatureCollection loadFeatures(Supplier<SimpleFeatureCollection> loader) throws ActionException {
         try {
-            return featureClient.getFeatures(id, layer, bbox, targetCRS, contentProcessor);
+            return loader.get();
         } catch (HystrixRuntimeException e) {
             if (e.getFailureType() == FailureType.SHORTCIRCUIT) {
                 throw new ActionCommonException(ERR_SHORT_CIRCUIT);
@@ -76,7 +76,7 @@ public class GetLayerCapabilitiesHandler extends ActionHandler {
         }
         try {
             String capsJSON = layer.getCapabilities().toString();
-            LayerCapabilitiesWMTS caps = CapabilitiesService.fromJSON(layer.getCapabilities().toString(), OskariLayer.TYPE_WMTS);
+            LayerCapabilitiesWMTS caps = CapabilitiesService.getLayerCapabilities(layer);
             TileMatrixLink link = caps.getTileMatrixLinks().stream()
                     .filter(l -> crs.equals(l.getTileMatrixSet().getShortCrs()))
                     .findFirst()
@@ -3,8 +3,6 @@ package fi.nls.oskari.control.layer;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import fi.nls.oskari.annotation.OskariActionRoute;
-import fi.nls.oskari.cache.Cache;
-import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
@@ -28,6 +26,11 @@ import org.oskari.service.util.ServiceFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.util.*;
 
@@ -48,9 +51,19 @@ public class GetLayerTileHandler extends ActionHandler {
     private static final int TIMEOUT_READ = PropertyUtil.getOptional("GetLayerTile.timeout.read", 5000);
     private static final boolean GATHER_METRICS = PropertyUtil.getOptional("GetLayerTile.metrics", true);
     private static final String METRICS_PREFIX = "Oskari.GetLayerTile";
+    // max concurrent requests per service host, 0 or negative for no limit (opt-in, map clients request lots of tiles at once)
+    private static final int MAX_CONNECTIONS_PER_HOST = PropertyUtil.getOptional("GetLayerTile.connections.perHost", 0);
+    private static final UpstreamConnectionLimiter CONNECTION_LIMITER = new UpstreamConnectionLimiter(MAX_CONNECTIONS_PER_HOST);
+    private static final List<String> CONDITIONAL_HEADERS = Arrays.asList("If-None-Match", "If-Modified-Since");
+    private static final List<String> CACHE_HEADERS = Arrays.asList("ETag", "Last-Modified", "Cache-Control", "Expires");
+    // tile cache for layers with attribute "tileCache": true
+    private static final TileCache TILE_CACHE = new TileCache(
+            PropertyUtil.getOptional("GetLayerTile.cache.memory.mb", 64) * 1024L * 1024L,
+            PropertyUtil.getOptional("GetLayerTile.cache.tile.maxkb", 512) * 1024,
+            getTileCacheDir(),
+            PropertyUtil.getOptional("GetLayerTile.cache.disk.mb", 1024) * 1024L * 1024L);
     private PermissionHelper permissionHelper;
     private Collection<LayerAccessHandler> layerAccessHandlers;
-    private Cache<String> cache_WMTS_URL;
 
     // WMTS rest layers params
     private static final String KEY_STYLE = "STYLE";
@@ -67,7 +80,6 @@ public class GetLayerTileHandler extends ActionHandler {
 
         Map<String, LayerAccessHandler> handlerComponents = OskariComponentManager.getComponentsOfType(LayerAccessHandler.class);
         this.layerAccessHandlers = handlerComponents.values();
-        cache_WMTS_URL = CacheManager.getCache(GetLayerTileHandler.class.getSimpleName() + "_WMTS_URL");
     }
 
     /**
@@ -111,7 +123,25 @@ public class GetLayerTileHandler extends ActionHandler {
 
         layerAccessHandlers.forEach(handler -> handler.handle(layer, params.getUser()));
 
+        // Note! Layer permissions have been checked above so users that are allowed to see the layer can share cached tiles
+        final boolean useCache = !doOutPut && TileCache.isEnabled(layer);
+        final String cacheKey = useCache ? TILE_CACHE.getKey(layer, con.getURL().toString()) : null;
+
+        String upstream = null;
         try {
+            if (useCache) {
+                TileCache.CachedTile tile = TILE_CACHE.get(cacheKey);
+                if (tile != null) {
+                    writeCachedTile(params, tile);
+                    return;
+                }
+            }
+            upstream = CONNECTION_LIMITER.acquire(con.getURL(), TIMEOUT_CONNECTION);
+            if (upstream == null) {
+                LOG.debug("Too many concurrent requests to:", con.getURL().getHost());
+                ResponseHelper.writeError(params, "Service busy", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
             con.setRequestMethod(httpMethod);
             con.setDoOutput(doOutPut);
             con.setConnectTimeout(TIMEOUT_CONNECTION);
@@ -121,6 +151,11 @@ public class GetLayerTileHandler extends ActionHandler {
             con.setUseCaches(false);
             // tell the service who is making the requests
             IOHelper.addIdentifierHeaders(con);
+            if (!useCache) {
+                // let the service respond with 304 if the client already has the tile.
+                // Not on cache miss as a 304 wouldn't give us the tile to cache
+                forwardHeaders(params.getRequest(), con, CONDITIONAL_HEADERS);
+            }
             con.connect();
 
             if (doOutPut) {
@@ -128,28 +163,65 @@ public class GetLayerTileHandler extends ActionHandler {
             }
 
             final int responseCode = con.getResponseCode();
+            final HttpServletResponse response = params.getResponse();
             if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 // prevent excessive logging by handling a common case where service responds with 404
-                params.getResponse().sendError(HttpServletResponse.SC_NOT_FOUND);
+                readErrorStream(con);
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
                 LOG.debug("URL reported 404:", url);
                 return;
             }
-            final String contentType = con.getContentType().toLowerCase();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                forwardHeaders(con, response, CACHE_HEADERS);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            final String contentType = con.getContentType() == null ? "" : con.getContentType().toLowerCase();
             if(responseCode != HttpURLConnection.HTTP_OK || !isContentTypeOK(contentType)) {
                 LOG.warn("URL", url, "returned HTTP response code", responseCode,
                         "with message", con.getResponseMessage(), "and content-type:", contentType);
-                String msg = IOHelper.readString(con);
+                String msg = responseCode == HttpURLConnection.HTTP_OK ? IOHelper.readString(con) : readErrorStream(con);
                 LOG.info("Response was:", msg);
                 throw new ActionParamsException("Problematic response from actual service");
             }
 
-            // read the image tile
-            final byte[] presponse = IOHelper.readBytes(con);
-            final HttpServletResponse response = params.getResponse();
             response.setContentType(contentType);
-            response.getOutputStream().write(presponse, 0, presponse.length);
-            response.getOutputStream().flush();
-            response.getOutputStream().close();
+            forwardHeaders(con, response, CACHE_HEADERS);
+            final long contentLength = con.getContentLengthLong();
+            // content length is -1 when not known (chunked response), the size is checked while reading
+            if (useCache && contentLength <= TILE_CACHE.getMaxTileBytes()) {
+                final long now = System.currentTimeMillis();
+                final long expires = TileCache.getExpiresAt(con.getHeaderField("Cache-Control"), con.getHeaderFieldDate("Expires", 0), now);
+                if (expires > now) {
+                    try (InputStream in = IOHelper.getInputStream(con)) {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+                        if (copyAtMost(in, buffer, TILE_CACHE.getMaxTileBytes())) {
+                            // decoded bytes are cached so no content-encoding for the response
+                            TileCache.CachedTile tile = new TileCache.CachedTile(contentType,
+                                    con.getHeaderField("ETag"), con.getHeaderField("Last-Modified"), expires, buffer.toByteArray());
+                            TILE_CACHE.put(cacheKey, tile);
+                            // responds with 304 if the client already has the tile
+                            writeCachedTile(params, tile);
+                            return;
+                        }
+                        // too large to cache, stream the rest of the tile
+                        final OutputStream out = response.getOutputStream();
+                        buffer.writeTo(out);
+                        IOHelper.copy(in, out);
+                        out.flush();
+                        return;
+                    }
+                }
+            }
+            // stream the image tile to the client without buffering it
+            if (contentLength >= 0 && con.getContentEncoding() == null) {
+                response.setContentLengthLong(contentLength);
+            }
+            try (InputStream in = IOHelper.getInputStream(con)) {
+                final OutputStream out = response.getOutputStream();
+                IOHelper.copy(in, out);
+                out.flush();
+            }
         } catch(ActionException e) {
             // just throw it as is if we already handled it
             throw e;
@@ -160,10 +232,90 @@ public class GetLayerTileHandler extends ActionHandler {
             if (actionTimer != null) {
                 actionTimer.stop();
             }
-            if (con != null) {
-                con.disconnect();
+            CONNECTION_LIMITER.release(upstream);
+            // Note! Not calling con.disconnect() here on purpose. Once the response has been read fully
+            // and the stream is closed the JVM returns the connection to its keep-alive pool
+            // for the next tile request to the same service.
+        }
+    }
+
+    private void writeCachedTile(ActionParameters params, TileCache.CachedTile tile) throws IOException {
+        final HttpServletResponse response = params.getResponse();
+        final long maxAge = Math.max(0, (tile.getExpires() - System.currentTimeMillis()) / 1000);
+        response.setHeader("Cache-Control", "max-age=" + maxAge);
+        if (tile.getLastModified() != null) {
+            response.setHeader("Last-Modified", tile.getLastModified());
+        }
+        if (tile.getETag() != null) {
+            response.setHeader("ETag", tile.getETag());
+            if (tile.getETag().equals(params.getRequest().getHeader("If-None-Match"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
             }
         }
+        response.setContentType(tile.getContentType());
+        writeTile(response, tile.getData());
+    }
+
+    private void writeTile(HttpServletResponse response, byte[] data) throws IOException {
+        response.setContentLength(data.length);
+        final OutputStream out = response.getOutputStream();
+        out.write(data);
+        out.flush();
+    }
+
+    /**
+     * Copies at most limit bytes from in to out
+     * @return true if the input was read fully, false if it has more than limit bytes
+     */
+    static boolean copyAtMost(InputStream in, OutputStream out, int limit) throws IOException {
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int n;
+        while (total <= limit && (n = in.read(buf, 0, (int) Math.min(buf.length, limit + 1L - total))) != -1) {
+            out.write(buf, 0, n);
+            total += n;
+        }
+        return total <= limit;
+    }
+
+    private static File getTileCacheDir() {
+        // disk tier is only used when a directory has been configured
+        String dir = PropertyUtil.get("GetLayerTile.cache.dir", "").trim();
+        return dir.isEmpty() ? null : new File(dir);
+    }
+
+    private void forwardHeaders(HttpServletRequest request, HttpURLConnection con, List<String> headers) {
+        for (String header : headers) {
+            String value = request.getHeader(header);
+            if (value != null) {
+                con.setRequestProperty(header, value);
+            }
+        }
+    }
+
+    private void forwardHeaders(HttpURLConnection con, HttpServletResponse response, List<String> headers) {
+        for (String header : headers) {
+            String value = con.getHeaderField(header);
+            if (value != null) {
+                response.setHeader(header, value);
+            }
+        }
+    }
+
+    /**
+     * Reads the error response. This also allows the underlying connection to be reused.
+     */
+    private String readErrorStream(HttpURLConnection con) {
+        try (InputStream err = con.getErrorStream()) {
+            if (err == null) {
+                return "";
+            }
+            return IOHelper.readString(err);
+        } catch (IOException e) {
+            LOG.ignore(e);
+            return "";
+        }
     }
 
     private boolean isContentTypeOK(String contentType) {
@@ -212,24 +364,17 @@ public class GetLayerTileHandler extends ActionHandler {
     }
 
     private String getWMTSUrl(OskariLayer layer) {
-        String cacheKey = "" + layer.getId();
-        String resourceUrl = cache_WMTS_URL.get(cacheKey);
-        if (resourceUrl != null) {
-            // empty means we parsed and there was no resource url
-            return resourceUrl;
+        // typed capabilities are cached by layer and capabilities update time
+        LayerCapabilitiesWMTS caps = CapabilitiesService.getLayerCapabilities(layer);
+        if (caps == null) {
+            return "";
         }
-        LayerCapabilitiesWMTS caps = CapabilitiesService.fromJSON(layer.getCapabilities().toString(), OskariLayer.TYPE_WMTS);
         ResourceUrl url = caps.getResourceUrl("tile");
-        String valueToCache = "";
-        if (url != null) {
-            valueToCache = url.getTemplate();
-        }
-        if (valueToCache == null) {
+        if (url == null || url.getTemplate() == null) {
             // just in case we have something wonky going on in the capabilities
-            valueToCache = "";
+            return "";
         }
-        cache_WMTS_URL.put(cacheKey, valueToCache);
-        return valueToCache;
+        return url.getTemplate();
     }
 
     private Map<String, String> getUrlParams(HttpServletRequest httpRequest) {
@@ -0,0 +1,403 @@
+package fi.nls.oskari.control.layer;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for tiles proxied by GetLayerTile. Enabled per layer with layer attribute "tileCache": true.
+ * Tiles are only cached when the service allows it with Cache-Control/Expires headers. Tiles are kept
+ * in a memory tier bounded by total size in bytes with least recently used tiles evicted first and in
+ * an optional disk tier that is used when tiles are evicted from memory or the server is restarted.
+ * The disk tier is bounded by total size in bytes too. When it grows over the limit expired tiles are
+ * removed first and then least recently used tiles until the size is below 90% of the limit. The cleanup
+ * runs in the background so requests don't wait for the directory to be scanned.
+ *
+ * Note! The cache doesn't check permissions. Callers must check that the user can access the layer
+ * before asking for a tile. The cache key is based on the layer and the url that is used to fetch the tile
+ * so anyone who is allowed to see the layer may get the same tile.
+ */
+class TileCache {
+
+    private static final Logger LOG = LogFactory.getLogger(TileCache.class);
+    static final String ATTR_TILE_CACHE = "tileCache";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final long maxMemoryBytes;
+    private final int maxTileBytes;
+    private final long maxDiskBytes;
+    private final File dir;
+    private final LinkedHashMap<String, CachedTile> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Object diskCleanupLock = new Object();
+    private final Executor diskCleanupExecutor;
+    private final AtomicBoolean diskCleanupScheduled = new AtomicBoolean();
+
+    /**
+     * @param maxMemoryBytes max size of tiles in memory
+     * @param maxTileBytes tiles larger than this are not cached
+     * @param dir directory for the disk tier, null to only use memory
+     * @param maxDiskBytes max size of tiles on disk
+     */
+    TileCache(long maxMemoryBytes, int maxTileBytes, File dir, long maxDiskBytes) {
+        this(maxMemoryBytes, maxTileBytes, dir, maxDiskBytes, createCleanupExecutor());
+    }
+
+    /**
+     * @param diskCleanupExecutor runs the cleanup of the disk tier
+     */
+    TileCache(long maxMemoryBytes, int maxTileBytes, File dir, long maxDiskBytes, Executor diskCleanupExecutor) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxTileBytes = maxTileBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.diskCleanupExecutor = diskCleanupExecutor;
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            LOG.warn("Unable to create tile cache directory:", dir.getAbsolutePath(), "- using only memory for caching tiles");
+            dir = null;
+        }
+        this.dir = dir;
+        if (dir != null) {
+            scheduleCleanupDisk();
+        }
+    }
+
+    private static Executor createCleanupExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "TileCacheCleanup");
+            t.setDaemon(true);
+            return t;
+        });
+        // the thread is only needed while cleaning up
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static boolean isEnabled(OskariLayer layer) {
+        return layer.getAttributes().optBoolean(ATTR_TILE_CACHE, false);
+    }
+
+    int getMaxTileBytes() {
+        return maxTileBytes;
+    }
+
+    String getKey(OskariLayer layer, String url) {
+        return layer.getId() + "_" + sha256(url);
+    }
+
+    CachedTile get(String key) {
+        long now = System.currentTimeMillis();
+        CachedTile tile;
+        synchronized (memory) {
+            tile = memory.get(key);
+            if (tile != null && tile.isExpired(now)) {
+                removeFromMemory(key);
+                tile = null;
+            }
+        }
+        if (tile != null) {
+            return tile;
+        }
+        tile = readFromDisk(key, now);
+        if (tile != null) {
+            putToMemory(key, tile);
+        }
+        return tile;
+    }
+
+    void put(String key, CachedTile tile) {
+        if (tile == null || tile.getData().length > maxTileBytes) {
+            return;
+        }
+        putToMemory(key, tile);
+        writeToDisk(key, tile);
+    }
+
+    private void putToMemory(String key, CachedTile tile) {
+        synchronized (memory) {
+            removeFromMemory(key);
+            memory.put(key, tile);
+            memoryBytes += tile.getData().length;
+            Iterator<Map.Entry<String, CachedTile>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                // least recently used first
+                memoryBytes -= it.next().getValue().getData().length;
+                it.remove();
+            }
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        CachedTile removed = memory.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.getData().length;
+        }
+    }
+
+    private CachedTile readFromDisk(String key, long now) {
+        if (dir == null) {
+            return null;
+        }
+        File file = new File(dir, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            String contentType = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            long expires = in.readLong();
+            if (expires <= now) {
+                in.close();
+                deleteFromDisk(file);
+                return null;
+            }
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            // last modified is used for removing least recently used tiles first
+            file.setLastModified(now);
+            return new CachedTile(contentType, emptyToNull(etag), emptyToNull(lastModified), expires, data);
+        } catch (IOException e) {
+            LOG.debug("Unable to read cached tile:", file.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedTile tile) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            // write to temp file first so readers never see a partially written tile
+            Path tmp = Files.createTempFile(dir.toPath(), key, TMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeUTF(tile.getContentType());
+                out.writeUTF(nullToEmpty(tile.getETag()));
+                out.writeUTF(nullToEmpty(tile.getLastModified()));
+                out.writeLong(tile.getExpires());
+                out.writeInt(tile.getData().length);
+                out.write(tile.getData());
+            }
+            File file = new File(dir, key);
+            long replaced = file.length();
+            long size = Files.size(tmp);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(size - replaced) > maxDiskBytes) {
+                scheduleCleanupDisk();
+            }
+        } catch (IOException e) {
+            LOG.info("Unable to write tile to disk cache:", e.getMessage());
+        }
+    }
+
+    private void deleteFromDisk(File file) throws IOException {
+        long size = file.length();
+        if (Files.deleteIfExists(file.toPath())) {
+            diskBytes.addAndGet(-size);
+        }
+    }
+
+    /**
+     * Runs cleanupDisk() in the background unless it's already scheduled
+     */
+    private void scheduleCleanupDisk() {
+        if (!diskCleanupScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            diskCleanupExecutor.execute(() -> {
+                try {
+                    cleanupDisk();
+                } finally {
+                    diskCleanupScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            diskCleanupScheduled.set(false);
+            LOG.info("Unable to schedule tile cache cleanup:", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes expired tiles and leftover temp files from the disk tier. If the tiles still take more
+     * than maxDiskBytes the least recently used tiles are removed until they take less than 90% of it.
+     * Also recalculates the size of the disk tier.
+     */
+    void cleanupDisk() {
+        synchronized (diskCleanupLock) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long total = 0;
+            List<File> tiles = new ArrayList<>();
+            for (File file : files) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                boolean staleTmp = file.getName().endsWith(TMP_SUFFIX) && file.lastModified() < now - 60_000L;
+                if (staleTmp || (!file.getName().endsWith(TMP_SUFFIX) && isExpiredOnDisk(file, now))) {
+                    file.delete();
+                    continue;
+                }
+                total += file.length();
+                if (!file.getName().endsWith(TMP_SUFFIX)) {
+                    tiles.add(file);
+                }
+            }
+            if (total > maxDiskBytes) {
+                long target = maxDiskBytes / 10 * 9;
+                tiles.sort(Comparator.comparingLong(File::lastModified));
+                for (File file : tiles) {
+                    if (total <= target) {
+                        break;
+                    }
+                    long size = file.length();
+                    if (file.delete()) {
+                        total -= size;
+                    }
+                }
+            }
+            diskBytes.set(total);
+        }
+    }
+
+    private static boolean isExpiredOnDisk(File file, long now) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024))) {
+            in.readUTF();
+            in.readUTF();
+            in.readUTF();
+            return in.readLong() <= now;
+        } catch (IOException e) {
+            // unreadable tile
+            return true;
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds when a response with given headers expires.
+     * Cache-Control max-age/s-maxage takes precedence over Expires as per RFC 7234.
+     * @param cacheControl Cache-Control header value or null
+     * @param expires Expires header value as epoch millis or 0 if not available
+     * @param now current time in millis
+     * @return time when the response expires or -1 if it's not cacheable by a shared cache
+     */
+    static long getExpiresAt(String cacheControl, long expires, long now) {
+        if (cacheControl != null) {
+            long maxAge = -1;
+            long sharedMaxAge = -1;
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+                    return -1;
+                }
+                if (directive.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(directive.substring("s-maxage=".length()));
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()));
+                }
+            }
+            long age = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+            if (age >= 0) {
+                return age > 0 ? now + age * 1000L : -1;
+            }
+        }
+        if (expires > now) {
+            return expires;
+        }
+        return -1;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be supported on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    static class CachedTile {
+        private final String contentType;
+        private final String etag;
+        private final String lastModified;
+        private final long expires;
+        private final byte[] data;
+
+        CachedTile(String contentType, String etag, String lastModified, long expires, byte[] data) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+            this.data = data;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        String getETag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        long getExpires() {
+            return expires;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        boolean isExpired(long now) {
+            return expires <= now;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package fi.nls.oskari.control.layer;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent connections per upstream host so a single slow service
+ * can't tie up all the request threads when tiles are being proxied.
+ */
+class UpstreamConnectionLimiter {
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final int limit;
+
+    UpstreamConnectionLimiter(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Tries to reserve a connection slot for the host of given url.
+     * @param url url to connect to
+     * @param timeoutMs max time to wait for a free slot
+     * @return key to release the slot with or null if no slot was available in time
+     */
+    String acquire(URL url, long timeoutMs) throws InterruptedException {
+        if (limit <= 0) {
+            // no limit
+            return "";
+        }
+        String key = getKey(url);
+        Semaphore semaphore = permits.computeIfAbsent(key, k -> new Semaphore(limit));
+        if (!semaphore.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        return key;
+    }
+
+    void release(String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Semaphore semaphore = permits.get(key);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private String getKey(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+    }
+}
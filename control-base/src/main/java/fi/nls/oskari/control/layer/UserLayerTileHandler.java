@@ -7,14 +7,14 @@ import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ProxyService;
+import fi.nls.oskari.util.PropertyUtil;
 
 import javax.servlet.http.HttpServletResponse;
-import java.io.OutputStream;
 
 /**
  * Routes analysis tiles for current user.
  * Uses ProxyService with service key "userlayertile".
- * Handler returns binary response with content type "image/png".
+ * Handler streams the binary response, content type defaults to "image/png".
  */
 @OskariActionRoute("UserLayerTile")
 public class UserLayerTileHandler extends ActionHandler {
@@ -22,28 +22,28 @@ public class UserLayerTileHandler extends ActionHandler {
     private final static Logger log = LogFactory.getLogger(UserLayerTileHandler.class);
 
     final private static String SERVICE_KEY = "userlayertile";
+    // cache for hour unless configured otherwise
+    final private static String DEFAULT_CACHE_CONTROL = "must-revalidate, max-age=3600";
+    private String cacheControl = DEFAULT_CACHE_CONTROL;
+
+    @Override
+    public void init() {
+        // set empty to use the caching headers of the service instead
+        final String configured = PropertyUtil.getOptional("oskari.proxy." + SERVICE_KEY + ".cacheControl");
+        cacheControl = configured == null ? DEFAULT_CACHE_CONTROL : configured.trim();
+    }
 
     public void handleAction(ActionParameters params) throws ActionException {
 
         log.debug("Proxying to", SERVICE_KEY);
-        // proxy config handles making external request with credentials
-        final byte[] proxyResponse = ProxyService.proxyBinary(SERVICE_KEY, params);
-        if (proxyResponse != null && proxyResponse.length > 0) {
-            log.debug("Got:\n", proxyResponse.length, "bytes");
-        } else {
-            log.debug("Got empty response!");
-        }
-
-        try {
-            final HttpServletResponse response = params.getResponse();
-            // Cache for hour
-            response.setHeader("Cache-Control", "must-revalidate, max-age=3600");
-            response.setContentType("image/png");
-            final OutputStream os = response.getOutputStream();
-            os.write(proxyResponse);
-        } catch (Exception e) {
-            throw new ActionException("Failed to create image", e);
+        final HttpServletResponse response = params.getResponse();
+        // the service response doesn't override Cache-Control set here, content type defaults to png
+        if (!cacheControl.isEmpty()) {
+            response.setHeader("Cache-Control", cacheControl);
         }
+        response.setContentType("image/png");
+        // proxy config handles making external request with credentials, the tile is streamed to the client
+        ProxyService.proxyStream(SERVICE_KEY, params, response);
     }
 
 }
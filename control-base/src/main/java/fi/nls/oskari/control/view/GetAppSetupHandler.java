@@ -12,6 +12,7 @@ import fi.nls.oskari.domain.map.view.ViewTypes;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.view.*;
+import fi.nls.oskari.map.view.util.ViewConfigurationCache;
 import fi.nls.oskari.map.view.util.ViewHelper;
 import fi.nls.oskari.util.*;
 import fi.nls.oskari.view.modifier.ModifierException;
@@ -30,6 +31,7 @@ public class GetAppSetupHandler extends ActionHandler {
 
     private ViewService viewService = null;
     private BundleService bundleService = null;
+    private ViewUsageCollector usageCollector = null;
 
     private static final Logger log = LogFactory.getLogger(GetAppSetupHandler.class);
 
@@ -45,6 +47,8 @@ public class GetAppSetupHandler extends ActionHandler {
     private static final String KEY_CONFIGURATION = "configuration";
 
     public static final String COOKIE_SAVED_STATE = "oskaristate";
+    // seconds between writing collected view usage to database, 0 or negative to write on each request
+    private static final int USAGE_FLUSH_INTERVAL = PropertyUtil.getOptional("actionhandler.GetAppSetup.usage.flushInterval", 60);
 
     // for adding extra bundle(s) for users with specific roles
     private Map<String, List<Bundle>> bundlesForRole = new HashMap<String, List<Bundle>>();
@@ -68,6 +72,10 @@ public class GetAppSetupHandler extends ActionHandler {
         if(bundleService == null) {
             setBundleService(new BundleServiceMybatisImpl());
         }
+        if (USAGE_FLUSH_INTERVAL > 0) {
+            usageCollector = new ViewUsageCollector(viewService);
+            usageCollector.start(USAGE_FLUSH_INTERVAL);
+        }
         // Returns names of @OskariViewModifier annotated classes of type ParamHandler from classpath
         paramHandlers.addAll(ParamControl.getHandlerKeys());
 
@@ -143,9 +151,10 @@ public class GetAppSetupHandler extends ActionHandler {
                 || params.getHttpParam(PARAM_NO_SAVED_STATE, false)
                 || !srsNamesMatch(params, view);
         // restore state from cookie if not
+        boolean stateRestored = false;
         if (!ignoreSavedState) {
             log.debug("Modifying map view if saved state is available");
-            modifyView(view, getStateFromCookie(params
+            stateRestored = modifyView(view, getStateFromCookie(params
                     .getCookie(COOKIE_SAVED_STATE)));
         }
 
@@ -182,9 +191,10 @@ public class GetAppSetupHandler extends ActionHandler {
         // Update view for latest usage timestamp and opened count number
         updateUsageData(view);
 
-        // JSON presentation of view
-        final JSONObject configuration = getConfiguration(view);
-        final JSONArray startupSequence = getStartupSequence(view);
+        // JSON presentation of view. Parsed configuration is cached unless the view was modified for this user,
+        // modified views bypass the cache so they don't replace the cached value of the view for everyone
+        final JSONObject configuration = stateRestored ? parseConfiguration(view) : getConfiguration(view);
+        final JSONArray startupSequence = stateRestored ? parseStartupSequence(view) : getStartupSequence(view);
 
         // modify the loaded view before serving it if there are any control
         // parameters
@@ -282,8 +292,20 @@ public class GetAppSetupHandler extends ActionHandler {
             return true;
         }
     }
+    @Override
+    public void teardown() {
+        if (usageCollector != null) {
+            // writes any usage that hasn't been flushed yet
+            usageCollector.stop();
+        }
+    }
+
     private boolean updateUsageData(final View view)  {
         try {
+            if (usageCollector != null) {
+                usageCollector.viewUsed(view.getId());
+                return true;
+            }
             viewService.updateViewUsage(view);
             return true;
         } catch (Exception e) {
@@ -291,7 +313,18 @@ public class GetAppSetupHandler extends ActionHandler {
         }
     }
 
+    /**
+     * Returns a copy of the cached configuration that can be modified
+     */
     private JSONObject getConfiguration(final View view) throws ActionException {
+        try {
+            return ViewConfigurationCache.getConfiguration(view);
+        } catch (ViewException e) {
+            throw new ActionException("Couldn't get configuration", e);
+        }
+    }
+
+    private JSONObject parseConfiguration(final View view) throws ActionException {
         try {
             return ViewHelper.getConfiguration(view);
         } catch (ViewException e) {
@@ -299,8 +332,19 @@ public class GetAppSetupHandler extends ActionHandler {
         }
     }
 
+    /**
+     * Returns a copy of the cached startup sequence that can be modified (not affected by the saved state)
+     */
     private JSONArray getStartupSequence(final View view)
             throws ActionException {
+        try {
+            return ViewConfigurationCache.getStartupSequence(view);
+        } catch (ViewException e) {
+            throw new ActionException("Couldn't get startup sequence", e);
+        }
+    }
+
+    private JSONArray parseStartupSequence(final View view) throws ActionException {
         try {
             return ViewHelper.getStartupSequence(view);
         } catch (ViewException e) {
@@ -349,16 +393,21 @@ public class GetAppSetupHandler extends ActionHandler {
         return null;
     }
 
-    private void modifyView(final View view, JSONObject myview) {
+    /**
+     * Restores bundle states from saved state
+     * @return true if view was modified
+     */
+    private boolean modifyView(final View view, JSONObject myview) {
         if (myview == null) {
-            return;
+            return false;
         }
         log.debug("[GetAppSetupHandler] Fetching View from cookie", myview);
         // merge cookie state for mapfull
+        boolean modified = false;
         try {
             JSONObject viewdata = myview.optJSONObject(VIEW_DATA);
             if(viewdata == null) {
-                return;
+                return false;
             }
             for ( Iterator<String> bundleIterator = viewdata.keys(); bundleIterator.hasNext(); ) {
                 final String bundleName = bundleIterator.next();
@@ -380,11 +429,13 @@ public class GetAppSetupHandler extends ActionHandler {
                 Bundle b = view.getBundleByName(bundleName);
                 if(b != null) {
                     b.setState(state.toString());
+                    modified = true;
                 }
             }
         } catch (Exception ex) {
             log.info(ex, "Error parsing cookie JSON:", myview);
         }
+        return modified;
     }
 
     private void addBundle(final ModifierParams params, final String id, final Bundle bundle) {
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -24,8 +25,7 @@ public class CSVStreamer implements TabularFileStreamer {
     }
 
     @Override
-    public void writeToStream(String[] headers, Object[][] data, Map<String, Object> additionalFields, OutputStream out) throws IOException {
-        int i;
+    public void writeToStream(String[] headers, Iterator<Object[]> rows, Map<String, Object> additionalFields, OutputStream out) throws IOException {
         // Write BOM, Excel won't use UTF-8 without it...
         out.write(239);
         out.write(187);
@@ -37,8 +37,8 @@ public class CSVStreamer implements TabularFileStreamer {
                 CSVFormat.DEFAULT.withDelimiter(getDelimiter())
         );
         printer.printRecord(headers);
-        for (i = 0; i < data.length; i++) {
-            printer.printRecord(data[i]);
+        while (rows.hasNext()) {
+            printer.printRecord(rows.next());
         }
 
         if (!additionalFields.isEmpty()) {
@@ -2,11 +2,25 @@ package fi.nls.oskari.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
  * Created by TMIKKOLAINEN on 30.12.2014.
  */
 public interface TabularFileStreamer {
-    public void writeToStream(String[] headers, Object[][] data, Map<String, Object> additionalFields, OutputStream out) throws IOException;
+
+    default void writeToStream(String[] headers, Object[][] data, Map<String, Object> additionalFields, OutputStream out) throws IOException {
+        writeToStream(headers, Arrays.asList(data).iterator(), additionalFields, out);
+    }
+
+    /**
+     * Writes rows to the stream as they are read from the iterator so the rows don't need to be in memory
+     * @param headers column names
+     * @param rows row values in the same order as headers
+     * @param additionalFields name-value pairs written after the rows
+     * @param out stream to write to, closed when done
+     */
+    void writeToStream(String[] headers, Iterator<Object[]> rows, Map<String, Object> additionalFields, OutputStream out) throws IOException;
 }
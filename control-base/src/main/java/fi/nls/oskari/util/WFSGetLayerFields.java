@@ -37,7 +37,7 @@ public class WFSGetLayerFields {
         if (!OskariLayer.TYPE_WFS.equals(layer.getType())) {
             throw new ServiceException("Unsupported type: " + layer.getType());
         }
-        LayerCapabilitiesWFS caps = CapabilitiesService.fromJSON(layer.getCapabilities().toString(), layer.getType());
+        LayerCapabilitiesWFS caps = CapabilitiesService.getLayerCapabilities(layer);
 
         JSONObject types = new JSONObject();
         caps.getFeatureProperties().stream().forEach(prop -> {
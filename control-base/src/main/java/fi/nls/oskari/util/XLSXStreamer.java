@@ -1,59 +1,107 @@
 package fi.nls.oskari.util;
 
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
  * Created by TMIKKOLAINEN on 30.12.2014.
  */
 public class XLSXStreamer implements TabularFileStreamer {
+    // 1048576 rows including the header
+    public static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    // rows kept in memory before they are flushed to a temporary file
+    private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    private int maxRows = MAX_ROWS;
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    public void setRowAccessWindowSize(int rowAccessWindowSize) {
+        this.rowAccessWindowSize = rowAccessWindowSize;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public void setMaxRows(int maxRows) {
+        this.maxRows = Math.min(maxRows, MAX_ROWS);
+    }
+
+    /**
+     * @throws TooManyRowsException if the rows don't fit in a sheet, nothing is written to the stream in that case
+     */
     @Override
-    public void writeToStream(String[] headers, Object[][] data, Map<String, Object> additionalFields, OutputStream out) throws IOException {
-        Workbook wb = new SXSSFWorkbook();
+    public void writeToStream(String[] headers, Iterator<Object[]> rows, Map<String, Object> additionalFields, OutputStream out) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(rowAccessWindowSize);
+        // temporary sheet files can get big with large exports
+        wb.setCompressTempFiles(true);
+        try {
+            writeToWorkbook(wb, headers, rows, additionalFields);
+            wb.write(out);
+            out.flush();
+            out.close();
+        } finally {
+            // remove the temporary files
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private void writeToWorkbook(SXSSFWorkbook wb, String[] headers, Iterator<Object[]> rows, Map<String, Object> additionalFields)
+            throws TooManyRowsException {
         Sheet sh = wb.createSheet();
         Object[] rowArray;
         int cellNum, rowNum = 0;
-        Row row = sh.createRow(rowNum);
+        Row row = createRow(sh, rowNum);
         Cell cell;
         Object value;
         for (cellNum = 0; cellNum < headers.length; cellNum++) {
             cell = row.createCell(cellNum);
             fillCell(cell, headers[cellNum]);
         }
-        for (rowNum = 1; rowNum < data.length+1; rowNum++) {
-            rowArray = data[rowNum-1];
-            row = sh.createRow(rowNum);
+        rowNum = 1;
+        while (rows.hasNext()) {
+            rowArray = rows.next();
+            row = createRow(sh, rowNum);
             for (cellNum = 0; cellNum < rowArray.length; cellNum++) {
                 value = rowArray[cellNum];
                 cell = row.createCell(cellNum);
                 fillCell(cell, value);
             }
+            rowNum++;
         }
 
         // TODO see if additional fields can be put in metadata...
         if (!additionalFields.isEmpty()) {
-            row = sh.createRow(rowNum);
+            row = createRow(sh, rowNum);
             rowNum++;
         }
         for (Map.Entry<String, Object> entry : additionalFields.entrySet()) {
-            row = sh.createRow(rowNum);
+            row = createRow(sh, rowNum);
             cell = row.createCell(0);
             fillCell(cell, entry.getKey());
             cell = row.createCell(1);
             fillCell(cell, entry.getValue());
             rowNum++;
         }
+    }
 
-        wb.write(out);
-        out.flush();
-        out.close();
+    private Row createRow(Sheet sh, int rowNum) throws TooManyRowsException {
+        if (rowNum >= maxRows) {
+            throw new TooManyRowsException("XLSX file can have at most " + maxRows + " rows");
+        }
+        return sh.createRow(rowNum);
     }
 
     private void fillCell(Cell cell, Object value) {
@@ -78,4 +126,13 @@ public class XLSXStreamer implements TabularFileStreamer {
             cell.setCellValue(value.toString());
         }
     }
+
+    /**
+     * Thrown when the data doesn't fit in a single sheet
+     */
+    public static class TooManyRowsException extends IOException {
+        public TooManyRowsException(String message) {
+            super(message);
+        }
+    }
 }
@@ -118,7 +118,7 @@ public class DescribeLayerHandler extends RestActionHandler {
     private void setDetailsForWFS (LayerExtendedOutput output, OskariLayer layer, String lang) {
         // UserDataLayers are handled in frontend by WFS plugin and embedded myplaces is using WFS type
         // so LayerJSONFormatterUSERDATA gathers values from options and attributes in same way than this
-        LayerCapabilitiesWFS caps = CapabilitiesService.fromJSON(layer.getCapabilities().toString(), layer.getType());
+        LayerCapabilitiesWFS caps = CapabilitiesService.getLayerCapabilities(layer);
         WFSLayerAttributes attr = new WFSLayerAttributes(layer.getAttributes());
         WFSLayerOptions opts = new WFSLayerOptions(layer.getOptions());
         output.properties = getProperties(caps, attr, lang);
@@ -236,7 +236,7 @@ public class DescribeLayerHandler extends RestActionHandler {
         }
         try {
             String capsJSON = layer.getCapabilities().toString();
-            LayerCapabilitiesWMTS caps = CapabilitiesService.fromJSON(layer.getCapabilities().toString(), OskariLayer.TYPE_WMTS);
+            LayerCapabilitiesWMTS caps = CapabilitiesService.getLayerCapabilities(layer);
             TileMatrixLink link = determineTileMatrix(caps, crs);
 
             // Make a copy so we don't mutate layer in cache
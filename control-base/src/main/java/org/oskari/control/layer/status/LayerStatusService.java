@@ -7,23 +7,74 @@ import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.OskariComponent;
-import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+/**
+ * Collects layer status reports from clients. Reports are aggregated in memory and the counts are written
+ * to Redis with pipelined HINCRBY every few seconds (layerstatus.flushInterval, 0 to write on each report)
+ * so reports from multiple nodes don't overwrite each other and a report doesn't need round trips per layer.
+ */
 @Oskari
 public class LayerStatusService extends OskariComponent {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final String REDIS_KEY = "LayerStatus";
+    // hash with fields like "[layer id]:success" and "[layer id]:errors"
+    private static final String REDIS_KEY_COUNTS = REDIS_KEY + "_counts";
+    private static final String FIELD_SUCCESS = "success";
+    private static final String FIELD_ERRORS = "errors";
+    private static final char FIELD_SEPARATOR = ':';
+    private static final String PROP_FLUSH_INTERVAL = "layerstatus.flushInterval";
     private Logger log = LogFactory.getLogger("STATUS");
 
+    private final Map<String, Counts> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private static class Counts {
+        private final LongAdder success = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    @Override
+    public void init() {
+        migrateLegacyStatuses();
+        int interval = PropertyUtil.getOptional(PROP_FLUSH_INTERVAL, 10);
+        if (interval <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LayerStatusFlush");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void teardown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        flush();
+    }
+
     public List<LayerStatus> getStatuses() {
         return listFromRedis();
     }
@@ -63,28 +114,100 @@ public class LayerStatusService extends OskariComponent {
         payload.keys().forEachRemaining(layerId -> {
             String id = (String) layerId;
             JSONObject layerData = payload.optJSONObject(id);
+            if (layerData == null) {
+                return;
+            }
             // we don't really care about the previous key as it's used by
             //  frontend to detect state change between failure <> success
             layerData.remove("previous");
             long errorCount = layerData.optLong("errors", 0);
-            updateToRedis(
-                    id,
-                    layerData.optLong("success", 0),
-                    errorCount
-            );
+            addCounts(id, layerData.optLong("success", 0), errorCount);
             if (errorCount != 0) {
                 saveStack(id, layerData);
             }
             // write log to get stacks for error debugging
             log.info(layerId, "-", layerData.toString());
         });
+        if (scheduler == null) {
+            flush();
+        }
+    }
+
+    private void addCounts(String id, long success, long errors) {
+        if (success == 0 && errors == 0) {
+            return;
+        }
+        Counts counts = pending.computeIfAbsent(id, key -> new Counts());
+        counts.success.add(success);
+        counts.errors.add(errors);
+    }
+
+    /**
+     * Writes counts aggregated since previous flush to Redis in one pipelined round trip.
+     * If writing fails the counts are kept for the next flush.
+     */
+    void flush() {
+        Map<String, Long> increments = drain();
+        if (increments.isEmpty()) {
+            return;
+        }
+        if (!JedisManager.hincrBy(REDIS_KEY_COUNTS, increments)) {
+            log.warn("Unable to write layer status counts, retrying on next flush");
+            increments.forEach((field, value) -> {
+                int index = field.lastIndexOf(FIELD_SEPARATOR);
+                String id = field.substring(0, index);
+                if (field.endsWith(FIELD_SUCCESS)) {
+                    addCounts(id, value, 0);
+                } else {
+                    addCounts(id, 0, value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns counts aggregated since previous call as HINCRBY increments for REDIS_KEY_COUNTS.
+     */
+    Map<String, Long> drain() {
+        Map<String, Long> increments = new HashMap<>();
+        pending.forEach((id, counts) -> {
+            // read and subtract instead of reset so increments made concurrently are not lost
+            long success = counts.success.sum();
+            long errors = counts.errors.sum();
+            if (success != 0) {
+                counts.success.add(-success);
+                increments.put(getCountField(id, FIELD_SUCCESS), success);
+            }
+            if (errors != 0) {
+                counts.errors.add(-errors);
+                increments.put(getCountField(id, FIELD_ERRORS), errors);
+            }
+        });
+        return increments;
+    }
+
+    private static String getCountField(String id, String type) {
+        return id + FIELD_SEPARATOR + type;
     }
 
     private List<LayerStatus> listFromRedis() {
-        Set<String> keys = JedisManager.hkeys(REDIS_KEY);
-        return keys.stream()
-                .map(layerId -> getEntry(layerId))
-                .collect(Collectors.toList());
+        Map<String, String> counts = JedisManager.hgetAll(REDIS_KEY_COUNTS);
+        Map<String, LayerStatus> statuses = new HashMap<>();
+        counts.forEach((field, value) -> {
+            int index = field.lastIndexOf(FIELD_SEPARATOR);
+            if (index == -1) {
+                return;
+            }
+            String id = field.substring(0, index);
+            LayerStatus status = statuses.computeIfAbsent(id, LayerStatus::new);
+            long amount = ConversionHelper.getLong(value, 0);
+            if (FIELD_ERRORS.equals(field.substring(index + 1))) {
+                status.addToErrors(amount);
+            } else {
+                status.addToSuccess(amount);
+            }
+        });
+        return new ArrayList<>(statuses.values());
     }
 
     public JSONObject getDetails(String id) {
@@ -98,7 +221,8 @@ public class LayerStatusService extends OskariComponent {
     }
 
     public void removeLayerStatus(String id) {
-        JedisManager.hdel(REDIS_KEY, id);
+        pending.remove(id);
+        JedisManager.hdel(REDIS_KEY_COUNTS, getCountField(id, FIELD_SUCCESS), getCountField(id, FIELD_ERRORS));
     }
 
     public void removeLayerRawData(String id, String dataId) {
@@ -108,16 +232,14 @@ public class LayerStatusService extends OskariComponent {
 
     private List<JSONObject> getRawDataFromRedis(String id) {
         String redisKey = getRawDataKeyForRedis(id);
-        Set<String> keys = JedisManager.hkeys(redisKey);
-
-        return keys.stream()
-                .map(dataId -> getRawDataFromRedis(redisKey, dataId))
-                .filter(data -> data != null)
+        Map<String, String> data = JedisManager.hgetAll(redisKey);
+        return data.entrySet().stream()
+                .map(entry -> getRawData(redisKey, entry.getKey(), entry.getValue()))
+                .filter(value -> value != null)
                 .collect(Collectors.toList());
     }
 
-    private JSONObject getRawDataFromRedis(String redisKey, String rawDataId) {
-        String data = JedisManager.hget(redisKey, rawDataId);
+    private JSONObject getRawData(String redisKey, String rawDataId, String data) {
         try {
             JSONObject value = new JSONObject(data);
             // raw data id is System.currentTimeMillis() as string
@@ -129,16 +251,6 @@ public class LayerStatusService extends OskariComponent {
         return null;
     }
 
-    private void updateToRedis(String id, long success, long errors) {
-        // TODO: should use https://redis.io/commands/hincrby instead or save to postgres?
-        LayerStatus status = getEntry(id);
-        status.addToErrors(errors);
-        status.addToSuccess(success);
-        JedisManager.hset(REDIS_KEY, id, writeAsJSON(status));
-        // TODO: bake id into key and use date string as field (current id) to get time dimension?
-        // Set<String> keys = JedisManager.hkeys(REDIS_KEY)
-    }
-
     private void saveStack(String id, JSONObject dataFromUser) {
         JSONArray stack = dataFromUser.optJSONArray("stack");
         if (stack == null || stack.length() == 0) {
@@ -158,26 +270,52 @@ public class LayerStatusService extends OskariComponent {
     }
 
     private LayerStatus getEntry(String id) {
-        String data = JedisManager.hget(REDIS_KEY, id);
-        if (data == null) {
-            return new LayerStatus(id);
+        LayerStatus status = new LayerStatus(id);
+        List<String> counts = JedisManager.hmget(REDIS_KEY_COUNTS, getCountField(id, FIELD_SUCCESS), getCountField(id, FIELD_ERRORS));
+        if (counts != null) {
+            status.addToSuccess(ConversionHelper.getLong(counts.get(0), 0));
+            status.addToErrors(ConversionHelper.getLong(counts.get(1), 0));
         }
-        return readFromJSON(data);
+        return status;
     }
 
-    private LayerStatus readFromJSON(String status) {
-        try {
-            return MAPPER.readValue(status, LayerStatus.class);
-        } catch (JsonProcessingException e) {
-            throw new ServiceRuntimeException("Unable to deserialize status", e);
+    /**
+     * Statuses used to be saved as JSON in REDIS_KEY hash. Moves them to counters so they can be incremented atomically.
+     * The counts are added before the legacy entry is removed so they are not lost if Redis fails in between.
+     * Only the node that manages to remove an entry keeps its counts, others undo theirs so entries are not migrated twice.
+     */
+    private void migrateLegacyStatuses() {
+        Map<String, String> legacy = JedisManager.hgetAll(REDIS_KEY);
+        if (legacy.isEmpty()) {
+            return;
         }
-    }
-
-    private String writeAsJSON(LayerStatus status) {
-        try {
-            return MAPPER.writeValueAsString(status);
-        } catch (JsonProcessingException e) {
-            throw new ServiceRuntimeException("Unable to serialize status", e);
+        int migrated = 0;
+        for (Map.Entry<String, String> entry : legacy.entrySet()) {
+            String id = entry.getKey();
+            Map<String, Long> increments = new HashMap<>();
+            try {
+                LayerStatus status = MAPPER.readValue(entry.getValue(), LayerStatus.class);
+                increments.put(getCountField(id, FIELD_SUCCESS), status.getSuccess());
+                increments.put(getCountField(id, FIELD_ERRORS), status.getErrors());
+            } catch (JsonProcessingException e) {
+                log.warn("Unable to deserialize status for layer:", id);
+                JedisManager.hdel(REDIS_KEY, id);
+                continue;
+            }
+            if (!JedisManager.hincrBy(REDIS_KEY_COUNTS, increments)) {
+                // keep the legacy entry for the next try
+                continue;
+            }
+            Long removed = JedisManager.hdel(REDIS_KEY, id);
+            if (removed == null || removed == 0) {
+                // another node migrated the entry already
+                Map<String, Long> undo = new HashMap<>();
+                increments.forEach((field, increment) -> undo.put(field, -increment));
+                JedisManager.hincrBy(REDIS_KEY_COUNTS, undo);
+                continue;
+            }
+            migrated++;
         }
+        log.info("Migrated status counts for", migrated, "layers");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+package fi.nls.oskari.control.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+
+import fi.nls.oskari.control.ActionConstants;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.layer.PermissionHelper;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.test.control.JSONActionRouteTest;
+
+public class ExportLayerFeaturesHandlerTest extends JSONActionRouteTest {
+
+    private static final SimpleFeatureType SCHEMA = createSchema();
+    private static final int NUM_FEATURES = 250;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OskariFeatureClient featureClient;
+    private ExportLayerFeaturesHandler handler;
+    private ByteArrayOutputStream out;
+
+    private static SimpleFeatureType createSchema() {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("test");
+        b.setCRS(DefaultGeographicCRS.WGS84);
+        b.add("geom", Point.class);
+        b.add("name", String.class);
+        b.add("value", Integer.class);
+        return b.buildFeatureType();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // SXSSF writes the sheets to temporary files, make them end up somewhere we can check
+        TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy(folder.getRoot()));
+
+        OskariLayer layer = new OskariLayer();
+        layer.setId(1);
+        layer.setType(OskariLayer.TYPE_WFS);
+        PermissionHelper helper = mock(PermissionHelper.class);
+        doReturn(layer).when(helper).getLayer(anyInt(), any(User.class));
+
+        featureClient = mock(OskariFeatureClient.class);
+        handler = new ExportLayerFeaturesHandler() {
+            {
+                featureClient = ExportLayerFeaturesHandlerTest.this.featureClient;
+                setPermissionHelper(helper);
+                userContentProcessors = Collections.emptyList();
+                layerAccessHandlers = Collections.emptyList();
+            }
+        };
+        out = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() {
+        TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy());
+    }
+
+    private ActionParameters createParams(String format) {
+        Map<String, String> params = new HashMap<>();
+        params.put(ActionConstants.PARAM_ID, "1");
+        params.put(ActionConstants.PARAM_SRS, "EPSG:4326");
+        params.put("bbox", "20,60,30,70");
+        params.put("format", format);
+        ActionParameters actionParams = createActionParams(params);
+        actionParams.setResponse(mockHttpServletResponse(out));
+        return actionParams;
+    }
+
+    private void setFeatures(SimpleFeatureCollection fc) {
+        doReturn(fc).when(featureClient).getFeaturesForSinglePass(anyString(), any(OskariLayer.class),
+                any(ReferencedEnvelope.class), any(CoordinateReferenceSystem.class), any(Optional.class));
+    }
+
+    private static List<SimpleFeature> createFeatures() {
+        GeometryFactory gf = new GeometryFactory();
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            Point p = gf.createPoint(new Coordinate(25, 65));
+            features.add(SimpleFeatureBuilder.build(SCHEMA, new Object[] { p, "feature " + i, i }, "test." + i));
+        }
+        return features;
+    }
+
+    @Test
+    public void testCSV() throws Exception {
+        setFeatures(new ListFeatureCollection(SCHEMA, createFeatures()));
+        handler.handleAction(createParams("CSV"));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).trim().split("\r?\n");
+        assertEquals(NUM_FEATURES + 1, lines.length);
+        assertTrue(lines[0].contains("name") && lines[0].contains("value") && !lines[0].contains("geom"));
+        assertTrue(lines[NUM_FEATURES].contains("feature " + (NUM_FEATURES - 1)));
+    }
+
+    @Test
+    public void testXLSXTempFilesAreRemoved() throws Exception {
+        setFeatures(new ListFeatureCollection(SCHEMA, createFeatures()));
+        handler.handleAction(createParams(ExportTableFile.FORMAT_XLSX));
+
+        byte[] xlsx = out.toByteArray();
+        // zip signature
+        assertTrue(xlsx.length > 4 && xlsx[0] == 'P' && xlsx[1] == 'K');
+        assertEquals("Temporary files should be removed", 0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testXLSXTempFilesAreRemovedOnFailure() throws Exception {
+        int[] tempFilesWhenFailed = { -1 };
+        setFeatures(new ListFeatureCollection(SCHEMA, createFeatures()) {
+            @Override
+            public SimpleFeatureIterator features() {
+                SimpleFeatureIterator it = super.features();
+                return new SimpleFeatureIterator() {
+                    int i = 0;
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+                    @Override
+                    public SimpleFeature next() throws NoSuchElementException {
+                        if (++i > NUM_FEATURES / 2) {
+                            // for example loading the next page from the service fails
+                            tempFilesWhenFailed[0] = folder.getRoot().list().length;
+                            throw new ServiceRuntimeException("Failed to load page");
+                        }
+                        return it.next();
+                    }
+                    @Override
+                    public void close() {
+                        it.close();
+                    }
+                };
+            }
+        });
+
+        try {
+            handler.handleAction(createParams(ExportTableFile.FORMAT_XLSX));
+            fail("Should have thrown ActionException");
+        } catch (ActionException expected) {
+            // expected
+        }
+        assertTrue("Sheet should have been written to a temporary file", tempFilesWhenFailed[0] > 0);
+        assertEquals("Temporary files should be removed", 0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testGeoPackage() throws Exception {
+        setFeatures(new ListFeatureCollection(SCHEMA, createFeatures()));
+        handler.handleAction(createParams(ExportLayerFeaturesHandler.FORMAT_GPKG));
+
+        String header = new String(out.toByteArray(), 0, 15, StandardCharsets.US_ASCII);
+        assertEquals("SQLite format 3", header);
+    }
+
+}
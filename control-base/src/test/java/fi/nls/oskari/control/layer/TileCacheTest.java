@@ -0,0 +1,158 @@
+package fi.nls.oskari.control.layer;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExpiresFromHeaders() {
+        long now = 1_000_000L;
+        assertEquals(now + 60_000, TileCache.getExpiresAt("public, max-age=60", 0, now));
+        assertEquals("s-maxage overrides max-age", now + 120_000, TileCache.getExpiresAt("max-age=60, s-maxage=120", 0, now));
+        assertEquals("max-age overrides Expires", now + 60_000, TileCache.getExpiresAt("max-age=60", now + 5_000, now));
+        assertEquals(now + 5_000, TileCache.getExpiresAt(null, now + 5_000, now));
+        assertEquals(-1, TileCache.getExpiresAt("private, max-age=60", 0, now));
+        assertEquals(-1, TileCache.getExpiresAt("no-store", now + 5_000, now));
+        assertEquals(-1, TileCache.getExpiresAt("no-cache", 0, now));
+        assertEquals(-1, TileCache.getExpiresAt("max-age=0", 0, now));
+        assertEquals("Expired", -1, TileCache.getExpiresAt(null, now - 5_000, now));
+        assertEquals("No caching headers", -1, TileCache.getExpiresAt(null, 0, now));
+    }
+
+    @Test
+    public void testKeyIsPerLayer() {
+        TileCache cache = new TileCache(1024, 1024, null, 0);
+        OskariLayer layer = new OskariLayer();
+        layer.setId(1);
+        OskariLayer other = new OskariLayer();
+        other.setId(2);
+        String url = "https://tiles.example.com/wmts?layer=a&tilerow=1";
+        assertEquals(cache.getKey(layer, url), cache.getKey(layer, url));
+        assertNotEquals(cache.getKey(layer, url), cache.getKey(other, url));
+        assertNotEquals(cache.getKey(layer, url), cache.getKey(layer, url + "1"));
+    }
+
+    @Test
+    public void testMemoryIsBounded() {
+        TileCache cache = new TileCache(10, 10, null, 0);
+        long expires = System.currentTimeMillis() + 60_000;
+        cache.put("a", tile(6, expires));
+        cache.put("b", tile(6, expires));
+        assertNull("Oldest tile should be evicted", cache.get("a"));
+        assertNotNull(cache.get("b"));
+        cache.put("c", tile(11, expires));
+        assertNull("Too large to cache", cache.get("c"));
+        assertNull("Expired", getAfterPut(cache, "d", tile(1, System.currentTimeMillis() - 1)));
+    }
+
+    @Test
+    public void testDiskTier() throws Exception {
+        long expires = System.currentTimeMillis() + 60_000;
+        TileCache.CachedTile tile = new TileCache.CachedTile("image/png", "\"abc\"", null, expires, new byte[] {1, 2, 3});
+        new TileCache(1024, 1024, folder.getRoot(), 1024 * 1024).put("key", tile);
+
+        // new instance has empty memory tier
+        TileCache.CachedTile cached = new TileCache(1024, 1024, folder.getRoot(), 1024 * 1024).get("key");
+        assertNotNull(cached);
+        assertEquals("image/png", cached.getContentType());
+        assertEquals("\"abc\"", cached.getETag());
+        assertNull(cached.getLastModified());
+        assertEquals(expires, cached.getExpires());
+        assertArrayEquals(new byte[] {1, 2, 3}, cached.getData());
+    }
+
+    @Test
+    public void testDiskTierIsBounded() throws Exception {
+        long expires = System.currentTimeMillis() + 60_000;
+        // memory tier too small to keep any tile, disk tier fits about two tiles with headers
+        // cleanup runs on the calling thread
+        TileCache cache = new TileCache(0, 1024, folder.getRoot(), 2500, Runnable::run);
+        cache.put("a", tile(1000, expires));
+        cache.put("b", tile(1000, expires));
+        // mark "a" as used after "b"
+        assertTrue(new File(folder.getRoot(), "b").setLastModified(System.currentTimeMillis() - 10_000));
+        assertNotNull(cache.get("a"));
+        cache.put("c", tile(1000, expires));
+
+        assertNotNull("Recently used", cache.get("a"));
+        assertNull("Least recently used tile should be removed", cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertTrue(folderSize() <= 2500);
+    }
+
+    @Test
+    public void testExpiredTilesAreRemovedFromDisk() throws Exception {
+        new TileCache(0, 1024, folder.getRoot(), 1024 * 1024, Runnable::run).put("expired", tile(10, System.currentTimeMillis() + 100));
+        assertTrue(new File(folder.getRoot(), "expired").isFile());
+        Thread.sleep(200);
+        // expired tiles are removed when the cache is created
+        new TileCache(0, 1024, folder.getRoot(), 1024 * 1024, Runnable::run);
+        assertFalse(new File(folder.getRoot(), "expired").exists());
+    }
+
+    @Test
+    public void testDiskCleanupRunsInBackground() throws Exception {
+        List<Runnable> scheduled = new ArrayList<>();
+        long expires = System.currentTimeMillis() + 60_000;
+        TileCache cache = new TileCache(0, 1024, folder.getRoot(), 2500, scheduled::add);
+        // initial cleanup
+        assertEquals(1, scheduled.size());
+        scheduled.remove(0).run();
+
+        cache.put("a", tile(1000, expires));
+        cache.put("b", tile(1000, expires));
+        cache.put("c", tile(1000, expires));
+        cache.put("d", tile(1000, expires));
+        assertTrue("Writing a tile shouldn't wait for the cleanup", folderSize() > 2500);
+        assertEquals("Cleanup is scheduled only once", 1, scheduled.size());
+
+        scheduled.remove(0).run();
+        assertTrue(folderSize() <= 2500);
+        cache.put("e", tile(1000, expires));
+        assertEquals("Cleanup can be scheduled again once done", 1, scheduled.size());
+    }
+
+    @Test
+    public void testCopyAtMost() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(GetLayerTileHandler.copyAtMost(new ByteArrayInputStream(new byte[100]), out, 100));
+        assertEquals(100, out.size());
+
+        out.reset();
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[20_000]);
+        assertFalse(GetLayerTileHandler.copyAtMost(in, out, 100));
+        assertEquals("Should stop reading after the limit", 101, out.size());
+        assertEquals(20_000 - 101, in.available());
+    }
+
+    private long folderSize() {
+        long size = 0;
+        for (File file : folder.getRoot().listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private TileCache.CachedTile getAfterPut(TileCache cache, String key, TileCache.CachedTile tile) {
+        cache.put(key, tile);
+        return cache.get(key);
+    }
+
+    private TileCache.CachedTile tile(int size, long expires) {
+        return new TileCache.CachedTile("image/png", null, null, expires, new byte[size]);
+    }
+}
@@ -0,0 +1,38 @@
+package fi.nls.oskari.control.layer;
+
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class UpstreamConnectionLimiterTest {
+
+    @Test
+    public void testLimitIsPerHost() throws Exception {
+        UpstreamConnectionLimiter limiter = new UpstreamConnectionLimiter(2);
+        URL first = new URL("https://tiles.example.com/wmts?layer=a");
+        URL other = new URL("https://other.example.com/wmts?layer=a");
+
+        String key1 = limiter.acquire(first, 0);
+        String key2 = limiter.acquire(new URL("https://tiles.example.com/wmts?layer=b"), 0);
+        assertNotNull(key1);
+        assertEquals("Same host should have same key", key1, key2);
+        assertNull("Limit reached for host", limiter.acquire(first, 10));
+        assertNotNull("Other hosts are not affected", limiter.acquire(other, 0));
+
+        limiter.release(key1);
+        assertNotNull("Released slot can be reused", limiter.acquire(first, 0));
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+        UpstreamConnectionLimiter limiter = new UpstreamConnectionLimiter(0);
+        URL url = new URL("https://tiles.example.com/wmts");
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(limiter.acquire(url, 0));
+        }
+    }
+}
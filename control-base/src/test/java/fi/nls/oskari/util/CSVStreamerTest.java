@@ -0,0 +1,47 @@
+package fi.nls.oskari.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CSVStreamerTest {
+
+    @Test
+    public void testWriteRowsFromIterator() throws Exception {
+        CSVStreamer streamer = new CSVStreamer();
+        streamer.setDelimiter(';');
+        Iterator<Object[]> rows = Arrays.asList(
+                new Object[] { "a", 1 },
+                new Object[] { "b;c", null }).iterator();
+        Map<String, Object> additionalFields = new LinkedHashMap<>();
+        additionalFields.put("source", "test");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamer.writeToStream(new String[] { "name", "value" }, rows, additionalFields, out);
+
+        String expected = "\uFEFFname;value\r\na;1\r\n\"b;c\";\r\n\r\nsource;test\r\n";
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testArrayAndIteratorProduceSameOutput() throws Exception {
+        String[] headers = { "x", "y" };
+        Object[][] data = { { 1.5, "foo" }, { 2.5, "bar" } };
+
+        ByteArrayOutputStream fromArray = new ByteArrayOutputStream();
+        new CSVStreamer().writeToStream(headers, data, Collections.emptyMap(), fromArray);
+        ByteArrayOutputStream fromIterator = new ByteArrayOutputStream();
+        new CSVStreamer().writeToStream(headers, Arrays.asList(data).iterator(), Collections.emptyMap(), fromIterator);
+
+        assertEquals(new String(fromArray.toByteArray(), StandardCharsets.UTF_8),
+                new String(fromIterator.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
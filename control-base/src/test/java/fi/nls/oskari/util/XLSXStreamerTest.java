@@ -1,57 +1,50 @@
-package fi.nls.oskari.util;
-
-import java.io.FileOutputStream;
-import java.util.HashMap;
-import java.util.Map;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.Ignore;
-import org.junit.Test;
-
-public class XLSXStreamerTest {
-
-    public XLSXStreamerTest() {
-    }
-
-    @BeforeClass
-    public static void setUpClass() {
-    }
-
-    @AfterClass
-    public static void tearDownClass() {
-    }
-
-    @Before
-    public void setUp() {
-    }
-
-    @After
-    public void tearDown() {
-    }
-
-    @Test
-    @Ignore
-    public void testStreamToFile() throws Exception {
-        XLSXStreamer streamer = new XLSXStreamer();
-        
-        HSSFWorkbook wb = new HSSFWorkbook();
-        FileOutputStream out = new FileOutputStream("workbook.xlsx");
-        
-        String[] headers = {"hello", "world"};
-        Object[][] data = {
-            {"100.0", "101.0"},
-            {"200.0", "201.0"},            
-        };
-        Map<String, Object> additionalFields = new HashMap<>();
-        additionalFields.put("add1", "val1");
-        additionalFields.put("add2", "val2");
-        
-        streamer.writeToStream(headers, data, additionalFields, out);
-        
-        // The actual test is to see that this goes through without error,
-        // and that the file opens in Excel without problems.
-    }
-}
+package fi.nls.oskari.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XLSXStreamerTest {
+
+    private static final String[] HEADERS = { "name", "value" };
+    private static final Object[][] DATA = { { "a", 1 }, { "b", 2 }, { "c", 3 } };
+
+    @Test
+    public void testRowsFitInSheet() throws Exception {
+        XLSXStreamer streamer = new XLSXStreamer();
+        // header and three rows
+        streamer.setMaxRows(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamer.writeToStream(HEADERS, DATA, Collections.emptyMap(), out);
+
+        byte[] xlsx = out.toByteArray();
+        // zip signature
+        assertTrue(xlsx.length > 4 && xlsx[0] == 'P' && xlsx[1] == 'K');
+    }
+
+    @Test
+    public void testTooManyRowsIsRejectedBeforeWriting() throws Exception {
+        XLSXStreamer streamer = new XLSXStreamer();
+        streamer.setMaxRows(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            streamer.writeToStream(HEADERS, DATA, Collections.emptyMap(), out);
+            fail("Should have thrown TooManyRowsException");
+        } catch (XLSXStreamer.TooManyRowsException expected) {
+            // expected
+        }
+        assertEquals("Nothing should be written", 0, out.size());
+    }
+
+    @Test
+    public void testMaxRowsIsLimitedToSheetSize() {
+        XLSXStreamer streamer = new XLSXStreamer();
+        streamer.setMaxRows(Integer.MAX_VALUE);
+        assertEquals(1048576, streamer.getMaxRows());
+    }
+}
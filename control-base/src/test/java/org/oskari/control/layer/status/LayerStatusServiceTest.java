@@ -0,0 +1,40 @@
+package org.oskari.control.layer.status;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LayerStatusServiceTest {
+
+    @Test
+    public void testReportsAreAggregated() throws Exception {
+        // init() is not called so Redis is not available and flushing keeps the counts in memory
+        LayerStatusService service = new LayerStatusService();
+        service.saveStatus(new JSONObject("{\"801\": {\"errors\": 0, \"success\": 73, \"previous\": \"success\"}, \"802\": {\"errors\": 2, \"success\": 1}}"));
+        service.saveStatus(new JSONObject("{\"801\": {\"errors\": 1, \"success\": 7}}"));
+
+        Map<String, Long> increments = service.drain();
+        assertEquals(4, increments.size());
+        assertEquals(80L, (long) increments.get("801:success"));
+        assertEquals(1L, (long) increments.get("801:errors"));
+        assertEquals(1L, (long) increments.get("802:success"));
+        assertEquals(2L, (long) increments.get("802:errors"));
+
+        assertTrue("Drained counts should be reset", service.drain().isEmpty());
+    }
+
+    @Test
+    public void testRemovedLayerIsNotFlushed() throws Exception {
+        LayerStatusService service = new LayerStatusService();
+        service.saveStatus(new JSONObject("{\"801\": {\"errors\": 0, \"success\": 3}, \"802\": {\"errors\": 0, \"success\": 0}}"));
+        service.removeLayerStatus("801");
+        Map<String, Long> increments = service.drain();
+        assertFalse(increments.containsKey("801:success"));
+        assertFalse("Zero counts should not be written", increments.containsKey("802:success"));
+    }
+}
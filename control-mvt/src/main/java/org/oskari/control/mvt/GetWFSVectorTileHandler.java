@@ -7,12 +7,12 @@ import java.util.concurrent.TimeUnit;
 import fi.nls.oskari.control.feature.AbstractWFSFeaturesHandler;
 import fi.nls.oskari.control.view.modifier.bundle.BundleHandler;
 import fi.nls.oskari.control.view.modifier.bundle.MapfullHandler;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.view.modifier.ViewModifierManager;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.GeometryType;
@@ -113,7 +113,7 @@ public class GetWFSVectorTileHandler extends AbstractWFSFeaturesHandler {
 
         final CoordinateReferenceSystem crs;
         try {
-            crs = CRS.decode(srs, true);
+            crs = CRSRegistry.decode(srs, true);
         } catch (Exception e) {
             throw new ActionParamsException("Invalid srs!");
         }
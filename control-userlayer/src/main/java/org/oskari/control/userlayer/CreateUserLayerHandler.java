@@ -22,7 +22,6 @@ import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.referencing.CRS;
 import org.json.JSONObject;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.map.userlayer.input.FeatureCollectionParser;
@@ -37,6 +36,7 @@ import fi.nls.oskari.domain.map.userlayer.UserLayer;
 import fi.nls.oskari.domain.map.userlayer.UserLayerData;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
@@ -190,7 +190,7 @@ public class CreateUserLayerHandler extends RestActionHandler {
 
     private CoordinateReferenceSystem decodeCRS(String epsg) throws UserLayerException {
         try {
-            return epsg == null ? null : CRS.decode(epsg);
+            return epsg == null ? null : CRSRegistry.decode(epsg);
         } catch (Exception e) {
             throw new UserLayerException("Failed to decode CoordinateReferenceSystem from " + epsg,
                     UserLayerException.ErrorType.INVALID_EPSG);
@@ -1,19 +1,25 @@
 package downloadbasket.actions;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionCommonException;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import fi.nls.oskari.util.ResponseHelper;
 import fi.nls.oskari.util.JSONHelper;
+import downloadbasket.data.DownloadJob;
+import downloadbasket.helpers.DownloadJobService;
 import downloadbasket.helpers.SendDownloadDetailsToEmailThread;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Checks all download- and user details of the download basket when starting
  * the download process. Returns boolean "success".
@@ -38,15 +44,35 @@ public class DownloadInfo extends ActionHandler {
 
 		String downloadDetails = params.getRequiredParam(PARAM_DOWNLOAD_DETAILS);
 		String strUserDetails = params.getRequiredParam(PARAM_USER_DETAILS);
+		DownloadJob job;
 		try {
 			JSONObject userDetails = new JSONObject(strUserDetails);
 			JSONArray ddArray = new JSONArray(downloadDetails);
-			new SendDownloadDetailsToEmailThread(mapLayerService, ddArray, userDetails, params.getLocale()).run();
+			job = new DownloadJob(ddArray.length(), getOwner(params));
+			SendDownloadDetailsToEmailThread task = new SendDownloadDetailsToEmailThread(mapLayerService, ddArray,
+					userDetails, params.getLocale(), job);
+			// downloads are processed in the background, progress can be followed with DownloadStatus
+			DownloadJobService.getInstance().submit(job, task);
+		} catch (RejectedExecutionException e) {
+			throw new ActionCommonException("Too many downloads in progress, try again later");
 		} catch (Exception e) {
 			throw new ActionException("Could not handle DownloadInfo request: ", e);
 		}
 
-		ResponseHelper.writeResponse(params, JSONHelper.createJSONObject("success", true));
+		JSONObject response = JSONHelper.createJSONObject("success", true);
+		JSONHelper.putValue(response, "jobId", job.getId());
+		ResponseHelper.writeResponse(params, response);
+
+	}
 
+	/**
+	 * Guests are identified by their session so they can't follow each others downloads.
+	 */
+	static String getOwner(ActionParameters params) {
+		User user = params.getUser();
+		if (user.isGuest()) {
+			return params.getRequest().getSession().getId();
+		}
+		return user.getUuid();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package downloadbasket.actions;
+
+import downloadbasket.data.DownloadJob;
+import downloadbasket.helpers.DownloadJobService;
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionHandler;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.util.ResponseHelper;
+
+/**
+ * Returns the progress of a download basket job started with DownloadInfo. Only the user who
+ * started the job can follow its progress.
+ */
+@OskariActionRoute("DownloadStatus")
+public class DownloadStatus extends ActionHandler {
+
+	private static final String PARAM_JOB_ID = "jobId";
+
+	@Override
+	public void handleAction(final ActionParameters params) throws ActionException {
+		DownloadJob job = DownloadJobService.getInstance().getJob(params.getRequiredParam(PARAM_JOB_ID));
+		// jobs of other users are reported as unknown so the ids can't be probed
+		if (job == null || !job.isOwnedBy(DownloadInfo.getOwner(params))) {
+			throw new ActionParamsException("Unknown download job");
+		}
+		ResponseHelper.writeResponse(params, job.toJSON());
+	}
+}
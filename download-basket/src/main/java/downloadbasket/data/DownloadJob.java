@@ -0,0 +1,93 @@
+package downloadbasket.data;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONObject;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a download basket job. Updated by the job threads and read by status requests.
+ */
+public class DownloadJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id = UUID.randomUUID().toString();
+	private final String owner;
+	private final int total;
+	private final AtomicInteger downloaded = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private volatile Status status = Status.QUEUED;
+	private volatile long finishedAt = 0;
+
+	/**
+	 * @param total number of downloads in the job
+	 * @param owner identifies the user who started the job, only the owner can follow the progress
+	 */
+	public DownloadJob(int total, String owner) {
+		this.total = total;
+		this.owner = owner;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public boolean isOwnedBy(String user) {
+		return owner != null && owner.equals(user);
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getDownloaded() {
+		return downloaded.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public void started() {
+		status = Status.RUNNING;
+	}
+
+	public void downloadSucceeded() {
+		downloaded.incrementAndGet();
+	}
+
+	public void downloadFailed() {
+		failed.incrementAndGet();
+	}
+
+	public void finished(boolean success) {
+		status = success ? Status.COMPLETED : Status.FAILED;
+		finishedAt = System.currentTimeMillis();
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		JSONHelper.putValue(json, "id", id);
+		JSONHelper.putValue(json, "status", status.name());
+		JSONHelper.putValue(json, "total", total);
+		JSONHelper.putValue(json, "downloaded", getDownloaded());
+		JSONHelper.putValue(json, "failed", getFailed());
+		return json;
+	}
+}
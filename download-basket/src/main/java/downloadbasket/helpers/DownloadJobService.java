@@ -0,0 +1,131 @@
+package downloadbasket.helpers;
+
+import downloadbasket.data.DownloadJob;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs download basket jobs in the background. The number of concurrent jobs and queued jobs is limited
+ * and the downloads of all jobs share a bounded worker pool for each upstream host so a big basket
+ * can't flood a single service.
+ */
+public class DownloadJobService {
+
+	private static final Logger LOGGER = LogFactory.getLogger(DownloadJobService.class);
+
+	private static final String PROP_MAX_JOBS = "oskari.wfs.download.jobs.max";
+	private static final String PROP_MAX_QUEUED_JOBS = "oskari.wfs.download.jobs.queue";
+	private static final String PROP_THREADS_PER_HOST = "oskari.wfs.download.threads.per.host";
+	private static final String PROP_QUEUE_PER_HOST = "oskari.wfs.download.queue.per.host";
+	// finished jobs are kept for status requests
+	private static final long FINISHED_JOB_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+	private static DownloadJobService instance;
+
+	private final ThreadPoolExecutor jobExecutor;
+	private final Map<String, ThreadPoolExecutor> upstreamExecutors = new ConcurrentHashMap<>();
+	private final Map<String, DownloadJob> jobs = new ConcurrentHashMap<>();
+	private final int threadsPerHost;
+	private final int queuePerHost;
+
+	DownloadJobService(int maxJobs, int maxQueuedJobs, int threadsPerHost, int queuePerHost) {
+		this.jobExecutor = new ThreadPoolExecutor(maxJobs, maxJobs, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(maxQueuedJobs), daemonThreads("DownloadBasketJob"));
+		this.jobExecutor.allowCoreThreadTimeOut(true);
+		this.threadsPerHost = threadsPerHost;
+		this.queuePerHost = queuePerHost;
+	}
+
+	public static synchronized DownloadJobService getInstance() {
+		if (instance == null) {
+			instance = new DownloadJobService(
+					Math.max(1, PropertyUtil.getOptional(PROP_MAX_JOBS, 2)),
+					Math.max(1, PropertyUtil.getOptional(PROP_MAX_QUEUED_JOBS, 50)),
+					Math.max(1, PropertyUtil.getOptional(PROP_THREADS_PER_HOST, 2)),
+					Math.max(1, PropertyUtil.getOptional(PROP_QUEUE_PER_HOST, 100)));
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues the job for execution
+	 * @param job progress of the job
+	 * @param task job to run, expected to update the progress
+	 * @throws RejectedExecutionException if there are too many jobs queued
+	 */
+	public void submit(DownloadJob job, Runnable task) {
+		removeFinishedJobs();
+		jobs.put(job.getId(), job);
+		try {
+			jobExecutor.execute(() -> {
+				job.started();
+				try {
+					task.run();
+				} finally {
+					if (!job.isFinished()) {
+						job.finished(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw e;
+		}
+	}
+
+	public DownloadJob getJob(String id) {
+		return id == null ? null : jobs.get(id);
+	}
+
+	/**
+	 * Returns the worker pool for the host of the url. Each host has its own pool
+	 * so slow services don't block downloads from other services. The number of queued downloads
+	 * per host is limited and the pool rejects downloads with RejectedExecutionException when it's full.
+	 */
+	public ExecutorService getUpstreamExecutor(String url) {
+		return upstreamExecutors.computeIfAbsent(getHost(url), host -> {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threadsPerHost, threadsPerHost, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(queuePerHost), daemonThreads("DownloadBasket-" + host));
+			// idle pools don't keep threads around
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		});
+	}
+
+	private static String getHost(String url) {
+		try {
+			URL u = new URL(url);
+			return u.getHost() + ":" + u.getPort();
+		} catch (MalformedURLException e) {
+			LOGGER.debug("Invalid download url:", url);
+			return "";
+		}
+	}
+
+	private void removeFinishedJobs() {
+		long expired = System.currentTimeMillis() - FINISHED_JOB_TTL_MS;
+		jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < expired);
+	}
+
+	private static ThreadFactory daemonThreads(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
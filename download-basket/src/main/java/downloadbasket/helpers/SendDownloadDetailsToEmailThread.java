@@ -2,16 +2,24 @@ package downloadbasket.helpers;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import downloadbasket.data.DownloadJob;
 import downloadbasket.data.ErrorReportDetails;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
@@ -23,7 +31,6 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.IOHelper;
 import downloadbasket.data.LoadZipDetails;
 import downloadbasket.data.NormalWayDownloads;
-import downloadbasket.data.ZipDownloadDetails;
 import org.apache.commons.mail.HtmlEmail;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -36,6 +43,7 @@ public class SendDownloadDetailsToEmailThread implements Runnable {
 	private final JSONArray downloadDetails;
 	private final JSONObject userDetails;
 	private final Locale locale;
+	private DownloadJob job;
 
 	private final Logger LOGGER = LogFactory.getLogger(SendDownloadDetailsToEmailThread.class);
 	private final String PARAM_CROPPING_MODE = "croppingMode";
@@ -61,17 +69,41 @@ public class SendDownloadDetailsToEmailThread implements Runnable {
 		this.userDetails = userDetails;
 		this.locale = locale;
 		this.mapLayerService = mapLayerService;
+		this.job = new DownloadJob(downloadDetails.length(), null);
 	}
 
-	private ArrayList<ZipDownloadDetails> downloadFromService() {
-		ArrayList<ZipDownloadDetails> mergeThese = new ArrayList<ZipDownloadDetails>();
+	/**
+	 * Constructor.
+	 *
+	 * @param mapLayerService
+	 *            map layer service
+	 * @param downloadDetails
+	 *            download details
+	 * @param userDetails
+	 *            user details
+	 * @param locale locale
+	 * @param job
+	 *            progress of the job
+	 */
+	public SendDownloadDetailsToEmailThread(OskariLayerService mapLayerService, JSONArray downloadDetails,
+			JSONObject userDetails, Locale locale, DownloadJob job) {
+		this(mapLayerService, downloadDetails, userDetails, locale);
+		this.job = job;
+	}
+
+	public DownloadJob getJob() {
+		return job;
+	}
+
+	private List<DownloadTask> getDownloadTasks() {
+		List<DownloadTask> tasks = new ArrayList<>();
 		final String strTempDir = PropertyUtil.get("oskari.wfs.download.folder.name");
 		NormalWayDownloads normalDownloads = new NormalWayDownloads();
 		for (String download : PropertyUtil.getCommaSeparatedList("oskari.wfs.download.normal.way.downloads")) {
 			normalDownloads.addDownload(download);
 		}
+		Map<String, Integer> indexes = new HashMap<>();
 		try {
-			DownloadServices ds = new DownloadServices();
 			for (int i = 0; i < downloadDetails.length(); i++) {
 				JSONObject download = downloadDetails.getJSONObject(i);
 				final String croppingMode = download.getString(PARAM_CROPPING_MODE);
@@ -103,95 +135,96 @@ public class SendDownloadDetailsToEmailThread implements Runnable {
 					ldz.setWFSUrl(OGCServices.doGetFeatureUrl(srs, download, true));
 				}
 
-				final String fileLocation = ds.loadZip(ldz, this.locale);
+				// folder names are numbered in the order of the basket, not in the order the downloads complete
+				final String sLayer = Helpers.getLayerNameWithoutNameSpace(download.getString(PARAM_LAYER));
+				int index = indexes.merge(sLayer, 0, (previous, zero) -> previous + 1);
+				tasks.add(new DownloadTask(ldz, sLayer + "_" + index + "/"));
+			}
+		} catch (Exception ex) {
+			LOGGER.error("Cannot parse JSON download details", ex);
+		}
+		return tasks;
+	}
 
-				if (fileLocation != null && ds.isValid(new File(fileLocation))) {
-					ZipDownloadDetails zdd = new ZipDownloadDetails();
-					zdd.setFileName(fileLocation);
-					final String sLayer = Helpers.getLayerNameWithoutNameSpace(download.getString(PARAM_LAYER));
-					zdd.setLayerName(sLayer);
-					mergeThese.add(zdd);
+	/**
+	 * Downloads shape zips from services in parallel and copies the contents of each to the merged zip
+	 * as soon as it's downloaded. Only the downloads that are currently in progress are kept on disk.
+	 *
+	 * @return name of the merged zip file
+	 */
+	private String downloadFromService(List<DownloadTask> tasks) throws IOException, InterruptedException {
+		final String strTempDir = PropertyUtil.get("oskari.wfs.download.folder.name");
+		String strZipFileName = UUID.randomUUID().toString() + ".zip";
+		File f = new File(strTempDir);
+		f.mkdirs();
+
+		DownloadServices ds = new DownloadServices();
+		DownloadJobService jobService = DownloadJobService.getInstance();
+		BlockingQueue<DownloadTask> completed = new LinkedBlockingQueue<>();
+		for (DownloadTask task : tasks) {
+			ExecutorService upstream = jobService.getUpstreamExecutor(task.details.getWFSUrl());
+			try {
+				CompletableFuture
+						.supplyAsync(() -> load(ds, task.details), upstream)
+						.whenComplete((fileLocation, error) -> {
+							task.fileLocation = fileLocation;
+							completed.add(task);
+						});
+			} catch (RejectedExecutionException e) {
+				LOGGER.warn("Too many downloads queued for service, skipping:", task.details.getWFSUrl());
+				task.rejected = true;
+				completed.add(task);
+			}
+		}
+
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(strTempDir, strZipFileName)))) {
+			for (int i = 0; i < tasks.size(); i++) {
+				DownloadTask task = completed.take();
+				if (task.rejected) {
+					// the service is busy, not worth an error report
+					job.downloadFailed();
+				} else if (task.fileLocation != null && ds.isValid(new File(task.fileLocation))) {
+					addToZip(out, task);
+					job.downloadSucceeded();
 				} else {
 					ErrorReportDetails erd = new ErrorReportDetails();
-					erd.setErrorFileLocation(fileLocation);
-					erd.setWfsUrl(ldz.getWFSUrl());
-					erd.setXmlRequest(ldz.getGetFeatureInfoRequest());
-					erd.setUserEmail(ldz.getUserEmail());
+					erd.setErrorFileLocation(task.fileLocation);
+					erd.setWfsUrl(task.details.getWFSUrl());
+					erd.setXmlRequest(task.details.getGetFeatureInfoRequest());
+					erd.setUserEmail(task.details.getUserEmail());
 					erd.setLanguage(locale.getLanguage());
 					ds.sendErrorReportToEmail(erd);
+					job.downloadFailed();
 				}
 			}
+		}
+		return strZipFileName;
+	}
+
+	private String load(DownloadServices ds, LoadZipDetails ldz) {
+		try {
+			return ds.loadZip(ldz, this.locale);
 		} catch (Exception ex) {
 			LOGGER.error("Cannot download shape zip.", ex);
+			return null;
 		}
-
-		return mergeThese;
 	}
 
-	private String mergeZipsToOne(ArrayList<ZipDownloadDetails> mergeTheseFiles) {
-		final String strTempDir = PropertyUtil.get("oskari.wfs.download.folder.name");
-		ZipOutputStream out = null;
-		String strZipFileName = UUID.randomUUID().toString() + ".zip";
-		try {
-			File f = new File(strTempDir);
-			f.mkdirs();
-			out = new ZipOutputStream(new FileOutputStream(new File(strTempDir, strZipFileName)));
-
-			Hashtable<String, Integer> indexes = new Hashtable<String, Integer>();
-			byte[] buffer = new byte[1024];
-
-			for (int i = 0; i < mergeTheseFiles.size(); i++) {
-				ZipInputStream in = null;
-
-				try {
-					ZipDownloadDetails zdd = mergeTheseFiles.get(i);
-					String strTempFile = zdd.getFileName();
-
-					Integer index = indexes.get(zdd.getLayerName());
-					if (index == null) {
-						index = 0;
-					} else {
-						index++;
-						indexes.remove(zdd.getLayerName());
-					}
-
-					indexes.put(zdd.getLayerName(), index);
-
-					String folderName = zdd.getLayerName() + "_" + index + "/";
-					out.putNextEntry(new ZipEntry(folderName));
-
-					in = new ZipInputStream(new FileInputStream(strTempFile));
-					ZipEntry ze = in.getNextEntry();
-					while (ze != null) {
-						String fileName = ze.getName();
-						out.putNextEntry(new ZipEntry(folderName + fileName));
-						int len;
-						while ((len = in.read(buffer)) > 0) {
-							out.write(buffer, 0, len);
-						}
-						ze = in.getNextEntry();
-					}
-
-					out.closeEntry();
-					deleteFile(strTempFile);
-
-				} catch (Exception ex) {
-					LOGGER.error("Cannot parse JSON download details", ex);
-				} finally {
-					if (in != null)
-						IOHelper.close(in);
-				}
+	private void addToZip(ZipOutputStream out, DownloadTask task) {
+		try (ZipInputStream in = new ZipInputStream(new FileInputStream(task.fileLocation))) {
+			out.putNextEntry(new ZipEntry(task.folderName));
+			ZipEntry ze = in.getNextEntry();
+			while (ze != null) {
+				out.putNextEntry(new ZipEntry(task.folderName + ze.getName()));
+				IOHelper.copy(in, out);
+				ze = in.getNextEntry();
 			}
-
-		} catch (FileNotFoundException fe) {
-			LOGGER.error("File not found", fe);
+			out.closeEntry();
 		} catch (Exception ex) {
-			LOGGER.error("Error", ex);
+			LOGGER.error("Cannot add download to zip", ex);
 		} finally {
-			IOHelper.close(out);
+			deleteFile(task.fileLocation);
 		}
-
-		return strZipFileName;
 	}
 
 	/**
@@ -202,20 +235,35 @@ public class SendDownloadDetailsToEmailThread implements Runnable {
 	 */
 	@Override
 	public void run() {
-
+		boolean success = false;
 		try {
+			List<DownloadTask> tasks = getDownloadTasks();
 
-			// Downlaod all shapes from service
-			ArrayList<ZipDownloadDetails> mergeThese = downloadFromService();
-
-			// Merge all zip files to one
-			String mergedZipFileName = mergeZipsToOne(mergeThese);
+			// Download all shapes from services and merge them to one zip file
+			String mergedZipFileName = downloadFromService(tasks);
 
 			// Send zipped file to email
 			sendZipFile(mergedZipFileName);
-
+			success = true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Download job interrupted");
 		} catch (Exception ex) {
 			LOGGER.error("Cannot download shape zip.", ex);
+		} finally {
+			job.finished(success);
+		}
+	}
+
+	private static class DownloadTask {
+		private final LoadZipDetails details;
+		private final String folderName;
+		private volatile String fileLocation;
+		private boolean rejected;
+
+		DownloadTask(LoadZipDetails details, String folderName) {
+			this.details = details;
+			this.folderName = folderName;
 		}
 	}
 
@@ -0,0 +1,129 @@
+package org.geoserver.wps.oskari.oskari;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Joins two lists of geometries in memory. An STRtree is built over the smaller list and each geometry
+ * of the other list is prepared (PreparedGeometry) and used to probe the tree. Probes are run in parallel
+ * on the common fork-join pool.
+ *
+ * Matches are returned in the same order as a nested loop over the first and the second list would
+ * produce them so the result doesn't depend on which side was indexed.
+ */
+class IndexedSpatialJoin {
+
+    /**
+     * Matching pair of geometries and the result geometry for them
+     */
+    static class Match {
+        final int first;
+        final int second;
+        final Geometry geometry;
+
+        Match(int first, int second, Geometry geometry) {
+            this.first = first;
+            this.second = second;
+            this.geometry = geometry;
+        }
+    }
+
+    private static final Comparator<Match> ORDER = Comparator
+            .comparingInt((Match m) -> m.first)
+            .thenComparingInt(m -> m.second);
+
+    private final List<Geometry> first;
+    private final List<Geometry> second;
+    private final boolean firstContainsSecond;
+    private final BiFunction<Geometry, Geometry, Geometry> result;
+
+    /**
+     * @param first geometries of the first collection
+     * @param second geometries of the second collection
+     * @param firstContainsSecond true to only match pairs where first contains second, false for intersecting pairs
+     * @param result computes the result geometry from first and second geometry, pairs with
+     *               null or empty result are skipped
+     */
+    IndexedSpatialJoin(List<Geometry> first, List<Geometry> second, boolean firstContainsSecond,
+                       BiFunction<Geometry, Geometry, Geometry> result) {
+        this.first = first;
+        this.second = second;
+        this.firstContainsSecond = firstContainsSecond;
+        this.result = result;
+    }
+
+    List<Match> execute() {
+        boolean indexFirst = first.size() < second.size();
+        List<Geometry> indexed = indexFirst ? first : second;
+        List<Geometry> probes = indexFirst ? second : first;
+
+        STRtree tree = new STRtree();
+        for (int i = 0; i < indexed.size(); i++) {
+            Geometry geom = indexed.get(i);
+            if (geom != null && !geom.isEmpty()) {
+                tree.insert(geom.getEnvelopeInternal(), i);
+            }
+        }
+        // build before querying from multiple threads
+        tree.build();
+
+        List<Match> matches = IntStream.range(0, probes.size())
+                .parallel()
+                .mapToObj(i -> probe(tree, indexed, probes.get(i), i, indexFirst))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        if (indexFirst) {
+            matches.sort(ORDER);
+        }
+        return matches;
+    }
+
+    private List<Match> probe(STRtree tree, List<Geometry> indexed, Geometry probe, int probeIndex, boolean indexFirst) {
+        if (probe == null || probe.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> candidates = new ArrayList<>();
+        for (Object item : tree.query(probe.getEnvelopeInternal())) {
+            candidates.add((Integer) item);
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(candidates);
+
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(probe);
+        List<Match> matches = new ArrayList<>();
+        for (int candidate : candidates) {
+            Geometry other = indexed.get(candidate);
+            if (!prepared.intersects(other)) {
+                continue;
+            }
+            Geometry firstGeom = indexFirst ? other : probe;
+            Geometry secondGeom = indexFirst ? probe : other;
+            if (firstContainsSecond) {
+                boolean contains = indexFirst ? other.contains(probe) : prepared.contains(other);
+                if (!contains) {
+                    continue;
+                }
+            }
+            Geometry geom = result.apply(firstGeom, secondGeom);
+            if (geom == null || geom.getNumGeometries() == 0) {
+                continue;
+            }
+            int firstIndex = indexFirst ? candidate : probeIndex;
+            int secondIndex = indexFirst ? probeIndex : candidate;
+            matches.add(new Match(firstIndex, secondIndex, geom));
+        }
+        return matches;
+    }
+}
@@ -78,7 +78,8 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
             @DescribeParameter(name = "second attributes to retain", collectionType = String.class, min = 0, description = "List of the second feature collection attributes to output") List<String> sndAttributes,
             @DescribeParameter(name = "intersectionMode", min = 0, description = "The operations to perform: set INTERSECTION if the geometry is the intersection, FIRST if the geometry is extracted by firstFeatures, SECOND if it is extracted by secondFeatures, SECOND_CONTAINS like SECOND but contains instead of intersect, SECOND_CLIP like SECOND but clip geometries (DEFAULT=INTERSECTION)") IntersectionMode intersectionMode,
             @DescribeParameter(name = "percentagesEnabled", min = 0, description = "Set it true to get the intersection percentage parameters, false  otherwise (DEFAULT=false)") Boolean percentagesEnabled,
-            @DescribeParameter(name = "areasEnabled", min = 0, description = "Set it true to get the area attributes , false  otherwise (DEFAULT=false)") Boolean areasEnabled) {
+            @DescribeParameter(name = "areasEnabled", min = 0, description = "Set it true to get the area attributes , false  otherwise (DEFAULT=false)") Boolean areasEnabled,
+            @DescribeParameter(name = "spatialIndex", min = 0, description = "Set it true to join the collections in memory using a spatial index and all cores, false to query the second collection for each feature of the first collection (DEFAULT=false)") Boolean spatialIndex) {
         // assign defaults
         logger.fine("INTERSECTION FEATURE COLLECTION WPS STARTED");
 
@@ -91,6 +92,9 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
         if (intersectionMode == null) {
             intersectionMode = IntersectionMode.INTERSECTION;
         }
+        if (spatialIndex == null) {
+            spatialIndex = false;
+        }
 
         // basic geometry checks
         Class firstGeomType = firstFeatures.getSchema().getGeometryDescriptor().getType()
@@ -111,7 +115,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
         }
 
         return new IntersectedFeatureCollection(firstFeatures, firstAttributes, secondFeatures,
-                sndAttributes, intersectionMode, percentagesEnabled, areasEnabled);
+                sndAttributes, intersectionMode, percentagesEnabled, areasEnabled, spatialIndex);
     }
 
     /**
@@ -301,6 +305,8 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
         boolean percentagesEnabled;
 
         boolean areasEnabled;
+
+        boolean spatialIndex;
         // added
         SimpleFeatureBuilder fb;
         AttributeDescriptor geomType = null;
@@ -308,7 +314,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
         public IntersectedFeatureCollection(SimpleFeatureCollection delegate,
                                             List<String> firstAttributes, SimpleFeatureCollection features,
                                             List<String> sndAttributes, IntersectionMode intersectionMode,
-                                            boolean percentagesEnabled, boolean areasEnabled) {
+                                            boolean percentagesEnabled, boolean areasEnabled, boolean spatialIndex) {
             super(delegate);
             this.features = features;
             this.firstAttributes = firstAttributes;
@@ -316,6 +322,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
             this.intersectionMode = intersectionMode;
             this.percentagesEnabled = percentagesEnabled;
             this.areasEnabled = areasEnabled;
+            this.spatialIndex = spatialIndex;
             SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
 
             SimpleFeatureType firstFeatureCollectionSchema = delegate.getSchema();
@@ -400,6 +407,11 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
 
         @Override
         public SimpleFeatureIterator features() {
+            if (spatialIndex) {
+                return new IndexedIntersectedFeatureIterator(delegate.features(), delegate, features,
+                        delegate.getSchema(), features.getSchema(), firstAttributes, sndAttributes,
+                        intersectionMode, percentagesEnabled, areasEnabled, fb);
+            }
             return new IntersectedFeatureIterator(delegate.features(), delegate, features,
                     delegate.getSchema(), features.getSchema(), firstAttributes, sndAttributes,
                     intersectionMode, percentagesEnabled, areasEnabled, fb);
@@ -590,7 +602,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
         }
 
 
-        private void addAttributeValues(SimpleFeature feature, List<String> retained,
+        void addAttributeValues(SimpleFeature feature, List<String> retained,
                                         SimpleFeatureBuilder fb) {
             Iterator<AttributeDescriptor> firstIterator = feature.getType().getAttributeDescriptors()
                     .iterator();
@@ -605,7 +617,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
             }
         }
 
-        private void addAreas(Geometry currentGeom, SimpleFeature second) {
+        void addAreas(Geometry currentGeom, SimpleFeature second) {
             CoordinateReferenceSystem firstCRS = firstFeatures.getSchema().getCoordinateReferenceSystem();
             CoordinateReferenceSystem secondCRS = secondFeatures.getSchema().getCoordinateReferenceSystem();
 
@@ -623,7 +635,7 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
             }
         }
 
-        private void addPercentages(Geometry currentGeom, SimpleFeature second) {
+        void addPercentages(Geometry currentGeom, SimpleFeature second) {
             CoordinateReferenceSystem firstCRS = firstFeatures.getSchema().getCoordinateReferenceSystem();
 
             CoordinateReferenceSystem secondCRS = secondFeatures.getSchema().getCoordinateReferenceSystem();
@@ -666,6 +678,110 @@ public class IntersectionFeatureCollection2 implements GeoServerProcess {
 
     }
 
+    /**
+     * Builds the intersections with IndexedSpatialJoin instead of querying the second collection
+     * for each feature of the first collection. Both collections are read to memory and joined
+     * on the first call to hasNext(), the result features are built while streaming.
+     */
+    static class IndexedIntersectedFeatureIterator extends IntersectedFeatureIterator {
+
+        List<SimpleFeature> firstList;
+
+        List<SimpleFeature> secondList;
+
+        List<IndexedSpatialJoin.Match> matches;
+
+        int position = 0;
+
+        public IndexedIntersectedFeatureIterator(SimpleFeatureIterator delegate,
+                                                 SimpleFeatureCollection firstFeatures, SimpleFeatureCollection secondFeatures,
+                                                 SimpleFeatureType firstFeatureCollectionSchema,
+                                                 SimpleFeatureType secondFeatureCollectionSchema,
+                                                 List<String> retainAttributesFstPar, List<String> retainAttributesSndPar,
+                                                 IntersectionMode intersectionMode, boolean percentagesEnabled, boolean areasEnabled,
+                                                 SimpleFeatureBuilder sfb) {
+            super(delegate, firstFeatures, secondFeatures, firstFeatureCollectionSchema, secondFeatureCollectionSchema,
+                    retainAttributesFstPar, retainAttributesSndPar, intersectionMode, percentagesEnabled, areasEnabled, sfb);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (matches == null) {
+                join();
+            }
+            while (next == null && position < matches.size()) {
+                IndexedSpatialJoin.Match match = matches.get(position++);
+                SimpleFeature firstFeature = firstList.get(match.first);
+                SimpleFeature second = secondList.get(match.second);
+                fb.add(match.geometry);
+                fb.set("INTERSECTION_ID", id++);
+                // add the non geometric attributes
+                addAttributeValues(firstFeature, retainAttributesFst, fb);
+                addAttributeValues(second, retainAttributesSnd, fb);
+                // add the dynamic attributes
+                Geometry currentGeom = (Geometry) firstFeature.getDefaultGeometry();
+                if (percentagesEnabled) {
+                    addPercentages(currentGeom, second);
+                }
+                if (areasEnabled) {
+                    addAreas(currentGeom, second);
+                }
+                next = fb.buildFeature(iterationIndex.toString());
+                iterationIndex++;
+            }
+            return next != null;
+        }
+
+        private void join() {
+            logger.fine("Joining feature collections with spatial index");
+            firstList = new ArrayList<>();
+            while (delegate.hasNext()) {
+                firstList.add(delegate.next());
+            }
+            secondList = new ArrayList<>();
+            SimpleFeatureIterator it = secondFeatures.features();
+            try {
+                while (it.hasNext()) {
+                    secondList.add(it.next());
+                }
+            } finally {
+                it.close();
+            }
+            IndexedSpatialJoin join = new IndexedSpatialJoin(getGeometries(firstList), getGeometries(secondList),
+                    intersectionMode == IntersectionMode.SECOND_CONTAINS, this::getResultGeometry);
+            matches = join.execute();
+            logger.fine("Found " + matches.size() + " intersections for " + firstList.size()
+                    + " and " + secondList.size() + " features");
+        }
+
+        private List<Geometry> getGeometries(List<SimpleFeature> features) {
+            List<Geometry> geometries = new ArrayList<>(features.size());
+            for (SimpleFeature feature : features) {
+                geometries.add((Geometry) feature.getDefaultGeometry());
+            }
+            return geometries;
+        }
+
+        /**
+         * Same result geometries as in IntersectedFeatureIterator.hasNext()
+         */
+        private Geometry getResultGeometry(Geometry currentGeom, Geometry second) {
+            switch (intersectionMode) {
+                case INTERSECTION:
+                    GeometryFilterImpl filter = new GeometryFilterImpl(geomType.getType().getBinding());
+                    currentGeom.intersection(second).apply(filter);
+                    return filter.getGeometry();
+                case FIRST:
+                    return currentGeom;
+                case SECOND_CLIP:
+                    return currentGeom.intersection(second);
+                default:
+                    // SECOND and SECOND_CONTAINS (contains is checked by the join)
+                    return second;
+            }
+        }
+    }
+
     static class GeometryFilterImpl implements GeometryFilter {
         GeometryFactory factory = new GeometryFactory();
 
@@ -0,0 +1,127 @@
+package org.geoserver.wps.oskari.oskari;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class IndexedSpatialJoinTest {
+
+    private final WKTReader wkt = new WKTReader();
+
+    @Test
+    public void testMatchesAreInNestedLoopOrder() throws Exception {
+        List<Geometry> first = Arrays.asList(
+                wkt.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))"),
+                wkt.read("POLYGON ((100 100, 110 100, 110 110, 100 110, 100 100))"),
+                wkt.read("POLYGON ((5 5, 15 5, 15 15, 5 15, 5 5))"));
+        List<Geometry> second = Arrays.asList(
+                wkt.read("POINT (6 6)"),
+                wkt.read("POINT (1 1)"));
+        // second is smaller so it's indexed, first is indexed when swapped
+        List<IndexedSpatialJoin.Match> matches = new IndexedSpatialJoin(first, second, false, (a, b) -> b).execute();
+        List<IndexedSpatialJoin.Match> swapped = new IndexedSpatialJoin(second, first, false, (a, b) -> a).execute();
+
+        assertEquals(3, matches.size());
+        assertMatch(matches.get(0), 0, 0);
+        assertMatch(matches.get(1), 0, 1);
+        assertMatch(matches.get(2), 2, 0);
+
+        assertEquals(3, swapped.size());
+        assertMatch(swapped.get(0), 0, 0);
+        assertMatch(swapped.get(1), 0, 2);
+        assertMatch(swapped.get(2), 1, 0);
+    }
+
+    @Test
+    public void testSameResultAsUnindexedIntersection() throws Exception {
+        for (IntersectionFeatureCollection2.IntersectionMode mode : IntersectionFeatureCollection2.IntersectionMode.values()) {
+            assertSameResult(mode);
+        }
+    }
+
+    private void assertSameResult(IntersectionFeatureCollection2.IntersectionMode mode) throws Exception {
+        SimpleFeatureCollection first = grid("first", 3, 10, 0);
+        SimpleFeatureCollection second = collection("second",
+                // overlaps four cells of the grid
+                "POLYGON ((5 5, 15 5, 15 15, 5 15, 5 5))",
+                // inside a single cell
+                "POLYGON ((21 21, 29 21, 29 29, 21 29, 21 21))",
+                // outside the grid
+                "POLYGON ((100 100, 110 100, 110 110, 100 110, 100 100))",
+                // overlaps the bottom row
+                "POLYGON ((-5 2, 35 2, 35 8, -5 8, -5 2))");
+        IntersectionFeatureCollection2 process = new IntersectionFeatureCollection2();
+
+        List<String> expected = toStrings(process.execute(first, second, null, null, mode, false, false, false));
+        List<String> actual = toStrings(process.execute(first, second, null, null, mode, false, false, true));
+
+        assertFalse("Test data should produce intersections for " + mode, expected.isEmpty());
+        assertEquals("Indexed join should produce the same features with " + mode, expected, actual);
+    }
+
+    private static void assertMatch(IndexedSpatialJoin.Match match, int first, int second) {
+        assertEquals(first, match.first);
+        assertEquals(second, match.second);
+        assertTrue(match.geometry != null);
+    }
+
+    private SimpleFeatureCollection grid(String name, int size, double cellSize, int offset) throws Exception {
+        List<String> cells = new ArrayList<>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double x0 = offset + x * cellSize;
+                double y0 = offset + y * cellSize;
+                double x1 = x0 + cellSize;
+                double y1 = y0 + cellSize;
+                cells.add(String.format("POLYGON ((%s %s, %s %s, %s %s, %s %s, %s %s))",
+                        x0, y0, x1, y0, x1, y1, x0, y1, x0, y0));
+            }
+        }
+        return collection(name, cells.toArray(new String[0]));
+    }
+
+    private SimpleFeatureCollection collection(String name, String... polygons) throws Exception {
+        // both collections use the same geometry property name as the unindexed iterator filters the
+        // second collection with the geometry property of the first collection
+        SimpleFeatureType type = DataUtilities.createType(name, "geom:Polygon:srid=3067,id:Integer");
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        for (int i = 0; i < polygons.length; i++) {
+            fb.add(wkt.read(polygons[i]));
+            fb.add(i);
+            features.add(fb.buildFeature(name + "." + i));
+        }
+        return new ListFeatureCollection(type, features);
+    }
+
+    private static List<String> toStrings(SimpleFeatureCollection fc) {
+        List<String> result = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                StringBuilder sb = new StringBuilder(f.getID());
+                for (Object value : f.getAttributes()) {
+                    sb.append('|');
+                    sb.append(value instanceof Geometry ? ((Geometry) value).norm().toText() : value);
+                }
+                result.add(sb.toString());
+            }
+        }
+        return result;
+    }
+}
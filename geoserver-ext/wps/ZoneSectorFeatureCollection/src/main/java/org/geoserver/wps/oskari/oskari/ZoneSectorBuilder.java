@@ -0,0 +1,142 @@
+package org.geoserver.wps.oskari.oskari;
+
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.awt.geom.AffineTransform;
+import java.util.logging.Logger;
+
+/**
+ * Computes the zone and sector geometries of a single feature. The buffer of each zone is computed once
+ * and reused as the inner boundary of the next zone instead of buffering the feature again with both
+ * distances for each zone and sector. Instances are immutable so features can be processed in parallel.
+ */
+class ZoneSectorBuilder {
+    private static final Logger logger = Logger
+            .getLogger("org.geoserver.wps.oskari.oskari.ZoneSectorBuilder");
+
+    private final double distance;
+    private final int zoneCount;
+    private final int sectorCount;
+    private final BufferParameters bufferParameters;
+    private final PrecisionModel precisionModel;
+
+    /**
+     * @param distance width of a zone
+     * @param zoneCount number of zones
+     * @param sectorCount number of sectors, less than 2 for whole zones
+     * @param quadrantSegments segments used to approximate a quarter circle in buffers
+     * @param precisionModel precision of the result geometries, null for full precision
+     */
+    ZoneSectorBuilder(double distance, int zoneCount, int sectorCount, int quadrantSegments, PrecisionModel precisionModel) {
+        this.distance = distance;
+        this.zoneCount = zoneCount;
+        this.sectorCount = sectorCount;
+        this.bufferParameters = new BufferParameters(quadrantSegments);
+        this.precisionModel = precisionModel;
+    }
+
+    /**
+     * @param geom feature geometry
+     * @return geometries indexed by [zone][sector], null if the feature has no geometry
+     */
+    Geometry[][] build(Geometry geom) {
+        if (geom == null) {
+            return null;
+        }
+        Geometry[][] result = new Geometry[zoneCount][sectorCount];
+        Geometry centroid = geom.getCentroid();
+        double length = geom.getLength();
+        Geometry inner = null;
+        double maxDistance = 0.0;
+        for (int zone = 0; zone < zoneCount; zone++) {
+            maxDistance = maxDistance + distance;
+            Geometry outer = buffer(geom, maxDistance);
+            Geometry ring = inner == null ? outer : difference(outer, inner);
+            // sector side is based on the outer distance of the zone
+            double sectorside = length + (2.0d * maxDistance);
+            for (int sector = 0; sector < sectorCount; sector++) {
+                Geometry gsector = getSectorGeometry(centroid, sectorside, sector, sectorCount);
+                result[zone][sector] = gsector == null ? ring : intersection(ring, gsector);
+            }
+            inner = outer;
+        }
+        return result;
+    }
+
+    private Geometry buffer(Geometry geom, double bufferDistance) {
+        Geometry buffer = BufferOp.bufferOp(geom, bufferDistance, bufferParameters);
+        if (precisionModel == null) {
+            return buffer;
+        }
+        return GeometryPrecisionReducer.reduce(buffer, precisionModel);
+    }
+
+    private Geometry difference(Geometry a, Geometry b) {
+        if (precisionModel == null) {
+            return a.difference(b);
+        }
+        return OverlayNG.overlay(a, b, OverlayNG.DIFFERENCE, precisionModel);
+    }
+
+    private Geometry intersection(Geometry a, Geometry b) {
+        if (precisionModel == null) {
+            return a.intersection(b);
+        }
+        return OverlayNG.overlay(a, b, OverlayNG.INTERSECTION, precisionModel);
+    }
+
+    /**
+     *  Computes one sector based on sector number and total number of sectors (2-12)
+     *  - use buffer quadrantSegments for getting sector points
+     *  - buffer 1st point is in the east - we want from the north
+     * @param gfeature    {Geometry}  feature for the sector center point
+     * @param distance    {double}  buffer/sector distance
+     * @param sector      {int} current sector # (1st index is 0)
+     * @param sector_count {int} total number of sectors
+     * @return {Geometry}  sector geometry
+     */
+    static Geometry getSectorGeometry(Geometry gfeature, double distance, int sector, int sector_count){
+        try {
+            GeometryFactory geometryFactory = new GeometryFactory();
+            if (sector_count < 2) return null;
+            int startInd = 4 * sector;
+            int endInd = 4 * (sector+1);
+            int midleInd = (startInd + endInd) / 2 ;
+            Geometry sectorbuf = (gfeature).buffer(distance, sector_count);
+            Coordinate center = sectorbuf.getCentroid().getCoordinate();
+            // Rotate geometry - we want sectors clockwise from north
+            AffineTransform affineTransform =
+                    AffineTransform.getRotateInstance(Math.toRadians(90.0d), center.x,
+                            center.y);
+            MathTransform mathTransform = new AffineTransform2D(affineTransform);
+
+            sectorbuf = JTS.transform(sectorbuf, mathTransform);
+            Coordinate[] coords = sectorbuf.getCoordinates();
+            Coordinate[] gsector = new Coordinate[5];
+            gsector[0] = center;
+            gsector[1] = coords[startInd];
+            gsector[2] = coords[midleInd];
+            gsector[3] = coords[endInd];
+            gsector[4] = center;
+            LinearRing ring = geometryFactory.createLinearRing(gsector);
+
+            return geometryFactory.createPolygon(ring, null);
+        }
+        catch (Exception e)
+        {
+            logger.warning("Sector computation failed: " + e);
+            return null;
+        }
+    }
+}
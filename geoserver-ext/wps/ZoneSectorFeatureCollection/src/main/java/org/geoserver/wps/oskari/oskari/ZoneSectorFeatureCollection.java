@@ -19,6 +19,7 @@ package org.geoserver.wps.oskari.oskari;
 
 import org.geoserver.wps.gs.GeoServerProcess;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.operation.buffer.BufferParameters;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -26,20 +27,17 @@ import org.geotools.feature.AttributeTypeBuilder;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.feature.type.GeometryTypeImpl;
-import org.geotools.geometry.jts.JTS;
-import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.process.factory.DescribeParameter;
 import org.geotools.process.factory.DescribeProcess;
 import org.geotools.process.factory.DescribeResult;
-import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.referencing.operation.MathTransform;
 
-import java.awt.geom.AffineTransform;
 import java.text.DecimalFormat;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * ZoneSectors a feature collection using a certain distance
@@ -58,278 +56,111 @@ public class ZoneSectorFeatureCollection implements GeoServerProcess {
             @DescribeParameter(name = "feature collection", description = "Feature collection") SimpleFeatureCollection features,
             @DescribeParameter(name = "width of the zonesector", description = "The width of the zonesector") Double distance,
             @DescribeParameter(name = "sector count", description = "The count of sectors, default=0, max=12") int sector_count,
-            @DescribeParameter(name = "zone count", description = "The count of zones,default=5") int zone_count) {
+            @DescribeParameter(name = "zone count", description = "The count of zones,default=5") int zone_count,
+            @DescribeParameter(name = "quadrant segments", min = 0, description = "The number of segments used to approximate a quarter circle in zone buffers, default=8") Integer quadrantSegments,
+            @DescribeParameter(name = "precision scale", min = 0, description = "Scale of the fixed precision model for result geometries (e.g. 1000 for millimeters when units are meters), default=floating precision") Double precisionScale) {
 
         if (distance == null) {
             throw new IllegalArgumentException("ZoneSector distance was not specified");
         }
+        if (sector_count < 0) {
+            throw new IllegalArgumentException("ZoneSector sector count can't be negative");
+        }
 
         if(zone_count < 1 ) zone_count = 5;
         if(sector_count > 12 ) sector_count = 12;
+        if (quadrantSegments == null || quadrantSegments < 1) {
+            quadrantSegments = BufferParameters.DEFAULT_QUADRANT_SEGMENTS;
+        }
+        PrecisionModel precisionModel = null;
+        if (precisionScale != null && precisionScale > 0) {
+            precisionModel = new PrecisionModel(precisionScale);
+        }
 
-        Double min_distance = 0.0;
-        Double max_distance = 0.0;
-
+        List<SimpleFeature> input = readFeatures(features);
+        ZoneSectorBuilder builder = new ZoneSectorBuilder(distance, zone_count, sector_count, quadrantSegments, precisionModel);
+        // features are processed in parallel, each computes all of its zones and sectors
+        Geometry[][][] zoneSectors = IntStream.range(0, input.size())
+                .parallel()
+                .mapToObj(i -> builder.build((Geometry) input.get(i).getDefaultGeometry()))
+                .toArray(Geometry[][][]::new);
 
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(buildTargetFeatureType(features.getSchema()));
         ListFeatureCollection result = null;
+        Double max_distance = 0.0;
 
+        // result is ordered by zone and sector like before
         for (int i = 0; i < zone_count; i++) {
             max_distance = max_distance + distance;
             for (int k = 0; k < sector_count; k++) {
-                SimpleFeatureCollection zone = new ZoneSectoredFeatureCollection(features, zone_count, k, sector_count, min_distance, max_distance);
-                if (result == null) result = new ListFeatureCollection(zone.getSchema());
-                this.appendFeatureCollection(result, zone);
+                if (result == null) result = new ListFeatureCollection(fb.getFeatureType());
+                String sector_id = getSectorId(k, max_distance);
+                for (int f = 0; f < zoneSectors.length; f++) {
+                    fb.add(zoneSectors[f] == null ? null : zoneSectors[f][i][k]);  // Geometry
+                    fb.add(sector_id);   // Sector id
+                    result.add(fb.buildFeature("zones." + f));
+                    fb.reset();
+                }
             }
-            min_distance = min_distance + distance;
         }
 
         return (SimpleFeatureCollection) result;
 
     }
 
-    /**
-     * Wrapper that will trigger the zonesector computation as features are requested
-     */
-    static class ZoneSectoredFeatureCollection extends SimpleProcessingCollection {
-
-        Double min_distance;
-        Double max_distance;
-
-        int zone_count;
-        int sector_count;
-        int sector;
-        String attribute;
-
-        SimpleFeatureCollection delegate;
-
-
-        public ZoneSectoredFeatureCollection(SimpleFeatureCollection delegate, int zone_count, int sector, int sector_count,
-                                             Double min_distance,  Double max_distance) {
-            this.min_distance = min_distance;
-            this.max_distance = max_distance;
-            this.zone_count = zone_count;
-            this.sector_count = sector_count;
-            this.sector = sector;
-            this.delegate = delegate;
-            this.attribute = null;
-
-
-
-        }
-
-        @Override
-        public SimpleFeatureIterator features() {
-            return new ZoneSectoredFeatureIterator(delegate, this.zone_count, this.sector, this.sector_count, this.min_distance, this.max_distance, getSchema());
-        }
-
-        @Override
-        public ReferencedEnvelope getBounds() {
-            if(attribute == null) {
-                // in this case we just have to expand the original collection bounds
-                ReferencedEnvelope re = delegate.getBounds();
-                re.expandBy(max_distance);
-                return re;
-            } else {
-                // unlucky case, we need to actually compute by hand...
-                return getFeatureBounds();
-            }
-        }
-
-        @Override
-        protected SimpleFeatureType buildTargetFeatureType() {
-            // create schema
-            SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
-            for (AttributeDescriptor descriptor : delegate.getSchema().getAttributeDescriptors()) {
-                if (!(descriptor.getType() instanceof GeometryTypeImpl)
-                        || (!delegate.getSchema().getGeometryDescriptor().equals(descriptor))) {
-                   // tb.add(descriptor);  Add only sector id attribute
-                } else {
-                    AttributeTypeBuilder builder = new AttributeTypeBuilder();
-                    builder.setBinding(MultiPolygon.class);
-                    AttributeDescriptor attributeDescriptor = builder.buildDescriptor(descriptor
-                            .getLocalName(), builder.buildType());
-                    tb.add(attributeDescriptor);
-                    if(tb.getDefaultGeometry() == null) {
-                        tb.setDefaultGeometry(descriptor.getLocalName());
-                    }
-                    builder.setBinding(String.class);
-                    AttributeDescriptor attribute2 = builder.buildDescriptor(
-                            "sector_id", builder.buildType());
-                    tb.add(attribute2);
-
-                }
+    private static List<SimpleFeature> readFeatures(SimpleFeatureCollection features) {
+        List<SimpleFeature> list = new ArrayList<>();
+        SimpleFeatureIterator iterator = features.features();
+        try {
+            while (iterator.hasNext()) {
+                list.add(iterator.next());
             }
-            AttributeTypeBuilder builder = new AttributeTypeBuilder();
-
-            tb.setDescription(delegate.getSchema().getDescription());
-            tb.setCRS(delegate.getSchema().getCoordinateReferenceSystem());
-            tb.setName(delegate.getSchema().getName());
-            return tb.buildFeatureType();
-        }
-
-        @Override
-        public int size() {
-            return delegate.size();
+        } finally {
+            iterator.close();
         }
-
+        return list;
     }
 
-    /**
-     * ZoneSectors each feature as we scroll over the collection
-     */
-    static class ZoneSectoredFeatureIterator implements SimpleFeatureIterator {
-        SimpleFeatureIterator delegate;
-
-        SimpleFeatureCollection collection;
-
-        Double min_distance;
-        Double max_distance;
-
-
-        int zone_count;
-        int sector_count;
-        int sector;
-
-        String attribute;
-
-        int count;
-
-        SimpleFeatureBuilder fb;
-
-        SimpleFeature next;
-
-        public ZoneSectoredFeatureIterator(SimpleFeatureCollection delegate, int zone_count, int sector, int sector_count,
-                                           Double min_distance, Double max_distance, SimpleFeatureType schema) {
-            this.delegate = delegate.features();
-            this.min_distance = min_distance;
-            this.max_distance = max_distance;
-            this.collection = delegate;
-            this.zone_count = zone_count;
-            this.sector_count = sector_count;
-            this.sector = sector;
-            this.attribute = null;
-            fb = new SimpleFeatureBuilder(schema);
-
+    private static String getSectorId(int sector, double max_distance) {
+        //Format distance
+        double dkm = max_distance/1000.0d;
+        String skm = new DecimalFormat("#0.0").format(dkm);
+        String sunit = "km";
+        if(dkm < 1.0d) {
+            sunit = "m";
+            skm = new DecimalFormat("#0").format(max_distance);
         }
+        return Integer.toString(sector+1)+"_"+skm+sunit;
+    }
 
-        public void close() {
-            delegate.close();
-        }
-
-        public boolean hasNext() {
-            while (next == null && delegate.hasNext()) {
-                SimpleFeature f = delegate.next();
-                for (Object value : f.getAttributes()) {
-                    if (value instanceof Geometry) {
-                        Double fDistance1 = min_distance;
-                        Double fDistance2 = max_distance;
-                        //Create sector
-                        double sectorside = ((Geometry) value).getLength() + (2.0d*fDistance2);
-
-                        Geometry gsector = getSectorGeometry(((Geometry) ((Geometry) value).getCentroid()), sectorside, sector, sector_count);
-
-                        if(fDistance1 != null &&  fDistance2 != null && fDistance1 == 0.0) {
-                            // Create buffer
-                            value = ((Geometry) value).buffer(fDistance2);
-                            if(gsector != null) value = ((Geometry) value).intersection(gsector);
-                        }
-                        else if(fDistance1 != null &&  fDistance2 != null && fDistance1 != 0.0) {
-                            // Create zone
-                            Geometry minbuffer = ((Geometry) value).buffer(fDistance1);
-                            Geometry maxbuffer = ((Geometry) value).buffer(fDistance2);
-                            value =  maxbuffer.difference(minbuffer);
-                            if(gsector != null) value = ((Geometry) value).intersection(gsector);
-                        }
-                        fb.add(value);  // Geometry
-                    }
-
-                }
-                //Format distance
-                double dkm = max_distance/1000.0d;
-                String skm = new DecimalFormat("#0.0").format(dkm);
-                String sunit = "km";
-                if(dkm < 1.0d) {
-                    sunit = "m";
-                    skm = new DecimalFormat("#0").format(max_distance);
+    static SimpleFeatureType buildTargetFeatureType(SimpleFeatureType schema) {
+        // create schema
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            if (!(descriptor.getType() instanceof GeometryTypeImpl)
+                    || (!schema.getGeometryDescriptor().equals(descriptor))) {
+               // tb.add(descriptor);  Add only sector id attribute
+            } else {
+                AttributeTypeBuilder builder = new AttributeTypeBuilder();
+                builder.setBinding(MultiPolygon.class);
+                AttributeDescriptor attributeDescriptor = builder.buildDescriptor(descriptor
+                        .getLocalName(), builder.buildType());
+                tb.add(attributeDescriptor);
+                if(tb.getDefaultGeometry() == null) {
+                    tb.setDefaultGeometry(descriptor.getLocalName());
                 }
+                builder.setBinding(String.class);
+                AttributeDescriptor attribute2 = builder.buildDescriptor(
+                        "sector_id", builder.buildType());
+                tb.add(attribute2);
 
-                String sector_id=Integer.toString(sector+1)+"_"+skm+sunit;
-                fb.add(sector_id);   // Sector id
-                next = fb.buildFeature("zones." + count);
-                count++;
-                fb.reset();
             }
-            return next != null;
         }
 
-        public SimpleFeature next() throws NoSuchElementException {
-            if (!hasNext()) {
-                throw new NoSuchElementException("hasNext() returned false!");
-            }
-            SimpleFeature result = next;
-            next = null;
-            return result;
-        }
-
-        /**
-         *  Computes one sector based on sector number and total number of sectors (2-12)
-         *  - use buffer quadrantSegments for getting sector points
-         *  - buffer 1st point is in the east - we want from the north
-         * @param gfeature    {Geometry}  feature for the sector center point
-         * @param distance    {double}  buffer/sector distance
-         * @param sector      {int} current sector # (1st index is 0)
-         * @param sector_count {int} total number of sectors
-         * @return {Geometry}  sector geometry
-         */
-        private Geometry getSectorGeometry(Geometry gfeature, double distance, int sector, int sector_count){
-            try {
-                GeometryFactory geometryFactory = new GeometryFactory();
-                if (sector_count < 2) return null;
-                int startInd = 4 * sector;
-                int endInd = 4 * (sector+1);
-                int midleInd = (startInd + endInd) / 2 ;
-                Geometry sectorbuf = (gfeature).buffer(distance, sector_count);
-                Coordinate center = sectorbuf.getCentroid().getCoordinate();
-                // Rotate geometry - we want sectors clockwise from north
-                AffineTransform affineTransform =
-                        AffineTransform.getRotateInstance(Math.toRadians(90.0d), center.x,
-                                center.y);
-                MathTransform mathTransform = new AffineTransform2D(affineTransform);
-
-                sectorbuf = JTS.transform(sectorbuf, mathTransform);
-                Coordinate[] coords = sectorbuf.getCoordinates();
-                Coordinate[] gsector = new Coordinate[5];
-                gsector[0] = center;
-                gsector[1] = coords[startInd];
-                gsector[2] = coords[midleInd];
-                gsector[3] = coords[endInd];
-                gsector[4] = center;
-                LinearRing ring = geometryFactory.createLinearRing(gsector);
-
-                Polygon polygon = geometryFactory.createPolygon(ring, null);
-                return (Geometry) polygon;
-            }
-            catch (Exception e)
-            {
-                System.out.println("Sector computation failed" + e);
-                return null;
-            }
-        }
-
-
-    }
-    private void appendFeatureCollection(ListFeatureCollection result, SimpleFeatureCollection zone)
-    {
-        SimpleFeatureIterator iterator=zone.features();
-        try {
-            while( iterator.hasNext()  ){
-                SimpleFeature feature = iterator.next();
-                result.add(feature);
-            }
-        }
-        finally {
-            iterator.close();
-        }
+        tb.setDescription(schema.getDescription());
+        tb.setCRS(schema.getCoordinateReferenceSystem());
+        tb.setName(schema.getName());
+        return tb.buildFeatureType();
     }
 
 }
@@ -2,18 +2,17 @@ package org.geotools.mif;
 
 import static org.geotools.mif.util.MIFUtil.startsWithIgnoreCase;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.geotools.mif.util.QueueBufferedReader;
+import org.geotools.mif.util.MIFTokenizer;
 
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
@@ -28,43 +27,49 @@ import org.locationtech.jts.util.GeometricShapeFactory;
 
 /**
  * Read MapInfo MIF Data section (graphical objects)
+ *
+ * The file is read through a MIFTokenizer, coordinates are parsed
+ * in place and written directly to the CoordinateSequences
  */
 public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
 
     private static final String[] OPTIONAL_PLINE = { "PEN", "SMOOTH" };
     private static final String[] OPTIONAL_REGION = { "PEN", "BRUSH", "CENTER" };
     private static final String[] OPTIONAL_RECT = { "PEN", "BRUSH" };
+    private static final String[] OPTIONAL_TEXT = { "FONT", "SPACING", "JUSTIFY", "ANGLE", "LABEL" };
 
-    private QueueBufferedReader mif;
+    private MIFTokenizer mif;
     private GeometryFactory gf;
 
     private Geometry next;
     private boolean end;
 
     public MIFDataReader(File mif) throws IOException {
-        BufferedReader r = Files.newBufferedReader(mif.toPath(), StandardCharsets.US_ASCII);
-        skipToDataSection(r);
-        this.mif = new QueueBufferedReader(r);
+        this(mif, 64 * 1024);
+    }
+
+    MIFDataReader(File mif, int bufferSize) throws IOException {
+        MIFTokenizer t = new MIFTokenizer(FileChannel.open(mif.toPath(), StandardOpenOption.READ), bufferSize);
+        skipToDataSection(t);
+        this.mif = t;
         this.gf = JTSFactoryFinder.getGeometryFactory();
         this.end = false;
     }
 
-    private void skipToDataSection(BufferedReader r) throws IOException {
+    private void skipToDataSection(MIFTokenizer t) throws IOException {
         try {
             String line;
             do {
-                line = r.readLine();
+                line = t.pollLine();
                 if (line == null) {
                     throw new IOException("Could not find DATA section");
                 }
-            } while (!startsWithIgnoreCase(line, "DATA"));
-        } catch (IOException e) {
-            if (r != null) {
-                try {
-                    r.close();
-                } catch (IOException e1) {
-                    // Ignore the close exception throw the original exception
-                }
+            } while (!startsWithIgnoreCase(line.trim(), "DATA"));
+        } catch (IOException | RuntimeException e) {
+            try {
+                t.close();
+            } catch (IOException e1) {
+                // Ignore the close exception throw the original exception
             }
             throw e;
         }
@@ -93,10 +98,12 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
     @Override
     public void close() {
         end = true;
-        try {
-            mif.close();
-        } catch (IOException ignore) {
-            // Do nothing
+        if (mif != null) {
+            try {
+                mif.close();
+            } catch (IOException ignore) {
+                // Do nothing
+            }
         }
         mif = null;
         gf = null;
@@ -105,40 +112,43 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
 
     private Geometry readGeometry() {
         try {
-            String line;
-            do {
-                line = mif.poll();
-                if (line == null) {
+            while (true) {
+                if (!mif.hasMoreLines()) {
                     end = true;
                     return null;
                 }
-                line = line.trim();
-            } while (line.isEmpty());
+                if (!mif.isBlankLine()) {
+                    break;
+                }
+                mif.skipLine();
+            }
 
-            if (startsWithIgnoreCase(line, "NONE")) {
+            if (mif.lineStartsWithIgnoreCase("NONE")) {
+                mif.skipLine();
                 return gf.createPoint((CoordinateSequence) null);
-            } else if (startsWithIgnoreCase(line, "POINT")) {
-                return parsePoint(line);
-            } else if (startsWithIgnoreCase(line, "LINE")) {
-                return parseLine(line);
-            } else if (startsWithIgnoreCase(line, "PLINE")) {
-                return parsePLine(line);
-            } else if (startsWithIgnoreCase(line, "REGION")) {
-                return parseRegion(line);
-            } else if (startsWithIgnoreCase(line, "ARC")) {
-                return parseArc(line);
-            } else if (startsWithIgnoreCase(line, "TEXT")) {
-                return parseText(line);
-            } else if (startsWithIgnoreCase(line, "RECT")
-                    || startsWithIgnoreCase(line, "ROUNDRECT")
-                    || startsWithIgnoreCase(line, "ELLIPSE")) {
-                return parseRect(line);
-            } else if (startsWithIgnoreCase(line, "MULTIPOINT")) {
-                return parseMultiPoint(line);
-            } else if (startsWithIgnoreCase(line, "COLLECTION")) {
-                return parseGeometryCollection(line);
+            } else if (mif.lineStartsWithIgnoreCase("POINT")) {
+                return parsePoint();
+            } else if (mif.lineStartsWithIgnoreCase("LINE")) {
+                return parseLine();
+            } else if (mif.lineStartsWithIgnoreCase("PLINE")) {
+                return parsePLine();
+            } else if (mif.lineStartsWithIgnoreCase("REGION")) {
+                return parseRegion();
+            } else if (mif.lineStartsWithIgnoreCase("ARC")) {
+                return parseArc();
+            } else if (mif.lineStartsWithIgnoreCase("TEXT")) {
+                return parseText();
+            } else if (mif.lineStartsWithIgnoreCase("RECT")
+                    || mif.lineStartsWithIgnoreCase("ROUNDRECT")
+                    || mif.lineStartsWithIgnoreCase("ELLIPSE")) {
+                return parseRect();
+            } else if (mif.lineStartsWithIgnoreCase("MULTIPOINT")) {
+                return parseMultiPoint();
+            } else if (mif.lineStartsWithIgnoreCase("COLLECTION")) {
+                return parseGeometryCollection();
             } else {
                 // Ignore geometry
+                mif.skipLine();
                 return null;
             }
         } catch (IOException e) {
@@ -147,38 +157,41 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
         }
     }
 
-    private Point parsePoint(String line) throws IOException {
-        String[] a = line.split("\\s+");
-        double x = Double.parseDouble(a[1]);
-        double y = Double.parseDouble(a[2]);
+    private Point parsePoint() throws IOException {
+        // POINT x y
+        mif.skipToken();
+        double x = mif.nextDouble();
+        double y = mif.nextDouble();
+        mif.skipLine();
 
         skipOptional("SYMBOL");
         return gf.createPoint(toCoordinateSequence(x, y));
     }
 
-    private LineString parseLine(String line) throws IOException {
-        String[] a = line.split("\\s+");
-        double x1 = Double.parseDouble(a[1]);
-        double y1 = Double.parseDouble(a[2]);
-        double x2 = Double.parseDouble(a[3]);
-        double y2 = Double.parseDouble(a[4]);
+    private LineString parseLine() throws IOException {
+        // LINE x1 y1 x2 y2
+        mif.skipToken();
+        double x1 = mif.nextDouble();
+        double y1 = mif.nextDouble();
+        double x2 = mif.nextDouble();
+        double y2 = mif.nextDouble();
+        mif.skipLine();
 
         skipOptional("PEN");
         return gf.createLineString(toCoordinateSequence(x1, y1, x2, y2));
     }
 
-    private Geometry parsePLine(String line) throws IOException {
-        String[] a = line.split("\\s+");
+    private Geometry parsePLine() throws IOException {
+        mif.skipToken();
 
-        if (a.length == 3) {
+        if (mif.lineStartsWithIgnoreCase("MULTIPLE")) {
             // PLINE MULTIPLE numlines
-            if (!startsWithIgnoreCase(a[1], "MULTIPLE")) {
-                throw new IllegalArgumentException("Invalid PLINE statement, expected MULTIPLE for 2 arguments");
-            }
-            int numLines = Integer.parseInt(a[2]);
+            mif.skipToken();
+            int numLines = mif.nextInt();
+            mif.skipLine();
             LineString[] lineStrings = new LineString[numLines];
             for (int i = 0; i < numLines; i++) {
-                int numpts = Integer.parseInt(mif.poll().trim());
+                int numpts = readIntLine();
                 lineStrings[i] = gf.createLineString(readCoordinatesN(numpts));
             }
             skipOptional(OPTIONAL_PLINE);
@@ -187,21 +200,29 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
             // PLINE numpts OR
             // PLINE
             // numpts
-            String _numpts = a.length == 2 ? a[1] : mif.poll().trim();
-            int numpts = Integer.parseInt(_numpts);
+            int numpts;
+            if (mif.hasNextToken()) {
+                numpts = mif.nextInt();
+                mif.skipLine();
+            } else {
+                mif.skipLine();
+                numpts = readIntLine();
+            }
             LineString ls = gf.createLineString(readCoordinatesN(numpts));
             skipOptional(OPTIONAL_PLINE);
             return ls;
         }
     }
 
-    private Geometry parseRegion(String line) throws NumberFormatException, IOException {
-        String[] a = line.split("\\s+");
+    private Geometry parseRegion() throws NumberFormatException, IOException {
+        // REGION numpolygons
+        mif.skipToken();
+        int numRings = mif.nextInt();
+        mif.skipLine();
 
-        int numRings = Integer.parseInt(a[1]);
         LinearRing[] rings = new LinearRing[numRings];
         for (int i = 0; i < numRings; i++) {
-            int numpts = Integer.parseInt(mif.poll().trim());
+            int numpts = readIntLine();
             CoordinateSequence csq = readCoordinatesN(numpts);
             if (!isClosed(csq)) {
                 csq = close(csq);
@@ -233,17 +254,20 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
         return polygons.size() == 1 ? polygons.get(0) : gf.createMultiPolygon(polygons.toArray(new Polygon[0]));
     }
 
-    private LineString parseArc(String line) throws IOException {
-        String[] arr = line.split("\\s+");
-        double x1 = Double.parseDouble(arr[1]);
-        double y1 = Double.parseDouble(arr[2]);
-        double x2 = Double.parseDouble(arr[3]);
-        double y2 = Double.parseDouble(arr[4]);
+    private LineString parseArc() throws IOException {
+        // ARC x1 y1 x2 y2
+        // a b
+        mif.skipToken();
+        double x1 = mif.nextDouble();
+        double y1 = mif.nextDouble();
+        double x2 = mif.nextDouble();
+        double y2 = mif.nextDouble();
+        mif.skipLine();
         Envelope e = new Envelope(x1, x2, y1, y2);
 
-        arr = mif.poll().split("\\s+");
-        double a = Double.parseDouble(arr[0]);
-        double b = Double.parseDouble(arr[1]);
+        double a = mif.nextDouble();
+        double b = mif.nextDouble();
+        mif.skipLine();
 
         skipOptional("PEN");
 
@@ -252,43 +276,54 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
         return gsf.createArc(a, b);
     }
 
-    private Point parseText(String line) throws IOException {
-        // Skip TEXT line
-        line = mif.poll();
+    private Point parseText() throws IOException {
+        // TEXT "textstring" OR
+        // TEXT
+        // "textstring"
+        // x1 y1 x2 y2
+        String line = mif.pollLine();
+        if (line.indexOf('"') < 0) {
+            mif.skipLine();
+        }
 
-        String[] a = line.split("\\s+");
-        double x1 = Double.parseDouble(a[1]);
-        double y1 = Double.parseDouble(a[2]);
-        // double x2 = Double.parseDouble(a[3]);
-        // double y2 = Double.parseDouble(a[4]);
+        double x1 = mif.nextDouble();
+        double y1 = mif.nextDouble();
+        mif.skipLine();
 
-        skipOptional(new String[] { "FONT", "SPACING", "JUSTIFY", "ANGLE", "LABEL" });
+        skipOptional(OPTIONAL_TEXT);
 
         return gf.createPoint(toCoordinateSequence(x1, y1));
     }
 
-    private Polygon parseRect(String line) throws IOException {
-        String[] a = line.split("\\s+");
-        double x1 = Double.parseDouble(a[1]);
-        double y1 = Double.parseDouble(a[2]);
-        double x2 = Double.parseDouble(a[3]);
-        double y2 = Double.parseDouble(a[4]);
-
-        if (startsWithIgnoreCase(a[0], "ROUNDRECT")) {
-            mif.poll(); // Skip the degree of rounding (a)
+    private Polygon parseRect() throws IOException {
+        // RECT x1 y1 x2 y2 OR
+        // ROUNDRECT x1 y1 x2 y2
+        // a OR
+        // ELLIPSE x1 y1 x2 y2
+        boolean roundRect = mif.lineStartsWithIgnoreCase("ROUNDRECT");
+        mif.skipToken();
+        double x1 = mif.nextDouble();
+        double y1 = mif.nextDouble();
+        double x2 = mif.nextDouble();
+        double y2 = mif.nextDouble();
+        mif.skipLine();
+
+        if (roundRect) {
+            mif.skipLine(); // Skip the degree of rounding (a)
         }
 
         skipOptional(OPTIONAL_RECT);
         return JTS.toGeometry(new Envelope(x1, x2, y1, y2));
     }
 
-    private Geometry parseMultiPoint(String line) throws IOException {
-        String[] a = line.split("\\s+");
-        int numPoints = Integer.parseInt(a[1]);
+    private Geometry parseMultiPoint() throws IOException {
+        // MULTIPOINT numpts
+        mif.skipToken();
+        int numPoints = mif.nextInt();
+        mif.skipLine();
 
         Point[] points = new Point[numPoints];
         for (int i = 0; i < numPoints; i++) {
-            a = mif.poll().split("\\s+");
             points[i] = gf.createPoint(readCoordinatesN(1));
         }
 
@@ -297,8 +332,12 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
         return numPoints == 1 ? points[0] : gf.createMultiPoint(points);
     }
 
-    private GeometryCollection parseGeometryCollection(String line) throws IOException {
-        int n = Integer.parseInt(line.substring("COLLECTION".length()));
+    private GeometryCollection parseGeometryCollection() throws IOException {
+        // COLLECTION numparts
+        mif.skipToken();
+        int n = mif.nextInt();
+        mif.skipLine();
+
         Geometry[] geometries = new Geometry[n];
         for (int i = 0; i < n; i++) {
             geometries[i] = readGeometry();
@@ -306,39 +345,26 @@ public class MIFDataReader implements Iterator<Geometry>, AutoCloseable {
         return gf.createGeometryCollection(geometries);
     }
 
+    private int readIntLine() throws IOException {
+        int n = mif.nextInt();
+        mif.skipLine();
+        return n;
+    }
+
     private CoordinateSequence readCoordinatesN(int n) throws IOException {
         CoordinateSequence csq = gf.getCoordinateSequenceFactory().create(n, 2);
         for (int i = 0; i < n; i++) {
-            String[] a = mif.poll().split("\\s+");
-            double x = Double.parseDouble(a[0]);
-            double y = Double.parseDouble(a[1]);
-            csq.setOrdinate(i, 0, x);
-            csq.setOrdinate(i, 1, y);
+            csq.setOrdinate(i, 0, mif.nextDouble());
+            csq.setOrdinate(i, 1, mif.nextDouble());
+            mif.skipLine();
         }
         return csq;
     }
 
-    private void skipOptional(String s) throws IOException {
-        String line = mif.peek();
-        if (startsWithIgnoreCase(line, s)) {
-            mif.poll();
-        }
-    }
-
-    private void skipOptional(String[] a) throws IOException {
-        String line = mif.peek();
-        if (line == null) {
-            return;
-        }
-        line = line.trim();
+    private void skipOptional(String... a) throws IOException {
         for (String s : a) {
-            if (startsWithIgnoreCase(line, s)) {
-                mif.poll();
-                line = mif.peek();
-                if (line == null) {
-                    return;
-                }
-                line = line.trim();
+            if (mif.hasMoreLines() && mif.lineStartsWithIgnoreCase(s)) {
+                mif.skipLine();
             }
         }
     }
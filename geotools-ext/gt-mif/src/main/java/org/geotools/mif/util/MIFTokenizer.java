@@ -0,0 +1,352 @@
+package org.geotools.mif.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenize the MIF Data section line by line straight from a ByteBuffer
+ *
+ * The channel is read through a fixed size buffer (it only grows if a single line doesn't fit)
+ * so the file is never held in memory as a whole. Numbers are parsed in place from the bytes
+ * without creating intermediate Strings, lines are only decoded to Strings when explicitly asked for.
+ *
+ * MIF keywords and numbers are ASCII so the bytes are handled as single byte characters.
+ */
+public class MIFTokenizer implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // Mantissas below this (2^53) are exactly representable as doubles
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // 10^0 ... 10^22 are exactly representable as doubles
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+            1e21, 1e22
+    };
+
+    private final ReadableByteChannel ch;
+    private byte[] b;
+    private ByteBuffer bb;
+    private int pos;
+    private int lim;
+    private boolean eof;
+
+    public MIFTokenizer(ReadableByteChannel ch) {
+        this(ch, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MIFTokenizer(ReadableByteChannel ch, int bufferSize) {
+        this.ch = ch;
+        this.b = new byte[Math.max(bufferSize, 2)];
+        this.bb = ByteBuffer.wrap(b);
+    }
+
+    /**
+     * @return true if there's at least one more line to read
+     */
+    public boolean hasMoreLines() throws IOException {
+        while (pos >= lim) {
+            if (eof) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * @return the current line without consuming it, null if there are no more lines
+     */
+    public String peekLine() throws IOException {
+        if (!hasMoreLines()) {
+            return null;
+        }
+        // findLineEnd() can move pos when it reads more to the buffer
+        int end = findLineEnd();
+        return decode(pos, end);
+    }
+
+    /**
+     * @return the current line and move to the next one, null if there are no more lines
+     */
+    public String pollLine() throws IOException {
+        if (!hasMoreLines()) {
+            return null;
+        }
+        int end = findLineEnd();
+        String line = decode(pos, end);
+        pos = Math.min(end + 1, lim);
+        return line;
+    }
+
+    /**
+     * Skip the rest of the current line
+     */
+    public void skipLine() throws IOException {
+        if (!hasMoreLines()) {
+            return;
+        }
+        pos = Math.min(findLineEnd() + 1, lim);
+    }
+
+    /**
+     * @return true if the rest of the current line is whitespace
+     */
+    public boolean isBlankLine() throws IOException {
+        int end = findLineEnd();
+        return skipWhitespace(pos, end) == end;
+    }
+
+    /**
+     * @return true if the first token of the rest of the current line starts with prefix (case-insensitive)
+     */
+    public boolean lineStartsWithIgnoreCase(String prefix) throws IOException {
+        int end = findLineEnd();
+        int i = skipWhitespace(pos, end);
+        if (end - i < prefix.length()) {
+            return false;
+        }
+        for (int j = 0; j < prefix.length(); j++) {
+            if (Character.toUpperCase((char) (b[i + j] & 0xFF)) != Character.toUpperCase(prefix.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the current line has more non-whitespace characters
+     */
+    public boolean hasNextToken() throws IOException {
+        int end = findLineEnd();
+        return skipWhitespace(pos, end) < end;
+    }
+
+    /**
+     * Skip the next whitespace separated token of the current line
+     */
+    public void skipToken() throws IOException {
+        int end = findLineEnd();
+        pos = skipToken(skipWhitespace(pos, end), end);
+    }
+
+    /**
+     * Parse the next whitespace separated token of the current line as an int
+     * @throws NumberFormatException if the token isn't an int or the line has no more tokens
+     */
+    public int nextInt() throws IOException, NumberFormatException {
+        int end = findLineEnd();
+        int start = skipWhitespace(pos, end);
+        int tokenEnd = skipToken(start, end);
+        if (start == tokenEnd) {
+            throw new NumberFormatException("Expected an integer, found end of line");
+        }
+        pos = tokenEnd;
+
+        int i = start;
+        boolean negative = false;
+        if (b[i] == '-' || b[i] == '+') {
+            negative = b[i] == '-';
+            i++;
+        }
+        if (i == tokenEnd) {
+            throw new NumberFormatException("Invalid integer: " + decode(start, tokenEnd));
+        }
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            if (!isDigit(b[i])) {
+                throw new NumberFormatException("Invalid integer: " + decode(start, tokenEnd));
+            }
+            value = value * 10 + (b[i] - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Integer out of range: " + decode(start, tokenEnd));
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer out of range: " + decode(start, tokenEnd));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parse the next whitespace separated token of the current line as a double.
+     * The result is the same as with Double.parseDouble(), numbers with up to 15-16
+     * significant digits and small exponents are parsed without creating a String
+     * @throws NumberFormatException if the token isn't a number or the line has no more tokens
+     */
+    public double nextDouble() throws IOException, NumberFormatException {
+        int end = findLineEnd();
+        int start = skipWhitespace(pos, end);
+        int tokenEnd = skipToken(start, end);
+        if (start == tokenEnd) {
+            throw new NumberFormatException("Expected a number, found end of line");
+        }
+        pos = tokenEnd;
+
+        int i = start;
+        boolean negative = false;
+        if (b[i] == '-' || b[i] == '+') {
+            negative = b[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exp10 = 0;
+        boolean digits = false;
+        boolean exact = true;
+        for (; i < tokenEnd && isDigit(b[i]); i++) {
+            digits = true;
+            mantissa = mantissa * 10 + (b[i] - '0');
+            if (mantissa >= MAX_EXACT_MANTISSA) {
+                exact = false;
+                break;
+            }
+        }
+        if (exact && i < tokenEnd && b[i] == '.') {
+            for (i++; i < tokenEnd && isDigit(b[i]); i++) {
+                digits = true;
+                mantissa = mantissa * 10 + (b[i] - '0');
+                exp10--;
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    exact = false;
+                    break;
+                }
+            }
+        }
+        if (exact && digits && i < tokenEnd && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < tokenEnd && (b[i] == '-' || b[i] == '+')) {
+                negativeExp = b[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean expDigits = false;
+            for (; i < tokenEnd && isDigit(b[i]) && exp < 1000; i++) {
+                expDigits = true;
+                exp = exp * 10 + (b[i] - '0');
+            }
+            exact = expDigits;
+            exp10 += negativeExp ? -exp : exp;
+        }
+
+        if (!exact || !digits || i != tokenEnd || exp10 < -22 || exp10 > 22) {
+            // Rare (or invalid) input, let the JDK handle it
+            return Double.parseDouble(decode(start, tokenEnd));
+        }
+
+        // Both operands are exact so the single multiplication/division is correctly rounded
+        double value = mantissa;
+        if (exp10 > 0) {
+            value *= POW10[exp10];
+        } else if (exp10 < 0) {
+            value /= POW10[-exp10];
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    /**
+     * Make sure the whole current line is in the buffer
+     * Lines end with '\n' (LF and CRLF) or a '\r' that isn't followed by '\n' (CR only, old Mac files)
+     * @return index of the character ending the current line, or lim if the last line has no line break
+     */
+    private int findLineEnd() throws IOException {
+        int i = pos;
+        while (true) {
+            for (; i < lim; i++) {
+                if (b[i] == '\n') {
+                    return i;
+                }
+                if (b[i] == '\r') {
+                    if (i + 1 < lim) {
+                        if (b[i + 1] != '\n') {
+                            return i;
+                        }
+                    } else if (eof) {
+                        return i;
+                    } else {
+                        // Need the next byte to tell CR from CRLF
+                        break;
+                    }
+                }
+            }
+            if (i >= lim && eof) {
+                return lim;
+            }
+            int scanned = i - pos;
+            fill();
+            i = pos + scanned;
+        }
+    }
+
+    /**
+     * Move the unread bytes to the beginning of the buffer (growing it if it's full)
+     * and read more from the channel
+     */
+    private void fill() throws IOException {
+        int remaining = lim - pos;
+        if (pos > 0) {
+            System.arraycopy(b, pos, b, 0, remaining);
+        } else if (remaining == b.length) {
+            // A single line doesn't fit to the buffer
+            byte[] tmp = new byte[b.length * 2];
+            System.arraycopy(b, 0, tmp, 0, remaining);
+            b = tmp;
+            bb = ByteBuffer.wrap(b);
+        }
+        pos = 0;
+        lim = remaining;
+
+        bb.limit(b.length);
+        bb.position(lim);
+        int n;
+        do {
+            n = ch.read(bb);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+        } else {
+            lim += n;
+        }
+    }
+
+    private int skipWhitespace(int i, int end) {
+        while (i < end && isWhitespace(b[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipToken(int i, int end) {
+        while (i < end && !isWhitespace(b[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private String decode(int from, int to) {
+        if (to > from && b[to - 1] == '\r') {
+            to--;
+        }
+        return new String(b, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f';
+    }
+
+}
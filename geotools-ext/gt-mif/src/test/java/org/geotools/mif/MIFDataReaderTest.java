@@ -2,13 +2,22 @@ package org.geotools.mif;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
 
 public class MIFDataReaderTest {
 
@@ -56,4 +65,60 @@ public class MIFDataReaderTest {
         }
     }
 
+    @Test
+    public void testMixedGeometries() throws URISyntaxException, IOException {
+        File mif = new File(getClass().getResource("mixed_geometries.mif").toURI());
+        List<Geometry> geometries = readAll(mif, 64 * 1024);
+        assertEquals(7, geometries.size());
+
+        Point point = (Point) geometries.get(0);
+        assertEquals(385000.5, point.getX(), 0.0);
+        assertEquals(6672000.25, point.getY(), 0.0);
+
+        Point text = (Point) geometries.get(1);
+        assertEquals(385001, text.getX(), 0.0);
+        assertEquals(6672001, text.getY(), 0.0);
+
+        MultiPoint multiPoint = (MultiPoint) geometries.get(2);
+        assertEquals(2, multiPoint.getNumGeometries());
+        assertEquals(385010, multiPoint.getGeometryN(1).getCoordinate().x, 0.0);
+
+        MultiLineString pline = (MultiLineString) geometries.get(3);
+        assertEquals(2, pline.getNumGeometries());
+        assertEquals(3, pline.getGeometryN(1).getNumPoints());
+
+        Polygon rect = (Polygon) geometries.get(4);
+        assertEquals(100 * 100, rect.getArea(), 0.0);
+
+        GeometryCollection collection = (GeometryCollection) geometries.get(5);
+        assertEquals(2, collection.getNumGeometries());
+        Point p = (Point) collection.getGeometryN(0);
+        assertEquals(1e5, p.getX(), 0.0);
+        assertEquals(-2.5e-3, p.getY(), 0.0);
+        assertTrue(collection.getGeometryN(1) instanceof LineString);
+
+        assertTrue(geometries.get(6).isEmpty());
+    }
+
+    @Test
+    public void testSmallBufferProducesSameGeometries() throws URISyntaxException, IOException {
+        File mif = new File(getClass().getResource("kenro_alue_maarajat.MIF").toURI());
+        List<Geometry> expected = readAll(mif, 64 * 1024);
+        List<Geometry> actual = readAll(mif, 16);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).equalsExact(actual.get(i)));
+        }
+    }
+
+    private static List<Geometry> readAll(File mif, int bufferSize) throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        try (MIFDataReader r = new MIFDataReader(mif, bufferSize)) {
+            while (r.hasNext()) {
+                geometries.add(r.next());
+            }
+        }
+        return geometries;
+    }
+
 }
@@ -0,0 +1,143 @@
+package org.geotools.mif.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MIFTokenizerTest {
+
+    private static MIFTokenizer tokenizer(String str, int bufferSize) {
+        byte[] b = str.getBytes(StandardCharsets.US_ASCII);
+        return new MIFTokenizer(Channels.newChannel(new ByteArrayInputStream(b)), bufferSize);
+    }
+
+    @Test
+    public void nextDoubleMatchesParseDouble() throws IOException {
+        String[] values = {
+                "0", "-0", "1", "+1", "-1", "0.5", ".5", "5.", "-.25",
+                "3380768.212", "6679512.723", "508688.045709824", "7722000.000000000",
+                "1e5", "1E-5", "-2.5e-3", "1.7976931348623157E308", "4.9E-324",
+                "123456789012345678901234567890", "0.1234567890123456789", "1e23", "1e-23"
+        };
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(value).append(' ');
+        }
+        try (MIFTokenizer t = tokenizer(sb.toString(), 16)) {
+            for (String value : values) {
+                assertEquals(value, Double.parseDouble(value), t.nextDouble(), 0.0);
+            }
+            assertFalse(t.hasNextToken());
+        }
+    }
+
+    @Test
+    public void nextDoubleMatchesParseDoubleRandom() throws IOException {
+        Random r = new Random(42);
+        String[] values = new String[10000];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            double d = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(16));
+            values[i] = Double.toString(d);
+            sb.append(values[i]).append(i % 2 == 0 ? " " : "\n");
+        }
+        try (MIFTokenizer t = tokenizer(sb.toString(), 1024)) {
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], Double.parseDouble(values[i]), t.nextDouble(), 0.0);
+                if (i % 2 != 0) {
+                    t.skipLine();
+                }
+            }
+            assertFalse(t.hasMoreLines());
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void nextDoubleInvalid() throws IOException {
+        try (MIFTokenizer t = tokenizer("12a3", 16)) {
+            t.nextDouble();
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void nextDoubleEndOfLine() throws IOException {
+        try (MIFTokenizer t = tokenizer("1\n2", 16)) {
+            t.nextDouble();
+            t.nextDouble();
+        }
+    }
+
+    @Test
+    public void nextInt() throws IOException {
+        try (MIFTokenizer t = tokenizer("  49 -3 +7 2147483647 -2147483648", 4)) {
+            assertEquals(49, t.nextInt());
+            assertEquals(-3, t.nextInt());
+            assertEquals(7, t.nextInt());
+            assertEquals(Integer.MAX_VALUE, t.nextInt());
+            assertEquals(Integer.MIN_VALUE, t.nextInt());
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void nextIntOutOfRange() throws IOException {
+        try (MIFTokenizer t = tokenizer("2147483648", 16)) {
+            t.nextInt();
+        }
+    }
+
+    @Test
+    public void linesWithCRLFAndSmallBuffer() throws IOException {
+        String longLine = "Pline Multiple 123456789012345678901234567890";
+        try (MIFTokenizer t = tokenizer("Data\r\n\r\n" + longLine + "\r\n  Pen (1,2,0)", 4)) {
+            assertEquals("Data", t.peekLine());
+            assertEquals("Data", t.pollLine());
+            assertTrue(t.isBlankLine());
+            t.skipLine();
+            assertTrue(t.lineStartsWithIgnoreCase("PLINE"));
+            assertEquals(longLine, t.peekLine());
+            t.skipToken();
+            assertTrue(t.lineStartsWithIgnoreCase("multiple"));
+            t.skipToken();
+            assertTrue(t.hasNextToken());
+            assertEquals(Double.parseDouble("123456789012345678901234567890"), t.nextDouble(), 0.0);
+            assertFalse(t.hasNextToken());
+            t.skipLine();
+            assertTrue(t.lineStartsWithIgnoreCase("PEN"));
+            assertEquals("  Pen (1,2,0)", t.pollLine());
+            assertFalse(t.hasMoreLines());
+            assertNull(t.pollLine());
+        }
+    }
+
+    @Test
+    public void linesWithCROnly() throws IOException {
+        // CR at the end of the buffer needs the next byte to tell it apart from CRLF
+        for (int bufferSize = 2; bufferSize <= 8; bufferSize++) {
+            try (MIFTokenizer t = tokenizer("Data\r\rPoint 1.5 2\r\nPen (1,2,0)\rRegion 1\r", bufferSize)) {
+                assertEquals("Data", t.pollLine());
+                assertTrue(t.isBlankLine());
+                t.skipLine();
+                assertTrue(t.lineStartsWithIgnoreCase("POINT"));
+                t.skipToken();
+                assertEquals(1.5, t.nextDouble(), 0.0);
+                assertEquals(2, t.nextInt());
+                assertFalse(t.hasNextToken());
+                t.skipLine();
+                assertEquals("Pen (1,2,0)", t.peekLine());
+                assertEquals("Pen (1,2,0)", t.pollLine());
+                assertEquals("Region 1", t.pollLine());
+                assertFalse(t.hasMoreLines());
+            }
+        }
+    }
+
+}
@@ -4,7 +4,19 @@ public enum OGCAPIConformanceClass {
 
     Core("http://www.opengis.net/spec/ogcapi-features-1/1.0/conf/core"),
     OpenAPI3("http://www.opengis.net/spec/ogcapi-features-1/1.0/conf/oas30"),
-    GeoJSON("http://www.opengis.net/spec/ogcapi-features-1/1.0/conf/geojson");
+    GeoJSON("http://www.opengis.net/spec/ogcapi-features-1/1.0/conf/geojson"),
+
+    // OGC API - Features - Part 3: Filtering
+    Filter("http://www.opengis.net/spec/ogcapi-features-3/1.0/conf/filter"),
+    FeaturesFilter("http://www.opengis.net/spec/ogcapi-features-3/1.0/conf/features-filter"),
+
+    // Common Query Language (CQL2)
+    CQL2Text("http://www.opengis.net/spec/cql2/1.0/conf/cql2-text"),
+    CQL2JSON("http://www.opengis.net/spec/cql2/1.0/conf/cql2-json"),
+    BasicCQL2("http://www.opengis.net/spec/cql2/1.0/conf/basic-cql2"),
+    AdvancedComparisonOperators("http://www.opengis.net/spec/cql2/1.0/conf/advanced-comparison-operators"),
+    BasicSpatialFunctions("http://www.opengis.net/spec/cql2/1.0/conf/basic-spatial-functions"),
+    SpatialFunctions("http://www.opengis.net/spec/cql2/1.0/conf/spatial-functions");
 
     public final String url;
 
@@ -8,8 +8,17 @@ import fi.nls.oskari.util.PropertyUtil;
 import redis.clients.jedis.*;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Manages Jedis connections using JedisPool (connection pool)
@@ -21,6 +30,8 @@ public class JedisManager {
     public static String PUBSUB_CHANNEL_PREFIX = "oskari_";
     public static final int EXPIRY_TIME_DAY = 86400;
     private static final int REDIS_DEFAULT_TIMEOUT_MS = 2000;
+    // hint for how many keys SCAN should check on each call
+    private static final int SCAN_COUNT = 1000;
 
     private final static Logger log = LogFactory.getLogger(JedisManager.class);
     private static final JedisManager instance = new JedisManager();
@@ -273,7 +284,8 @@ public class JedisManager {
     }
 
     /**
-     * Thread-safe KEYS
+     * Thread-safe KEYS. Uses SCAN to iterate the keyspace so Redis is not blocked while
+     * searching through the keys like with the KEYS command.
      *
      * @param pattern
      * @return keys
@@ -283,16 +295,148 @@ public class JedisManager {
             if (jedis == null) {
                 return Collections.emptySet();
             }
-            return jedis.keys(pattern + "*");
+            return scan(jedis, pattern + "*");
         } catch(JedisConnectionException e) {
-            log.error("Failed to run KEYS", pattern);
+            log.error("Failed to run SCAN", pattern);
             return null;
         } catch (Exception e) {
-            log.error("Running KEYS", pattern + "on Redis failed:", e.getMessage());
+            log.error("Running SCAN", pattern + "on Redis failed:", e.getMessage());
             return null;
         }
     }
 
+    private static Set<String> scan(Jedis jedis, String match) {
+        final Set<String> keys = new HashSet<>();
+        final ScanParams params = new ScanParams().match(match).count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            keys.addAll(result.getResult());
+            cursor = result.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return keys;
+    }
+
+    /**
+     * Thread-safe MGET for Redis. Fetches values for all the keys in one round trip.
+     *
+     * @param keys
+     * @return values in the same order as keys with null for keys that don't exist or null when there was an exception
+     */
+    public static List<String> mget(String... keys) {
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.mget(keys);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to mget", keys);
+            return null;
+        } catch (Exception e) {
+            log.error("Getting", keys, "from Redis failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe SETEX for multiple keys. The commands are pipelined
+     * so this takes a single round trip regardless of the number of keys.
+     *
+     * @param values key -> value
+     * @param seconds
+     * @return true if the values were sent, false when there was an exception
+     */
+    public static boolean setex(Map<String, String> values, int seconds) {
+        if (values.isEmpty()) {
+            return true;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return false;
+            }
+            Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, value) -> pipeline.setex(key, seconds, value));
+            pipeline.sync();
+            return true;
+        } catch(JedisConnectionException e) {
+            log.error("Failed to set", values.keySet());
+            return false;
+        } catch (Exception e) {
+            log.error("Setting", values.keySet(), "to Redis failed:", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe SETEX for values that are compressed before sending them to Redis.
+     * Use getCompressed() to read the value. Reduces memory usage and transfer size for
+     * large values like JSON-documents.
+     *
+     * @param key
+     * @param seconds
+     * @param value
+     * @return string
+     */
+    public static String setexCompressed(String key, int seconds, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return setex(key.getBytes(StandardCharsets.UTF_8), seconds, compress(value));
+        } catch (IOException e) {
+            log.error("Compressing value for", key, "failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe GET for values written with setexCompressed(). Values that
+     * are not compressed are returned as is so this can be used on keys that have been written with setex().
+     *
+     * @param key
+     * @return string
+     */
+    public static String getCompressed(String key) {
+        byte[] value = get(key.getBytes(StandardCharsets.UTF_8));
+        if (value == null) {
+            return null;
+        }
+        try {
+            return decompress(value);
+        } catch (IOException e) {
+            log.error("Decompressing value for", key, "failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    protected static byte[] compress(String value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return baos.toByteArray();
+    }
+
+    protected static String decompress(byte[] value) throws IOException {
+        // GZIP magic number, UTF-8 text can't start with 0x1f 0x8b
+        boolean gzipped = value.length > 1 && value[0] == (byte) 0x1f && value[1] == (byte) 0x8b;
+        if (!gzipped) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(value.length * 4);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(value))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
     /**
      * Thread-safe String HKEYS for Redis
      *
@@ -336,6 +480,53 @@ public class JedisManager {
         }
 	}
 
+    /**
+     * Thread-safe HMGET for Redis. Fetches values for all the fields in one round trip.
+     *
+     * @param key
+     * @param fields
+     * @return values in the same order as fields with null for fields that don't exist or null when there was an exception
+     */
+    public static List<String> hmget(String key, String... fields) {
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.hmget(key, fields);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hmget", key);
+            return null;
+        } catch (Exception e) {
+            log.error("Getting HMGET", key + "on Redis failed:", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe HSET for multiple fields of a hash in Redis
+     *
+     * @param key
+     * @param values field -> value
+     * @return number of fields added or null when there was an exception
+     */
+    public static Long hset(String key, Map<String, String> values) {
+        if (values.isEmpty()) {
+            return 0L;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return null;
+            }
+            return jedis.hset(key, values);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hset", key);
+            return null;
+        } catch (Exception e) {
+            log.error("Setting", key, "failed miserably");
+            return null;
+        }
+    }
+
     /**
      * Thread-safe Long HSET for Redis
      *
@@ -403,6 +594,56 @@ public class JedisManager {
         }
     }
 
+    /**
+     * Thread-safe HINCRBY for multiple fields of a hash in Redis. The commands are pipelined
+     * so this takes a single round trip regardless of the number of fields.
+     *
+     * @param key
+     * @param increments field -> increment
+     * @return true if the increments were sent, false when there was an exception
+     */
+    public static boolean hincrBy(String key, Map<String, Long> increments) {
+        if (increments.isEmpty()) {
+            return true;
+        }
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return false;
+            }
+            Pipeline pipeline = jedis.pipelined();
+            increments.forEach((field, increment) -> pipeline.hincrBy(key, field, increment));
+            pipeline.sync();
+            return true;
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hincrBy", key);
+            return false;
+        } catch (Exception e) {
+            log.error("Incrementing", key, "failed miserably");
+            return false;
+        }
+    }
+
+    /**
+     * Thread-safe HGETALL for Redis
+     *
+     * @param key
+     * @return map of fields and values, empty if key doesn't exist or Redis is not available
+     */
+    public static Map<String, String> hgetAll(String key) {
+        try (Jedis jedis = instance.getJedis()) {
+            if (jedis == null) {
+                return Collections.emptyMap();
+            }
+            return jedis.hgetAll(key);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to hgetAll", key);
+            return Collections.emptyMap();
+        } catch (Exception e) {
+            log.error("Getting HGETALL", key + "on Redis failed:", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
     /**
      * Thread-safe Long DEL for Redis
      *
@@ -435,11 +676,19 @@ public class JedisManager {
             if (jedis == null) {
                 return null;
             }
-            Set<String> keys = jedis.keys(key + "*");
-            if(keys.size() > 0) {
-                return jedis.del(keys.toArray(new String[keys.size()]));
-            }
-            return 0L;
+            long count = 0;
+            final ScanParams params = new ScanParams().match(key + "*").count(SCAN_COUNT);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                // delete matching keys in batches while iterating instead of collecting all keys first
+                ScanResult<String> result = jedis.scan(cursor, params);
+                List<String> keys = result.getResult();
+                if (!keys.isEmpty()) {
+                    count += jedis.del(keys.toArray(new String[0]));
+                }
+                cursor = result.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            return count;
         } catch(JedisConnectionException e) {
             log.error("Failed to del", key + "*");
             return null;
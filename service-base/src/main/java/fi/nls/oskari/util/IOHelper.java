@@ -216,6 +216,18 @@ public class IOHelper {
         }
     }
 
+    /**
+     * Returns the InputStream of HttpURLConnection for streaming the response. The stream is
+     * decompressed if the response is gzipped. The caller is responsible for closing the stream.
+     * @param conn used to get inputstream and detect possible gzip encoding
+     * @return
+     * @throws IOException
+     */
+    public static InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        InputStream in = conn.getInputStream();
+        return isResponseGZIPd(conn) ? new GZIPInputStream(in) : in;
+    }
+
     private static boolean isResponseGZIPd(HttpURLConnection conn) {
         return ENCODING_GZIP.equals(conn.getContentEncoding());
     }
@@ -14,6 +14,7 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -215,6 +216,25 @@ public class XmlHelper {
         return factory;
     }
 
+    /**
+     * Returns a namespace aware SAXParserFactory with the same security features as newDocumentBuilderFactory()
+     */
+    public static SAXParserFactory newSAXParserFactory() throws FactoryConfigurationError {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (Exception ex) {
+            LOGGER.warn("Unable to enable security features for SAXParserFactory", ex.getMessage());
+        }
+        factory.setXIncludeAware(false);
+        return factory;
+    }
+
     /**
      * Obtain a new instance of a TransformerFactory with security features enabled.
      * This static method creates a new factory instance.
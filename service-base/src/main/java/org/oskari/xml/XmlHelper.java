@@ -10,7 +10,10 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -252,6 +255,133 @@ public class XmlHelper {
         }
     }
 
+    /**
+     * Obtain a new instance of a XMLInputFactory with DTDs and external entities disabled.
+     * Use this for streaming large documents instead of parsing them as a whole with parseXML().
+     *
+     * @return New instance of a XMLInputFactory
+     */
+    public static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Moves the reader to the next START_ELEMENT or END_ELEMENT event.
+     * @param reader stream reader
+     * @return the event type, XMLStreamConstants.END_DOCUMENT if there are no more elements
+     * @throws XMLStreamException on parse errors
+     */
+    public static int nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                return event;
+            }
+        }
+        return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    /**
+     * Returns the local name of the element the reader is positioned on. Handles prefixed names
+     * when the reader is not namespace aware (see newXMLInputFactory()).
+     * @param reader positioned on START_ELEMENT or END_ELEMENT
+     * @return local name without prefix
+     */
+    public static String getLocalName(XMLStreamReader reader) {
+        String name = reader.getLocalName();
+        int i = name.indexOf(':');
+        return i < 0 ? name : name.substring(i + 1);
+    }
+
+    /**
+     * Skips the element the reader is positioned on including all its children.
+     * After calling this the reader is positioned on the END_ELEMENT of the skipped element.
+     * @param reader positioned on START_ELEMENT
+     * @throws XMLStreamException on parse errors
+     */
+    public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = nextElement(reader);
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else {
+                throw new XMLStreamException("Unexpected end of document");
+            }
+        }
+    }
+
+    /**
+     * Materializes the element the reader is positioned on (with attributes, text content and children)
+     * as a DOM Element owned by the given document. This allows streaming through a large document while
+     * still processing small parts of it with the DOM-based helpers of this class.
+     * After calling this the reader is positioned on the END_ELEMENT of the read element.
+     * @param reader positioned on START_ELEMENT
+     * @param doc document to create the nodes with
+     * @return the element as DOM
+     * @throws XMLStreamException on parse errors
+     */
+    public static Element readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        Element root = createElement(reader, doc);
+        Element current = root;
+        while (current != null) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element child = createElement(reader, doc);
+                    current.appendChild(child);
+                    current = child;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current == root ? null : (Element) current.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(doc.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+                default:
+                    // comments, processing instructions etc are not needed
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Creates an empty DOM Element with the same name and attributes as the element the reader is positioned on.
+     * @param reader positioned on START_ELEMENT
+     * @param doc document to create the element with
+     * @return element without children
+     */
+    public static Element createElement(XMLStreamReader reader, Document doc) {
+        Element el = doc.createElement(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            el.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return el;
+    }
+
+    /**
+     * Creates a new empty DOM document to be used with readElement() and createElement().
+     * @return new document
+     */
+    public static Document newDocument() {
+        try {
+            return newDocumentBuilderFactory().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to create DOM document", e);
+        }
+    }
+
     public static String generateUnexpectedElementMessage(Element doc) {
         String elName = XmlHelper.getLocalName(doc);
         String children = XmlHelper.getChildElements(doc, null)
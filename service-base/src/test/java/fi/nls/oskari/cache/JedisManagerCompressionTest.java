@@ -0,0 +1,31 @@
+package fi.nls.oskari.cache;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JedisManagerCompressionTest {
+
+    @Test
+    public void testCompressedRoundtrip() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append("{\"id\":\"").append(i).append("\",\"name\":{\"fi\":\"Indikaattori \u00e4\"}},");
+        }
+        json.append("{}]");
+        String value = json.toString();
+        byte[] compressed = JedisManager.compress(value);
+        assertTrue("Should be smaller when compressed", compressed.length < value.length() / 10);
+        assertEquals(value, JedisManager.decompress(compressed));
+    }
+
+    @Test
+    public void testUncompressedValue() throws Exception {
+        String value = "{\"plain\": \"value written with setex()\"}";
+        assertEquals(value, JedisManager.decompress(value.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("", JedisManager.decompress(new byte[0]));
+    }
+}
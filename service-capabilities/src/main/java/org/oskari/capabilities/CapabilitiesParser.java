@@ -8,9 +8,13 @@ import fi.nls.oskari.service.ServiceUnauthorizedException;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.PropertyUtil;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public abstract class CapabilitiesParser extends OskariComponent {
 
@@ -23,6 +27,8 @@ public abstract class CapabilitiesParser extends OskariComponent {
         // we don't need to have a large cache since the layers from same domain _should_ be queried sequentially/in a row.
         XML_CACHE.setLimit(10);
     }
+    // streamed documents larger than this are not cached (configurable, in megabytes)
+    private static final int MAX_CACHED_BYTES = PropertyUtil.getOptional("capabilities.cache.max.mb", 10) * 1024 * 1024;
 
     /**
      * Returns all layer capabilities for all layers found on the service.
@@ -87,11 +93,67 @@ public abstract class CapabilitiesParser extends OskariComponent {
      * @throws ServiceException
      */
     public RawCapabilitiesResponse fetchCapabilities(String capabilitiesUrl, String user, String pass, String expectedContentType) throws IOException, ServiceException {
-        String cacheKey = capabilitiesUrl + "_" + user;
+        String cacheKey = getCacheKey(capabilitiesUrl, user);
         RawCapabilitiesResponse response = XML_CACHE.get(cacheKey);
         if (response != null) {
             return response;
         }
+        HttpURLConnection conn = openCapabilities(capabilitiesUrl, user, pass, expectedContentType);
+        response = new RawCapabilitiesResponse(conn.getURL().toString());
+        response.setContentType(conn.getContentType());
+        String encoding = IOHelper.getCharset(conn);
+        response.setResponse(IOHelper.readBytes(conn), encoding);
+        XML_CACHE.put(cacheKey, response);
+        return response;
+    }
+
+    /**
+     * Returns capabilities from the cache if they have been fetched recently with fetchCapabilities().
+     * @param capabilitiesUrl full url to the capabilties document
+     * @param user credentials used to access url
+     * @return cached response or null if not available
+     */
+    protected RawCapabilitiesResponse getCachedCapabilities(String capabilitiesUrl, String user) {
+        return XML_CACHE.get(getCacheKey(capabilitiesUrl, user));
+    }
+
+    /**
+     * Returns the response of a connection opened with openCapabilities() so that the document is added to the same
+     * cache fetchCapabilities() uses when the stream is closed. The bytes are collected while the document is
+     * being parsed and the rest of the document is read on close. Documents larger than capabilities.cache.max.mb
+     * (default 10) are only streamed.
+     * @param conn connection from openCapabilities()
+     * @param capabilitiesUrl url used to open the connection
+     * @param user credentials used to open the connection
+     * @return stream of the capabilities document
+     * @throws IOException
+     */
+    protected InputStream getCachingInputStream(HttpURLConnection conn, String capabilitiesUrl, String user) throws IOException {
+        RawCapabilitiesResponse response = new RawCapabilitiesResponse(conn.getURL().toString());
+        response.setContentType(conn.getContentType());
+        String encoding = IOHelper.getCharset(conn);
+        return new CachingInputStream(IOHelper.getInputStream(conn), bytes -> {
+            response.setResponse(bytes, encoding);
+            XML_CACHE.put(getCacheKey(capabilitiesUrl, user), response);
+        });
+    }
+
+    private String getCacheKey(String capabilitiesUrl, String user) {
+        return capabilitiesUrl + "_" + user;
+    }
+
+    /**
+     * Opens a connection to the capabilities document and validates the response status and content type.
+     * Use this instead of fetchCapabilities() to stream the response without reading it to memory first.
+     * @param capabilitiesUrl full url to the capabilties document
+     * @param user credentials to use to access url
+     * @param pass credentials to use to access url
+     * @param expectedContentType the logic checks content type for the response
+     * @return connection ready for reading the response
+     * @throws IOException
+     * @throws ServiceException
+     */
+    public HttpURLConnection openCapabilities(String capabilitiesUrl, String user, String pass, String expectedContentType) throws IOException, ServiceException {
         HttpURLConnection conn = IOHelper.getConnection(capabilitiesUrl, user, pass);
         IOHelper.addIdentifierHeaders(conn);
         conn = IOHelper.followRedirect(conn, user, pass, 5);
@@ -110,11 +172,75 @@ public abstract class CapabilitiesParser extends OskariComponent {
         if (contentType != null && expectedContentType != null && contentType.toLowerCase().indexOf(expectedContentType) == -1) {
             throw new ServiceException("Unexpected Content-Type: " + contentType + " from: " + capabilitiesUrl);
         }
-        response = new RawCapabilitiesResponse(conn.getURL().toString());
-        response.setContentType(contentType);
-        String encoding = IOHelper.getCharset(conn);
-        response.setResponse(IOHelper.readBytes(conn), encoding);
-        XML_CACHE.put(cacheKey, response);
-        return response;
+        return conn;
+    }
+
+    /**
+     * Keeps a copy of the bytes read until MAX_CACHED_BYTES is exceeded
+     */
+    private static class CachingInputStream extends FilterInputStream {
+
+        private final Consumer<byte[]> onComplete;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private CachingInputStream(InputStream in, Consumer<byte[]> onComplete) {
+            super(in);
+            this.onComplete = onComplete;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0 && copy != null) {
+                copy.write(b, off, n);
+                checkSize();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes would be missing from the copy
+            copy = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void checkSize() {
+            if (copy.size() > MAX_CACHED_BYTES) {
+                copy = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // the parser might not read the document until the end
+                byte[] buf = new byte[8192];
+                while (copy != null && read(buf, 0, buf.length) != -1) {
+                    // keep reading
+                }
+                if (copy != null) {
+                    onComplete.accept(copy.toByteArray());
+                    copy = null;
+                }
+            } finally {
+                super.close();
+            }
+        }
     }
 }
@@ -2,6 +2,8 @@ package org.oskari.capabilities;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -21,8 +23,11 @@ import static java.util.stream.Collectors.groupingBy;
 public class CapabilitiesService {
     private static final Logger LOG = LogFactory.getLogger(CapabilitiesService.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    // deserialized capabilities by layer so hot paths don't need to parse JSON on each request
+    private static final Cache<TypedCapabilities> TYPED_CACHE = CacheManager.getCache(CapabilitiesService.class.getName() + "_typed");
     static {
         MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        TYPED_CACHE.setLimit(5000);
     }
 
     /**
@@ -75,6 +80,7 @@ public class CapabilitiesService {
             LayerCapabilities capsForSingleLayer = parser.getLayerFromService(connectInfo, layer.getName());
             layer.setCapabilities(toJSON(capsForSingleLayer, systemCRSs));
             layer.setCapabilitiesLastUpdated(new Date());
+            invalidateLayerCapabilities(layer);
             return CapabilitiesUpdateResult.ok(layer);
         } catch (IOException | ServiceException e) {
             if (e instanceof IOException) {
@@ -140,6 +146,7 @@ public class CapabilitiesService {
                 }
                 layer.setCapabilities(toJSON(capsForSingleLayer, systemCRSs));
                 layer.setCapabilitiesLastUpdated(new Date());
+                invalidateLayerCapabilities(layer);
                 results.add(CapabilitiesUpdateResult.ok(layer));
             });
         }
@@ -195,6 +202,46 @@ public class CapabilitiesService {
         }
     }
 
+    /**
+     * Returns the capabilities of the layer as typed object. The JSON is deserialized once per layer and
+     * capabilities update timestamp and the result is cached so hot paths like tile proxy and print don't need
+     * to parse the JSON on each request. Note! The returned object is shared so it must not be modified.
+     * @param layer layer with capabilities
+     * @param <T>
+     * @return capabilities or null if layer doesn't have capabilities
+     */
+    public static <T extends LayerCapabilities> T getLayerCapabilities(OskariLayer layer) {
+        if (layer == null || layer.getCapabilities() == null) {
+            return null;
+        }
+        Date lastUpdated = layer.getCapabilitiesLastUpdated();
+        if (lastUpdated == null) {
+            // capabilities haven't been stored from a service (user content layers etc) -> don't cache
+            return fromJSON(layer.getCapabilities().toString(), layer.getType());
+        }
+        String key = getTypedCacheKey(layer);
+        TypedCapabilities cached = TYPED_CACHE.get(key);
+        if (cached != null && cached.lastUpdated == lastUpdated.getTime()) {
+            return (T) cached.capabilities;
+        }
+        T caps = fromJSON(layer.getCapabilities().toString(), layer.getType());
+        TYPED_CACHE.put(key, new TypedCapabilities(lastUpdated.getTime(), caps));
+        return caps;
+    }
+
+    /**
+     * Removes the cached typed capabilities for the layer (on all nodes in a clustered environment).
+     * Called when capabilities are updated.
+     * @param layer layer that has been updated
+     */
+    public static void invalidateLayerCapabilities(OskariLayer layer) {
+        TYPED_CACHE.remove(getTypedCacheKey(layer));
+    }
+
+    private static String getTypedCacheKey(OskariLayer layer) {
+        return layer.getType() + "_" + layer.getId();
+    }
+
     /**
      * Returns the raw capabilities document for the layer.
      * @param layer
@@ -289,4 +336,14 @@ public class CapabilitiesService {
         }
         return crs;
     }
+
+    private static class TypedCapabilities {
+        private final long lastUpdated;
+        private final LayerCapabilities capabilities;
+
+        TypedCapabilities(long lastUpdated, LayerCapabilities capabilities) {
+            this.lastUpdated = lastUpdated;
+            this.capabilities = capabilities;
+        }
+    }
 }
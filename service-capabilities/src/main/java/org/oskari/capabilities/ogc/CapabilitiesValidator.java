@@ -10,11 +10,25 @@ import org.oskari.xml.XmlHelper;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class CapabilitiesValidator {
     private static final Logger LOG = LogFactory.getLogger(CapabilitiesValidator.class);
+    // enough for the XML prolog and the beginning of the root element
+    private static final int PEEK_SIZE = 1024;
+    private static final Pattern PROLOG_ENCODING = Pattern.compile("<\\?xml[^>]*?encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+    // error pages from proxies etc
+    private static final Pattern NOT_XML = Pattern.compile("<(!DOCTYPE\\s+html|html)\\b", Pattern.CASE_INSENSITIVE);
 
     public static String validateXmlResponse(RawCapabilitiesResponse response)
             throws ServiceException {
@@ -23,22 +37,7 @@ public class CapabilitiesValidator {
         try  {
             XMLStreamReader xsr = getXMLStreamReader(response.getResponse());
 
-            // Check XML prolog for character encoding
-            String xmlEncoding = xsr.getCharacterEncodingScheme();
-            if (xmlEncoding != null) {
-                if (encoding != null && !xmlEncoding.equalsIgnoreCase(encoding)) {
-                    // this is not critical, but any special characters are probably going to be rendered wrong
-                    LOG.warn("Capabilities documents Content-Type header specified a different encoding (",
-                            encoding, ") than XML prolog (", xmlEncoding, ")!");
-                }
-                // favor xml encoding
-                encoding = xmlEncoding;
-            }
-            if (encoding == null) {
-                LOG.debug("Charset wasn't set on either the Content-Type or the XML prolog"
-                        + "using UTF-8 as default value");
-                encoding = IOHelper.DEFAULT_CHARSET;
-            }
+            encoding = resolveEncoding(xsr.getCharacterEncodingScheme(), encoding);
 
             // Convert "utf-8" to "UTF-8" for example
             encoding = encoding.toUpperCase();
@@ -53,6 +52,88 @@ public class CapabilitiesValidator {
         }
     }
 
+    /**
+     * Streaming counterpart of validateXmlResponse(): checks that the response looks like an XML document and
+     * returns a Reader that decodes it with the same charset validateXmlResponse() would use.
+     * Only the beginning of the stream is read here.
+     * @param in response from the service
+     * @param encoding charset from the Content-Type header, null if not specified
+     * @return reader for parsing the document
+     * @throws ServiceException if the response is not an XML document or the charset is not supported
+     */
+    public static Reader getXmlReader(InputStream in, String encoding) throws ServiceException, IOException {
+        BufferedInputStream bin = new BufferedInputStream(in);
+        bin.mark(PEEK_SIZE);
+        byte[] head = new byte[PEEK_SIZE];
+        int n = 0;
+        int read;
+        while (n < head.length && (read = bin.read(head, n, head.length - n)) != -1) {
+            n += read;
+        }
+        bin.reset();
+
+        Charset bomCharset = null;
+        int bomLength = 0;
+        if (n >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            bomCharset = StandardCharsets.UTF_8;
+            bomLength = 3;
+        } else if (n >= 2 && ((head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF
+                || (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE)) {
+            // the UTF-16 decoder reads the byte order mark
+            bomCharset = StandardCharsets.UTF_16;
+        }
+        String start = new String(head, bomLength, Math.max(n - bomLength, 0),
+                bomCharset != null ? bomCharset : StandardCharsets.ISO_8859_1).trim();
+        if (!start.startsWith("<") || NOT_XML.matcher(start).lookingAt()) {
+            LOG.debug("Response doesn't look like XML:\n", start);
+            throw new ServiceException("Failed to parse XML from response");
+        }
+
+        String xmlEncoding = null;
+        if (bomCharset != null) {
+            xmlEncoding = bomCharset.name();
+        } else {
+            Matcher prolog = PROLOG_ENCODING.matcher(start);
+            if (prolog.lookingAt()) {
+                xmlEncoding = prolog.group(1);
+            }
+        }
+        encoding = resolveEncoding(xmlEncoding, encoding);
+        try {
+            long skipped = bin.skip(bomLength);
+            if (skipped != bomLength) {
+                throw new IOException("Failed to skip byte order mark");
+            }
+            return new InputStreamReader(bin, Charset.forName(encoding.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException("Failed to decode response using encoding " + encoding, e);
+        }
+    }
+
+    /**
+     * @param xmlEncoding encoding from the XML prolog
+     * @param encoding encoding from the Content-Type header
+     * @return encoding to use, the XML prolog is favored and UTF-8 is used if neither is specified
+     */
+    private static String resolveEncoding(String xmlEncoding, String encoding) {
+        // Check XML prolog for character encoding
+        if (xmlEncoding != null) {
+            if (encoding != null && !xmlEncoding.equalsIgnoreCase(encoding)) {
+                // this is not critical, but any special characters are probably going to be rendered wrong
+                LOG.warn("Capabilities documents Content-Type header specified a different encoding (",
+                        encoding, ") than XML prolog (", xmlEncoding, ")!");
+            }
+            // favor xml encoding
+            return xmlEncoding;
+        }
+        if (encoding == null) {
+            LOG.debug("Charset wasn't set on either the Content-Type or the XML prolog"
+                    + "using UTF-8 as default value");
+            return IOHelper.DEFAULT_CHARSET;
+        }
+        return encoding;
+    }
+
     private static XMLStreamReader getXMLStreamReader(byte[] data) throws XMLStreamException{
         XMLInputFactory xif = XMLInputFactory.newInstance();
         xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
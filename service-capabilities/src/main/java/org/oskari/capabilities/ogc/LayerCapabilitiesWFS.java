@@ -13,6 +13,7 @@ public class LayerCapabilitiesWFS extends LayerCapabilitiesOGC {
 
     private Collection<FeaturePropertyType> featureProperties;
     private Set<String> crsUris;
+    private Set<String> filterConformance;
     private int maxFeatures = -1;
     private String namespaceUri;
     private String geomName;
@@ -53,6 +54,19 @@ public class LayerCapabilitiesWFS extends LayerCapabilitiesOGC {
         crsUris = uris;
     }
 
+    @JsonProperty("filter-conformance")
+    public Set<String> getFilterConformanceClasses() {
+        if (filterConformance == null) {
+            return Collections.emptySet();
+        }
+        return filterConformance;
+    }
+
+    @JsonProperty("filter-conformance")
+    public void setFilterConformanceClasses(Set<String> uris) {
+        filterConformance = uris;
+    }
+
     @JsonIgnore
     public FeaturePropertyType getFeatureProperty(String name) {
         if (name == null) {
@@ -7,9 +7,15 @@ import org.oskari.capabilities.LayerCapabilities;
 import org.oskari.capabilities.RawCapabilitiesResponse;
 import org.oskari.capabilities.ServiceConnectInfo;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class OGCCapabilitiesParser extends CapabilitiesParser {
 
@@ -38,7 +44,9 @@ public abstract class OGCCapabilitiesParser extends CapabilitiesParser {
     }
 
     public Map<String, LayerCapabilities> getLayersFromService(ServiceConnectInfo src) throws IOException, ServiceException {
-
+        if (isStreamingSupported()) {
+            return getLayersFromService(src, null);
+        }
         String capabilitiesUrl = contructCapabilitiesUrl(src.getUrl(), src.getVersion());
         RawCapabilitiesResponse response = fetchCapabilities(capabilitiesUrl, src.getUser(), src.getPass(), getExpectedContentType(src.getVersion()));
         String validResponse = validateResponse(response, src.getVersion());
@@ -51,6 +59,68 @@ public abstract class OGCCapabilitiesParser extends CapabilitiesParser {
         return layers;
     }
 
+    public LayerCapabilities getLayerFromService(ServiceConnectInfo src, String layer) throws IOException, ServiceException {
+        if (!isStreamingSupported()) {
+            return super.getLayerFromService(src, layer);
+        }
+        if (layer == null || layer.isEmpty()) {
+            throw new ServiceException("No layer specified");
+        }
+        return getLayersFromService(src, Collections.singleton(layer)).get(layer);
+    }
+
+    /**
+     * Streams the capabilities document from the service to parseLayers(Reader, Set) without
+     * reading the whole document to memory (unless it has been cached by an earlier request).
+     * The response is validated like in getLayersFromService(ServiceConnectInfo) and added to the
+     * capabilities cache so requests for other layers of the same service don't need to load it again.
+     * @param src connection info to the service
+     * @param layerNames names of the layers to parse, null for all layers
+     * @return parsed layers by name
+     */
+    protected Map<String, LayerCapabilities> getLayersFromService(ServiceConnectInfo src, Set<String> layerNames) throws IOException, ServiceException {
+        String capabilitiesUrl = contructCapabilitiesUrl(src.getUrl(), src.getVersion());
+        RawCapabilitiesResponse cached = getCachedCapabilities(capabilitiesUrl, src.getUser());
+        final String url;
+        Map<String, LayerCapabilities> layers;
+        if (cached != null) {
+            url = cached.getUrl();
+            try (InputStream in = new ByteArrayInputStream(cached.getResponse())) {
+                layers = parseLayers(CapabilitiesValidator.getXmlReader(in, cached.getEncoding()), layerNames);
+            }
+        } else {
+            HttpURLConnection conn = openCapabilities(capabilitiesUrl, src.getUser(), src.getPass(), getExpectedContentType(src.getVersion()));
+            url = conn.getURL().toString();
+            try (InputStream in = getCachingInputStream(conn, capabilitiesUrl, src.getUser())) {
+                layers = parseLayers(CapabilitiesValidator.getXmlReader(in, IOHelper.getCharset(conn)), layerNames);
+            }
+        }
+        layers.values().stream().forEach(l -> {
+            l.setUrl(url);
+            // parser name == layer type
+            l.setType(getName());
+        });
+        return layers;
+    }
+
+    /**
+     * Parsers that can stream the capabilities document should override this and parseLayers(Reader, Set).
+     * @return true if parseLayers(Reader, Set) is implemented
+     */
+    protected boolean isStreamingSupported() {
+        return false;
+    }
+
+    /**
+     * Parses layers from the capabilities document without reading the whole document to memory.
+     * @param capabilities capabilities document, see CapabilitiesValidator.getXmlReader()
+     * @param layerNames names of the layers to parse, null for all layers
+     * @return parsed layers by name
+     */
+    protected Map<String, LayerCapabilities> parseLayers(Reader capabilities, Set<String> layerNames) throws ServiceException {
+        throw new ServiceException("Streaming capabilities is not supported for " + getName());
+    }
+
     protected abstract Map<String, LayerCapabilities> parseLayers(String capabilities) throws ServiceException;
 
     // allow overriding for OGC API services etc
@@ -185,6 +185,7 @@ public class WFSCapabilitiesParser extends OGCCapabilitiesParser {
                     featureType.setDescription(collection.getDescription());
                     featureType.setSrs(service.getSupportedEpsgCodes(name));
                     featureType.setSupportedCrsURIs(service.getSupportedCrsURIs(name));
+                    featureType.setFilterConformanceClasses(service.getFilterConformanceClasses());
 
                     featureType.setFormats(service.getSupportedFormats(name));
                     return featureType;
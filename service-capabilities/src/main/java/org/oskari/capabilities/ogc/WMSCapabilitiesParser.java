@@ -6,9 +6,11 @@ import fi.nls.oskari.service.ServiceException;
 import org.oskari.capabilities.LayerCapabilities;
 import org.oskari.capabilities.ogc.wms.WMSCapsParser;
 
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Oskari(OskariLayer.TYPE_WMS)
 public class WMSCapabilitiesParser extends OGCCapabilitiesParser {
@@ -29,6 +31,25 @@ public class WMSCapabilitiesParser extends OGCCapabilitiesParser {
         }
     }
 
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    protected Map<String, LayerCapabilities> parseLayers(Reader xml, Set<String> layerNames) throws ServiceException {
+        try {
+            List<LayerCapabilitiesWMS> layers = WMSCapsParser.parseCapabilities(xml, layerNames);
+            Map<String, LayerCapabilities> value = new HashMap<>();
+            addLayers(value, layers, null);
+            if (layerNames != null) {
+                // parents of requested layers are included in the tree with partial info
+                value.keySet().retainAll(layerNames);
+            }
+            return value;
+        } catch (Exception e) {
+            throw new ServiceException("Unable to parse layers for WMS capabilities", e);
+        }
+    }
+
     private void addLayers(Map<String, LayerCapabilities> value, List<LayerCapabilitiesWMS> layers, String parent) {
         if (layers == null) {
             return;
@@ -7,8 +7,10 @@ import org.oskari.capabilities.LayerCapabilities;
 import org.oskari.capabilities.ogc.wmts.WMTSCapabilities;
 import org.oskari.capabilities.ogc.wmts.WMTSCapabilitiesParserHelper;
 
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Oskari(OskariLayer.TYPE_WMTS)
@@ -24,26 +26,41 @@ public class WMTSCapabilitiesParser extends OGCCapabilitiesParser {
 
     protected Map<String, LayerCapabilities> parseLayers(String capabilities) throws ServiceException {
         try {
-            WMTSCapabilities caps = WMTSCapabilitiesParserHelper.parseCapabilities(capabilities);
-            Map<String, LayerCapabilities> layers = new HashMap<>();
-            caps.getLayers().stream().map(layer -> {
-                LayerCapabilitiesWMTS l = new LayerCapabilitiesWMTS(layer.getId(), layer.getTitle());
-                l.setStyles(layer.getStyles(), layer.getDefaultStyle());
-                l.setSrs(layer.getLinks().stream()
-                        .map(link -> link.getTileMatrixSet().getCrs())
-                        .collect(Collectors.toSet()));
-
-                // should we prioritize png over jpg?
-                l.setFormats(layer.getFormats());
-                // GFI is not handled for WMTS at all in GetGeoPointDataHandler
-                l.setInfoFormats(layer.getInfoFormats());
-                l.setResourceUrls(layer.getResourceUrls());
-                l.setTileMatrixLinks(layer.getLinks());
-                return l;
-            }).forEach(l -> layers.put(l.getName(), l));
-            return layers;
+            return toLayerCapabilities(WMTSCapabilitiesParserHelper.parseCapabilities(capabilities));
         } catch (Exception e) {
             throw new ServiceException("Unable to parse layers for WMTS capabilities", e);
         }
     }
+
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    protected Map<String, LayerCapabilities> parseLayers(Reader capabilities, Set<String> layerNames) throws ServiceException {
+        try {
+            return toLayerCapabilities(WMTSCapabilitiesParserHelper.parseCapabilities(capabilities, layerNames));
+        } catch (Exception e) {
+            throw new ServiceException("Unable to parse layers for WMTS capabilities", e);
+        }
+    }
+
+    private Map<String, LayerCapabilities> toLayerCapabilities(WMTSCapabilities caps) {
+        Map<String, LayerCapabilities> layers = new HashMap<>();
+        caps.getLayers().stream().map(layer -> {
+            LayerCapabilitiesWMTS l = new LayerCapabilitiesWMTS(layer.getId(), layer.getTitle());
+            l.setStyles(layer.getStyles(), layer.getDefaultStyle());
+            l.setSrs(layer.getLinks().stream()
+                    .map(link -> link.getTileMatrixSet().getCrs())
+                    .collect(Collectors.toSet()));
+
+            // should we prioritize png over jpg?
+            l.setFormats(layer.getFormats());
+            // GFI is not handled for WMTS at all in GetGeoPointDataHandler
+            l.setInfoFormats(layer.getInfoFormats());
+            l.setResourceUrls(layer.getResourceUrls());
+            l.setTileMatrixLinks(layer.getLinks());
+            return l;
+        }).forEach(l -> layers.put(l.getName(), l));
+        return layers;
+    }
 }
@@ -22,6 +22,16 @@ import org.oskari.ogcapi.OGCAPIReqClasses;
 import org.oskari.ogcapi.features.*;
 
 public class OGCAPIFeaturesService {
+    private static final Set<OGCAPIConformanceClass> FILTERING = EnumSet.of(
+            OGCAPIConformanceClass.Filter,
+            OGCAPIConformanceClass.FeaturesFilter,
+            OGCAPIConformanceClass.CQL2Text,
+            OGCAPIConformanceClass.CQL2JSON,
+            OGCAPIConformanceClass.BasicCQL2,
+            OGCAPIConformanceClass.AdvancedComparisonOperators,
+            OGCAPIConformanceClass.BasicSpatialFunctions,
+            OGCAPIConformanceClass.SpatialFunctions);
+
     private static final ObjectMapper OM;
     static {
         OM = new ObjectMapper();
@@ -135,6 +145,16 @@ public class OGCAPIFeaturesService {
         return reqClasses.getConformsTo().contains(req.url);
     }
 
+    /**
+     * @return urls of the filtering (Part 3 / CQL2) conformance classes the service conforms to
+     */
+    public Set<String> getFilterConformanceClasses() {
+        return FILTERING.stream()
+                .filter(this::conformsTo)
+                .map(req -> req.url)
+                .collect(Collectors.toSet());
+    }
+
     public List<FeaturesCollectionInfo> getCollections() {
         return new ArrayList<>(content.getCollections());
     }
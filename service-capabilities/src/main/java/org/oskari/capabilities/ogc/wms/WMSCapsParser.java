@@ -4,9 +4,13 @@ import org.oskari.capabilities.ogc.BoundingBox;
 import org.oskari.capabilities.ogc.LayerCapabilitiesWMS;
 import org.oskari.capabilities.ogc.LayerStyle;
 import org.oskari.xml.XmlHelper;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -32,6 +36,117 @@ public class WMSCapsParser {
         throw new IllegalArgumentException(XmlHelper.generateUnexpectedElementMessage(doc));
     }
 
+    /**
+     * Parses the capabilities by streaming through the document instead of building a DOM of the whole document.
+     * Only the layer elements (without their sublayers) are materialized one at a time.
+     * @param xml capabilities document
+     * @param layerNames names of layers to parse, null to parse all layers. Group layers are included with their
+     *                   name and styles only when they contain requested layers.
+     * @return parsed layers as a tree like parseCapabilities(String)
+     */
+    public static List<LayerCapabilitiesWMS> parseCapabilities(Reader xml, Set<String> layerNames)
+            throws IllegalArgumentException, XMLStreamException {
+        XMLStreamReader reader = XmlHelper.newXMLInputFactory().createXMLStreamReader(xml);
+        try {
+            if (XmlHelper.nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Failed to parse XML");
+            }
+            String rootEl = XmlHelper.getLocalName(reader);
+            if (!WMSCapsParser1_1_1.ROOT_EL.equals(rootEl) && !WMSCapsParser1_3_0.ROOT_EL.equals(rootEl)) {
+                throw new IllegalArgumentException("Unexpected XML element: '" + rootEl + "'");
+            }
+            Document doc = XmlHelper.newDocument();
+            while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+                if ("Capability".equals(XmlHelper.getLocalName(reader))) {
+                    return parseCapability(reader, doc, rootEl, layerNames);
+                }
+                XmlHelper.skipElement(reader);
+            }
+            throw new IllegalArgumentException("No Capability element");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<LayerCapabilitiesWMS> parseCapability(XMLStreamReader reader, Document doc, String rootEl, Set<String> layerNames)
+            throws IllegalArgumentException, XMLStreamException {
+        Element request = null;
+        Set<String> infoformats = null;
+        List<LayerCapabilitiesWMS> layers = new ArrayList<>();
+        while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            String name = XmlHelper.getLocalName(reader);
+            if ("Request".equals(name)) {
+                request = XmlHelper.readElement(reader, doc);
+                if (XmlHelper.getFirstChild(request, "GetMap") == null) {
+                    throw new IllegalArgumentException("No GetMap element");
+                }
+                infoformats = getInfoformats(request);
+            } else if ("Layer".equals(name)) {
+                if (request == null) {
+                    // Request is listed before Layer in both 1.1.1 and 1.3.0 schemas
+                    throw new IllegalArgumentException("No Request element");
+                }
+                LayerCapabilitiesWMS layer = parseLayer(reader, doc, rootEl, infoformats, layerNames);
+                if (layer != null) {
+                    layers.add(layer);
+                }
+            } else {
+                XmlHelper.skipElement(reader);
+            }
+        }
+        if (request == null) {
+            throw new IllegalArgumentException("No Request element");
+        }
+        return layers;
+    }
+
+    private static LayerCapabilitiesWMS parseLayer(XMLStreamReader reader, Document doc, String rootEl,
+                                                   Set<String> infoformats, Set<String> layerNames)
+            throws XMLStreamException {
+        // contains the attributes and children of the layer except sublayers
+        Element layer = XmlHelper.createElement(reader, doc);
+        boolean requested = layerNames == null;
+        boolean nameResolved = requested;
+        List<LayerCapabilitiesWMS> sublayers = new ArrayList<>();
+        while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            String name = XmlHelper.getLocalName(reader);
+            if ("Layer".equals(name)) {
+                LayerCapabilitiesWMS sublayer = parseLayer(reader, doc, rootEl, infoformats, layerNames);
+                if (sublayer != null) {
+                    sublayers.add(sublayer);
+                }
+                continue;
+            }
+            if (!nameResolved) {
+                // Name is the first child of Layer when it's present
+                nameResolved = true;
+                if ("Name".equals(name)) {
+                    Element nameEl = XmlHelper.readElement(reader, doc);
+                    layer.appendChild(nameEl);
+                    requested = layerNames.contains(nameEl.getTextContent());
+                    continue;
+                }
+            }
+            // styles are inherited by sublayers so they are needed even if the layer itself is not requested
+            if (requested || "Style".equals(name)) {
+                layer.appendChild(XmlHelper.readElement(reader, doc));
+            } else {
+                XmlHelper.skipElement(reader);
+            }
+        }
+        if (!requested && sublayers.isEmpty()) {
+            return null;
+        }
+        LayerCapabilitiesWMS value;
+        if (WMSCapsParser1_1_1.ROOT_EL.equals(rootEl)) {
+            value = WMSCapsParser1_1_1.parseLayer(layer, infoformats);
+        } else {
+            value = WMSCapsParser1_3_0.parseLayer(layer, infoformats);
+        }
+        value.setLayers(sublayers);
+        return value;
+    }
+
     protected static Set<String> getTexts(Element parentEl, String childLocalName) {
         Set<String> texts = XmlHelper.getChildElements(parentEl, childLocalName)
                 .map(Element::getTextContent)
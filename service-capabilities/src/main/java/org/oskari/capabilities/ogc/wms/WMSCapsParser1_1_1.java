@@ -40,7 +40,7 @@ public class WMSCapsParser1_1_1 extends WMSCapsParser {
                 .collect(Collectors.toList());
     }
 
-    private static LayerCapabilitiesWMS parseLayer(Element layer, Set<String> infoformats) {
+    static LayerCapabilitiesWMS parseLayer(Element layer, Set<String> infoformats) {
         String name = XmlHelper.getChildValue(layer, "Name");
         if (name == null) {
             // group layer
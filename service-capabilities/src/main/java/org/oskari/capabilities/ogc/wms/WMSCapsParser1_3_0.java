@@ -43,7 +43,7 @@ public class WMSCapsParser1_3_0 extends WMSCapsParser {
                 .collect(Collectors.toList());
     }
 
-    private static LayerCapabilitiesWMS parseLayer(Element layer, Set<String> infoformats) {
+    static LayerCapabilitiesWMS parseLayer(Element layer, Set<String> infoformats) {
         String name = XmlHelper.getChildValue(layer, "Name");
         if (name == null) {
             // group layer
@@ -6,9 +6,13 @@ import fi.nls.oskari.util.ConversionHelper;
 import org.oskari.capabilities.CapabilitiesService;
 import org.oskari.capabilities.ogc.LayerStyle;
 import org.oskari.xml.XmlHelper;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -38,6 +42,93 @@ public class WMTSCapabilitiesParserHelper {
         return new WMTSCapabilities(tileMatrixSets, layers);
     }
 
+    /**
+     * Parses the capabilities by streaming through the document instead of building a DOM of the whole document.
+     * TileMatrixSets are parsed as they are encountered, layers are materialized one at a time and
+     * TileMatrixSetLimits are kept as plain values until the TileMatrixSets they refer to have been parsed.
+     * @param xml capabilities document
+     * @param layerIds identifiers of layers to parse, null to parse all layers
+     * @return parsed capabilities
+     */
+    public static WMTSCapabilities parseCapabilities(Reader xml, Set<String> layerIds)
+            throws IllegalArgumentException, XMLStreamException {
+        XMLStreamReader reader = XmlHelper.newXMLInputFactory().createXMLStreamReader(xml);
+        try {
+            if (XmlHelper.nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Failed to parse XML");
+            }
+            String rootEl = XmlHelper.getLocalName(reader);
+            Document doc = XmlHelper.newDocument();
+            while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+                if ("Contents".equals(XmlHelper.getLocalName(reader))) {
+                    return parseContents(reader, doc, layerIds);
+                }
+                XmlHelper.skipElement(reader);
+            }
+            throw new IllegalArgumentException("Unexpected XML element: '" + rootEl + "' without Contents");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static WMTSCapabilities parseContents(XMLStreamReader reader, Document doc, Set<String> layerIds)
+            throws XMLStreamException {
+        Map<String, TileMatrixSet> tileMatrixSets = new HashMap<>();
+        List<PendingLayer> pending = new ArrayList<>();
+        while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            String name = XmlHelper.getLocalName(reader);
+            if ("TileMatrixSet".equals(name)) {
+                TileMatrixSet tms = parseTileMatrixSet(XmlHelper.readElement(reader, doc));
+                tileMatrixSets.put(tms.getId(), tms);
+            } else if ("Layer".equals(name)) {
+                PendingLayer layer = readLayer(reader, doc, layerIds);
+                if (layer != null) {
+                    pending.add(layer);
+                }
+            } else {
+                XmlHelper.skipElement(reader);
+            }
+        }
+        // layers are usually listed before the TileMatrixSets so links can only be resolved at this point
+        Map<String, WMTSCapabilitiesLayer> layers = new HashMap<>();
+        for (PendingLayer p : pending) {
+            WMTSCapabilitiesLayer l = parseLayer(p.layer, resolveLinks(p.links, tileMatrixSets));
+            layers.put(l.getId(), l);
+        }
+        return new WMTSCapabilities(tileMatrixSets, layers);
+    }
+
+    private static PendingLayer readLayer(XMLStreamReader reader, Document doc, Set<String> layerIds)
+            throws XMLStreamException {
+        // contains the layer and its children except TileMatrixSetLinks
+        Element layer = XmlHelper.createElement(reader, doc);
+        List<LinkRef> links = new ArrayList<>();
+        boolean requested = layerIds == null;
+        while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            String name = XmlHelper.getLocalName(reader);
+            if ("TileMatrixSetLink".equals(name)) {
+                links.add(readLink(XmlHelper.readElement(reader, doc)));
+                continue;
+            }
+            Element child = XmlHelper.readElement(reader, doc);
+            layer.appendChild(child);
+            if (!requested && "Identifier".equals(name)) {
+                requested = layerIds.contains(child.getTextContent());
+                if (!requested) {
+                    // Identifier is listed before the heavy parts of the layer (styles, links etc)
+                    while (XmlHelper.nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+                        XmlHelper.skipElement(reader);
+                    }
+                    return null;
+                }
+            }
+        }
+        if (!requested) {
+            return null;
+        }
+        return new PendingLayer(layer, links);
+    }
+
     private static Map<String, TileMatrixSet> parseTileMatrixSets(Element contents)
             throws IllegalArgumentException {
         Map<String, TileMatrixSet> tileMatrixSets = new HashMap<>();
@@ -114,6 +205,13 @@ public class WMTSCapabilitiesParserHelper {
 
     private static WMTSCapabilitiesLayer parseLayer(Element layer,
             Map<String, TileMatrixSet> tileMatrixSets) {
+        List<LinkRef> links = XmlHelper.getChildElements(layer, "TileMatrixSetLink")
+                .map(e -> readLink(e))
+                .collect(Collectors.toList());
+        return parseLayer(layer, resolveLinks(links, tileMatrixSets));
+    }
+
+    private static WMTSCapabilitiesLayer parseLayer(Element layer, List<TileMatrixLink> links) {
         String identifier = XmlHelper.getChildValue(layer, "Identifier");
         String title = XmlHelper.getChildValue(layer, "Title");
         List<LayerStyle> styles = parseStyles(layer);
@@ -126,7 +224,6 @@ public class WMTSCapabilitiesParserHelper {
         Set<String> formats = getTexts(layer, "Format");
         Set<String> infoFormats = getTexts(layer, "InfoFormat");
         List<ResourceUrl> resourceURLs = parseResourceURLs(layer);
-        List<TileMatrixLink> links = parseLinks(layer, tileMatrixSets);
         return new WMTSCapabilitiesLayer(identifier, title, styles, defaultStyle,
                 formats, infoFormats, resourceURLs, links);
     }
@@ -164,19 +261,38 @@ public class WMTSCapabilitiesParserHelper {
         return resourceURLs;
     }
 
-    private static List<TileMatrixLink> parseLinks(Element capabilitiesLayer,
+    /**
+     * Reads the TileMatrixSetLink as plain values so they can be resolved against TileMatrixSets parsed later
+     */
+    private static LinkRef readLink(Element link) {
+        String ref = XmlHelper.getChildValue(link, "TileMatrixSet");
+        Element eTMSLimits = XmlHelper.getFirstChild(link, "TileMatrixSetLimits");
+        // <TileMatrixSetLimits> might not exist
+        if (eTMSLimits == null) {
+            return new LinkRef(ref, null);
+        }
+        List<LimitsRef> limits = XmlHelper.getChildElements(eTMSLimits, "TileMatrixLimits")
+                .map(e -> new LimitsRef(
+                        XmlHelper.getChildValue(e, "TileMatrix"),
+                        Integer.parseInt(XmlHelper.getChildValue(e, "MinTileRow")),
+                        Integer.parseInt(XmlHelper.getChildValue(e, "MaxTileRow")),
+                        Integer.parseInt(XmlHelper.getChildValue(e, "MinTileCol")),
+                        Integer.parseInt(XmlHelper.getChildValue(e, "MaxTileCol"))))
+                .collect(Collectors.toList());
+        return new LinkRef(ref, limits);
+    }
+
+    private static List<TileMatrixLink> resolveLinks(List<LinkRef> refs,
             Map<String, TileMatrixSet> tileMatrixSets) {
 
-        List<TileMatrixLink> links =  XmlHelper.getChildElements(capabilitiesLayer, "TileMatrixSetLink")
-                .map(e -> {
-                    String ref = XmlHelper.getChildValue(e, "TileMatrixSet");
-                    TileMatrixSet tms = tileMatrixSets.get(ref);
+        List<TileMatrixLink> links = refs.stream()
+                .map(link -> {
+                    TileMatrixSet tms = tileMatrixSets.get(link.tileMatrixSet);
                     if (tms == null) {
-                        LOG.warn("Referred TileMatrixSet", ref, "does not appear in this GetCapabilities response");
+                        LOG.warn("Referred TileMatrixSet", link.tileMatrixSet, "does not appear in this GetCapabilities response");
                         return null;
                     }
-                    Element eTMSLimits = XmlHelper.getFirstChild(e, "TileMatrixSetLimits");
-                    List<TileMatrixLimits> tileMatrixSetLimits = parseLimits(eTMSLimits, tms);
+                    List<TileMatrixLimits> tileMatrixSetLimits = resolveLimits(link.limits, tms);
                     return new TileMatrixLink(tms, tileMatrixSetLimits);
 
                 })
@@ -186,26 +302,21 @@ public class WMTSCapabilitiesParserHelper {
         return links;
     }
 
-    private static List<TileMatrixLimits> parseLimits(Element eTMSLimits, TileMatrixSet tms)
+    private static List<TileMatrixLimits> resolveLimits(List<LimitsRef> refs, TileMatrixSet tms)
             throws IllegalArgumentException {
         // <TileMatrixSetLimits> might not exist
-        if (eTMSLimits == null) {
+        if (refs == null) {
             return null;
         }
 
-        List<TileMatrixLimits> limits =  XmlHelper.getChildElements(eTMSLimits, "TileMatrixLimits")
-                .map(e -> {
-                    String ref = XmlHelper.getChildValue(e, "TileMatrix");
-                    TileMatrix tm = findTileMatrix(tms, ref);
+        List<TileMatrixLimits> limits = refs.stream()
+                .map(ref -> {
+                    TileMatrix tm = findTileMatrix(tms, ref.tileMatrix);
                     if (tm == null) {
-                        LOG.warn("Referred TileMatrix", ref, "does not appear in specified TileMatrixSet", tms.getId());
+                        LOG.warn("Referred TileMatrix", ref.tileMatrix, "does not appear in specified TileMatrixSet", tms.getId());
                         return null;
                     }
-                    int minTileRow = Integer.parseInt(XmlHelper.getChildValue(e, "MinTileRow"));
-                    int maxTileRow = Integer.parseInt(XmlHelper.getChildValue(e, "MaxTileRow"));
-                    int minTileCol = Integer.parseInt(XmlHelper.getChildValue(e, "MinTileCol"));
-                    int maxTileCol = Integer.parseInt(XmlHelper.getChildValue(e, "MaxTileCol"));
-                    return new TileMatrixLimits(tm, minTileRow, maxTileRow, minTileCol, maxTileCol);
+                    return new TileMatrixLimits(tm, ref.minTileRow, ref.maxTileRow, ref.minTileCol, ref.maxTileCol);
                 })
                 .filter(limit -> limit != null)
                 .collect(Collectors.toList());
@@ -253,4 +364,40 @@ public class WMTSCapabilitiesParserHelper {
         return null;
     }
 
+    private static class PendingLayer {
+        private final Element layer;
+        private final List<LinkRef> links;
+
+        PendingLayer(Element layer, List<LinkRef> links) {
+            this.layer = layer;
+            this.links = links;
+        }
+    }
+
+    private static class LinkRef {
+        private final String tileMatrixSet;
+        private final List<LimitsRef> limits;
+
+        LinkRef(String tileMatrixSet, List<LimitsRef> limits) {
+            this.tileMatrixSet = tileMatrixSet;
+            this.limits = limits;
+        }
+    }
+
+    private static class LimitsRef {
+        private final String tileMatrix;
+        private final int minTileRow;
+        private final int maxTileRow;
+        private final int minTileCol;
+        private final int maxTileCol;
+
+        LimitsRef(String tileMatrix, int minTileRow, int maxTileRow, int minTileCol, int maxTileCol) {
+            this.tileMatrix = tileMatrix;
+            this.minTileRow = minTileRow;
+            this.maxTileRow = maxTileRow;
+            this.minTileCol = minTileCol;
+            this.maxTileCol = maxTileCol;
+        }
+    }
+
 }
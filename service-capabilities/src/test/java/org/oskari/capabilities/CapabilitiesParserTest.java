@@ -0,0 +1,46 @@
+package org.oskari.capabilities;
+
+import org.junit.Test;
+import org.oskari.capabilities.ogc.WMSCapabilitiesParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class CapabilitiesParserTest {
+
+    private static HttpURLConnection mockConnection(String url, byte[] response) throws Exception {
+        HttpURLConnection conn = mock(HttpURLConnection.class);
+        doReturn(new URL(url)).when(conn).getURL();
+        doReturn("text/xml; charset=ISO-8859-1").when(conn).getContentType();
+        doReturn(new ByteArrayInputStream(response)).when(conn).getInputStream();
+        return conn;
+    }
+
+    @Test
+    public void testStreamedCapabilitiesAreCached() throws Exception {
+        String url = "http://localhost/streamed?service=WMS&request=GetCapabilities";
+        byte[] doc = "<WMS_Capabilities><Service/><Capability/></WMS_Capabilities>".getBytes(StandardCharsets.ISO_8859_1);
+        WMSCapabilitiesParser parser = new WMSCapabilitiesParser();
+        assertNull(parser.getCachedCapabilities(url, "user"));
+
+        try (InputStream in = parser.getCachingInputStream(mockConnection(url, doc), url, "user")) {
+            // parser stops before the end of the document
+            in.read(new byte[10]);
+        }
+
+        RawCapabilitiesResponse cached = parser.getCachedCapabilities(url, "user");
+        assertArrayEquals("Whole document should be cached", doc, cached.getResponse());
+        assertEquals("ISO-8859-1", cached.getEncoding());
+        assertEquals(url, cached.getUrl());
+        assertNull("Cache is per user", parser.getCachedCapabilities(url, null));
+    }
+}
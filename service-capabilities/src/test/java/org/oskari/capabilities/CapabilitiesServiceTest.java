@@ -3,6 +3,7 @@ package org.oskari.capabilities;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.test.util.ResourceHelper;
 import junit.framework.TestCase;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 import org.oskari.capabilities.ogc.LayerCapabilitiesWFS;
@@ -10,6 +11,7 @@ import org.oskari.capabilities.ogc.LayerCapabilitiesWMTS;
 import org.oskari.capabilities.ogc.wfs.FeaturePropertyType;
 import org.oskari.capabilities.ogc.wmts.ResourceUrl;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -90,4 +92,21 @@ public class CapabilitiesServiceTest extends TestCase {
         assertNotNull("Should have tile url", url);
         Assert.assertEquals("https://julkinen.traficom.fi/rasteripalvelu/wmts/rest/Traficom:Merikarttasarja B erikoiskartat/{style}/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}?format=image/png", url.getTemplate());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTypedCapabilitiesAreCachedUntilUpdated() throws Exception {
+        String json = ResourceHelper.readStringResource("Capabilities_WMTS.json", this);
+        OskariLayer layer = new OskariLayer();
+        layer.setId(123);
+        layer.setType(OskariLayer.TYPE_WMTS);
+        layer.setCapabilities(new JSONObject(json));
+        layer.setCapabilitiesLastUpdated(new Date(1000L));
+
+        LayerCapabilitiesWMTS caps = CapabilitiesService.getLayerCapabilities(layer);
+        Assert.assertEquals(15, caps.getTileMatrixLinks().size());
+        Assert.assertSame("Should be parsed only once", caps, CapabilitiesService.getLayerCapabilities(layer));
+
+        layer.setCapabilitiesLastUpdated(new Date(2000L));
+        Assert.assertNotSame("Should be parsed again after update", caps, CapabilitiesService.getLayerCapabilities(layer));
+    }
+}
@@ -0,0 +1,73 @@
+package org.oskari.capabilities.ogc;
+
+import fi.nls.oskari.service.ServiceException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class CapabilitiesValidatorTest {
+
+    private static final String DOC = "<WMS_Capabilities><Title>\u00c4\u00e4ni\u00e4</Title></WMS_Capabilities>";
+
+    private static String read(byte[] bytes, String encoding) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = CapabilitiesValidator.getXmlReader(new ByteArrayInputStream(bytes), encoding)) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testContentTypeCharsetIsUsedWithoutProlog() throws Exception {
+        byte[] bytes = DOC.getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(DOC, read(bytes, "iso-8859-1"));
+    }
+
+    @Test
+    public void testPrologIsFavored() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + DOC;
+        assertEquals(xml, read(xml.getBytes(StandardCharsets.ISO_8859_1), "UTF-8"));
+    }
+
+    @Test
+    public void testDefaultsToUTF8() throws Exception {
+        assertEquals(DOC, read(DOC.getBytes(StandardCharsets.UTF_8), null));
+    }
+
+    @Test
+    public void testByteOrderMarkIsSkipped() throws Exception {
+        byte[] doc = DOC.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[doc.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(doc, 0, bytes, 3, doc.length);
+        assertEquals(DOC, read(bytes, "ISO-8859-1"));
+
+        String xml = "<?xml version=\"1.0\"?>" + DOC;
+        assertEquals(xml, read(xml.getBytes(Charset.forName("UTF-16")), null));
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testHtmlIsRejected() throws Exception {
+        read("<!DOCTYPE html><html><body>Service unavailable</body></html>".getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testTextIsRejected() throws Exception {
+        read("Internal server error".getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testUnknownCharsetIsRejected() throws Exception {
+        read(DOC.getBytes(StandardCharsets.UTF_8), "not-a-charset");
+    }
+}
@@ -10,6 +10,7 @@ import org.oskari.capabilities.LayerCapabilities;
 import org.oskari.capabilities.ogc.wms.WMSCapsParser1_1_1;
 import org.oskari.capabilities.ogc.wms.WMSCapsParser1_3_0;
 
+import java.io.InputStream;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -199,4 +200,30 @@ public class WMSCapabilitiesParserTest {
         // System.out.println(json);
         assertTrue("JSON should match", JSONHelper.isEqual(json, JSONHelper.createJSONObject(expected)));
     }
+
+    @Test
+    public void parseLipasStreaming() throws Exception {
+        String xml = ResourceHelper.readStringResource("WMSCapabilitiesParserTest-lipas_1_3_0-input.xml", this);
+        Map<String, LayerCapabilities> expected = parser.parseLayers(xml);
+
+        Map<String, LayerCapabilities> layers;
+        try (InputStream in = getClass().getResourceAsStream("WMSCapabilitiesParserTest-lipas_1_3_0-input.xml")) {
+            layers = parser.parseLayers(CapabilitiesValidator.getXmlReader(in, null), null);
+        }
+        assertEquals("Should find same layers", expected.keySet(), layers.keySet());
+        for (String name : expected.keySet()) {
+            assertTrue("JSON should match for " + name, JSONHelper.isEqual(
+                    CapabilitiesService.toJSON(layers.get(name), SYSTEM_CRS),
+                    CapabilitiesService.toJSON(expected.get(name), SYSTEM_CRS)));
+        }
+
+        String name = expected.keySet().iterator().next();
+        try (InputStream in = getClass().getResourceAsStream("WMSCapabilitiesParserTest-lipas_1_3_0-input.xml")) {
+            layers = parser.parseLayers(CapabilitiesValidator.getXmlReader(in, null), Collections.singleton(name));
+        }
+        assertEquals("Should find only requested layer", Collections.singleton(name), layers.keySet());
+        assertTrue("JSON should match", JSONHelper.isEqual(
+                CapabilitiesService.toJSON(layers.get(name), SYSTEM_CRS),
+                CapabilitiesService.toJSON(expected.get(name), SYSTEM_CRS)));
+    }
 }
\ No newline at end of file
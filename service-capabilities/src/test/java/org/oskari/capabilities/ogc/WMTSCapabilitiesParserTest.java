@@ -9,6 +9,8 @@ import org.junit.Test;
 import org.oskari.capabilities.CapabilitiesService;
 import org.oskari.capabilities.LayerCapabilities;
 
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -164,5 +166,26 @@ public class WMTSCapabilitiesParserTest {
         assertTrue("JSON should match", JSONHelper.isEqual(json, JSONHelper.createJSONObject(expected)));
     }
 
+    @Test
+    public void testStreaming_Tampere() throws Exception {
+        String xml = ResourceHelper.readStringResource("WMTSCapabilitiesParserTest-tampere-input.xml", this);
+        String expected = ResourceHelper.readStringResource("WMTSCapabilitiesParserTest-tampere-expected.json", this);
+
+        WMTSCapabilitiesParser parser = new WMTSCapabilitiesParser();
+        parser.init();
+
+        Map<String, LayerCapabilities> layers;
+        try (InputStream in = getClass().getResourceAsStream("WMTSCapabilitiesParserTest-tampere-input.xml")) {
+            layers = parser.parseLayers(CapabilitiesValidator.getXmlReader(in, null), null);
+        }
+        assertEquals("Should find same layers as with DOM", parser.parseLayers(xml).keySet(), layers.keySet());
+
+        try (InputStream in = getClass().getResourceAsStream("WMTSCapabilitiesParserTest-tampere-input.xml")) {
+            layers = parser.parseLayers(CapabilitiesValidator.getXmlReader(in, null), Collections.singleton("tampere:tampere_vkartta_gk24"));
+        }
+        assertEquals("Should only parse requested layer", 1, layers.size());
+        JSONObject json = CapabilitiesService.toJSON(layers.get("tampere:tampere_vkartta_gk24"), SYSTEM_CRS);
+        assertTrue("JSON should match", JSONHelper.isEqual(json, JSONHelper.createJSONObject(expected)));
+    }
 
-}
\ No newline at end of file
+}
@@ -92,6 +92,12 @@ public class OGCAPIFeaturesServiceTest {
         assertIterablesEquals(expectedList, actualList);
     }
 
+    @Test
+    public void testGetFilterConformanceClasses() {
+        // Core + GeoJSON only, no CQL2 filter support
+        assertTrue(service.getFilterConformanceClasses().isEmpty());
+    }
+
     private <T> void assertIterablesEquals(Iterable<T> expected, Iterable<T> actual) {
         Iterator<T> expectedIter = expected.iterator();
         Iterator<T> actualIter = actual.iterator();
@@ -9,11 +9,19 @@ import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.PropertyUtil;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for proxying a request to a new url based on serviceId.
@@ -27,6 +35,12 @@ import java.util.TreeMap;
  * - oskari.proxy.[serviceId].params=[comma separated list of parameter names, named params will be passed to the proxy url] (optional)
  * - oskari.proxy.[serviceId].charset=[charset to use when encoding params and reading response] (optional, defaults to UTF-8)
  * - oskari.proxy.[serviceId].header.[header name]=[header value] (optional)
+ * - oskari.proxy.[serviceId].maxConnections=[max concurrent streamed requests for the service, 0 or negative for no limit] (optional, defaults to oskari.proxy.maxConnections)
+ *
+ * Responses proxied with proxyStream() are piped to the client as they arrive. The number of concurrent
+ * streamed requests can be limited per service with properties:
+ * - oskari.proxy.maxConnections=[default max concurrent streamed requests per service, 0 or negative for no limit] (optional, defaults to 0)
+ * - oskari.proxy.maxConnections.waitMs=[max time to wait for a free connection] (optional, defaults to 1000)
  * @author SMAKINEN
  */
 public class ProxyService {
@@ -34,6 +48,15 @@ public class ProxyService {
     private static final Logger log = LogFactory.getLogger(ProxyService.class);
     private static final Map<String, ProxyServiceConfig> availableServices = new TreeMap<String, ProxyServiceConfig>();
 
+    private static final int MAX_CONNECTIONS = PropertyUtil.getOptional("oskari.proxy.maxConnections", 0);
+    private static final long CONNECTION_WAIT_MS = PropertyUtil.getOptional("oskari.proxy.maxConnections.waitMs", 1000);
+    // connection limits by serviceId, services without a limit are not listed
+    private static final Map<String, Semaphore> CONNECTIONS = new TreeMap<>();
+    private static final int BUFFER_SIZE = 8192;
+    // buffers are reused up to this many concurrent streams, extra buffers are left for the GC
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(20);
+    private static final List<String> FORWARDED_HEADERS = Arrays.asList("ETag", "Last-Modified", "Cache-Control", "Expires");
+
     /**
      * Reads properties to initialize services
      */
@@ -80,6 +103,10 @@ public class ProxyService {
                 final String value = PropertyUtil.get(propName);
                 config.addHeader(header, value);
             }
+            final int maxConnections = PropertyUtil.getOptional(propertiesPrefix + "maxConnections", MAX_CONNECTIONS);
+            if (maxConnections > 0) {
+                CONNECTIONS.put(serviceID, new Semaphore(maxConnections));
+            }
             availableServices.put(serviceID, config);
         }
     }
@@ -160,6 +187,130 @@ public class ProxyService {
     }
 
 
+    /**
+     * Proxies request to given service using the given params and pipes the response body to
+     * given response without buffering it in memory. Content-Type, Content-Length and caching headers
+     * (ETag, Last-Modified, Cache-Control, Expires) of the service response are forwarded. Caching headers set
+     * to the response before calling this are kept, Content-Type is overridden if the service responds with one.
+     * @param serviceKey id to map the service
+     * @param params params that should be used when proxying
+     * @param response response to write to
+     * @throws ActionException if something goes wrong when proxying
+     */
+    public static void proxyStream(final String serviceKey, final ActionParameters params,
+                                   final HttpServletResponse response) throws ActionException {
+
+        if(!availableServices.containsKey(serviceKey)) {
+            throw new ActionParamsException("Service not available");
+        }
+        final byte[] payload = getPayload(params);
+        // get base config
+        final ProxyServiceConfig baseConfig = availableServices.get(serviceKey);
+        // getConfig returns a params based modified config
+        final ProxyServiceConfig config = baseConfig.getConfig(params);
+
+        final Semaphore connections = CONNECTIONS.get(serviceKey);
+        if (!acquireConnection(connections)) {
+            log.debug("Too many concurrent proxy requests, rejecting request to:", serviceKey);
+            try {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } catch (IOException e) {
+                log.ignore(e);
+            }
+            return;
+        }
+        try {
+            final HttpURLConnection connection = getConnection(config, params);
+            IOHelper.writeToConnection(connection, payload);
+            final int responseCode = connection.getResponseCode();
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                log.info("Service", serviceKey, "responded with", responseCode, ":", readErrorStream(connection));
+                throw new ActionException("Couldn't proxy request to service:" + serviceKey);
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                response.setStatus(responseCode);
+            }
+            if (connection.getContentType() != null) {
+                response.setContentType(connection.getContentType());
+            }
+            for (String header : FORWARDED_HEADERS) {
+                String value = connection.getHeaderField(header);
+                if (value != null && !response.containsHeader(header)) {
+                    response.setHeader(header, value);
+                }
+            }
+            // the body is decompressed if the service gzipped it so the length is only known for identity encoding
+            final long contentLength = connection.getContentLengthLong();
+            if (contentLength >= 0 && connection.getContentEncoding() == null) {
+                response.setContentLengthLong(contentLength);
+            }
+            try (InputStream in = IOHelper.getInputStream(connection)) {
+                final OutputStream out = response.getOutputStream();
+                copy(in, out);
+                out.flush();
+            }
+        } catch (ActionException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ActionException("Couldn't proxy request to service:" + serviceKey, e);
+        } finally {
+            releaseConnection(connections);
+            // Note! Not calling disconnect() so the JVM can reuse the connection for the next request
+        }
+    }
+
+    private static boolean acquireConnection(Semaphore connections) {
+        if (connections == null) {
+            return true;
+        }
+        try {
+            return connections.tryAcquire(CONNECTION_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void releaseConnection(Semaphore connections) {
+        if (connections != null) {
+            connections.release();
+        }
+    }
+
+    /**
+     * Copies the stream with a pooled buffer
+     */
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = BUFFERS.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Reads the error response. This also allows the underlying connection to be reused.
+     */
+    private static String readErrorStream(HttpURLConnection connection) {
+        try (InputStream err = connection.getErrorStream()) {
+            if (err == null) {
+                return "";
+            }
+            return IOHelper.readString(err);
+        } catch (IOException e) {
+            log.ignore(e);
+            return "";
+        }
+    }
+
+
     /**
      * Gets the connection to the proxy service.
      * @param config config providing url, headers and authentication
@@ -0,0 +1,119 @@
+package fi.nls.oskari.service;
+
+import com.sun.net.httpserver.HttpServer;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ProxyServiceTest {
+
+    private static final byte[] BODY = "tile".getBytes(StandardCharsets.UTF_8);
+    private static HttpServer server;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        // stand-in for the proxied service
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/tile", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.getResponseHeaders().add("ETag", "\"abc\"");
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.createContext("/error", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        String base = "http://localhost:" + server.getAddress().getPort();
+        PropertyUtil.addProperty("oskari.proxyservices", "tile,error", true);
+        PropertyUtil.addProperty("oskari.proxy.tile.url", base + "/tile", true);
+        PropertyUtil.addProperty("oskari.proxy.error.url", base + "/error", true);
+        ProxyService.init();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        server.stop(0);
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testProxyStream() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse(body);
+        ProxyService.proxyStream("tile", getParams(response), response);
+
+        assertEquals("tile", new String(body.toByteArray(), StandardCharsets.UTF_8));
+        verify(response).setContentType("image/png");
+        verify(response).setContentLengthLong(BODY.length);
+        verify(response).setHeader("Cache-Control", "max-age=60");
+        verify(response).setHeader("ETag", "\"abc\"");
+    }
+
+    @Test
+    public void testCachingHeadersSetByCallerAreKept() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse(body);
+        doReturn(true).when(response).containsHeader("Cache-Control");
+        ProxyService.proxyStream("tile", getParams(response), response);
+
+        assertEquals("tile", new String(body.toByteArray(), StandardCharsets.UTF_8));
+        verify(response, never()).setHeader("Cache-Control", "max-age=60");
+        verify(response).setHeader("ETag", "\"abc\"");
+    }
+
+    @Test(expected = ActionException.class)
+    public void testProxyStreamError() throws Exception {
+        HttpServletResponse response = mockResponse(new ByteArrayOutputStream());
+        ProxyService.proxyStream("error", getParams(response), response);
+    }
+
+    private ActionParameters getParams(HttpServletResponse response) throws IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        doReturn(new ServletInputStream() {
+            public boolean isFinished() { return true; }
+            public boolean isReady() { return true; }
+            public void setReadListener(ReadListener readListener) {}
+            public int read() { return -1; }
+        }).when(request).getInputStream();
+        ActionParameters params = new ActionParameters();
+        params.setRequest(request);
+        params.setResponse(response);
+        return params;
+    }
+
+    private HttpServletResponse mockResponse(ByteArrayOutputStream body) throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        doReturn(new ServletOutputStream() {
+            public boolean isReady() { return true; }
+            public void setWriteListener(WriteListener writeListener) {}
+            public void write(int b) { body.write(b); }
+        }).when(response).getOutputStream();
+        return response;
+    }
+}
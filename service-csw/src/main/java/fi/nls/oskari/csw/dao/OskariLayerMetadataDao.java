@@ -4,12 +4,18 @@ import fi.nls.oskari.csw.dto.OskariLayerMetadataDto;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.mybatis.MyBatisHelper;
+import fi.nls.oskari.util.JSONHelper;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.json.JSONObject;
 
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Simple MyBatis Dao for saving CSW metadata for maplayers
@@ -29,17 +35,49 @@ public class OskariLayerMetadataDao {
         return new SqlSessionFactoryBuilder().build(configuration);
     }
 
+    /**
+     * Returns the metadata dateStamps of saved metadata
+     * @return metadataId -> metadataDateStamp
+     */
+    public Map<String, String> findDateStamps() {
+        final Map<String, String> result = new HashMap<>();
+        try (SqlSession session = factory.openSession()) {
+            final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
+            for (OskariLayerMetadataDto dto : mapper.findAll()) {
+                JSONObject json = dto.json == null ? null : JSONHelper.createJSONObject(dto.json);
+                if (dto.metadataId != null && json != null && json.has("metadataDateStamp")) {
+                    result.put(dto.metadataId, json.optString("metadataDateStamp"));
+                }
+            }
+        } catch (Exception e) {
+            log.error(e, "Error loading metadata");
+        }
+        return result;
+    }
+
     public void saveMetadata(OskariLayerMetadataDto dto) {
+        saveMetadata(Collections.singletonList(dto));
+    }
+
+    /**
+     * Saves the metadata in one transaction
+     * @param list
+     */
+    public void saveMetadata(List<OskariLayerMetadataDto> list) {
+        if (list.isEmpty()) {
+            return;
+        }
         final SqlSession session = factory.openSession();
         try {
             final OskariLayerMetadataDto.Mapper mapper = session.getMapper(OskariLayerMetadataDto.Mapper.class);
-            OskariLayerMetadataDto saved = mapper.find(dto.metadataId);
-            if(saved == null) {
-                mapper.insert(dto);
-            }
-            else {
-                dto.id = saved.id;
-                mapper.update(dto);
+            for (OskariLayerMetadataDto dto : list) {
+                OskariLayerMetadataDto saved = mapper.find(dto.metadataId);
+                if (saved == null) {
+                    mapper.insert(dto);
+                } else {
+                    dto.id = saved.id;
+                    mapper.update(dto);
+                }
             }
             session.commit();
         } catch (Exception e) {
@@ -0,0 +1,94 @@
+package fi.nls.oskari.csw.domain;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONObject;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Coverage of a metadata record used for updating layer coverages. Records that haven't changed
+ * since the previous update only have the fileIdentifier and dateStamp, changed records also have
+ * the whole ISO record (see CSWIsoRecord).
+ */
+public class CSWCoverage {
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    private String fileIdentifier;
+    private String metadataDateStamp;
+    private Envelope envelope;
+    private boolean changed = true;
+    private CSWIsoRecord record;
+
+    public String getFileIdentifier() {
+        return fileIdentifier;
+    }
+
+    public void setFileIdentifier(String fileIdentifier) {
+        this.fileIdentifier = fileIdentifier;
+    }
+
+    public String getMetadataDateStamp() {
+        return metadataDateStamp;
+    }
+
+    public void setMetadataDateStamp(String metadataDateStamp) {
+        this.metadataDateStamp = metadataDateStamp;
+    }
+
+    /**
+     * Envelope of the extents of the first identification of the record.
+     * @return envelope (lon, lat) or null if the record has no bounding boxes or the record hasn't changed
+     */
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    public void setEnvelope(Envelope envelope) {
+        this.envelope = envelope;
+    }
+
+    /**
+     * @return false if the record has the same dateStamp that was already known (the envelope is not parsed for those)
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * @return the parsed record or null if the record hasn't changed
+     */
+    public CSWIsoRecord getRecord() {
+        return record;
+    }
+
+    public void setRecord(CSWIsoRecord record) {
+        this.record = record;
+    }
+
+    /**
+     * @return envelope as WKT or null if there is no envelope
+     */
+    public String getWKT() {
+        if (envelope == null) {
+            return null;
+        }
+        return GF.toGeometry(envelope).toText();
+    }
+
+    /**
+     * @return the same JSON as CSWIsoRecord.toJSON() for changed records, fileIdentifier and dateStamp otherwise
+     */
+    public JSONObject toJSON() {
+        if (record != null) {
+            return record.toJSON();
+        }
+        JSONObject ret = new JSONObject();
+        JSONHelper.putValue(ret, "fileIdentifier", fileIdentifier);
+        JSONHelper.putValue(ret, "metadataDateStamp", metadataDateStamp);
+        return ret;
+    }
+}
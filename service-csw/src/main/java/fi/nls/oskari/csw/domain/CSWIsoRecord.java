@@ -138,6 +138,13 @@ public class CSWIsoRecord {
         this.metadataURL = metadataURL;
     }
 
+    /**
+     * @return dateStamp in the format used in toJSON()
+     */
+    public static String formatDateStamp(LocalDateTime dateStamp) {
+        return dateStamp.format(DATE_TIME_FORMAT);
+    }
+
     public JSONObject toJSON() {
         JSONObject ret = new JSONObject();
         JSONHelper.putValue(ret, "fileIdentifier", fileIdentifier);
@@ -151,7 +158,7 @@ public class CSWIsoRecord {
         }
         JSONHelper.putValue(ret, "metadataResponsibleParties", arr);
         try {
-            JSONHelper.putValue(ret, "metadataDateStamp", metadataDateStamp.format(DATE_TIME_FORMAT));
+            JSONHelper.putValue(ret, "metadataDateStamp", formatDateStamp(metadataDateStamp));
         } catch (Exception e) {
             //do nothing
         }
@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * A data transfer object for interacting with the ``oskari_maplayer_metadata`` database table.
@@ -15,6 +16,9 @@ public class OskariLayerMetadataDto {
         @Select("SELECT id, metadataid, wkt, json, ts FROM oskari_maplayer_metadata where metadataid=#{metadataId}")
         public OskariLayerMetadataDto find(final String metadataId);
 
+        @Select("SELECT id, metadataid, json FROM oskari_maplayer_metadata")
+        public List<OskariLayerMetadataDto> findAll();
+
         @Insert("INSERT INTO oskari_maplayer_metadata (metadataid, wkt, json, ts) VALUES (#{metadataId}, #{wkt}, #{json}, NOW())")
         public void insert(final OskariLayerMetadataDto metadata);
 
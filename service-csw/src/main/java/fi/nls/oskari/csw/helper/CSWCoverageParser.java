@@ -0,0 +1,181 @@
+package fi.nls.oskari.csw.helper;
+
+import fi.nls.oskari.csw.domain.CSWCoverage;
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.util.XmlHelper;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming parser for ISO 19139 metadata records in a document (like a GetRecords response).
+ * The document is read with StAX and only one gmd:MD_Metadata element at a time is built as a DOM
+ * so the memory needed doesn't depend on the number of records in the response. Records are parsed
+ * with CSWISORecordParser so they produce the same JSON as the GetRecordById based update.
+ * The full parsing is skipped for records that haven't changed since the previous update.
+ */
+public class CSWCoverageParser {
+
+    private static final XMLInputFactory XIF = createXMLInputFactory();
+
+    private CSWCoverageParser() {}
+
+    private static XMLInputFactory createXMLInputFactory() {
+        // like XmlHelper.newXMLInputFactory() but namespace aware so the records can be parsed with XPath
+        XMLInputFactory factory = org.oskari.xml.XmlHelper.newXMLInputFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    public static List<CSWCoverage> parse(InputStream in, Locale locale) throws Exception {
+        return parse(in, Collections.emptyMap(), locale);
+    }
+
+    /**
+     * @param in XML with gmd:MD_Metadata elements
+     * @param knownDateStamps metadata id -> dateStamp (as in CSWIsoRecord.toJSON()) of previously parsed records.
+     *                        Records with the same dateStamp are not parsed and they are marked as unchanged
+     * @param locale language for localized values of the records
+     * @return coverages of records in the document
+     */
+    public static List<CSWCoverage> parse(InputStream in, Map<String, String> knownDateStamps, Locale locale) throws Exception {
+        final List<CSWCoverage> list = new ArrayList<>();
+        final CSWISORecordParser parser = new CSWISORecordParser();
+        final DocumentBuilder db = newDocumentBuilder();
+        XMLStreamReader reader = XIF.createXMLStreamReader(in);
+        try {
+            int event;
+            while ((event = org.oskari.xml.XmlHelper.nextElement(reader)) != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT && "MD_Metadata".equals(reader.getLocalName())) {
+                    Element metadata = readElement(reader, db.newDocument());
+                    list.add(parseRecord(metadata, knownDateStamps, parser, locale));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        return XmlHelper.newDocumentBuilderFactory().newDocumentBuilder();
+    }
+
+    private static CSWCoverage parseRecord(Element metadata, Map<String, String> knownDateStamps,
+                                           CSWISORecordParser parser, Locale locale) throws Exception {
+        final CSWCoverage coverage = new CSWCoverage();
+        coverage.setFileIdentifier(getChildText(metadata, "fileIdentifier"));
+        coverage.setMetadataDateStamp(normalizeDateStamp(getChildText(metadata, "dateStamp")));
+        String known = knownDateStamps.get(coverage.getFileIdentifier());
+        if (known != null && known.equals(coverage.getMetadataDateStamp())) {
+            coverage.setChanged(false);
+            return coverage;
+        }
+        CSWIsoRecord record = parser.parse(metadata, locale, null);
+        coverage.setRecord(record);
+        if (!record.getIdentifications().isEmpty()) {
+            GeometryCollection extents = record.getIdentifications().get(0).getExtents();
+            if (extents != null && !extents.isEmpty()) {
+                coverage.setEnvelope(extents.getEnvelopeInternal());
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * @return dateStamp in the same format as CSWIsoRecord.toJSON() or null if it can't be parsed
+     */
+    static String normalizeDateStamp(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return CSWIsoRecord.formatDateStamp(CSWISORecordParser.parseDateStamp(value));
+        } catch (Exception e) {
+            // gco:Date or unexpected format, CSWISORecordParser leaves these out too
+            return null;
+        }
+    }
+
+    /**
+     * @return trimmed text content of the first child element with the local name or null if not found
+     */
+    private static String getChildText(Element parent, String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && localName.equals(child.getLocalName())) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the element the reader is positioned on (START_ELEMENT) as a DOM element.
+     * After calling this the reader is positioned on the END_ELEMENT of the element.
+     */
+    static Element readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+        final Element root = createElement(reader, doc);
+        Node current = root;
+        while (current != null) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element child = createElement(reader, doc);
+                current.appendChild(child);
+                current = child;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                current = current == root ? null : current.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                current.appendChild(doc.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                throw new XMLStreamException("Unexpected end of document");
+            default:
+                break;
+            }
+        }
+        return root;
+    }
+
+    private static Element createElement(XMLStreamReader reader, Document doc) {
+        final Element element = doc.createElementNS(emptyToNull(reader.getNamespaceURI()),
+                getQName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String name = prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                    getQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String getQName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
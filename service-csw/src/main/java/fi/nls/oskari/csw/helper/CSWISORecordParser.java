@@ -15,6 +15,7 @@ import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 /**
@@ -264,6 +265,18 @@ public class CSWISORecordParser {
 
     }
 
+    /**
+     * Parses the content of gmd:dateStamp/gco:DateTime. Fractions of seconds and time zone are
+     * allowed (like 2018-10-17T08:27:19.180Z), the time zone is ignored.
+     */
+    static LocalDateTime parseDateStamp(String value) {
+        try {
+            return LocalDateTime.parse(value, DATE_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(value));
+        }
+    }
+
     public CSWIsoRecord parse(final Node elem, final Locale locale, MathTransform transform) throws XPathExpressionException, ParseException, TransformException {
         int i;
         Node node;
@@ -337,7 +350,7 @@ public class CSWISORecordParser {
         if (node != null) {
             value = getLocalizedContent(node, pathToLocalizedValue);
             try{
-                record.setMetadataDateStamp(LocalDateTime.parse(value, DATE_TIME_FORMAT));
+                record.setMetadataDateStamp(parseDateStamp(value));
             }catch (Exception e){
                 // TODO: should we add raw xml content if parsing fails
             }
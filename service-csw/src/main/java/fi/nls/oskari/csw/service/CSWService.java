@@ -1,12 +1,17 @@
 package fi.nls.oskari.csw.service;
 
 import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.csw.domain.CSWCoverage;
 import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.csw.helper.CSWCoverageParser;
 import fi.nls.oskari.csw.helper.CSWISORecordNamespaceContext;
 import fi.nls.oskari.csw.helper.CSWISORecordParser;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.referencing.CRS;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
@@ -14,6 +19,7 @@ import org.opengis.referencing.operation.TransformException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.oskari.csw.request.GetRecords;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
@@ -29,7 +35,13 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * getMetadata and getMetadataById to help linking schema catalogue and metadata
@@ -40,6 +52,8 @@ import java.util.Locale;
 public class CSWService {
 
     public static final String PROP_SERVICE_URL = "service.metadata.url";
+    // queryable for metadata fileIdentifier
+    private static final String PROPERTY_IDENTIFIER = "Identifier";
     private static final Logger log = LogFactory
             .getLogger(CSWService.class);
 
@@ -107,6 +121,73 @@ public class CSWService {
         return record;
     }
 
+    /**
+     * Loads coverages for multiple metadata records with GetRecords requests. The response is parsed
+     * one record at a time and records that haven't changed since the previous update are not parsed fully.
+     *
+     * Services might return less records than requested (maxRecords is capped by the service) so the
+     * records that were not in the response are requested again until all are found or a request
+     * doesn't return any more of the requested records.
+     *
+     * @param uuids metadata fileIdentifiers
+     * @param knownDateStamps fileIdentifier -> dateStamp for records that have been loaded previously.
+     *                        Coverage is not parsed for records that haven't changed since.
+     * @param lang language for localized values of the records
+     * @return coverages for records that were found from the service
+     * @throws IOException
+     */
+    public List<CSWCoverage> getCoverages(Collection<String> uuids, Map<String, String> knownDateStamps, String lang) throws IOException {
+        final List<CSWCoverage> result = new ArrayList<>();
+        final Set<String> remaining = new LinkedHashSet<>(uuids);
+        while (!remaining.isEmpty()) {
+            boolean found = false;
+            for (CSWCoverage coverage : getCoverages(remaining, knownDateStamps, new Locale(lang))) {
+                String uuid = coverage.getFileIdentifier();
+                if (!remaining.remove(uuid)) {
+                    // not requested or duplicate
+                    continue;
+                }
+                found = true;
+                if (coverage.getRecord() != null) {
+                    coverage.getRecord().setMetadataURL(getGetRecordByIdUrl(uuid, lang));
+                }
+                result.add(coverage);
+            }
+            if (!found) {
+                // rest of the records are not available from the service
+                break;
+            }
+        }
+        return result;
+    }
+
+    private List<CSWCoverage> getCoverages(Collection<String> uuids, Map<String, String> knownDateStamps, Locale locale) throws IOException {
+        final String payload = GetRecords.createRequest(getIdentifierFilter(uuids), "full", uuids.size());
+        HttpURLConnection con = IOHelper.getConnection(baseURL);
+        con.setUseCaches(false);
+        IOHelper.post(con, "application/xml;charset=UTF-8", payload);
+        if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Couldn't connect to service. Got response code " + con.getResponseCode());
+        }
+        try (InputStream in = IOHelper.getInputStream(con)) {
+            return CSWCoverageParser.parse(in, knownDateStamps, locale);
+        } catch (Exception e) {
+            throw new IOException("Unable to parse GetRecords response from " + baseURL, e);
+        }
+    }
+
+    private Filter getIdentifierFilter(Collection<String> uuids) {
+        final FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        final List<Filter> filters = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            filters.add(ff.equals(ff.property(PROPERTY_IDENTIFIER), ff.literal(uuid)));
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        return ff.or(filters);
+    }
+
     protected URL getGetRecordByIdUrl(String id, String lang) throws MalformedURLException {
         final String elementSetName = "full";
         // This is basically just the 'right' way to say csw:IsoRecord
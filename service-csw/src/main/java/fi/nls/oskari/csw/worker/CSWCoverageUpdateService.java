@@ -3,6 +3,7 @@ package fi.nls.oskari.csw.worker;
 import org.locationtech.jts.geom.Geometry;
 import fi.nls.oskari.annotation.Oskari;
 import fi.nls.oskari.csw.dao.OskariLayerMetadataDao;
+import fi.nls.oskari.csw.domain.CSWCoverage;
 import fi.nls.oskari.csw.domain.CSWIsoRecord;
 import fi.nls.oskari.csw.dto.OskariLayerMetadataDto;
 import fi.nls.oskari.csw.service.CSWService;
@@ -16,12 +17,17 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.worker.ScheduledJob;
 
 import javax.sql.DataSource;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Scheduled job for retrieving coverage data for maplayers having metadataids.
+ *
+ * Metadata is requested in batches with GetRecords (CSWCoverageImport.batchSize, defaults to 50) using
+ * a bounded number of concurrent requests (CSWCoverageImport.threads, defaults to 4). Records that have
+ * the same dateStamp as on the previous run are skipped. Falls back to GetRecordById for a batch if the
+ * GetRecords request fails.
  */
 @Oskari("CSWCoverageImport")
 public class CSWCoverageUpdateService extends ScheduledJob {
@@ -29,6 +35,8 @@ public class CSWCoverageUpdateService extends ScheduledJob {
 
     final OskariLayerService layerService = new OskariLayerServiceMybatisImpl();
     final private static String PROPERTY_BASE_URL = "service.metadata.url";
+    final private static int BATCH_SIZE = Math.max(1, PropertyUtil.getOptional("CSWCoverageImport.batchSize", 50));
+    final private static int THREADS = Math.max(1, PropertyUtil.getOptional("CSWCoverageImport.threads", 4));
 
     @Override
     public void execute(Map<String, Object> params) {
@@ -57,21 +65,33 @@ public class CSWCoverageUpdateService extends ScheduledJob {
             return;
         }
         final OskariLayerMetadataDao dao = new OskariLayerMetadataDao(dataSource);
-        for (String metadataId : metadataIdSet) {
-            final CSWIsoRecord csw = getMetadata(cswService, metadataId);
-            final Geometry geom = getGeometry(csw);
-            if(geom == null) {
-                // no geometry on metadata, move to next
-                log.info("Couldn't get geometry for", metadataId);
-                continue;
+        final Map<String, String> knownDateStamps = dao.findDateStamps();
+        final List<List<String>> batches = getBatches(metadataIdSet, BATCH_SIZE);
+        final AtomicInteger unchanged = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, batches.size()));
+        final CompletionService<List<OskariLayerMetadataDto>> completionService = new ExecutorCompletionService<>(executor);
+        for (List<String> batch : batches) {
+            completionService.submit(() -> getMetadata(cswService, batch, knownDateStamps, unchanged));
+        }
+        int updated = 0;
+        try {
+            // save in this thread as results come in
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    List<OskariLayerMetadataDto> list = completionService.take().get();
+                    dao.saveMetadata(list);
+                    updated += list.size();
+                } catch (ExecutionException e) {
+                    log.error(e.getCause(), "Error fetching metadata");
+                }
             }
-            final OskariLayerMetadataDto dto = new OskariLayerMetadataDto();
-            dto.metadataId  = metadataId;
-            // NOTE! wkt is WGS:84
-            dto.wkt = geom.getEnvelope().toText();
-            dto.json = csw.toJSON().toString();
-            dao.saveMetadata(dto);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while updating coverages");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
+        log.info("Metadata coverages updated:", updated, "- unchanged:", unchanged.get(), "- total:", metadataIdSet.size());
         log.info("Done with the CSW coverage update service call");
     }
 
@@ -102,6 +122,70 @@ public class CSWCoverageUpdateService extends ScheduledJob {
     }
 
 
+    static List<List<String>> getBatches(Collection<String> ids, int size) {
+        final List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(size);
+        for (String id : ids) {
+            if (batch.size() == size) {
+                batches.add(batch);
+                batch = new ArrayList<>(size);
+            }
+            batch.add(id);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private List<OskariLayerMetadataDto> getMetadata(final CSWService cswService, final List<String> metadataIds,
+                                                     final Map<String, String> knownDateStamps, final AtomicInteger unchanged) {
+        final List<CSWCoverage> coverages;
+        try {
+            coverages = cswService.getCoverages(metadataIds, knownDateStamps, PropertyUtil.getDefaultLanguage());
+        } catch (Exception e) {
+            log.warn("GetRecords request failed, trying GetRecordById for each record:", e.getMessage());
+            return getMetadataById(cswService, metadataIds);
+        }
+        final Set<String> missing = new HashSet<>(metadataIds);
+        final List<OskariLayerMetadataDto> result = new ArrayList<>();
+        for (CSWCoverage coverage : coverages) {
+            final String metadataId = coverage.getFileIdentifier();
+            missing.remove(metadataId);
+            if (!coverage.isChanged()) {
+                unchanged.incrementAndGet();
+                continue;
+            }
+            if (coverage.getEnvelope() == null) {
+                // no geometry on metadata, move to next
+                log.info("Couldn't get geometry for", metadataId);
+                continue;
+            }
+            // NOTE! wkt is WGS:84, json is the same as from GetRecordById
+            result.add(new OskariLayerMetadataDto(metadataId, coverage.getWKT(), coverage.toJSON().toString()));
+        }
+        for (String metadataId : missing) {
+            log.info("Couldn't get metadata for", metadataId);
+        }
+        return result;
+    }
+
+    private List<OskariLayerMetadataDto> getMetadataById(final CSWService cswService, final List<String> metadataIds) {
+        final List<OskariLayerMetadataDto> result = new ArrayList<>();
+        for (String metadataId : metadataIds) {
+            final CSWIsoRecord csw = getMetadata(cswService, metadataId);
+            final Geometry geom = getGeometry(csw);
+            if(geom == null) {
+                // no geometry on metadata, move to next
+                log.info("Couldn't get geometry for", metadataId);
+                continue;
+            }
+            // NOTE! wkt is WGS:84
+            result.add(new OskariLayerMetadataDto(metadataId, geom.getEnvelope().toText(), csw.toJSON().toString()));
+        }
+        return result;
+    }
+
     private CSWIsoRecord getMetadata(final CSWService cswService, final String metadataId) {
         final String language = PropertyUtil.getDefaultLanguage();
         try {
@@ -19,6 +19,7 @@ public class GetRecords {
     private static final String CSW_VERSION = "2.0.2";
     private static final String CONSTRAINT_VERSION = "1.0.0";
     public static final String DEFAULT_QUERY_TYPE = "summary";
+    public static final int DEFAULT_MAX_RECORDS = 100;
 
     private GetRecords() {}
 
@@ -31,12 +32,23 @@ public class GetRecords {
      * @return
      */
     public static String createRequest(Filter filter, String queryType) {
+        return createRequest(filter, queryType, DEFAULT_MAX_RECORDS);
+    }
+
+    /**
+     * Builds a GetRecords request payload for CSW-service with the given filters.
+     * @param filter required
+     * @param queryType one of: summary, brief, full
+     * @param maxRecords max number of records in the response
+     * @return
+     */
+    public static String createRequest(Filter filter, String queryType, int maxRecords) {
         if (filter == null) {
             throw new ServiceRuntimeException("Filter is required");
         }
         final StringWriter writer = new StringWriter();
         XMLStreamWriter xsw = getXMLWriter(writer);
-        startDocument(xsw, queryType);
+        startDocument(xsw, queryType, maxRecords);
         writeRawXMLUnsafe(xsw, writer, getFilterAsString(filter));
         endDocument(xsw);
         return writer.toString();
@@ -63,7 +75,7 @@ public class GetRecords {
      <csw:Constraint version="1.1.0">
      ...
      */
-    private static void startDocument(XMLStreamWriter xsw, String queryType) {
+    private static void startDocument(XMLStreamWriter xsw, String queryType, int maxRecords) {
         try {
             xsw.writeStartDocument();
             xsw.writeStartElement("csw", "GetRecords", CSW_URI);
@@ -76,7 +88,7 @@ public class GetRecords {
             xsw.writeAttribute("service", "CSW");
             xsw.writeAttribute("version", CSW_VERSION);
 
-            xsw.writeAttribute("maxRecords", "100");
+            xsw.writeAttribute("maxRecords", Integer.toString(maxRecords));
             xsw.writeAttribute("startPosition", "1");
 
             xsw.writeAttribute("resultType", "results"); // or "validate" or "hits"
@@ -0,0 +1,98 @@
+package fi.nls.oskari.csw.helper;
+
+import fi.nls.oskari.csw.domain.CSWCoverage;
+import fi.nls.oskari.csw.domain.CSWIsoRecord;
+import fi.nls.oskari.util.XmlHelper;
+import fi.nls.test.util.JSONTestHelper;
+import org.junit.Test;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CSWCoverageParserTest {
+
+    private static final String GET_RECORDS_RESPONSE = "/fi/nls/oskari/search/channel/GetRecords-response.xml";
+    private static final Locale LOCALE = new Locale("fi");
+
+    @Test
+    public void testCoveragesMatchFullParser() throws Exception {
+        List<CSWCoverage> coverages;
+        try (InputStream in = getClass().getResourceAsStream(GET_RECORDS_RESPONSE)) {
+            coverages = CSWCoverageParser.parse(in, LOCALE);
+        }
+        List<CSWIsoRecord> records = parseRecords();
+        assertEquals("Should find all records", records.size(), coverages.size());
+        int withCoverage = 0;
+        for (int i = 0; i < records.size(); i++) {
+            CSWIsoRecord record = records.get(i);
+            CSWCoverage coverage = coverages.get(i);
+            assertEquals(record.getFileIdentifier(), coverage.getFileIdentifier());
+            assertTrue(coverage.isChanged());
+            // same JSON is stored as with GetRecordById
+            JSONTestHelper.shouldEqual(coverage.toJSON(), record.toJSON());
+            assertEquals(record.toJSON().optString("metadataDateStamp", null), coverage.getMetadataDateStamp());
+            GeometryCollection extents = record.getIdentifications().isEmpty() ? null : record.getIdentifications().get(0).getExtents();
+            if (extents == null) {
+                assertNull(coverage.getEnvelope());
+                continue;
+            }
+            withCoverage++;
+            assertEquals("Coverage should match for " + coverage.getFileIdentifier(),
+                    extents.getEnvelope().toText(), coverage.getWKT());
+        }
+        assertTrue("Should have records with coverage", withCoverage > 0);
+    }
+
+    @Test
+    public void testUnchangedRecordsAreSkipped() throws Exception {
+        List<CSWCoverage> coverages;
+        try (InputStream in = getClass().getResourceAsStream(GET_RECORDS_RESPONSE)) {
+            coverages = CSWCoverageParser.parse(in, LOCALE);
+        }
+        CSWCoverage first = coverages.get(0);
+        CSWCoverage second = coverages.get(1);
+        Map<String, String> known = new HashMap<>();
+        known.put(first.getFileIdentifier(), first.getMetadataDateStamp());
+        known.put(second.getFileIdentifier(), "2000-01-01T00:00:00Z");
+        try (InputStream in = getClass().getResourceAsStream(GET_RECORDS_RESPONSE)) {
+            coverages = CSWCoverageParser.parse(in, known, LOCALE);
+        }
+        assertFalse("Same dateStamp", coverages.get(0).isChanged());
+        assertNull("Coverage not parsed for unchanged", coverages.get(0).getEnvelope());
+        assertNull("Record not parsed for unchanged", coverages.get(0).getRecord());
+        assertTrue("Different dateStamp", coverages.get(1).isChanged());
+        assertEquals(second.getWKT(), coverages.get(1).getWKT());
+    }
+
+    @Test
+    public void testDateStampIsNormalized() {
+        assertEquals("2019-03-12T14:05Z", CSWCoverageParser.normalizeDateStamp("2019-03-12T14:05:33"));
+        assertEquals("2018-10-17T08:27Z", CSWCoverageParser.normalizeDateStamp("2018-10-17T08:27:19.180Z"));
+        assertNull("Dates are not parsed by CSWISORecordParser either", CSWCoverageParser.normalizeDateStamp("2019-03-12"));
+        assertNull(CSWCoverageParser.normalizeDateStamp(null));
+    }
+
+    private List<CSWIsoRecord> parseRecords() throws Exception {
+        DocumentBuilderFactory dbf = XmlHelper.newDocumentBuilderFactory();
+        dbf.setNamespaceAware(true);
+        Document doc;
+        try (InputStream in = getClass().getResourceAsStream(GET_RECORDS_RESPONSE)) {
+            doc = dbf.newDocumentBuilder().parse(in);
+        }
+        CSWISORecordParser parser = new CSWISORecordParser();
+        List<CSWIsoRecord> list = new ArrayList<>();
+        NodeList nodes = doc.getElementsByTagNameNS("*", "MD_Metadata");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            list.add(parser.parse(node, LOCALE, null));
+        }
+        return list;
+    }
+}
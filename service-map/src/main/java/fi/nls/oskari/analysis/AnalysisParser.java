@@ -64,6 +64,9 @@ public class AnalysisParser {
     private static final String ANALYSIS_BASELAYER_ID = "analysis.baselayer.id";
 
     private static final String ANALYSIS_RENDERING_ELEMENT = "analysis.rendering.element";
+    private static final String ANALYSIS_INTERSECT_SPATIAL_INDEX = "analysis.intersect.spatialIndex";
+    private static final String ANALYSIS_ZONESECTOR_QUADRANT_SEGMENTS = "analysis.zonesector.quadrantSegments";
+    private static final String ANALYSIS_ZONESECTOR_PRECISION_SCALE = "analysis.zonesector.precisionScale";
     private static final String ANALYSIS_WPS_ELEMENT_LOCALNAME = "analysis_data";
     private static final String ANALYSIS_PROPERTY_NAME = "analysis_id";
     private static final String WPS_INPUT_TYPE = "wpsInputType";
@@ -118,6 +121,12 @@ public class AnalysisParser {
     final String userlayerBaseLayerId = PropertyUtil.get(USERLAYER_BASELAYER_ID);
     final String analysisRenderingUrl = AnalysisHelper.getAnalysisRenderingUrl(); //PropertyUtil.get(ANALYSIS_RENDERING_URL);
     final String analysisRenderingElement = PropertyUtil.get(ANALYSIS_RENDERING_ELEMENT);
+    // intersect and spatial join are computed with a spatial index in GeoServer when enabled,
+    // the spatialIndex input is only sent when enabled since older versions of the process don't accept it
+    final boolean intersectSpatialIndex = PropertyUtil.getOptional(ANALYSIS_INTERSECT_SPATIAL_INDEX, false);
+    // zone buffer accuracy for gs:ZoneSectorFeatureCollection, process defaults are used if not configured
+    final String zoneSectorQuadrantSegments = PropertyUtil.get(ANALYSIS_ZONESECTOR_QUADRANT_SEGMENTS, "");
+    final String zoneSectorPrecisionScale = PropertyUtil.get(ANALYSIS_ZONESECTOR_PRECISION_SCALE, "");
 
     private PermissionService getPermissionService() {
         return OskariComponentManager.getComponentOfType(PermissionService.class);
@@ -805,7 +814,9 @@ public class AnalysisParser {
 
             method.setDistance(params.optString(JSON_KEY_AREADISTANCE));
             method.setZone_count(params.optString(JSON_KEY_AREACOUNT));
-            method.setSector_count(params.optString(JSON_KEY_SECTORCOUNT));
+            method.setSector_count(getSectorCount(params));
+            method.setQuadrantSegments(zoneSectorQuadrantSegments);
+            method.setPrecisionScale(zoneSectorPrecisionScale);
 
             method.setGeojson(geojson);
 
@@ -816,6 +827,27 @@ public class AnalysisParser {
         return method;
     }
 
+    /**
+     * Sector count is used as an array size in the WPS process so negative values are rejected
+     * @param methodParams method parameters from the front
+     * @return sector count or empty string if not given
+     * @throws ServiceException if the sector count is not a non-negative integer
+     */
+    static String getSectorCount(JSONObject methodParams) throws ServiceException {
+        final String sectorCount = methodParams.optString(JSON_KEY_SECTORCOUNT).trim();
+        if (sectorCount.isEmpty()) {
+            return sectorCount;
+        }
+        try {
+            if (Integer.parseInt(sectorCount) >= 0) {
+                return sectorCount;
+            }
+        } catch (NumberFormatException ignored) {
+            // handled below
+        }
+        throw new ServiceException("Invalid " + JSON_KEY_SECTORCOUNT + ": " + sectorCount);
+    }
+
     private void parseCommonParams(OskariLayer layer, AnalysisMethodParams params, String baseUrl) {
         params.setOutputFormat(DEFAULT_OUTPUT_FORMAT);
         params.setSrsName(getSRS(layer));
@@ -921,6 +953,7 @@ public class AnalysisParser {
             OskariLayer lc, OskariLayer lc2,
             JSONObject json, String gjson, String gjson2, String baseUrl) throws ServiceException {
         IntersectMethodParams method = new IntersectMethodParams();
+        method.setSpatialIndex(intersectSpatialIndex);
 
         try {
 
@@ -954,6 +987,7 @@ public class AnalysisParser {
             OskariLayer lc, OskariLayer lc2,
             JSONObject json, String gjson, String gjson2, String baseUrl) throws ServiceException {
         IntersectJoinMethodParams method = new IntersectJoinMethodParams();
+        method.setSpatialIndex(intersectSpatialIndex);
 
         try {
 
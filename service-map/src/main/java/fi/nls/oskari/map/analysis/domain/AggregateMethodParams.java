@@ -16,6 +16,7 @@ public class AggregateMethodParams extends AnalysisMethodParams {
     private final String analysisMethodTemplate2 = "analysis2analysis-layer-wps-aggregate.xml";
     private final String analysisMethodTemplate3 = "analysis2geojson-layer-wps-aggregate.xml";
     private final String bboxAggreFilterTemplate = "<ogc:Filter><ogc:And><ogc:BBOX><ogc:PropertyName>{geom}</ogc:PropertyName><gml:Envelope srsDimension=\"2\" srsName=\"{srsName}\"><gml:lowerCorner>{x_lower} {y_lower}</gml:lowerCorner><gml:upperCorner>{x_upper} {y_upper}</gml:upperCorner></gml:Envelope></ogc:BBOX></ogc:And></ogc:Filter>";
+    private final String getFeatureTemplate = "<wfs:GetFeature service=\"WFS\" version=\"{version}\" maxFeatures=\"{maxFeatures}\" outputFormat=\"application/json\" xmlns:wfs=\"http://www.opengis.net/wfs\" xmlns:ogc=\"http://www.opengis.net/ogc\" xmlns:gml=\"http://www.opengis.net/gml\"><wfs:Query typeName=\"{typeName}\" srsName=\"{srsName}\">{filter}</wfs:Query></wfs:GetFeature>";
     private final String functionsTemplate = "<wps:Input><ows:Identifier>function</ows:Identifier><wps:Data><wps:LiteralData>{functions}</wps:LiteralData></wps:Data></wps:Input>";
 
     public AggregateMethodParams() {
@@ -124,6 +125,22 @@ public class AggregateMethodParams extends AnalysisMethodParams {
         return doc;
     }
 
+    /**
+     * WFS GetFeature request for the input features of the aggregate. The no data filters are not
+     * included as the no data values are counted and skipped while aggregating (see AggregateCalculator).
+     * @param version WFS version to use
+     * @return GetFeature request body
+     */
+    public String getWFSGetFeature(String version) {
+        String request = getFeatureTemplate;
+        request = request.replace(VERSION, version);
+        request = request.replace(MAXFEATURES, this.getMaxFeatures());
+        request = request.replace(TYPENAME, this.getTypeName());
+        request = request.replace(SRSNAME, this.getSrsName());
+        request = request.replace(FILTER, this.getWfsFilter1());
+        return request;
+    }
+
     private String buildAggreFunctions() {
         String aggre_functions = "";
         // Build WPS functions section
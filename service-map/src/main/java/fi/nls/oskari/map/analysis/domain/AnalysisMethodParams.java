@@ -50,6 +50,8 @@ public abstract class AnalysisMethodParams {
     public final String GEOJSONFEATURES = "{geoJsonFeatures}";
     public final String CLEAN_CHARS = "(\\r|\\n)";
     public final String FILTER_END ="</ogc:And></ogc:Filter>";
+    public final String SPATIAL_INDEX = "{spatialIndex}";
+    private final String spatialIndexInputTemplate = "<wps:Input><ows:Identifier>spatialIndex</ows:Identifier><wps:Data><wps:LiteralData>true</wps:LiteralData></wps:Data></wps:Input>";
 
     public final String REFERENCE_TYPE_WFS = "wfs";
     public final String REFERENCE_TYPE_GS = "gs_vector";
@@ -82,6 +84,7 @@ public abstract class AnalysisMethodParams {
     private String responsePrefix = "feature";
     private String noDataValue = null;
     private boolean doNoDataCount = false;
+    private boolean spatialIndex = false;
 
     public String getMethod() {
         return method;
@@ -306,6 +309,26 @@ public abstract class AnalysisMethodParams {
         this.doNoDataCount = doNoDataCount;
     }
 
+    public boolean isSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Join the inputs in memory with a spatial index in GeoServer (gs:IntersectionFeatureCollection2)
+     * @param spatialIndex
+     */
+    public void setSpatialIndex(boolean spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * WPS input for templates with {spatialIndex} placeholder
+     * @return input enabling the spatial index or empty string if not enabled
+     */
+    protected String getSpatialIndexInput() {
+        return spatialIndex ? spatialIndexInputTemplate : "";
+    }
+
     public String getGeojson() {
         if(geojson == null) return "";
         return geojson;
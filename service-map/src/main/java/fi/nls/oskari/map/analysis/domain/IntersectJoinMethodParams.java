@@ -217,6 +217,8 @@ public class IntersectJoinMethodParams extends AnalysisMethodParams {
 
         // Intersection mode
         doctemp = doctemp.replace(INTERSECTIONMODE, this.getIntersection_mode());
+        // Spatial index join
+        doctemp = doctemp.replace(SPATIAL_INDEX, this.getSpatialIndexInput());
 
 
         Document doc = this.getDocument2(doctemp);
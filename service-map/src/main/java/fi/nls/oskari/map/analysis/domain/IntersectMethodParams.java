@@ -207,6 +207,8 @@ public class IntersectMethodParams extends AnalysisMethodParams {
         doctemp = doctemp.replace(SRSNAME, this.getSrsName());
         // Intersection mode
         doctemp = doctemp.replace(INTERSECTIONMODE, this.getIntersection_mode());
+        // Spatial index join
+        doctemp = doctemp.replace(SPATIAL_INDEX, this.getSpatialIndexInput());
 
         Document doc = this.getDocument2(doctemp);
 
@@ -21,11 +21,16 @@ public class ZoneSectorMethodParams extends AnalysisMethodParams {
     // distance from feature attribute field
     private final String ZONE_COUNT = "{zone_count}";
     private final String SECTOR_COUNT = "{sector_count}";
+    private final String BUFFER_PARAMS = "{bufferParams}";
+    private final String literalInputTemplate = "<wps:Input><ows:Identifier>%s</ows:Identifier><wps:Data><wps:LiteralData>%s</wps:LiteralData></wps:Data></wps:Input>";
     // private final String HREF = "{href}";
 
     private String distance = "";
     private String zone_count = "";
     private String sector_count = "";
+    // optional, older versions of the process don't accept these inputs
+    private String quadrantSegments = "";
+    private String precisionScale = "";
 
     public String getDistance() {
         return distance;
@@ -52,6 +57,41 @@ public class ZoneSectorMethodParams extends AnalysisMethodParams {
         this.sector_count = sector_count;
     }
 
+    public String getQuadrantSegments() {
+        return quadrantSegments;
+    }
+
+    /**
+     * Number of segments used to approximate a quarter circle in zone buffers
+     * @param quadrantSegments empty to use the process default
+     */
+    public void setQuadrantSegments(String quadrantSegments) {
+        this.quadrantSegments = quadrantSegments == null ? "" : quadrantSegments.trim();
+    }
+
+    public String getPrecisionScale() {
+        return precisionScale;
+    }
+
+    /**
+     * Scale of the fixed precision model for zone geometries (e.g. 1000 = millimeters for metric projections)
+     * @param precisionScale empty to use floating precision
+     */
+    public void setPrecisionScale(String precisionScale) {
+        this.precisionScale = precisionScale == null ? "" : precisionScale.trim();
+    }
+
+    private String getBufferParamsInput() {
+        StringBuilder inputs = new StringBuilder();
+        if (!quadrantSegments.isEmpty()) {
+            inputs.append(String.format(literalInputTemplate, "quadrant segments", quadrantSegments));
+        }
+        if (!precisionScale.isEmpty()) {
+            inputs.append(String.format(literalInputTemplate, "precision scale", precisionScale));
+        }
+        return inputs.toString();
+    }
+
     public ZoneSectorMethodParams() {
         setMethod(ZONESECTOR);
     }
@@ -88,6 +128,7 @@ public class ZoneSectorMethodParams extends AnalysisMethodParams {
         doctemp = doctemp.replace(DISTANCE, this.getDistance());
         doctemp = doctemp.replace(ZONE_COUNT, this.getZone_count());
         doctemp = doctemp.replace(SECTOR_COUNT, this.getSector_count());
+        doctemp = doctemp.replace(BUFFER_PARAMS, this.getBufferParamsInput());
 
         Document doc = this.getDocument2(doctemp);
 
@@ -0,0 +1,331 @@
+package fi.nls.oskari.map.analysis.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes aggregate analysis results for all requested fields in one pass over the features.
+ * Replaces running the WPS vec:Aggregate process separately for each field and once more for
+ * counting no data values of each field.
+ *
+ * The result is written in the same format as the combined WPS responses so it can be parsed
+ * with AnalysisParser.parseAggregateResults().
+ */
+public class AggregateCalculator {
+
+    public static final String FUNC_COUNT = "Count";
+    public static final String FUNC_SUM = "Sum";
+    public static final String FUNC_MIN = "Min";
+    public static final String FUNC_MAX = "Max";
+    public static final String FUNC_AVERAGE = "Average";
+    public static final String FUNC_MEDIAN = "Median";
+    public static final String FUNC_STDDEV = "StdDev";
+    // WPS names the result of StdDev differently
+    private static final String RESULT_STDDEV = "StandardDeviation";
+    private static final List<String> SUPPORTED_FUNCTIONS = Arrays.asList(
+            FUNC_COUNT, FUNC_SUM, FUNC_MIN, FUNC_MAX, FUNC_AVERAGE, FUNC_MEDIAN, FUNC_STDDEV);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Map<String, FieldAggregate> fields = new LinkedHashMap<>();
+    private final List<String> functions;
+    private final String noDataValue;
+    private final double noDataNumber;
+    private final boolean countNoData;
+
+    /**
+     * @param functions aggregate functions for numeric fields (text fields are only counted)
+     * @param noDataValue value that is counted as no data and skipped in aggregates, null if not used
+     * @param countNoData true to include the count of no data values for numeric fields
+     */
+    public AggregateCalculator(List<String> functions, String noDataValue, boolean countNoData) {
+        this.functions = functions;
+        this.noDataValue = noDataValue == null ? null : noDataValue.trim();
+        this.noDataNumber = parseNumber(this.noDataValue);
+        this.countNoData = countNoData;
+    }
+
+    /**
+     * Returns true if all the functions can be computed by the calculator.
+     */
+    public static boolean isSupported(List<String> functions) {
+        return functions != null && SUPPORTED_FUNCTIONS.containsAll(functions);
+    }
+
+    public void addField(String name, boolean numeric) {
+        fields.put(name, new FieldAggregate(numeric, functions.contains(FUNC_MEDIAN)));
+    }
+
+    /**
+     * Reads features from GeoJSON FeatureCollection and adds the property values of aggregated fields.
+     * The stream is parsed incrementally so the features are not kept in memory.
+     * @param geojson
+     * @return number of features processed
+     * @throws IOException if the input is not a GeoJSON FeatureCollection
+     */
+    public int addFeatures(InputStream geojson) throws IOException {
+        int featureCount = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(geojson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected GeoJSON object");
+            }
+            boolean hasFeatures = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("features".equals(name) && token == JsonToken.START_ARRAY) {
+                    hasFeatures = true;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readFeature(parser);
+                        featureCount++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!hasFeatures) {
+                throw new IOException("Expected GeoJSON FeatureCollection");
+            }
+        }
+        return featureCount;
+    }
+
+    private void readFeature(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (!"properties".equals(name) || token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                FieldAggregate field = fields.get(parser.getCurrentName());
+                token = parser.nextToken();
+                if (field == null || token == JsonToken.VALUE_NULL) {
+                    parser.skipChildren();
+                } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    addValue(field, parser.getText(), parser.getDoubleValue(), token == JsonToken.VALUE_NUMBER_INT);
+                } else if (token.isScalarValue()) {
+                    addValue(field, parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a property value for a field
+     * @param name field name
+     * @param value value as text, null values are skipped like in WPS aggregate
+     */
+    public void addValue(String name, String value) {
+        FieldAggregate field = fields.get(name);
+        if (field == null || value == null) {
+            return;
+        }
+        addValue(field, value);
+    }
+
+    private void addValue(FieldAggregate field, String text) {
+        if (!field.numeric) {
+            field.count++;
+            return;
+        }
+        double value = parseNumber(text);
+        if (Double.isNaN(value) && !isNoData(text, value)) {
+            // not a number in numeric field, skip like a missing value
+            return;
+        }
+        addValue(field, text, value, isIntegral(text));
+    }
+
+    private void addValue(FieldAggregate field, String text, double value, boolean integral) {
+        if (!field.numeric) {
+            field.count++;
+            return;
+        }
+        if (isNoData(text, value)) {
+            field.noDataCount++;
+            return;
+        }
+        field.add(value, integral);
+    }
+
+    private boolean isNoData(String text, double value) {
+        if (noDataValue == null) {
+            return false;
+        }
+        // no data filter was PropertyIsEqualTo with matchCase="false" so compare numbers as numbers
+        return value == noDataNumber || noDataValue.equalsIgnoreCase(text.trim());
+    }
+
+    private static double parseNumber(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isIntegral(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isDigit(c) && c != '-' && c != '+' && c != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the results in the same format as the WPS aggregate responses combined in CreateAnalysisLayerHandler:
+     * <fieldResult><field>name</field><AggregationResults>...</AggregationResults><fieldNoDataCount>...</fieldNoDataCount></fieldResult>
+     */
+    public String getResults() {
+        StringBuilder sb = new StringBuilder();
+        fields.forEach((name, field) -> {
+            sb.append("<fieldResult>");
+            sb.append("<field>").append(escape(name)).append("</field>");
+            if (!field.numeric) {
+                sb.append("<AggregationResults>");
+                appendValue(sb, FUNC_COUNT, Long.toString(field.count));
+                sb.append("</AggregationResults>");
+            } else {
+                if (!functions.isEmpty()) {
+                    sb.append("<AggregationResults>");
+                    for (String function : functions) {
+                        appendResult(sb, function, field);
+                    }
+                    sb.append("</AggregationResults>");
+                }
+                if (countNoData) {
+                    sb.append("<fieldNoDataCount><AggregationResults>");
+                    appendValue(sb, FUNC_COUNT, Long.toString(field.noDataCount));
+                    sb.append("</AggregationResults></fieldNoDataCount>");
+                }
+            }
+            sb.append("</fieldResult>");
+        });
+        return sb.toString();
+    }
+
+    private void appendResult(StringBuilder sb, String function, FieldAggregate field) {
+        if (FUNC_COUNT.equals(function)) {
+            appendValue(sb, FUNC_COUNT, Long.toString(field.count));
+            return;
+        }
+        if (field.count == 0) {
+            // WPS leaves out results that can't be computed without values
+            return;
+        }
+        switch (function) {
+            case FUNC_SUM:
+                appendValue(sb, FUNC_SUM, format(field.sum, field.integral));
+                break;
+            case FUNC_MIN:
+                appendValue(sb, FUNC_MIN, format(field.min, field.integral));
+                break;
+            case FUNC_MAX:
+                appendValue(sb, FUNC_MAX, format(field.max, field.integral));
+                break;
+            case FUNC_AVERAGE:
+                appendValue(sb, FUNC_AVERAGE, Double.toString(field.sum / field.count));
+                break;
+            case FUNC_MEDIAN:
+                appendValue(sb, FUNC_MEDIAN, format(field.getMedian(), false));
+                break;
+            case FUNC_STDDEV:
+                appendValue(sb, RESULT_STDDEV, Double.toString(field.getStandardDeviation()));
+                break;
+            default:
+        }
+    }
+
+    private static void appendValue(StringBuilder sb, String name, String value) {
+        sb.append('<').append(name).append('>').append(value).append("</").append(name).append('>');
+    }
+
+    private static String format(double value, boolean integral) {
+        if (integral && value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Accumulates values of a single field
+     */
+    private static class FieldAggregate {
+        private final boolean numeric;
+        private long count = 0;
+        private long noDataCount = 0;
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        // running mean and sum of squared differences (Welford) for standard deviation
+        private double mean = 0;
+        private double m2 = 0;
+        private boolean integral = true;
+        // values are only kept when median is requested
+        private double[] values;
+
+        FieldAggregate(boolean numeric, boolean keepValues) {
+            this.numeric = numeric;
+            if (numeric && keepValues) {
+                values = new double[64];
+            }
+        }
+
+        void add(double value, boolean isIntegral) {
+            count++;
+            sum += value;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            integral &= isIntegral;
+            if (values != null) {
+                if (count > values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[(int) count - 1] = value;
+            }
+        }
+
+        double getMedian() {
+            int size = (int) count;
+            double[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            if (size % 2 == 1) {
+                return sorted[size / 2];
+            }
+            return (sorted[size / 2 - 1] + sorted[size / 2]) / 2;
+        }
+
+        double getStandardDeviation() {
+            // population standard deviation like the GeoTools visitor used by WPS
+            return Math.sqrt(m2 / count);
+        }
+    }
+}
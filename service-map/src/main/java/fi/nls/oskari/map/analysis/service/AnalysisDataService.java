@@ -9,6 +9,7 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.analysis.domain.*;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
+import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.map.layer.formatters.LayerJSONFormatterANALYSIS;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.ConversionHelper;
@@ -17,16 +18,27 @@ import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 public class AnalysisDataService {
     private static final String ANALYSIS_BASELAYER_PROPERTY = "analysis.baselayer.id";
     private static final int ANALYSIS_BASELAYER_ID = PropertyUtil.getOptional(ANALYSIS_BASELAYER_PROPERTY, -1);
     private static final String ANALYSIS_INPUT_TYPE_GS_VECTOR = "gs_vector";
+    // analysis_data rows are inserted directly to the database unless configured to use WFS-T through GeoServer
+    private static final boolean STORE_WITH_WFST = PropertyUtil.getOptional("analysis.store.wfst", false);
 
     public static final String ANALYSIS_GEOMETRY_FIELD = "geometry";
 
@@ -61,12 +73,43 @@ public class AnalysisDataService {
         return FORMATTER.getJSON(baseLayer,layer, srs, lang);
     }
 
+    /**
+     * Reads the WPS feature collection to analysis_data rows, populates the fields list
+     */
+    private interface FeatureSetReader {
+        int read(List<String> fields, String geometryProperty, Consumer<Map<String, Object>> rows) throws ServiceException;
+    }
+
     public Analysis storeAnalysisData(final String featureset,
             AnalysisLayer analysislayer, String json, User user) throws ServiceException {
+        final AnalysisMethodParams params = analysislayer.getAnalysisMethodParams();
+        return storeAnalysisData(() -> featureset,
+                (fields, geometryProperty, rows) -> transformationService.wpsFeatureCollectionToRows(featureset,
+                        fields, analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix(), rows),
+                analysislayer, json, user);
+    }
 
-        final String wfsURL = PropertyUtil.get("geoserver.wfs.url");
-        final String wpsUser = PropertyUtil.get("geoserver.wms.user");
-        final String wpsUserPass = PropertyUtil.get("geoserver.wms.pass");
+    /**
+     * Same as storeAnalysisData(String, ...) but streams the WPS feature collection from a file
+     * (see AnalysisWebProcessingService.requestFeatureSetToFile()). The file is not removed.
+     */
+    public Analysis storeAnalysisData(final File featureset,
+            AnalysisLayer analysislayer, String json, User user) throws ServiceException {
+        final AnalysisMethodParams params = analysislayer.getAnalysisMethodParams();
+        return storeAnalysisData(() -> new String(Files.readAllBytes(featureset.toPath()), StandardCharsets.UTF_8),
+                (fields, geometryProperty, rows) -> {
+                    try (InputStream in = new BufferedInputStream(new FileInputStream(featureset))) {
+                        return transformationService.wpsFeatureCollectionToRows(in, fields,
+                                analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix(), rows);
+                    } catch (IOException e) {
+                        throw new ServiceException("Unable to read WPS feature collection", e);
+                    }
+                },
+                analysislayer, json, user);
+    }
+
+    private Analysis storeAnalysisData(final Callable<String> featureset, final FeatureSetReader reader,
+            AnalysisLayer analysislayer, String json, User user) {
 
         final Analysis analysis = new Analysis();
         WFSLayerOptions wfsOpts = analysis.getWFSLayerOptions();
@@ -86,37 +129,27 @@ public class AnalysisDataService {
             log.debug("Adding analysis row", analysis);
             analysisService.insertAnalysisRow(analysis);
 
-            // Add analysis_data rows via WFS-T
-            // ----------------------------------
-
-            // Convert featureset (wps) to wfs-t
+            // Add analysis_data rows
             // ----------------------------------
             final AnalysisMethodParams params = analysislayer.getAnalysisMethodParams();
             final String geometryProperty = transformationService.stripNamespace(params.getGeom());
-            // FIXME: wpsToWfst populates fields list AND returns the wfst
-            // payload
+            // FIXME: the transformation populates fields list
             // this should be refactored so it returns an object with the fields
-            // list and the payload
-            // and remove the fields parameter from call
-            List<String> fields = new ArrayList<String>();
-            final String wfst = transformationService.wpsFeatureCollectionToWfst(featureset, analysis.getUuid(),
-                    analysis.getId(), fields, analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix());
-            log.debug("Produced WFS-T:\n" + wfst);
-
-            final HttpURLConnection conn = IOHelper.getConnection(wfsURL, wpsUser, wpsUserPass);
-            IOHelper.post(conn, "application/xml", wfst);
-            final String response = IOHelper.readString(conn.getInputStream());
-            log.debug("Posted WFS-T, got", response);
-
-            // If exceptions, return null
-            // Check, if exception result set
-            if (response.indexOf("ows:Exception") > -1) {
-                return null;
-            }
-
-            // Check, if any inserted data
-            if (response.indexOf("totalInserted>0") > -1) {
-                return null;
+            // list and remove the fields parameter from call
+            final List<String> fields = new ArrayList<String>();
+            if (STORE_WITH_WFST) {
+                if (!storeWithWFST(featureset.call(), analysis, analysislayer, fields, geometryProperty)) {
+                    return null;
+                }
+            } else {
+                // Stream features directly to analysis_data without DOM and WFS-T round trip through GeoServer
+                final int srid = ProjectionHelper.getSRID(params.getSrsName());
+                int count = analysisService.insertAnalysisData(analysis, srid,
+                        rows -> reader.read(fields, geometryProperty, rows));
+                log.debug("Stored", count, "analysis features");
+                if (count == 0) {
+                    return null;
+                }
             }
 
             // Set fields and field order, if fields are known before analysis
@@ -124,24 +157,7 @@ public class AnalysisDataService {
 
             // Update col mapping and WPS layer Id into analysis table
             // ---------------------------------------
-            // if analysis in analysis - fix field names to original
-            if (analysislayer.getInputType().equals(
-                    ANALYSIS_INPUT_TYPE_GS_VECTOR)) {
-                if (analysislayer.getInputAnalysisId() != null) {
-                    fields = this.SwapAnalysisInAnalysisFields(fields,
-                            analysislayer.getInputAnalysisId());
-                }
-            }
-            // if analysis in analysis and second layer is analysislayer - fix field names to original
-            fields = this.SwapSecondAnalysisFieldNames(fields, analysislayer);
-
-            // Reorder  columns for difference method
-            fields = this.FitFixedFieldOrder4Difference(fields, analysislayer);
-
-            // Localize  Spatial join aggregate fields
-            fields = this.LocalizeFields4spAggregate(fields, analysislayer);
-
-            analysis.setCols(fields);
+            analysis.setCols(getAnalysisCols(fields, analysislayer));
 
             log.debug("Update analysis row", analysis);
             long updrows = analysisService.updateAnalysisCols(analysis);
@@ -158,6 +174,59 @@ public class AnalysisDataService {
         return analysis;
     }
 
+    /**
+     * Fixes the field names and order of the stored analysis
+     */
+    private List<String> getAnalysisCols(List<String> fields, AnalysisLayer analysislayer) {
+        // if analysis in analysis - fix field names to original
+        if (analysislayer.getInputType().equals(
+                ANALYSIS_INPUT_TYPE_GS_VECTOR)) {
+            if (analysislayer.getInputAnalysisId() != null) {
+                fields = this.SwapAnalysisInAnalysisFields(fields,
+                        analysislayer.getInputAnalysisId());
+            }
+        }
+        // if analysis in analysis and second layer is analysislayer - fix field names to original
+        fields = this.SwapSecondAnalysisFieldNames(fields, analysislayer);
+
+        // Reorder  columns for difference method
+        fields = this.FitFixedFieldOrder4Difference(fields, analysislayer);
+
+        // Localize  Spatial join aggregate fields
+        return this.LocalizeFields4spAggregate(fields, analysislayer);
+    }
+
+    /**
+     * Adds analysis_data rows with a WFS-T insert through GeoServer.
+     * @return false if GeoServer responded with an exception or didn't insert any features
+     */
+    private boolean storeWithWFST(final String featureset, final Analysis analysis, final AnalysisLayer analysislayer,
+                                  final List<String> fields, final String geometryProperty) throws Exception {
+        final String wfsURL = PropertyUtil.get("geoserver.wfs.url");
+        final String wpsUser = PropertyUtil.get("geoserver.wms.user");
+        final String wpsUserPass = PropertyUtil.get("geoserver.wms.pass");
+
+        // Convert featureset (wps) to wfs-t
+        // ----------------------------------
+        final AnalysisMethodParams params = analysislayer.getAnalysisMethodParams();
+        final String wfst = transformationService.wpsFeatureCollectionToWfst(featureset, analysis.getUuid(),
+                analysis.getId(), fields, analysislayer.getFieldtypeMap(), geometryProperty, params.getResponsePrefix());
+        log.debug("Produced WFS-T:\n" + wfst);
+
+        final HttpURLConnection conn = IOHelper.getConnection(wfsURL, wpsUser, wpsUserPass);
+        IOHelper.post(conn, "application/xml", wfst);
+        final String response = IOHelper.readString(conn.getInputStream());
+        log.debug("Posted WFS-T, got", response);
+
+        // Check, if exception result set
+        if (response.indexOf("ows:Exception") > -1) {
+            return false;
+        }
+
+        // Check, if any inserted data
+        return response.indexOf("totalInserted>0") == -1;
+    }
+
     public Analysis getAnalysisById(long id) {
         return analysisService.getAnalysisById(id);
     }
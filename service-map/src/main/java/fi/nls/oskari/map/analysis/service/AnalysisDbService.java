@@ -9,6 +9,8 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public abstract class AnalysisDbService extends OskariComponent {
 
@@ -24,5 +26,18 @@ public abstract class AnalysisDbService extends OskariComponent {
         public abstract void mergeAnalysis(final Analysis analysis, final List<Long> ids) throws ServiceException;
         public abstract long updatePublisherName(final long id, final String uuid, final String name);
 
+        /**
+         * Inserts analysis_data rows of the analysis in batches as the producer passes them.
+         * @param analysis analysis the rows belong to
+         * @param srid SRID of the geometries if not specified in the GML
+         * @param producer writes the rows (t1..t8, n1..n8 and geometry as GML) to the given consumer
+         * @return number of inserted rows
+         */
+        public abstract int insertAnalysisData(final Analysis analysis, final int srid, final AnalysisDataProducer producer) throws ServiceException;
+
         public abstract SimpleFeatureCollection getFeatures(int layerId, ReferencedEnvelope bbox, CoordinateReferenceSystem crs) throws ServiceException;
+
+        public interface AnalysisDataProducer {
+                void produce(Consumer<Map<String, Object>> rows) throws ServiceException;
+        }
 }
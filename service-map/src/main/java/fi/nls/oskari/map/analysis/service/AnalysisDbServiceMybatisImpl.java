@@ -12,7 +12,10 @@ import fi.nls.oskari.map.geometry.WKTHelper;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.PropertyUtil;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -45,6 +48,8 @@ public class AnalysisDbServiceMybatisImpl extends AnalysisDbService {
     protected static final String DATASOURCE_ANALYSIS = "analysis";
 
     private static final Logger log = LogFactory.getLogger(AnalysisDbServiceMybatisImpl.class);
+    private static final String ANALYSIS_MYBATIS_BATCH_SIZE = "analysis.mybatis.batch.size";
+    private final int batchSize = PropertyUtil.getOptional(ANALYSIS_MYBATIS_BATCH_SIZE, 1000);
     private final Cache<Analysis> cache;
 
     private SqlSessionFactory factory = null;
@@ -291,6 +296,37 @@ public class AnalysisDbServiceMybatisImpl extends AnalysisDbService {
         }
     }
 
+    /**
+     * Inserts analysis_data rows with a batch executor, flushing every analysis.mybatis.batch.size rows.
+     * The rows are committed only if all of them were inserted.
+     */
+    public int insertAnalysisData(final Analysis analysis, final int srid, final AnalysisDataProducer producer) throws ServiceException {
+        final int nativeSrid = getSRID(PropertyUtil.get("oskari.native.srs", "EPSG:3857"));
+        try (SqlSession session = factory.openSession(ExecutorType.BATCH)) {
+            final AnalysisMapper mapper = session.getMapper(AnalysisMapper.class);
+            final MutableInt count = new MutableInt(0);
+            producer.produce(row -> {
+                row.put("analysis_id", analysis.getId());
+                row.put("uuid", analysis.getUuid());
+                row.put("srid", srid);
+                row.put("nativeSrid", nativeSrid);
+                mapper.insertAnalysisData(row);
+                count.increment();
+                // Flushes batch statements and clears local session cache
+                if (count.intValue() % batchSize == 0) {
+                    session.flushStatements();
+                    session.clearCache();
+                }
+            });
+            session.flushStatements();
+            session.commit();
+            log.debug("Stored", count, "rows for analysis:", analysis.getId());
+            return count.intValue();
+        } catch (PersistenceException e) {
+            throw new ServiceException("Failed to store analysis data", e);
+        }
+    }
+
     /**
      * Updates a analysis publisher screenName
      *
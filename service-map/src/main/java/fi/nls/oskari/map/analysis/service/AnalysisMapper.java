@@ -22,6 +22,7 @@ public interface AnalysisMapper {
     void deleteAnalysisDataById(final long id);
     void updatePublisherName(final Map<String, Object> params);
     void mergeAnalysisData(final Analysis analysis);
+    void insertAnalysisData(final Map<String, Object> row);
 
 
     @ResultMap("AnalysisDataResult")
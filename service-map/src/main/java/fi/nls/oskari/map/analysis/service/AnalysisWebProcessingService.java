@@ -3,6 +3,7 @@ package fi.nls.oskari.map.analysis.service;
 import fi.nls.oskari.analysis.AnalysisParser;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.analysis.domain.AggregateMethodParams;
 import fi.nls.oskari.map.analysis.domain.AnalysisLayer;
 import fi.nls.oskari.map.analysis.domain.AnalysisMethodParams;
 import fi.nls.oskari.map.analysis.domain.DifferenceMethodParams;
@@ -23,12 +24,17 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class AnalysisWebProcessingService {
 
@@ -41,6 +47,7 @@ public class AnalysisWebProcessingService {
     private static final String GEOJSON_PROPERTIES = "properties";
     private static final String DELTA_FIELD_NAME = "Muutos_t2-t1";
     private static final Double NON_AUTHORIZED = -111111111.0D;
+    private static final String NUMERIC_FIELD_TYPE = "numeric";
 
     /**
      * Get WPS results as wfs FeatureCollection
@@ -60,6 +67,59 @@ public class AnalysisWebProcessingService {
         }
     }
 
+    /**
+     * Computes aggregate analysis for all fields of the analysis layer with a single pass over the input features
+     * instead of running WPS aggregate process for each field. The input features are requested once from the
+     * WFS-service of the layer (or GeoServer for user content) or read from the GeoJSON given as input.
+     * @param analysisLayer aggregate analysis params
+     * @return aggregate results in the same format as the combined WPS responses
+     * @throws ServiceException if the input can't be aggregated without WPS
+     */
+    public String requestAggregateFeatureSet(final AnalysisLayer analysisLayer) throws ServiceException {
+        final AggregateMethodParams params = (AggregateMethodParams) analysisLayer.getAnalysisMethodParams();
+        final List<String> functions = analysisLayer.getAggreFunctions();
+        if (!AggregateCalculator.isSupported(functions)) {
+            throw new ServiceException("Unsupported aggregate functions: " + functions);
+        }
+        final AggregateCalculator calculator = new AggregateCalculator(functions,
+                params.getNoDataValue(), analysisLayer.isNodataCount());
+        final Map<String, String> fieldTypes = analysisLayer.getFieldtypeMap();
+        for (String field : analysisLayer.getFields()) {
+            calculator.addField(field, NUMERIC_FIELD_TYPE.equals(fieldTypes.get(field)));
+        }
+
+        final String inputType = params.getWps_reference_type();
+        try {
+            if (params.INPUT_GEOJSON.equals(inputType)) {
+                calculator.addFeatures(new ByteArrayInputStream(params.getGeojson().getBytes(StandardCharsets.UTF_8)));
+            } else if (params.REFERENCE_TYPE_WFS.equals(inputType)) {
+                requestAggregateFeatures(calculator, params.getServiceUrl(), params.getServiceUser(), params.getServicePw(),
+                        params.getWFSGetFeature(params.getVersion()));
+            } else if (params.REFERENCE_TYPE_GS.equals(inputType)) {
+                // user content is served from the GeoServer that WPS uses for "http://geoserver/wfs" references
+                requestAggregateFeatures(calculator, PropertyUtil.get("geoserver.wfs.url"),
+                        PropertyUtil.get("geoserver.wms.user"), PropertyUtil.get("geoserver.wms.pass"),
+                        params.getWFSGetFeature("1.1.0"));
+            } else {
+                throw new ServiceException("Unsupported input type for aggregate: " + inputType);
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Unable to aggregate input features", e);
+        }
+        return calculator.getResults();
+    }
+
+    private void requestAggregateFeatures(AggregateCalculator calculator, String url, String user, String pass, String getFeature)
+            throws IOException {
+        final HttpURLConnection conn = IOHelper.getConnection(url, user, pass);
+        IOHelper.writeHeader(conn, IOHelper.HEADER_ACCEPT, "application/json");
+        IOHelper.post(conn, "application/xml", getFeature);
+        try (InputStream in = IOHelper.getInputStream(conn)) {
+            int count = calculator.addFeatures(in);
+            log.debug("Aggregated", count, "features from", url);
+        }
+    }
+
     /**
      *  Get WPS execute response
      * @param doc  WPS execute request (xml)
@@ -70,33 +130,8 @@ public class AnalysisWebProcessingService {
             throws ServiceException {
         InputStream inp = null;
         try {
-            final String wpsUrl = PropertyUtil.get(GEOSERVER_WPS_URL);
-            final String wpsUser = PropertyUtil.get("geoserver.wms.user");
-            final String wpsUserPass = PropertyUtil.get("geoserver.wms.pass");
-
-            final HttpURLConnection connection = IOHelper.getConnection(wpsUrl, wpsUser, wpsUserPass);
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Content-Type",
-                    "application/xml; charset=UTF-8");
-
-            final OutputStream outs = connection.getOutputStream();
-
-            // 2) Transform XML to POST body
-            // Use a Transformer for output
-            final TransformerFactory tFactory = XmlHelper.newTransformerFactory();
-            final Transformer transformer = tFactory.newTransformer();
-
-            final DOMSource source = new DOMSource(doc);
-            final StreamResult result = new StreamResult(outs);
-            transformer.transform(source, result);
-
-            if (log.isDebugEnabled()) {
-                final DOMSource source2 = new DOMSource(doc);
-                final StreamResult result2 = new StreamResult(System.out);
-                transformer.transform(source2, result2);
-            }
+            final HttpURLConnection connection = postWPS(doc);
             // 4) Returned WPS result
-            outs.close();
             inp = connection.getInputStream();
             final String results = IOHelper.readString(inp);
             // log.debug("We got results from GeoServer WPS", results);
@@ -115,6 +150,64 @@ public class AnalysisWebProcessingService {
         }
     }
 
+    /**
+     * Like requestFeatureSet() but writes the WPS response to a temporary file instead of reading it to memory
+     * so large results can be stored with AnalysisDataService.storeAnalysisData(File, ...).
+     * The caller is responsible for removing the file.
+     * @param analysisLayer analysis method parameters
+     * @return file containing the WPS response
+     * @throws ServiceException
+     */
+    public File requestFeatureSetToFile(final AnalysisLayer analysisLayer) throws ServiceException {
+        File file = null;
+        try {
+            final Document doc = analysisLayer.getAnalysisMethodParams().getWPSXML2();
+            final HttpURLConnection connection = postWPS(doc);
+            file = Files.createTempFile("analysis", ".xml").toFile();
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = new FileOutputStream(file)) {
+                IOHelper.copy(in, out);
+            }
+            log.debug("We got results from GeoServer WPS, size:", file.length());
+            return file;
+        } catch (Exception e) {
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+            throw new ServiceException("requestFeatureSet failed due to", e);
+        }
+    }
+
+    private HttpURLConnection postWPS(final Document doc) throws Exception {
+        final String wpsUrl = PropertyUtil.get(GEOSERVER_WPS_URL);
+        final String wpsUser = PropertyUtil.get("geoserver.wms.user");
+        final String wpsUserPass = PropertyUtil.get("geoserver.wms.pass");
+
+        final HttpURLConnection connection = IOHelper.getConnection(wpsUrl, wpsUser, wpsUserPass);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type",
+                "application/xml; charset=UTF-8");
+
+        final OutputStream outs = connection.getOutputStream();
+
+        // 2) Transform XML to POST body
+        // Use a Transformer for output
+        final TransformerFactory tFactory = XmlHelper.newTransformerFactory();
+        final Transformer transformer = tFactory.newTransformer();
+
+        final DOMSource source = new DOMSource(doc);
+        final StreamResult result = new StreamResult(outs);
+        transformer.transform(source, result);
+
+        if (log.isDebugEnabled()) {
+            final DOMSource source2 = new DOMSource(doc);
+            final StreamResult result2 = new StreamResult(System.out);
+            transformer.transform(source2, result2);
+        }
+        outs.close();
+        return connection;
+    }
+
     /**
      * Request feature collection via WFS 2.0.0 GetFeature post
      * @param analysisLayer input data for GetFeature post xml
@@ -1,6 +1,8 @@
 package fi.nls.oskari.map.analysis.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -8,9 +10,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -18,6 +24,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.commons.text.StringEscapeUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
@@ -30,6 +37,11 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.XmlHelper;
 
+import static org.oskari.xml.XmlHelper.getLocalName;
+import static org.oskari.xml.XmlHelper.newXMLInputFactory;
+import static org.oskari.xml.XmlHelper.nextElement;
+import static org.oskari.xml.XmlHelper.skipElement;
+
 public class TransformationService {
 
     // "created" and "updated" added here to prevent them from appearing on the
@@ -179,6 +191,208 @@ public class TransformationService {
         return sb.toString();
     }
 
+    /**
+     * Streaming alternative for wpsFeatureCollectionToWfst(). Passes each feature of the WPS response
+     * to the consumer as an analysis_data row instead of building a DOM and a WFS-T payload of the whole
+     * result. Columns are mapped the same way: the row has values for t1..t8 and n1..n8 and the geometry
+     * as a GML fragment without namespaces (see ST_GeomFromGML()). Features without geometry are skipped
+     * since analysis_data.geometry is mandatory.
+     *
+     * @return number of rows passed to the consumer
+     */
+    public int wpsFeatureCollectionToRows(final String wps, List<String> fields, Map<String, String> fieldTypes,
+            String geometryProperty, String ns_prefix, Consumer<Map<String, Object>> rows) throws ServiceException {
+        try {
+            return wpsFeatureCollectionToRows(newXMLInputFactory().createXMLStreamReader(new StringReader(wps)),
+                    fields, fieldTypes, geometryProperty, ns_prefix, rows);
+        } catch (XMLStreamException ex) {
+            throw new ServiceException("Unable to read WPS feature collection", ex);
+        }
+    }
+
+    /**
+     * Same as wpsFeatureCollectionToRows(String, ...) but reads the WPS response from a stream so that
+     * the whole response doesn't need to be in memory. The stream is not closed.
+     */
+    public int wpsFeatureCollectionToRows(final InputStream wps, List<String> fields, Map<String, String> fieldTypes,
+            String geometryProperty, String ns_prefix, Consumer<Map<String, Object>> rows) throws ServiceException {
+        try {
+            return wpsFeatureCollectionToRows(newXMLInputFactory().createXMLStreamReader(wps),
+                    fields, fieldTypes, geometryProperty, ns_prefix, rows);
+        } catch (XMLStreamException ex) {
+            throw new ServiceException("Unable to read WPS feature collection", ex);
+        }
+    }
+
+    private int wpsFeatureCollectionToRows(final XMLStreamReader reader, List<String> fields, Map<String, String> fieldTypes,
+            String geometryProperty, String ns_prefix, Consumer<Map<String, Object>> rows) throws ServiceException {
+
+        List<String> cols = new ArrayList<String>();
+        List<String> geomcols = Arrays.asList(ns_prefix + ":" + geometryProperty,
+                ns_prefix + ":geometry", ns_prefix + ":geom");
+        MutableInt ncount = new MutableInt(1);
+        MutableInt tcount = new MutableInt(1);
+        int count = 0;
+        try {
+            while (nextElement(reader) != XMLStreamConstants.END_DOCUMENT) {
+                if (!reader.isStartElement()) {
+                    continue;
+                }
+                String name = getLocalName(reader);
+                boolean membersCase = FEATURE_MEMBERS_TAG_NAME.equals(name);
+                if (!membersCase && !FEATURE_MEMBER_TAG_NAME.equals(name)) {
+                    continue;
+                }
+                while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+                    // featureMember has one child in feature namespace, featureMembers has only features
+                    if (!membersCase && reader.getLocalName().indexOf(ns_prefix + ":") != 0) {
+                        skipElement(reader);
+                        continue;
+                    }
+                    Map<String, Object> row = readFeature(reader, fields, fieldTypes, ns_prefix, cols, geomcols,
+                            ncount, tcount);
+                    if (row.containsKey(AnalysisDataService.ANALYSIS_GEOMETRY_FIELD)) {
+                        rows.accept(row);
+                        count++;
+                    } else {
+                        log.debug("Skipping analysis feature without geometry");
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new ServiceException("Unable to read WPS feature collection", ex);
+        } finally {
+            close(reader);
+        }
+        return count;
+    }
+
+    /**
+     * Reads the feature the reader is positioned on to an analysis_data row. Leaves the reader on the END_ELEMENT of the feature.
+     */
+    private Map<String, Object> readFeature(XMLStreamReader reader, List<String> fields,
+            Map<String, String> fieldTypes, String ns_prefix, List<String> cols, List<String> geomcols,
+            MutableInt ncount, MutableInt tcount) throws XMLStreamException {
+
+        Map<String, Object> row = new HashMap<>();
+        List<String> textFeatures = new ArrayList<String>();
+        List<Double> numericFeatures = new ArrayList<Double>();
+        while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+            String nodeName = reader.getLocalName();
+            if (geomcols.contains(nodeName)) {
+                String geometry = readGeometry(reader);
+                if (geometry != null) {
+                    row.put(AnalysisDataService.ANALYSIS_GEOMETRY_FIELD, geometry);
+                }
+            } else if (nodeName.indexOf(ns_prefix + ":") == 0 && textFeatures.size() < 8
+                    && numericFeatures.size() < 8 && !HIDDEN_FIELDS.contains(stripNamespace(nodeName))) {
+                String strVal = readTextContent(reader);
+                String col = this.stripNamespace(nodeName);
+                Double numericVal = this.getFieldAsNumeric(col, strVal, fieldTypes);
+                if (null != numericVal) {
+                    handleNumericFeature(fields, ncount, cols, numericFeatures, numericVal, col);
+                } else {
+                    handleTextFeature(fields, tcount, cols, textFeatures, strVal, col);
+                }
+            } else {
+                skipElement(reader);
+            }
+        }
+        // values are 1-based and in the order of appearance like in the WFS-T
+        for (int j = 0; j < textFeatures.size(); j++) {
+            row.put("t" + (j + 1), formatStringValue(textFeatures.get(j)));
+        }
+        for (int j = 0; j < numericFeatures.size(); j++) {
+            row.put("n" + (j + 1), numericFeatures.get(j));
+        }
+        return row;
+    }
+
+    /**
+     * Writes the first child element of the geometry property as GML without namespace prefixes.
+     * Leaves the reader on the END_ELEMENT of the geometry property.
+     */
+    private static String readGeometry(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        int depth = 0;
+        while (true) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (depth == 0 && sb != null) {
+                        // only one geometry per property
+                        skipElement(reader);
+                        break;
+                    }
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    depth++;
+                    sb.append('<').append(getLocalName(reader));
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String attr = reader.getAttributeLocalName(i);
+                        // namespace declarations and prefixed attributes (gml:id etc) are not needed
+                        if (attr.indexOf(':') < 0 && !"xmlns".equals(attr)) {
+                            sb.append(' ').append(attr).append("=\"")
+                                    .append(StringEscapeUtils.escapeXml10(reader.getAttributeValue(i))).append('"');
+                        }
+                    }
+                    sb.append('>');
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 0) {
+                        return sb == null ? null : sb.toString();
+                    }
+                    depth--;
+                    sb.append("</").append(getLocalName(reader)).append('>');
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (depth > 0) {
+                        sb.append(StringEscapeUtils.escapeXml10(reader.getText()));
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+                default:
+            }
+        }
+    }
+
+    /**
+     * Text content of the element and its children like Node.getTextContent().
+     * Leaves the reader on the END_ELEMENT of the element.
+     */
+    private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                sb.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException ignore) {
+            // nothing to do
+        }
+    }
+
     private void handleFeatureMembers(String uuid, long analysis_id, List<String> fields,
             Map<String, String> fieldTypes, String geometryProperty, String ns_prefix, StringBuilder sb,
             Boolean membersCase, NodeList featureMembers) throws ServiceException {
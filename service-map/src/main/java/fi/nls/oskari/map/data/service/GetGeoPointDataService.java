@@ -1,5 +1,7 @@
 package fi.nls.oskari.map.data.service;
 
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.data.domain.GFIRequestParams;
@@ -13,13 +15,17 @@ import org.jsoup.Jsoup;
 import org.jsoup.safety.Safelist;
 import org.oskari.util.HtmlDoc;
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
@@ -47,6 +53,11 @@ public class GetGeoPointDataService {
 
     private static final String CONFIG_KEY_FOR_SANITIZE = "gfi";
 
+    private static final int NO_CACHE = -1;
+    // compiled XSLTs by layer id
+    private static final Cache<CompiledXslt> XSLT_CACHE = CacheManager.getCache(GetGeoPointDataService.class.getName() + ".xslt");
+    private static final SAXParserFactory SAX_PARSER_FACTORY = XmlHelper.newSAXParserFactory();
+
     public JSONObject getWMSFeatureInfo(final GFIRequestParams params) {
 
         final String gfiResponse = makeGFIcall(params.getGFIUrl(), params.getLayer().getUsername(), params.getLayer().getPassword());
@@ -61,7 +72,7 @@ public class GetGeoPointDataService {
         final String xslt = params.getLayer().getGfiXslt();
         JSONObject respObj = null;
         if (xslt != null && !xslt.isEmpty()) {
-            final String transformedResult = transformResponse(xslt, gfiResponse);
+            final String transformedResult = transformResponse(params.getLayer().getId(), xslt, gfiResponse);
             respObj = JSONHelper.createJSONObject(transformedResult);
             if(respObj != null) {
                 JSONHelper.putValue(response, PRESENTATION_TYPE, PRESENTATION_TYPE_JSON);
@@ -155,26 +166,31 @@ public class GetGeoPointDataService {
     }
 
     protected String transformResponse(final String xslt, final String response) {
+        return transformResponse(NO_CACHE, xslt, response);
+    }
+
+    /**
+     * Transforms the GFI response with the XSLT of the layer. The compiled XSLT is cached per layer
+     * and compiled again when the XSLT of the layer changes.
+     * @param layerId layer id used as the cache key
+     * @param xslt XSLT of the layer
+     * @param response GFI response
+     * @return transformed response or sanitized response if transform failed
+     */
+    protected String transformResponse(final int layerId, final String xslt, final String response) {
 
         if (xslt == null || "".equals(xslt)) {
             // if not found, return as is
             return response;
         }
 
-        ByteArrayInputStream respInStream = null;
-        ByteArrayInputStream xsltInStream = null;
-        Writer outWriter = null;
         try {
-            final DocumentBuilderFactory factory = XmlHelper.newDocumentBuilderFactory();
-            factory.setNamespaceAware(true);
-            final DocumentBuilder builder = factory.newDocumentBuilder();
-
-            respInStream = new ByteArrayInputStream(response.getBytes("UTF-8"));
-            final Document document = builder.parse(respInStream);
-            xsltInStream = new ByteArrayInputStream(xslt.getBytes());
-            final StreamSource stylesource = new StreamSource(xsltInStream);
-            final String transformedResponse = getFormattedJSONString(document, stylesource);
-            
+            final Templates templates = getTemplates(layerId, xslt);
+            // the response is parsed while it's transformed without building a DOM first
+            final XMLReader reader = SAX_PARSER_FACTORY.newSAXParser().getXMLReader();
+            final Source source = new SAXSource(reader, new InputSource(new StringReader(response)));
+            final String transformedResponse = getFormattedJSONString(templates, source);
+
             if (transformedResponse == null
                     || transformedResponse.isEmpty()) {
                 log.info("got empty result from transform with:", xslt, " - Response:", response);
@@ -185,30 +201,50 @@ public class GetGeoPointDataService {
         } catch (Exception e) {
             log.error("Error transforming GFI response: ", response, "- with XSLT:", xslt,
                     "Error:", e.getMessage());
-        } finally {
-            if (respInStream != null) {
-                try {
-                    respInStream.close();
-                } catch (Exception ignored) {
-                }
-            }
-            if (xsltInStream != null) {
-                try {
-                    xsltInStream.close();
-                } catch (Exception ignored) {
-                }
-            }
-            if (outWriter != null) {
-                try {
-                    outWriter.close();
-                } catch (Exception ignored) {
-                }
-            }
         }
         // Sanitize response
         return Jsoup.clean(response, Safelist.relaxed());
     }
 
+    private Templates getTemplates(final int layerId, final String xslt) throws TransformerException {
+        if (layerId == NO_CACHE) {
+            return compile(xslt);
+        }
+        final String key = Integer.toString(layerId);
+        CompiledXslt compiled = XSLT_CACHE.get(key);
+        if (compiled == null || !compiled.xslt.equals(xslt)) {
+            // not compiled yet or XSLT of the layer has been modified
+            compiled = new CompiledXslt(xslt, compile(xslt));
+            XSLT_CACHE.put(key, compiled);
+        }
+        return compiled.templates;
+    }
+
+    private static Templates compile(final String xslt) throws TransformerException {
+        return XmlHelper.newTransformerFactory().newTemplates(new StreamSource(new StringReader(xslt)));
+    }
+
+    /**
+     * Compiled XSLT and the source it was compiled from
+     */
+    private static class CompiledXslt {
+        private final String xslt;
+        private final Templates templates;
+
+        private CompiledXslt(String xslt, Templates templates) {
+            this.xslt = xslt;
+            this.templates = templates;
+        }
+    }
+
+    public static String getFormattedJSONString(Templates templates, Source source) throws TransformerException {
+        // Templates are thread safe, transformers are not
+        final Transformer transformer = templates.newTransformer();
+        final StringWriter outWriter = new StringWriter();
+        transformer.transform(source, new StreamResult(outWriter));
+        return outWriter.toString().trim();
+    }
+
     public static String getFormattedJSONString(Document document, StreamSource stylesource) throws TransformerException {
         final TransformerFactory transformerFactory = XmlHelper.newTransformerFactory();
         final Transformer transformer = transformerFactory.newTransformer(stylesource);
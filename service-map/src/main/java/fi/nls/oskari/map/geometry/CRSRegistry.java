@@ -0,0 +1,161 @@
+package fi.nls.oskari.map.geometry;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import fi.nls.oskari.util.PropertyUtil;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared registry for decoded coordinate reference systems and the transforms between them.
+ * Decoding a CRS hits the EPSG database and finding a MathTransform builds the operation chain
+ * so both are relatively expensive compared to using them. The same few projections are used
+ * by most requests so the results are kept in bounded in-memory caches.
+ *
+ * Transforms are cached by the identity of the CRS objects. CRSs returned by this class are
+ * shared instances so they get cache hits, CRSs created elsewhere (parsed from WKT etc) just
+ * fill the cache that is cleared when it reaches its limit.
+ */
+public class CRSRegistry {
+
+    private static final String CACHE_NAME = CRSRegistry.class.getName();
+    private static final String PROP_LIMIT = "oskari.crs.cache.limit";
+    private static final long EXPIRATION_MS = TimeUnit.DAYS.toMillis(1);
+    // GeoTools reads this when decoding without explicit axis order
+    private static final String PROP_FORCE_XY = "org.geotools.referencing.forceXY";
+
+    private static final int LIMIT = PropertyUtil.getOptional(PROP_LIMIT, 200);
+    private static final ComputeOnceCache<CoordinateReferenceSystem> CRS_CACHE =
+            CacheManager.getCache(CACHE_NAME, () -> new ComputeOnceCache<>(LIMIT, EXPIRATION_MS));
+    private static final Map<TransformKey, MathTransform> TRANSFORMS = new ConcurrentHashMap<>();
+
+    private CRSRegistry() {}
+
+    /**
+     * Same as CRS.decode(code)
+     */
+    public static CoordinateReferenceSystem decode(String code) throws FactoryException {
+        return decodeCached(code, null);
+    }
+
+    /**
+     * Same as CRS.decode(code, longitudeFirst)
+     */
+    public static CoordinateReferenceSystem decode(String code, boolean longitudeFirst) throws FactoryException {
+        return decodeCached(code, longitudeFirst);
+    }
+
+    private static CoordinateReferenceSystem decodeCached(String code, Boolean longitudeFirst) throws FactoryException {
+        if (code == null) {
+            throw new IllegalArgumentException("Missing CRS code");
+        }
+        String axisOrder = longitudeFirst != null ? longitudeFirst.toString() : "default-" + Boolean.getBoolean(PROP_FORCE_XY);
+        String key = code + "|" + axisOrder;
+        try {
+            return CRS_CACHE.get(key, k -> {
+                try {
+                    return longitudeFirst == null ? CRS.decode(code) : CRS.decode(code, longitudeFirst);
+                } catch (FactoryException e) {
+                    throw new WrappedFactoryException(e);
+                }
+            });
+        } catch (WrappedFactoryException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as CRS.findMathTransform(source, target, lenient)
+     */
+    public static MathTransform findMathTransform(CoordinateReferenceSystem source,
+                                                  CoordinateReferenceSystem target,
+                                                  boolean lenient) throws FactoryException {
+        TransformKey key = new TransformKey(source, target, lenient);
+        MathTransform transform = TRANSFORMS.get(key);
+        if (transform != null) {
+            return transform;
+        }
+        if (TRANSFORMS.size() >= LIMIT) {
+            TRANSFORMS.clear();
+        }
+        try {
+            return TRANSFORMS.computeIfAbsent(key, k -> {
+                try {
+                    return CRS.findMathTransform(source, target, lenient);
+                } catch (FactoryException e) {
+                    throw new WrappedFactoryException(e);
+                }
+            });
+        } catch (WrappedFactoryException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as CRS.findMathTransform(source, target, false)
+     */
+    public static MathTransform findMathTransform(CoordinateReferenceSystem source,
+                                                  CoordinateReferenceSystem target) throws FactoryException {
+        return findMathTransform(source, target, false);
+    }
+
+    /**
+     * Decodes both codes with longitude first axis order and finds the transform between them
+     */
+    public static MathTransform findMathTransform(String sourceSRS, String targetSRS, boolean lenient) throws FactoryException {
+        return findMathTransform(decode(sourceSRS, true), decode(targetSRS, true), lenient);
+    }
+
+    static void clear() {
+        CRS_CACHE.flush(true);
+        TRANSFORMS.clear();
+    }
+
+    private static class TransformKey {
+        private final CoordinateReferenceSystem source;
+        private final CoordinateReferenceSystem target;
+        private final boolean lenient;
+
+        TransformKey(CoordinateReferenceSystem source, CoordinateReferenceSystem target, boolean lenient) {
+            if (source == null || target == null) {
+                throw new IllegalArgumentException("Missing CRS");
+            }
+            this.source = source;
+            this.target = target;
+            this.lenient = lenient;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TransformKey)) {
+                return false;
+            }
+            TransformKey other = (TransformKey) o;
+            return source == other.source && target == other.target && lenient == other.lenient;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(source);
+            hash = 31 * hash + System.identityHashCode(target);
+            return 31 * hash + (lenient ? 1 : 0);
+        }
+    }
+
+    private static class WrappedFactoryException extends RuntimeException {
+        WrappedFactoryException(FactoryException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized FactoryException getCause() {
+            return (FactoryException) super.getCause();
+        }
+    }
+}
@@ -4,7 +4,6 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
@@ -66,7 +65,7 @@ public class WKTHelper {
             return null;
         }
         try {
-            MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, true);
+            MathTransform transform = CRSRegistry.findMathTransform(sourceCRS, targetCRS, true);
             return JTS.transform(geometry, transform);
         } catch (Exception ex) {
             log.error(ex, "Couldn't transform geometry to new projection");
@@ -162,7 +161,7 @@ public class WKTHelper {
 
     public static CoordinateReferenceSystem getCRS(final String srs) {
         try {
-            return CRS.decode(srs,true);  // true --> lon always 1st
+            return CRSRegistry.decode(srs,true);  // true --> lon always 1st
         } catch (Exception e) {
             log.error(e, "CRS decoding failed");
         }
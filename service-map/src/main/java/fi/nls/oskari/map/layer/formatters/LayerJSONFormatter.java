@@ -3,12 +3,12 @@ package fi.nls.oskari.map.layer.formatters;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.WKTHelper;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -334,7 +334,7 @@ public class LayerJSONFormatter {
 
     protected static String coverageToWKT (ReferencedEnvelope env) {
         try {
-            CoordinateReferenceSystem wgs84 = CRS.decode("EPSG:4326", true);
+            CoordinateReferenceSystem wgs84 = CRSRegistry.decode("EPSG:4326", true);
             env = env.transform(wgs84, true);
             return WKTHelper.getBBOX(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
         } catch (Exception e) {
@@ -40,6 +40,8 @@ public interface AppSetupMapper {
     void resetUsersDefaultViews(long userId);
     void update(View view);
     void updateUsage(View view);
+    @Update("UPDATE oskari_appsetup SET used = GREATEST(used, #{used}), usagecount = usagecount + #{count} WHERE id = #{viewId}")
+    void addUsage(ViewUsage usage);
     void addBundle(Bundle bundle);
     int updateBundleSettingsInView(final Map<String, Object> params);
 
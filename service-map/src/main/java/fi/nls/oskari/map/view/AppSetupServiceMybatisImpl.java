@@ -9,11 +9,13 @@ import fi.nls.oskari.domain.map.view.View;
 import fi.nls.oskari.domain.map.view.ViewTypes;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.view.util.ViewConfigurationCache;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -254,6 +256,7 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             mapper.deleteBundleByView(id);
             mapper.deleteView(id);
             session.commit();
+            ViewConfigurationCache.invalidate(id);
         } catch (Exception e) {
             throw new DeleteViewException("Error deleting a view with id:" + id, e);
         }
@@ -266,6 +269,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             final AppSetupMapper mapper = session.getMapper(AppSetupMapper.class);
             mapper.deleteViewByUser(userId);
             session.commit();
+            // ids of removed views are not known here
+            ViewConfigurationCache.invalidateAll();
         } catch (Exception e) {
             throw new DeleteViewException("Error deleting a view with user id:" + userId, e);
         }
@@ -290,6 +295,7 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             final AppSetupMapper mapper = session.getMapper(AppSetupMapper.class);
             mapper.update(view);
             session.commit();
+            ViewConfigurationCache.invalidate(view.getId());
         } catch (Exception e) {
             LOG.warn(e, "Exception while updating view");
         }
@@ -307,6 +313,22 @@ public class AppSetupServiceMybatisImpl extends ViewService {
         }
     }
 
+    public void addViewUsage(List<ViewUsage> usage) throws ViewException {
+        LOG.debug("Add usage for", usage.size(), "views");
+
+        try (final SqlSession session = factory.openSession(ExecutorType.BATCH)) {
+            final AppSetupMapper mapper = session.getMapper(AppSetupMapper.class);
+            for (ViewUsage viewUsage : usage) {
+                mapper.addUsage(viewUsage);
+            }
+            session.flushStatements();
+            session.commit();
+        } catch (Exception e) {
+            // let the caller keep the counts for the next try
+            throw new ViewException("Exception while adding view usage", e);
+        }
+    }
+
     public void updatePublishedView(final View view) throws ViewException {
         LOG.debug("Update published view");
         long id = view.getId();
@@ -320,6 +342,7 @@ public class AppSetupServiceMybatisImpl extends ViewService {
                 mapper.addBundle(bundle);
             }
             session.commit();
+            ViewConfigurationCache.invalidate(id);
         } catch (Exception e) {
             throw new ViewException("Error updating a view with id:" + id, e);
         }
@@ -344,6 +367,7 @@ public class AppSetupServiceMybatisImpl extends ViewService {
                 throw new ViewException("Failed to update - bundle not found in view?");
             }
             session.commit();
+            ViewConfigurationCache.invalidate(viewId);
         } catch (Exception e) {
             throw new ViewException("Failed to update", e);
         }
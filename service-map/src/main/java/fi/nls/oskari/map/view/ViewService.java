@@ -36,6 +36,14 @@ public abstract class ViewService extends OskariComponent {
 
     public abstract long getDefaultViewId();
     public abstract void updateViewUsage(View view);
+
+    /**
+     * Adds usage collected in memory (see ViewUsageCollector) to the views in one batch.
+     * The counts are added to current values so multiple nodes can add their usage independently.
+     * @param usage
+     * @throws ViewException if the usage couldn't be written
+     */
+    public abstract void addViewUsage(List<ViewUsage> usage) throws ViewException;
     public abstract void resetUsersDefaultViews(long userId);
 
     /**
@@ -223,6 +223,11 @@ public class ViewServiceMemory extends ViewService {
         // Not implemented in POJO model
     }
 
+    @Override
+    public void addViewUsage(List<ViewUsage> usage) {
+        // Not implemented in POJO model
+    }
+
     @Override
     public long getDefaultViewId() {
         return defaultView;
@@ -0,0 +1,36 @@
+package fi.nls.oskari.map.view;
+
+import java.util.Date;
+
+/**
+ * Usage of a view collected since the previous flush (see ViewUsageCollector).
+ */
+public class ViewUsage {
+    private final long viewId;
+    private final long count;
+    private final Date used;
+
+    public ViewUsage(long viewId, long count, Date used) {
+        this.viewId = viewId;
+        this.count = count;
+        this.used = used;
+    }
+
+    public long getViewId() {
+        return viewId;
+    }
+
+    /**
+     * @return number of times the view has been opened since previous flush
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return time when the view was last opened
+     */
+    public Date getUsed() {
+        return used;
+    }
+}
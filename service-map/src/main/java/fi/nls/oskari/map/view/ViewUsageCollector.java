@@ -0,0 +1,132 @@
+package fi.nls.oskari.map.view;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects view usage in memory so opening a view doesn't require a database update.
+ * The collected usage is written to the database periodically in one batch with ViewService.addViewUsage().
+ * Counts are added to the current values in the database so each node in a cluster can flush its own counts.
+ */
+public class ViewUsageCollector {
+
+    private static final Logger LOG = LogFactory.getLogger(ViewUsageCollector.class);
+
+    // counters for views that haven't been used for this long are removed
+    private static final long IDLE_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final ViewService service;
+    private final ConcurrentMap<Long, Counter> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public ViewUsageCollector(ViewService service) {
+        this.service = service;
+    }
+
+    /**
+     * Starts flushing the collected usage periodically
+     * @param intervalSeconds seconds between flushes
+     */
+    public synchronized void start(long intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "oskari-view-usage");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic flushing and flushes any remaining usage
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        flush();
+    }
+
+    public void viewUsed(long viewId) {
+        counters.computeIfAbsent(viewId, id -> new Counter()).increment(System.currentTimeMillis());
+    }
+
+    /**
+     * Writes the collected usage to the database
+     */
+    public void flush() {
+        List<ViewUsage> usage = drain();
+        if (usage.isEmpty()) {
+            return;
+        }
+        try {
+            service.addViewUsage(usage);
+        } catch (Exception e) {
+            LOG.warn(e, "Error flushing view usage, keeping the counts for the next flush");
+            restore(usage);
+        }
+    }
+
+    /**
+     * Adds usage that couldn't be written back to the counters
+     */
+    private void restore(List<ViewUsage> usage) {
+        for (ViewUsage u : usage) {
+            counters.computeIfAbsent(u.getViewId(), id -> new Counter()).add(u.getCount(), u.getUsed().getTime());
+        }
+    }
+
+    /**
+     * Returns usage collected since previous call and resets the counters
+     */
+    List<ViewUsage> drain() {
+        List<ViewUsage> list = new ArrayList<>();
+        long idleLimit = System.currentTimeMillis() - IDLE_MS;
+        for (Map.Entry<Long, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            long count = counter.count.sum();
+            if (count == 0) {
+                if (counter.lastUsed.get() < idleLimit) {
+                    // An increment racing with the removal might be lost which is acceptable for usage statistics.
+                    // Only removing counters for views that haven't been used for a while makes it unlikely.
+                    counters.remove(entry.getKey(), counter);
+                }
+                continue;
+            }
+            // subtract what was read instead of resetting so concurrent increments are not lost
+            counter.count.add(-count);
+            list.add(new ViewUsage(entry.getKey(), count, new Date(counter.lastUsed.get())));
+        }
+        return list;
+    }
+
+    private static class Counter {
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong lastUsed = new AtomicLong();
+
+        void increment(long time) {
+            add(1, time);
+        }
+
+        void add(long n, long time) {
+            count.add(n);
+            lastUsed.accumulateAndGet(time, Math::max);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package fi.nls.oskari.map.view.util;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.domain.map.view.Bundle;
+import fi.nls.oskari.domain.map.view.View;
+import fi.nls.oskari.map.view.ViewException;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Cache for parsed view configuration and startup sequence (see ViewHelper.getConfiguration() and
+ * ViewHelper.getStartupSequence()) keyed by view id. Views loaded by uuid are cached with the id of the view as well.
+ *
+ * The cached JSON is never handed out as is. Callers get a copy they can modify freely which is much
+ * cheaper than parsing the bundle JSON strings of the view on each request. The cached value remembers
+ * the bundle JSON strings it was parsed from and is only used if the view still has the same content
+ * so a stale value is never returned even if the view was modified without invalidating the cache.
+ * The cache is invalidated when views are modified through ViewService and the invalidation
+ * is propagated to other nodes in a cluster.
+ * Views that have been modified for a single request (f.ex. state restored from a cookie) should not be
+ * passed here as they would replace the cached value for everyone.
+ */
+public class ViewConfigurationCache {
+
+    private static final Cache<ParsedView> CACHE = CacheManager.getCache(ViewConfigurationCache.class.getName());
+    static {
+        // one entry per view, the default limit is too small for instances with lots of published maps
+        // (configurable with oskari.cache.limit.fi.nls.oskari.map.view.util.ViewConfigurationCache)
+        CACHE.setLimit(5000);
+    }
+
+    private ViewConfigurationCache() {}
+
+    /**
+     * @param view view with bundles
+     * @return a copy of the parsed configuration for the view
+     */
+    public static JSONObject getConfiguration(final View view) throws ViewException {
+        return copy(getParsedView(view).configuration);
+    }
+
+    /**
+     * @param view view with bundles
+     * @return a copy of the parsed startup sequence for the view
+     */
+    public static JSONArray getStartupSequence(final View view) throws ViewException {
+        return copy(getParsedView(view).startupSequence);
+    }
+
+    /**
+     * Removes cached configuration for view. Should be called when view is modified or removed.
+     */
+    public static void invalidate(final long viewId) {
+        CACHE.remove(Long.toString(viewId));
+    }
+
+    /**
+     * Removes all cached configurations. Used when views are modified without knowing the ids.
+     */
+    public static void invalidateAll() {
+        CACHE.flush(true);
+    }
+
+    private static ParsedView getParsedView(final View view) throws ViewException {
+        final List<String> source = getSource(view);
+        final String key = Long.toString(view.getId());
+        ParsedView parsed = view.getId() > 0 ? CACHE.get(key) : null;
+        if (parsed != null && parsed.source.equals(source)) {
+            return parsed;
+        }
+        parsed = new ParsedView(source, ViewHelper.getConfiguration(view), ViewHelper.getStartupSequence(view));
+        if (view.getId() > 0) {
+            CACHE.put(key, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * The strings that the configuration and startup sequence are parsed from
+     */
+    private static List<String> getSource(final View view) {
+        final List<Bundle> bundles = view.getBundles();
+        final List<String> source = new ArrayList<>(bundles.size() * 4);
+        for (Bundle bundle : bundles) {
+            source.add(bundle.getName());
+            source.add(bundle.getBundleinstance());
+            source.add(bundle.getConfig());
+            // startup is generated from name and bundleinstance
+            source.add(bundle.getState());
+        }
+        return source;
+    }
+
+    private static JSONObject copy(final JSONObject json) {
+        final JSONObject copy = new JSONObject();
+        final Iterator<?> keys = json.keys();
+        while (keys.hasNext()) {
+            final String key = (String) keys.next();
+            JSONHelper.putValue(copy, key, copyValue(json.opt(key)));
+        }
+        return copy;
+    }
+
+    private static JSONArray copy(final JSONArray json) {
+        final JSONArray copy = new JSONArray();
+        for (int i = 0; i < json.length(); i++) {
+            copy.put(copyValue(json.opt(i)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(final Object value) {
+        if (value instanceof JSONObject) {
+            return copy((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            return copy((JSONArray) value);
+        }
+        // strings, numbers, booleans and JSONObject.NULL are immutable
+        return value;
+    }
+
+    private static class ParsedView {
+        private final List<String> source;
+        private final JSONObject configuration;
+        private final JSONArray startupSequence;
+
+        ParsedView(List<String> source, JSONObject configuration, JSONArray startupSequence) {
+            this.source = source;
+            this.configuration = configuration;
+            this.startupSequence = startupSequence;
+        }
+    }
+}
@@ -4,7 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.referencing.CRS;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.geojson.GeoJSONReader2;
@@ -33,7 +33,7 @@ public class GeoJSONStringReader {
     }
 
     public static SimpleFeatureCollection readGeoJSON(String geojson, String srs) throws Exception{
-        CoordinateReferenceSystem sourceCRS = CRS.decode(srs);
+        CoordinateReferenceSystem sourceCRS = CRSRegistry.decode(srs);
         return readGeoJSON(geojson, sourceCRS);
     }
 
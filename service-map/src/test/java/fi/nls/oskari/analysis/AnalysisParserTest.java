@@ -1,5 +1,6 @@
 package fi.nls.oskari.analysis;
 
+import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -47,6 +48,21 @@ public class AnalysisParserTest {
                 JSONHelper.isEqual(getFeatureCollection(testFeature1, testFeature2), new JSONObject(AnalysisParser.getGeoJSONInput(input, ID_PREFIX))));
     }
 
+    @Test
+    public void testGetSectorCount() throws Exception {
+        assertEquals("", AnalysisParser.getSectorCount(new JSONObject()));
+        assertEquals("0", AnalysisParser.getSectorCount(new JSONObject("{\"sectorCount\":0}")));
+        assertEquals("8", AnalysisParser.getSectorCount(new JSONObject("{\"sectorCount\":\"8\"}")));
+        for (String invalid : new String[] { "-1", "\"-3\"", "\"a\"", "1.5" }) {
+            try {
+                AnalysisParser.getSectorCount(new JSONObject("{\"sectorCount\":" + invalid + "}"));
+                fail("Should have thrown ServiceException for " + invalid);
+            } catch (ServiceException expected) {
+                // expected
+            }
+        }
+    }
+
     private JSONObject generateFeature(boolean addCRS) throws Exception {
         JSONObject feature = new JSONObject(featureJSON);
         if (!addCRS) {
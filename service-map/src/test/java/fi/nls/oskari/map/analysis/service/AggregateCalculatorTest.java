@@ -0,0 +1,67 @@
+package fi.nls.oskari.map.analysis.service;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateCalculatorTest {
+
+    private static final String FEATURES = "{\"type\":\"FeatureCollection\",\"totalFeatures\":5,\"features\":["
+            + "{\"type\":\"Feature\",\"id\":\"f.1\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},\"properties\":{\"name\":\"a\",\"value\":1,\"area\":1.5}},"
+            + "{\"type\":\"Feature\",\"id\":\"f.2\",\"geometry\":null,\"properties\":{\"name\":\"b\",\"value\":4,\"area\":-1}},"
+            + "{\"type\":\"Feature\",\"id\":\"f.3\",\"properties\":{\"name\":null,\"value\":-1,\"area\":2.5,\"nested\":{\"value\":100}}},"
+            + "{\"type\":\"Feature\",\"id\":\"f.4\",\"properties\":{\"name\":\"d\",\"value\":\"7\",\"area\":null}},"
+            + "{\"type\":\"Feature\",\"id\":\"f.5\",\"properties\":{\"name\":\"e\",\"value\":8,\"area\":4}}"
+            + "],\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"urn:ogc:def:crs:EPSG::3067\"}}}";
+
+    @Test
+    public void testAllFieldsInOnePass() throws IOException {
+        AggregateCalculator calc = new AggregateCalculator(
+                Arrays.asList("Count", "Sum", "Min", "Max", "Average", "Median", "StdDev"), "-1", true);
+        calc.addField("value", true);
+        calc.addField("area", true);
+        calc.addField("name", false);
+        assertEquals(5, calc.addFeatures(toStream(FEATURES)));
+
+        String expected = "<fieldResult><field>value</field><AggregationResults>"
+                + "<Count>4</Count><Sum>20</Sum><Min>1</Min><Max>8</Max><Average>5.0</Average><Median>5.5</Median><StandardDeviation>2.7386127875258306</StandardDeviation>"
+                + "</AggregationResults><fieldNoDataCount><AggregationResults><Count>1</Count></AggregationResults></fieldNoDataCount></fieldResult>"
+                + "<fieldResult><field>area</field><AggregationResults>"
+                + "<Count>3</Count><Sum>8.0</Sum><Min>1.5</Min><Max>4.0</Max><Average>2.6666666666666665</Average><Median>2.5</Median><StandardDeviation>1.0274023338281628</StandardDeviation>"
+                + "</AggregationResults><fieldNoDataCount><AggregationResults><Count>1</Count></AggregationResults></fieldNoDataCount></fieldResult>"
+                + "<fieldResult><field>name</field><AggregationResults><Count>4</Count></AggregationResults></fieldResult>";
+        assertEquals(expected, calc.getResults());
+    }
+
+    @Test
+    public void testWithoutNoDataValue() throws IOException {
+        AggregateCalculator calc = new AggregateCalculator(Collections.singletonList("Sum"), null, false);
+        calc.addField("value", true);
+        calc.addFeatures(toStream(FEATURES));
+        assertEquals("<fieldResult><field>value</field><AggregationResults><Sum>19</Sum></AggregationResults></fieldResult>", calc.getResults());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFeatureCollection() throws IOException {
+        AggregateCalculator calc = new AggregateCalculator(Collections.singletonList("Sum"), null, false);
+        calc.addFeatures(toStream("{\"type\":\"Feature\",\"properties\":{}}"));
+    }
+
+    @Test
+    public void testSupportedFunctions() {
+        assertTrue(AggregateCalculator.isSupported(Arrays.asList("Count", "StdDev")));
+        assertFalse(AggregateCalculator.isSupported(Arrays.asList("Count", "SumArea")));
+    }
+
+    private ByteArrayInputStream toStream(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,5 +1,7 @@
 package fi.nls.oskari.map.analysis.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -60,25 +62,59 @@ public class TransformationServiceTest {
     
     @Test
     public void testWpsFeatureCollectionToWfstBuffer() throws ServiceException, SAXException, IOException {
+        List<String> fields = new ArrayList<String>();
+        testWpsToWfs(INPUT_FILE_PATH_BUFFER, EXPECTED_FILE_PATH_BUFFER, fields, getBufferFieldTypes());
+    }
+
+    @Test
+    public void testWpsFeatureCollectionToRowsBuffer() throws ServiceException, IOException {
+        String wpsFeatures = readResource(INPUT_FILE_PATH_BUFFER);
+
+        List<String> fields = new ArrayList<String>();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        int count = service.wpsFeatureCollectionToRows(wpsFeatures, fields, getBufferFieldTypes(),
+                GEOMETRY_PROPERTY, NS_PREFIX, rows::add);
+
+        assertEquals(4, count);
+        assertEquals(4, rows.size());
+
+        // column mapping is the same as with WFS-T
+        List<String> wfstFields = new ArrayList<String>();
+        service.wpsFeatureCollectionToWfst(wpsFeatures, UUID, ANALYSIS_ID, wfstFields, getBufferFieldTypes(),
+                GEOMETRY_PROPERTY, NS_PREFIX);
+        assertEquals(wfstFields, fields);
+
+        Map<String, Object> row = rows.get(0);
+        assertEquals("07.00-07.59", row.get("t1"));
+        assertEquals("2", row.get("t2"));
+        assertEquals(4.0, row.get("n1"));
+        assertEquals(2.0, row.get("n2"));
+        assertEquals(0.0, row.get("n8"));
+        assertFalse(row.containsKey("t3"));
+
+        String geometry = (String) row.get("geometry");
+        assertTrue(geometry, geometry.startsWith("<MultiPolygon srsDimension=\"2\" srsName=\"http://www.opengis.net/gml/srs/epsg.xml#3067\">"));
+        assertTrue(geometry, geometry.contains("<posList>381211.7398 6673831.484"));
+        assertTrue(geometry, geometry.endsWith("</MultiPolygon>"));
+        assertFalse("Namespace prefixes are removed", geometry.contains("gml:"));
+    }
+
+    @Test
+    public void testWpsFeatureCollectionToRowsFromStream() throws ServiceException, IOException {
+        List<String> expectedFields = new ArrayList<String>();
+        List<Map<String, Object>> expected = new ArrayList<>();
+        service.wpsFeatureCollectionToRows(readResource(INPUT_FILE_PATH_BUFFER), expectedFields,
+                getBufferFieldTypes(), GEOMETRY_PROPERTY, NS_PREFIX, expected::add);
 
-        Map<String, String> fieldTypes = new HashMap<>();
-        fieldTypes.put("onntyyppi", "string");
-        fieldTypes.put("lkmpp", "numeric");
-        fieldTypes.put("lkmjk", "numeric");
-        fieldTypes.put("geom", "string");
-        fieldTypes.put("lkmmuukulk", "numeric");
-        fieldTypes.put("lkmhapa", "numeric");
-        fieldTypes.put("lkmlaka", "numeric");
-        fieldTypes.put("lkmmo", "numeric");
-        fieldTypes.put("lkmmp", "numeric");
-        fieldTypes.put("x", "numeric");
-        fieldTypes.put("vvonn", "string");
-        fieldTypes.put("kkonn", "numeric");
-        fieldTypes.put("vakav", "string");
-        fieldTypes.put("y", "numeric");
-        
         List<String> fields = new ArrayList<String>();
-        testWpsToWfs(INPUT_FILE_PATH_BUFFER, EXPECTED_FILE_PATH_BUFFER, fields, fieldTypes);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(INPUT_FILE_PATH_BUFFER)) {
+            int count = service.wpsFeatureCollectionToRows(in, fields, getBufferFieldTypes(),
+                    GEOMETRY_PROPERTY, NS_PREFIX, rows::add);
+            assertEquals(4, count);
+        }
+        assertEquals(expected, rows);
+        assertEquals(expectedFields, fields);
     }
 
     @Test
@@ -123,6 +159,25 @@ public class TransformationServiceTest {
         assertXmlIsValid(expected, result);
     }
 
+    private static Map<String, String> getBufferFieldTypes() {
+        Map<String, String> fieldTypes = new HashMap<>();
+        fieldTypes.put("onntyyppi", "string");
+        fieldTypes.put("lkmpp", "numeric");
+        fieldTypes.put("lkmjk", "numeric");
+        fieldTypes.put("geom", "string");
+        fieldTypes.put("lkmmuukulk", "numeric");
+        fieldTypes.put("lkmhapa", "numeric");
+        fieldTypes.put("lkmlaka", "numeric");
+        fieldTypes.put("lkmmo", "numeric");
+        fieldTypes.put("lkmmp", "numeric");
+        fieldTypes.put("x", "numeric");
+        fieldTypes.put("vvonn", "string");
+        fieldTypes.put("kkonn", "numeric");
+        fieldTypes.put("vakav", "string");
+        fieldTypes.put("y", "numeric");
+        return fieldTypes;
+    }
+
     private String readResource(String p) throws IOException {
         try (InputStream in = getClass().getClassLoader().getResourceAsStream(p)) {
             return new String(IOHelper.readBytes(in), StandardCharsets.UTF_8);
@@ -44,6 +44,22 @@ public class GetGeoPointDataServiceTest {
 
     }
 
+    @Test
+    public void testTransformResponseRecompilesModifiedXslt() {
+        final String xml = "<FeatureInfo><name>test</name></FeatureInfo>";
+        final String xslt = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:output method=\"text\"/>"
+                + "<xsl:template match=\"/\">{\"parsed\":{\"%s\":\"<xsl:value-of select=\"FeatureInfo/name\"/>\"}}</xsl:template>"
+                + "</xsl:stylesheet>";
+        GetGeoPointDataService service = new GetGeoPointDataService();
+        final int layerId = 42;
+        assertEquals("{\"parsed\":{\"first\":\"test\"}}", service.transformResponse(layerId, String.format(xslt, "first"), xml));
+        // cached
+        assertEquals("{\"parsed\":{\"first\":\"test\"}}", service.transformResponse(layerId, String.format(xslt, "first"), xml));
+        // XSLT of the layer modified
+        assertEquals("{\"parsed\":{\"second\":\"test\"}}", service.transformResponse(layerId, String.format(xslt, "second"), xml));
+    }
+
     @Test
     public void testResponseCleaning()
             throws Exception {
@@ -0,0 +1,52 @@
+package fi.nls.oskari.map.geometry;
+
+import org.geotools.referencing.CRS;
+import org.junit.After;
+import org.junit.Test;
+import org.opengis.referencing.NoSuchAuthorityCodeException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+import static org.junit.Assert.*;
+
+public class CRSRegistryTest {
+
+    @After
+    public void tearDown() {
+        CRSRegistry.clear();
+    }
+
+    @Test
+    public void testDecodeReturnsSharedInstance() throws Exception {
+        CoordinateReferenceSystem a = CRSRegistry.decode("EPSG:3067", true);
+        CoordinateReferenceSystem b = CRSRegistry.decode("EPSG:3067", true);
+        assertSame(a, b);
+        assertTrue(CRS.equalsIgnoreMetadata(CRS.decode("EPSG:3067", true), a));
+    }
+
+    @Test
+    public void testDecodeKeepsAxisOrder() throws Exception {
+        CoordinateReferenceSystem lonFirst = CRSRegistry.decode("EPSG:4326", true);
+        CoordinateReferenceSystem latFirst = CRSRegistry.decode("EPSG:4326", false);
+        assertNotSame(lonFirst, latFirst);
+        assertEquals(CRS.AxisOrder.EAST_NORTH, CRS.getAxisOrder(lonFirst));
+        assertEquals(CRS.AxisOrder.NORTH_EAST, CRS.getAxisOrder(latFirst));
+    }
+
+    @Test(expected = NoSuchAuthorityCodeException.class)
+    public void testDecodeUnknownCodeThrows() throws Exception {
+        CRSRegistry.decode("EPSG:1234567", true);
+    }
+
+    @Test
+    public void testMathTransformIsCached() throws Exception {
+        MathTransform a = CRSRegistry.findMathTransform("EPSG:4258", "EPSG:3067", false);
+        MathTransform b = CRSRegistry.findMathTransform("EPSG:4258", "EPSG:3067", false);
+        assertSame(a, b);
+
+        double[] pt = { 25.017104, 60.113924 };
+        a.transform(pt, 0, pt, 0, 1);
+        assertEquals(389790.212234411, pt[0], 1e-6);
+        assertEquals(6665752.471279182, pt[1], 1e-6);
+    }
+}
@@ -10,12 +10,20 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class AppSetupServiceMybatisImplTest {
 
     private ViewService service;
+    private DataSource ds;
 
     @Before
     public void setUp() throws Exception {
@@ -30,7 +38,7 @@ public class AppSetupServiceMybatisImplTest {
         PropertyUtil.addProperty("view.default.Guest", "4");
         PropertyUtil.addProperty("view.default.roles", "Admin, User, Guest");
         PropertyUtil.addProperty("oskari.user.service", DummyUserService.class.getCanonicalName(), true);
-        DataSource ds = TestHelper.createMemDBforUnitTest();
+        ds = TestHelper.createMemDBforUnitTest();
 
         service = new AppSetupServiceMybatisImpl(ds);
     }
@@ -51,6 +59,64 @@ public class AppSetupServiceMybatisImplTest {
 
     }
 
+    @Test
+    public void testAddViewUsage() throws Exception {
+        execute("CREATE TABLE oskari_appsetup (id BIGINT PRIMARY KEY, used TIMESTAMP, usagecount BIGINT DEFAULT 0)");
+        try {
+            execute("INSERT INTO oskari_appsetup (id, used, usagecount) VALUES (1, '2020-01-01 00:00:00', 5)");
+            service.addViewUsage(Collections.singletonList(new ViewUsage(1, 3, new Date())));
+            assertEquals(8, getUsageCount(1));
+        } finally {
+            execute("DROP TABLE oskari_appsetup");
+        }
+    }
+
+    @Test
+    public void testAddViewUsageFailureIsReported() {
+        // no oskari_appsetup table in the database
+        try {
+            service.addViewUsage(Collections.singletonList(new ViewUsage(1, 3, new Date())));
+            fail("Should have thrown ViewException");
+        } catch (ViewException expected) {
+            // the collector keeps the counts when the write fails
+        }
+    }
+
+    @Test
+    public void testCollectorKeepsUsageWhenWriteFails() throws Exception {
+        ViewUsageCollector collector = new ViewUsageCollector(service);
+        collector.viewUsed(1);
+        collector.viewUsed(1);
+        // no table yet -> fails
+        collector.flush();
+
+        execute("CREATE TABLE oskari_appsetup (id BIGINT PRIMARY KEY, used TIMESTAMP, usagecount BIGINT DEFAULT 0)");
+        try {
+            execute("INSERT INTO oskari_appsetup (id, used, usagecount) VALUES (1, '2020-01-01 00:00:00', 0)");
+            collector.viewUsed(1);
+            collector.flush();
+            assertEquals("Counts from the failed flush are written", 3, getUsageCount(1));
+        } finally {
+            execute("DROP TABLE oskari_appsetup");
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection c = ds.getConnection();
+             Statement s = c.createStatement()) {
+            s.execute(sql);
+        }
+    }
+
+    private long getUsageCount(long viewId) throws SQLException {
+        try (Connection c = ds.getConnection();
+             Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT usagecount FROM oskari_appsetup WHERE id = " + viewId)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
     @After
     public void tearDown() {
         PropertyUtil.clearProperties();
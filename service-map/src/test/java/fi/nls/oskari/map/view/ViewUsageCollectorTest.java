@@ -0,0 +1,79 @@
+package fi.nls.oskari.map.view;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ViewUsageCollectorTest {
+
+    @Test
+    public void testUsageIsCollectedUntilFlush() throws Exception {
+        final List<ViewUsage> flushed = new ArrayList<>();
+        ViewService service = new ViewServiceMemory() {
+            @Override
+            public void addViewUsage(List<ViewUsage> usage) {
+                flushed.addAll(usage);
+            }
+        };
+        ViewUsageCollector collector = new ViewUsageCollector(service);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 1000; i++) {
+            final long viewId = i % 2 == 0 ? 1 : 2;
+            executor.submit(() -> collector.viewUsed(viewId));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue("Nothing written before flush", flushed.isEmpty());
+
+        collector.flush();
+        assertEquals(2, flushed.size());
+        long total = 0;
+        for (ViewUsage usage : flushed) {
+            assertEquals(500, usage.getCount());
+            assertTrue(usage.getUsed().getTime() > 0);
+            total += usage.getCount();
+        }
+        assertEquals(1000, total);
+
+        flushed.clear();
+        collector.flush();
+        assertTrue("Counters are reset on flush", flushed.isEmpty());
+        collector.viewUsed(1);
+        collector.stop();
+        assertEquals("Stop flushes remaining usage", 1, flushed.size());
+        assertEquals(1, flushed.get(0).getCount());
+    }
+
+    @Test
+    public void testUsageIsKeptWhenFlushFails() {
+        final List<ViewUsage> flushed = new ArrayList<>();
+        final boolean[] fail = { true };
+        ViewService service = new ViewServiceMemory() {
+            @Override
+            public void addViewUsage(List<ViewUsage> usage) {
+                if (fail[0]) {
+                    throw new RuntimeException("Database not available");
+                }
+                flushed.addAll(usage);
+            }
+        };
+        ViewUsageCollector collector = new ViewUsageCollector(service);
+        collector.viewUsed(1);
+        collector.viewUsed(1);
+        collector.flush();
+        assertTrue(flushed.isEmpty());
+
+        collector.viewUsed(1);
+        fail[0] = false;
+        collector.flush();
+        assertEquals(1, flushed.size());
+        assertEquals("Counts from the failed flush are included", 3, flushed.get(0).getCount());
+    }
+}
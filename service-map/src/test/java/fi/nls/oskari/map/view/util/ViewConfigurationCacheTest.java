@@ -0,0 +1,66 @@
+package fi.nls.oskari.map.view.util;
+
+import fi.nls.oskari.domain.map.view.Bundle;
+import fi.nls.oskari.domain.map.view.View;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ViewConfigurationCacheTest {
+
+    @Test
+    public void testReturnsCopies() throws Exception {
+        View view = createView(1001);
+        JSONObject config = ViewConfigurationCache.getConfiguration(view);
+        assertEquals(3, config.getJSONObject("mapfull").getJSONObject("conf").getJSONArray("layers").length());
+
+        // modify the returned copy like view modifiers do
+        config.getJSONObject("mapfull").getJSONObject("conf").getJSONArray("layers").put(4);
+        config.getJSONObject("mapfull").getJSONObject("state").put("zoom", 10);
+        JSONArray startup = ViewConfigurationCache.getStartupSequence(view);
+        startup.put(new JSONObject());
+
+        JSONObject config2 = ViewConfigurationCache.getConfiguration(view);
+        assertNotSame(config, config2);
+        assertEquals("Cached value should not be modified", 3, config2.getJSONObject("mapfull").getJSONObject("conf").getJSONArray("layers").length());
+        assertEquals(1, config2.getJSONObject("mapfull").getJSONObject("state").getInt("zoom"));
+        assertEquals(2, ViewConfigurationCache.getStartupSequence(view).length());
+    }
+
+    @Test
+    public void testModifiedViewIsParsedAgain() throws Exception {
+        View view = createView(1002);
+        assertEquals(1, ViewConfigurationCache.getConfiguration(view).getJSONObject("mapfull").getJSONObject("state").getInt("zoom"));
+
+        // modified without invalidating
+        view.getBundleByName("mapfull").setState("{\"zoom\": 5}");
+        assertEquals(5, ViewConfigurationCache.getConfiguration(view).getJSONObject("mapfull").getJSONObject("state").getInt("zoom"));
+
+        // a view loaded again from db with same id but different content
+        View other = createView(1002);
+        assertEquals(1, ViewConfigurationCache.getConfiguration(other).getJSONObject("mapfull").getJSONObject("state").getInt("zoom"));
+
+        ViewConfigurationCache.invalidate(1002);
+        assertEquals(1, ViewConfigurationCache.getConfiguration(other).getJSONObject("mapfull").getJSONObject("state").getInt("zoom"));
+    }
+
+    private View createView(long id) {
+        View view = new View();
+        view.setId(id);
+        Bundle mapfull = new Bundle();
+        mapfull.setName("mapfull");
+        mapfull.setBundleinstance("mapfull");
+        mapfull.setConfig("{\"layers\": [1, 2, 3]}");
+        mapfull.setState("{\"zoom\": 1}");
+        view.addBundle(mapfull);
+        Bundle search = new Bundle();
+        search.setName("search");
+        search.setBundleinstance("search");
+        search.setConfig("{}");
+        search.setState("{}");
+        view.addBundle(search);
+        return view;
+    }
+}
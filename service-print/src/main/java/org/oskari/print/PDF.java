@@ -2,6 +2,7 @@ package org.oskari.print;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.service.ServiceException;
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +25,6 @@ import org.apache.pdfbox.util.Matrix;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.referencing.CRS;
 import org.json.JSONObject;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
@@ -572,7 +572,7 @@ public class PDF {
 
     private static String getUnits(String srsName) {
         try {
-            CoordinateReferenceSystem crs = CRS.decode(srsName);
+            CoordinateReferenceSystem crs = CRSRegistry.decode(srsName);
             return crs.getCoordinateSystem().getAxis(0).getUnit().toString();
         } catch (FactoryException e) {
             LOG.warn(e, "Unable to decode CRS from", srsName);
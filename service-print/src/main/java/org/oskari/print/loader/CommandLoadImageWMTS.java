@@ -19,11 +19,11 @@ import org.oskari.print.wmts.GetTileRequestBuilderREST;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 
-import org.geotools.referencing.CRS;
 import org.json.JSONObject;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -181,7 +181,7 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
 
     private static boolean isAxisOrderNE(String srs) {
         try {
-            CoordinateReferenceSystem crs = CRS.decode(srs);
+            CoordinateReferenceSystem crs = CRSRegistry.decode(srs);
             return ProjectionHelper.isFirstAxisNorth(crs);
             // return CRS.getAxisOrder(crs) == CRS.AxisOrder.NORTH_EAST;
         } catch (Exception e) {
@@ -193,9 +193,9 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
     private LayerCapabilitiesWMTS getLayerCapabilities() throws IllegalArgumentException {
         OskariLayer oskariLayer = layer.getOskariLayer();
         if (oskariLayer != null) {
-            JSONObject capabilies = layer.getOskariLayer().getCapabilities();
-            if (capabilies != null) {
-                return CapabilitiesService.fromJSON(layer.getOskariLayer().getCapabilities().toString(), OskariLayer.TYPE_WMTS);
+            LayerCapabilitiesWMTS capabilities = CapabilitiesService.getLayerCapabilities(oskariLayer);
+            if (capabilities != null) {
+                return capabilities;
             }
         }
         throw new IllegalArgumentException("Could not find layer from Capabilities");
@@ -1,7 +1,7 @@
 package org.oskari.print.request;
 
 import fi.nls.oskari.domain.User;
-import org.geotools.referencing.CRS;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -67,7 +67,7 @@ public class PrintRequest {
 
     public void setSrsName(String srsName) throws FactoryException {
         this.srsName = srsName;
-        this.crs = CRS.decode(srsName, true);
+        this.crs = CRSRegistry.decode(srsName, true);
     }
 
     public CoordinateReferenceSystem getCrs() {
@@ -80,7 +80,7 @@ public class PrintRequest {
 
     public void setPrintoutSrsName(String printoutSrsName) throws FactoryException {
         this.printoutSrsName = printoutSrsName;
-        this.printoutCrs = CRS.decode(printoutSrsName, true);
+        this.printoutCrs = CRSRegistry.decode(printoutSrsName, true);
     }
 
     public CoordinateReferenceSystem getPrintoutCrs() {
@@ -1,6 +1,9 @@
 package fi.nls.oskari.routing;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -13,8 +16,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.HttpURLConnection;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by SMAKINEN on 26.6.2015.
@@ -37,9 +48,54 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
 
     private static final String PROPERTY_USER = "routing.user";
     private static final String PROPERTY_PASSWORD = "routing.password";
+    private static final String PROPERTY_CACHE_TTL = "routing.cache.ttl";
+    private static final String PROPERTY_CACHE_MAX_TTL = "routing.cache.maxTtl";
+    private static final String PROPERTY_COORDINATE_DECIMALS = "routing.coordinateDecimals";
 
     ObjectMapper mapper = new ObjectMapper();
 
+    // routes for departures "now" change quickly, planned departures can be cached until departure
+    private final long cacheTtlMs = TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROPERTY_CACHE_TTL, 60));
+    private final long cacheMaxTtlMs = TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROPERTY_CACHE_MAX_TTL, 900));
+    // snapping coordinates to a grid makes requests for the same places identical, negative to disable
+    private final int coordinateDecimals = PropertyUtil.getOptional(PROPERTY_COORDINATE_DECIMALS, -1);
+    private final Cache<RouteResult> cache = CacheManager.getCache(getClass().getName());
+    // requests in progress, concurrent identical requests wait for the same result
+    private final Map<String, CompletableFuture<RouteResult>> inProgress = new ConcurrentHashMap<>();
+
+    public RoutingServiceOpenTripPlannerImpl() {
+        cache.setExpiration(Math.max(cacheTtlMs, cacheMaxTtlMs));
+    }
+
+    /**
+     * Parsed routing service response, shared between requests with identical parameters
+     */
+    static class RouteResult {
+        final Route route;
+        final String errorMessage;
+        long expires;
+
+        RouteResult(Route route, String errorMessage) {
+            this.route = route;
+            this.errorMessage = errorMessage;
+        }
+
+        boolean isError() {
+            return route == null;
+        }
+
+        /**
+         * Errors and routes without itineraries are not cached, the service might find a route on the next try
+         */
+        boolean isCacheable() {
+            if (isError() || route.getPlan() == null) {
+                return false;
+            }
+            List<Itinerary> itineraries = route.getPlan().getItineraries();
+            return itineraries != null && !itineraries.isEmpty();
+        }
+    }
+
     @Override
     public RouteResponse getRoute(RouteParams params) {
         RouteParser parser = new RouteParser();
@@ -52,10 +108,10 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
         final Point newTo = ProjectionHelper.transformPoint(params.getTo().getX(), params.getTo().getY(), sourceSRS, targetSRS);
 
         // Routing service uses lat,lon order in point string and in service url params
-        final String from =  newFrom.getLatToString() + "," + newFrom.getLonToString();
+        final String from =  toPlace(newFrom);
         requestParams.put(PARAM_FROM_PLACE, from);
 
-        final String to = newTo.getLatToString() + "," + newTo.getLonToString();
+        final String to = toPlace(newTo);
         requestParams.put(PARAM_TO_PLACE, to);
 
         setupDateAndTime(params, requestParams);
@@ -72,43 +128,123 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
         // for debugging
         result.setRequestUrl(requestUrl);
 
-        try {
-            LOGGER.debug(requestUrl);
-            final Map<String, String> headers = new HashMap<String,String>();
-            headers.put("Accecpt", "application/json");
-            String routeJson = null;
-            final String username = PropertyUtil.getOptional(PROPERTY_USER);
-            final String password = PropertyUtil.getOptional(PROPERTY_PASSWORD);
-            if(username != null && !username.isEmpty() && password != null && !password.isEmpty()) {
-                routeJson = IOHelper.getURL(requestUrl, username, password, headers, "UTF-8");
-            } else {
-                routeJson = IOHelper.getURL(requestUrl,headers, "UTF-8");
-            }
+        RouteResult route = getRouteResult(requestUrl, params.getDate());
+        if (!route.isError()) {
+            result.setRequestParameters(parser.generateRequestParameters(route.route, params));
+            result.setPlan(parser.generatePlan(route.route, params));
+            result.setSuccess(true);
+        } else {
+            result.setSuccess(false);
+            result.setErrorMessage(route.errorMessage);
+        }
+
+        return result;
+    }
+
+    private String toPlace(Point point) {
+        if (coordinateDecimals < 0) {
+            return point.getLatToString() + "," + point.getLonToString();
+        }
+        return round(point.getLat()) + "," + round(point.getLon());
+    }
+
+    private String round(double value) {
+        return BigDecimal.valueOf(value).setScale(coordinateDecimals, RoundingMode.HALF_UP).toPlainString();
+    }
 
-            Route route = mapper.readValue(routeJson,Route.class);
-
-            if(!isErrorMessage(routeJson)){
-                result.setRequestParameters(parser.generateRequestParameters(route, params));
-                result.setPlan(parser.generatePlan(route, params));
-                result.setSuccess(true);
-            } else {
-                result.setSuccess(false);
-                try {
-                    JSONObject error = new JSONObject(routeJson);
-                    if(error.has(PARAM_ERROR_MESSAGE)) {
-                        result.setErrorMessage(error.getString(PARAM_ERROR_MESSAGE));
-                    } else {
-                        result.setErrorMessage("ERROR");
-                    }
-                } catch (JSONException ex){
-                    LOGGER.warn("Cannot set error message to route response", ex);
-                }
+    /**
+     * Returns the route from cache or from the routing service. The request url contains all the
+     * normalized route parameters so it's used as the cache key. Only routes with itineraries are cached.
+     * Only one request is made to the routing service for concurrent identical requests.
+     * @param requestUrl routing service url with parameters
+     * @param departure departure (or arrival) time of the route, null for now
+     */
+    private RouteResult getRouteResult(String requestUrl, Date departure) {
+        RouteResult cached = cache.get(requestUrl);
+        if (cached != null && cached.expires > System.currentTimeMillis()) {
+            return cached;
+        }
+        CompletableFuture<RouteResult> future = new CompletableFuture<>();
+        CompletableFuture<RouteResult> existing = inProgress.putIfAbsent(requestUrl, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        try {
+            RouteResult route = requestRoute(requestUrl);
+            if (route.isCacheable()) {
+                route.expires = System.currentTimeMillis() + getCacheTtl(departure, System.currentTimeMillis());
+                cache.put(requestUrl, route);
             }
+            future.complete(route);
+            return route;
         } catch (IOException e) {
+            future.completeExceptionally(e);
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(requestUrl, future);
         }
+    }
 
-        return result;
+    /**
+     * Routes for a future departure don't change until the departure so they are cached until
+     * departure (at most max ttl). Other routes use the default ttl.
+     */
+    long getCacheTtl(Date departure, long now) {
+        if (departure == null) {
+            return cacheTtlMs;
+        }
+        long untilDeparture = departure.getTime() - now;
+        if (untilDeparture <= cacheTtlMs) {
+            return cacheTtlMs;
+        }
+        return Math.min(untilDeparture, cacheMaxTtlMs);
+    }
+
+    private RouteResult requestRoute(String requestUrl) throws IOException {
+        LOGGER.debug(requestUrl);
+        final Map<String, String> headers = new HashMap<String,String>();
+        headers.put("Accept", "application/json");
+        final String username = PropertyUtil.getOptional(PROPERTY_USER);
+        final String password = PropertyUtil.getOptional(PROPERTY_PASSWORD);
+        final HttpURLConnection con;
+        if(username != null && !username.isEmpty() && password != null && !password.isEmpty()) {
+            con = IOHelper.getConnection(requestUrl, username, password);
+        } else {
+            con = IOHelper.getConnection(requestUrl);
+        }
+        IOHelper.writeHeaders(con, headers);
+        // Unauthorized
+        if (con.getResponseCode() == 401) {
+            throw new IOException("Unauthorized");
+        }
+        try (InputStream in = con.getInputStream()) {
+            return readRoute(in);
+        }
+    }
+
+    /**
+     * Parses the routing service response once and binds it to a Route unless it's an error message
+     * @param in routing service response
+     * @return route or error message
+     * @throws IOException if response can't be parsed
+     */
+    RouteResult readRoute(InputStream in) throws IOException {
+        JsonNode json = mapper.readTree(in);
+        if (json == null || !json.isObject()) {
+            throw new IOException("Unexpected routing service response");
+        }
+        if (json.has(PARAM_ERROR)) {
+            JsonNode message = json.get(PARAM_ERROR_MESSAGE);
+            return new RouteResult(null, message != null ? message.asText() : "ERROR");
+        }
+        return new RouteResult(mapper.treeToValue(json, Route.class), null);
     }
 
     /**
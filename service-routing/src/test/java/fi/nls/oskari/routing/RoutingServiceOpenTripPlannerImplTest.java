@@ -12,6 +12,17 @@ import org.json.JSONObject;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class RoutingServiceOpenTripPlannerImplTest {
     private static final Logger LOGGER = LogFactory.getLogger(RoutingServiceOpenTripPlannerImplTest.class);
     private static final RoutingServiceOpenTripPlannerImpl ROUTING_SERVICE = new RoutingServiceOpenTripPlannerImpl();
@@ -104,4 +115,55 @@ public class RoutingServiceOpenTripPlannerImplTest {
         LOGGER.debug(response.toJSON());
 
     }
+
+    @org.junit.Test
+    public void testReadRouteError() throws Exception {
+        RoutingServiceOpenTripPlannerImpl.RouteResult result = ROUTING_SERVICE.readRoute(getClass().getResourceAsStream("route_error.json"));
+        assertTrue(result.isError());
+        assertNull(result.route);
+        assertEquals("ERROR", result.errorMessage);
+    }
+
+    @org.junit.Test
+    public void testReadRoute() throws Exception {
+        String routeJson = IOHelper.readString(getClass().getResourceAsStream("route2.json"), JSON_ENCODING);
+        routeJson = routeJson.replaceAll("\\\\", "\\\\\\\\");
+        RoutingServiceOpenTripPlannerImpl.RouteResult result = ROUTING_SERVICE.readRoute(
+                new ByteArrayInputStream(routeJson.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(result.isError());
+        assertNotNull(result.route);
+        assertEquals(Long.valueOf(1443689100000L), result.route.getPlan().getDate());
+        assertEquals(3, result.route.getPlan().getItineraries().size());
+        assertEquals(Long.valueOf(2332), result.route.getPlan().getItineraries().get(0).getDuration());
+        assertEquals(4, result.route.getPlan().getItineraries().get(0).getLegs().size());
+        assertTrue(result.isCacheable());
+    }
+
+    @org.junit.Test
+    public void testErrorsAndEmptyRoutesAreNotCached() throws Exception {
+        RoutingServiceOpenTripPlannerImpl.RouteResult error = ROUTING_SERVICE.readRoute(getClass().getResourceAsStream("route_error.json"));
+        assertFalse(error.isCacheable());
+
+        RoutingServiceOpenTripPlannerImpl.RouteResult empty = ROUTING_SERVICE.readRoute(
+                new ByteArrayInputStream("{\"plan\":{\"itineraries\":[]}}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(empty.isError());
+        assertFalse(empty.isCacheable());
+
+        RoutingServiceOpenTripPlannerImpl.RouteResult noPlan = ROUTING_SERVICE.readRoute(
+                new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(noPlan.isCacheable());
+    }
+
+    @org.junit.Test
+    public void testCacheTtl() {
+        long now = System.currentTimeMillis();
+        long ttl = ROUTING_SERVICE.getCacheTtl(null, now);
+        assertEquals(TimeUnit.SECONDS.toMillis(60), ttl);
+        // past departures and departures in near future use the default ttl
+        assertEquals(ttl, ROUTING_SERVICE.getCacheTtl(new Date(now - 1000), now));
+        assertEquals(ttl, ROUTING_SERVICE.getCacheTtl(new Date(now + 1000), now));
+        // planned departures are cached until departure
+        assertEquals(TimeUnit.MINUTES.toMillis(5), ROUTING_SERVICE.getCacheTtl(new Date(now + TimeUnit.MINUTES.toMillis(5)), now));
+        assertEquals(TimeUnit.MINUTES.toMillis(15), ROUTING_SERVICE.getCacheTtl(new Date(now + TimeUnit.DAYS.toMillis(1)), now));
+    }
 }
@@ -48,6 +48,13 @@ public final class DataSourceCacheUpdater extends DataSourceUpdater {
         JedisManager.del(getIndicatorListWorkKey());
     }
 
+    @Override
+    protected void updateFailed() {
+        super.updateFailed();
+        // the previous list is kept, drop the partial work
+        JedisManager.del(getIndicatorListWorkKey());
+    }
+
     @Override
     protected List<StatisticalIndicator> getIndicators() {
         final String workCacheKey = getIndicatorListWorkKey();
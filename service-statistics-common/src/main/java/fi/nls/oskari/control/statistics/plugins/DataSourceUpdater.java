@@ -32,8 +32,9 @@ public abstract class DataSourceUpdater implements Runnable {
             plugin.update();
         } catch (Exception ex) {
             LOG.error(ex, "Error updating datasource indicators! Datasource id: ", plugin.getSource().getId());
+            updateFailed();
+            return;
         }
-        // TODO: Should we modify status on problematic update? Should atleast update that it's not running anymore.
         updateCompleted();
     }
 
@@ -43,8 +44,27 @@ public abstract class DataSourceUpdater implements Runnable {
         JedisManager.setex(plugin.getStatusKey(), JedisManager.EXPIRY_TIME_DAY * 7, status.toString());
     }
 
+    /**
+     * Replaces the indicator list with the results of the update in one write so clients
+     * see either the previous complete list or the new one.
+     */
     protected void updateCompleted() {
         storeIndicatorList(getIndicators());
+        finishUpdate();
+    }
+
+    /**
+     * Marks the update as not running anymore. A partial result only replaces the indicator list
+     * when the cache was empty to begin with, otherwise the previous list is kept.
+     */
+    protected void updateFailed() {
+        if (isFullUpdate()) {
+            storeIndicatorList(getIndicators());
+        }
+        finishUpdate();
+    }
+
+    private void finishUpdate() {
         DataStatus status = plugin.getStatus();
         status.finishUpdate();
         JedisManager.setex(plugin.getStatusKey(), JedisManager.EXPIRY_TIME_DAY * 7, status.toString());
@@ -79,7 +99,8 @@ public abstract class DataSourceUpdater implements Runnable {
         // write new indicator list
         try {
             String result = listMapper.writeValueAsString(nonDuplicates);
-            JedisManager.setex(plugin.getIndicatorListKey(), JedisManager.EXPIRY_TIME_DAY * 7, result);
+            // the list can be several megabytes for large datasources and it's read on every indicator list request
+            JedisManager.setexCompressed(plugin.getIndicatorListKey(), JedisManager.EXPIRY_TIME_DAY * 7, result);
         } catch (JsonProcessingException ex) {
             LOG.error(ex, "Error updating indicator list");
         }
@@ -257,7 +257,7 @@ public abstract class StatisticalDatasourcePlugin {
         final List<StatisticalIndicator> existingIndicators = new ArrayList<>();
         final String cacheKey = getIndicatorListKey();
         try {
-            String existingJSON = JedisManager.get(cacheKey);
+            String existingJSON = JedisManager.getCompressed(cacheKey);
             if(existingJSON != null) {
                 List<StatisticalIndicator> list = MAPPER.readValue(existingJSON, new TypeReference<List<StatisticalIndicator>>(){});
                 existingIndicators.addAll(list);
@@ -13,6 +13,7 @@ import java.util.*;
 public class PxwebConfig {
 
     public static final String ID_SEPARATOR = "::";
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
 
     private long datasourceId;
     private String url;
@@ -21,6 +22,7 @@ public class PxwebConfig {
     private Set<String> ignoredVariables = new HashSet<>();
     private String timeVariableId = null;
     private Map<String, MetadataItem> metadata;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
 
     public PxwebConfig(JSONObject json, long id) {
         datasourceId = id;
@@ -30,6 +32,8 @@ public class PxwebConfig {
         url = json.optString("url");
         regionKey = json.optString("regionKey");
         indicatorKey = json.optString("indicatorKey");
+        // how many tables are fetched from the service at the same time when updating the indicator list
+        maxConcurrentRequests = Math.max(1, json.optInt("maxConcurrentRequests", DEFAULT_MAX_CONCURRENT_REQUESTS));
 
         // allow override with db config
         timeVariableId = json.optString("timeVariable", timeVariableId);
@@ -73,6 +77,10 @@ public class PxwebConfig {
         return ignoredVariables;
     }
 
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
     public String getTimeVariableId() {
         return timeVariableId;
     }
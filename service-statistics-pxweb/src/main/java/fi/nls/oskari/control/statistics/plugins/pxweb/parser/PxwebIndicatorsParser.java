@@ -22,13 +22,43 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Parses the indicator list of a Pxweb service. The tables are fetched in parallel with at most
+ * config.getMaxConcurrentRequests() requests to the service at a time. Tables are cached between
+ * parse() calls and a table is only fetched again if its "updated" timestamp in the folder listing has changed.
+ */
 public class PxwebIndicatorsParser {
     private final static Logger LOG = LogFactory.getLogger(PxwebIndicatorsParser.class);
 
     private PxwebConfig config;
     private ObjectMapper mapper = new ObjectMapper();
 
+    // table url -> table fetched on previous parse()
+    private Map<String, CachedTable> tableCache = new ConcurrentHashMap<>();
+    // tables seen on the currently running parse(), replaces tableCache when done
+    private Map<String, CachedTable> seenTables;
+    private ExecutorService executor;
+
+    private static class CachedTable {
+        private final String updated;
+        private final PxTableItem table;
+
+        CachedTable(String updated, PxTableItem table) {
+            this.updated = updated;
+            this.table = table;
+        }
+    }
+
     public PxwebIndicatorsParser(PxwebConfig config) {
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         this.config = config;
@@ -38,30 +68,60 @@ public class PxwebIndicatorsParser {
         return parse(null, layers);
     }
 
-    protected List<StatisticalIndicator> parse(String path, List<DatasourceLayer> layers) {
+    protected synchronized List<StatisticalIndicator> parse(String path, List<DatasourceLayer> layers) {
         final String url = getUrl(path);
 
         Collection<String> languages = getLanguages();
         List<StatisticalIndicator> indicatorList;
-        if(url.endsWith(".px")) {
-            // No id for indicator, assume the service has a separate indicator key config.
-            indicatorList = parsePxFileToMultipleIndicators(path, languages);
-        } else {
-            indicatorList = parseStructuredService(path, languages);
+        seenTables = new ConcurrentHashMap<>();
+        executor = createExecutor();
+        try {
+            if(url.endsWith(".px")) {
+                // No id for indicator, assume the service has a separate indicator key config.
+                indicatorList = parsePxFileToMultipleIndicators(path, languages);
+            } else {
+                indicatorList = parseStructuredService(path, languages);
+            }
+        } finally {
+            executor.shutdownNow();
+            executor = null;
+            // tables that are no longer listed are dropped from the cache
+            tableCache = seenTables;
+            seenTables = null;
         }
         setupLayers(indicatorList, layers, url);
         setupMetadata(indicatorList, languages);
         return indicatorList;
     }
 
+    private ExecutorService createExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(config.getMaxConcurrentRequests(), r -> {
+            Thread t = new Thread(r, "PxwebIndicatorsParser-" + config.getId() + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
     protected List<StatisticalIndicator> parseStructuredService(String path, Collection<String> languages) {
-        final String url = getUrl(path);
+        // folder listings are read first and the tables are fetched in parallel while listing the next folders
+        List<Future<List<StatisticalIndicator>>> tables = new ArrayList<>();
+        collectTables(path, languages, tables);
+        // collect the results in listing order
         List<StatisticalIndicator> indicators = new ArrayList<>();
+        for (Future<List<StatisticalIndicator>> table : tables) {
+            indicators.addAll(getResult(table));
+        }
+        return indicators;
+    }
+
+    private void collectTables(String path, Collection<String> languages, List<Future<List<StatisticalIndicator>>> tables) {
+        final String url = getUrl(path);
         List<PxFolderItem> list = readFolderListing(url);
         for(PxFolderItem item : list) {
             if("l".equalsIgnoreCase(item.type)) {
                 // recurse to pxweb "folder"
-                indicators.addAll(parseStructuredService(getPath(path, item.id), languages));
+                collectTables(getPath(path, item.id), languages, tables);
                 continue;
             }
             if(!"t".equalsIgnoreCase(item.type)) {
@@ -70,34 +130,68 @@ public class PxwebIndicatorsParser {
             }
             if(config.hasIndicatorKey()) {
                 // go to the px-file
-                indicators.addAll(parsePxFileToMultipleIndicators(getPath(path, item.id), languages));
+                tables.add(submit(() -> parsePxFileToMultipleIndicators(getPath(path, item.id), languages, item.updated)));
                 continue;
             }
-            HashMap<String, StatisticalIndicator> indicatorMap = new HashMap<>();
-            languages.forEach(lang -> {
-                try {
-                    PxTableItem table = getPxTable(path, lang, item.id);
-                    String indicatorId = createIndicatorId(table);
-                    StatisticalIndicator ind = indicatorMap.get(indicatorId);
-                    if (ind == null) {
-                        ind = new StatisticalIndicator();
-                        ind.setId(indicatorId);
-                        indicatorMap.put(indicatorId, ind);
-                        indicators.add(ind);
-                        // only populate model for first (== primary) language as it doesn't support localized labels for variables/selectors
-                        ind.setDataModel(getModel(table));
-                    }
-                    ind.addName(lang, item.text);
-                    // TODO: add "mergeModels(lang, model)" that would populate localized labels for variable
-                } catch (IOException e) {
-                    LOG.error(e, "Error getting indicators from Pxweb datasource:", config.getUrl());
-                }
-            });
+            tables.add(submit(() -> parseTable(path, item, languages)));
+        }
+    }
+
+    private Future<List<StatisticalIndicator>> submit(Callable<List<StatisticalIndicator>> task) {
+        if (executor == null) {
+            // not called through parse(), just run it
+            FutureTask<List<StatisticalIndicator>> future = new FutureTask<>(task);
+            future.run();
+            return future;
         }
+        return executor.submit(task);
+    }
+
+    private List<StatisticalIndicator> getResult(Future<List<StatisticalIndicator>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        } catch (ExecutionException e) {
+            LOG.error(e.getCause(), "Error getting indicators from Pxweb datasource:", config.getUrl());
+        }
+        return Collections.emptyList();
+    }
+
+    private List<StatisticalIndicator> parseTable(String path, PxFolderItem item, Collection<String> languages) {
+        List<StatisticalIndicator> indicators = new ArrayList<>();
+        HashMap<String, StatisticalIndicator> indicatorMap = new HashMap<>();
+        languages.forEach(lang -> {
+            try {
+                PxTableItem table = getPxTable(path, lang, item.id, item.updated);
+                String indicatorId = createIndicatorId(table);
+                StatisticalIndicator ind = indicatorMap.get(indicatorId);
+                if (ind == null) {
+                    ind = new StatisticalIndicator();
+                    ind.setId(indicatorId);
+                    indicatorMap.put(indicatorId, ind);
+                    indicators.add(ind);
+                    // only populate model for first (== primary) language as it doesn't support localized labels for variables/selectors
+                    ind.setDataModel(getModel(table));
+                }
+                ind.addName(lang, item.text);
+                // TODO: add "mergeModels(lang, model)" that would populate localized labels for variable
+            } catch (IOException e) {
+                LOG.error(e, "Error getting indicators from Pxweb datasource:", config.getUrl());
+            }
+        });
         return indicators;
     }
 
     protected List<StatisticalIndicator> parsePxFileToMultipleIndicators(String path, Collection<String> languages) {
+        return parsePxFileToMultipleIndicators(path, languages, null);
+    }
+
+    /**
+     * @param updated "updated" timestamp of the px-file from the folder listing, null if not known
+     */
+    protected List<StatisticalIndicator> parsePxFileToMultipleIndicators(String path, Collection<String> languages, String updated) {
 
         if(!config.hasIndicatorKey()) {
             LOG.warn("Tried to parse px-file as indicator list but missing indicator key configuration!");
@@ -108,7 +202,7 @@ public class PxwebIndicatorsParser {
 
         languages.forEach(lang -> {
             try {
-                PxTableItem table = getPxTable(path, lang);
+                PxTableItem table = getPxFile(path, lang, updated);
                 List<StatisticalIndicator> indicators = readPxTableAsIndicators(table, lang);
                 indicators.stream().forEach(cur -> {
                     StatisticalIndicator indicator = indicatorMap.get(cur.getId());
@@ -250,14 +344,25 @@ public class PxwebIndicatorsParser {
         return getPxTable(path, null);
     }
     protected PxTableItem getPxTable(String path, String lang) throws IOException {
+        return getPxFile(path, lang, null);
+    }
+    private PxTableItem getPxFile(String path, String lang, String updated) throws IOException {
         String url = getUrl(path, lang);
         if(url.endsWith(".px")) {
             String id = url.substring(url.lastIndexOf('/') + 1);
-            return getPxTable(path, lang, id);
+            return getPxTable(path, lang, id, updated);
         }
         return null;
     }
     protected PxTableItem getPxTable(String path, String lang, String tableId) throws IOException {
+        return getPxTable(path, lang, tableId, null);
+    }
+
+    /**
+     * Returns the table from the previous parse() if the updated timestamp matches, fetches it from the service otherwise.
+     * @param updated "updated" timestamp of the table from the folder listing, null to always fetch the table
+     */
+    protected PxTableItem getPxTable(String path, String lang, String tableId, String updated) throws IOException {
         String url = getUrl(path, lang);
         if(!url.endsWith(tableId)) {
             if(!url.endsWith("/")) {
@@ -265,13 +370,23 @@ public class PxwebIndicatorsParser {
             }
             url = url + tableId;
         }
-        String json = loadUrl(url);
-        PxTableItem table = mapper.readValue(json, PxTableItem.class);
-        if(table == null) {
-            return null;
+        CachedTable cached = tableCache.get(url);
+        PxTableItem table;
+        if (updated != null && cached != null && updated.equals(cached.updated)) {
+            table = cached.table;
+        } else {
+            String json = loadUrl(url);
+            table = mapper.readValue(json, PxTableItem.class);
+            if(table == null) {
+                return null;
+            }
+            table.setId(tableId);
+            table.setPath(path);
+        }
+        Map<String, CachedTable> seen = seenTables;
+        if (updated != null && seen != null) {
+            seen.put(url, new CachedTable(updated, table));
         }
-        table.setId(tableId);
-        table.setPath(path);
         return table;
     }
 
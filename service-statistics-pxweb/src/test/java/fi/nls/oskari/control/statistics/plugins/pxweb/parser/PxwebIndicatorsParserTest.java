@@ -20,6 +20,8 @@ import java.util.*;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.spy;
 
 /**
@@ -150,6 +152,23 @@ public class PxwebIndicatorsParserTest {
         assertEquals("Should find dimension 'vuosi'", "Vuosi", indicators.get(0).getDataModel().getDimension("vuosi").getName());
     }
 
+    /**
+     * Tables with unchanged "updated" timestamp in the folder listing shouldn't be fetched again on refresh
+     */
+    @Test
+    public void testRefreshOnlyFetchesUpdatedTables() throws Exception {
+        PxwebIndicatorsParser parser = getParser("config2folderstructWithIndicatorKey.json");
+        List<StatisticalIndicator> first = parser.parse(getLayers());
+        List<StatisticalIndicator> second = parser.parse(getLayers());
+
+        assertEquals("Should find the same indicators on refresh", first.size(), second.size());
+        assertEquals("Should keep the order on refresh", first.get(0).getId(), second.get(0).getId());
+        final String folderUrl = "https://pxnet2.stat.fi/pxweb/api/v1/fi/Kuntien_avainluvut/2017/";
+        verify(parser, times(2)).loadUrl(folderUrl);
+        verify(parser, times(1)).loadUrl(folderUrl + "kuntien_avainluvut_2017_aikasarja.px");
+        verify(parser, times(1)).loadUrl(folderUrl + "kuntien_avainluvut_2017_viimeisin.px");
+    }
+
     @Test
     public void testHKIModel() throws Exception {
         PxwebIndicatorsParser parser = getParser("config2folderstruct_hki.json");
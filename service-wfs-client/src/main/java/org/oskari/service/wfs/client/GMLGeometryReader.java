@@ -0,0 +1,400 @@
+package org.oskari.service.wfs.client;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.oskari.xml.XmlHelper;
+
+/**
+ * Reads simple feature GML 3.1/3.2 geometries from a StAX reader without schema information.
+ * Coordinates are kept in the order they appear in the document like the GeoTools GML parser does.
+ * Curved segments, xlinks and other constructs that can't be represented as simple features throw
+ * UnsupportedGMLException so the caller can fall back to the schema based parser.
+ */
+class GMLGeometryReader {
+
+    static final String NS_GML = "http://www.opengis.net/gml";
+    static final String NS_GML_32 = "http://www.opengis.net/gml/3.2";
+
+    private static final int DEFAULT_DIMENSION = 2;
+
+    private final GeometryFactory gf;
+
+    GMLGeometryReader(GeometryFactory gf) {
+        this.gf = gf;
+    }
+
+    static boolean isGML(String namespaceURI) {
+        return NS_GML.equals(namespaceURI) || NS_GML_32.equals(namespaceURI);
+    }
+
+    /**
+     * @param gmlLocalName local name of a GML geometry element
+     * @return JTS class the element is read as, null if the geometry type is not supported
+     */
+    static Class<? extends Geometry> getBinding(String gmlLocalName) {
+        switch (gmlLocalName) {
+        case "Point":
+            return Point.class;
+        case "LineString":
+        case "Curve":
+            return LineString.class;
+        case "LinearRing":
+            return LinearRing.class;
+        case "Polygon":
+        case "Surface":
+            return Polygon.class;
+        case "MultiPoint":
+            return MultiPoint.class;
+        case "MultiLineString":
+        case "MultiCurve":
+            return MultiLineString.class;
+        case "MultiPolygon":
+        case "MultiSurface":
+            return MultiPolygon.class;
+        case "MultiGeometry":
+            return GeometryCollection.class;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Reads the geometry the reader is positioned on.
+     * After calling this the reader is positioned on the END_ELEMENT of the geometry.
+     * @param r positioned on START_ELEMENT of a GML geometry
+     */
+    Geometry read(XMLStreamReader r) throws XMLStreamException {
+        return read(r, DEFAULT_DIMENSION);
+    }
+
+    private Geometry read(XMLStreamReader r, int dim) throws XMLStreamException {
+        dim = getDimension(r, dim);
+        String name = r.getLocalName();
+        switch (name) {
+        case "Point":
+            return readPoint(r, dim);
+        case "LineString":
+            return gf.createLineString(readCoordinates(r, dim));
+        case "LinearRing":
+            return gf.createLinearRing(readCoordinates(r, dim));
+        case "Curve":
+            return gf.createLineString(readCurveSegments(r, dim));
+        case "Polygon":
+            return readPolygon(r, dim);
+        case "Surface":
+            return readSurface(r, dim);
+        case "MultiPoint":
+        case "MultiLineString":
+        case "MultiCurve":
+        case "MultiPolygon":
+        case "MultiSurface":
+        case "MultiGeometry":
+            return readMulti(r, name, dim);
+        default:
+            throw new UnsupportedGMLException("Unsupported geometry type: " + name);
+        }
+    }
+
+    private Point readPoint(XMLStreamReader r, int dim) throws XMLStreamException {
+        Coordinate[] coords = readCoordinates(r, dim);
+        if (coords.length != 1) {
+            throw new XMLStreamException("Expected one coordinate for Point, got " + coords.length);
+        }
+        return gf.createPoint(coords[0]);
+    }
+
+    private Polygon readPolygon(XMLStreamReader r, int dim) throws XMLStreamException {
+        LinearRing shell = null;
+        List<LinearRing> holes = new ArrayList<>();
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if ("exterior".equals(name) || "outerBoundaryIs".equals(name)) {
+                shell = readRing(r, dim);
+            } else if ("interior".equals(name) || "innerBoundaryIs".equals(name)) {
+                holes.add(readRing(r, dim));
+            } else {
+                XmlHelper.skipElement(r);
+            }
+        }
+        if (shell == null) {
+            throw new XMLStreamException("Polygon without exterior");
+        }
+        return gf.createPolygon(shell, holes.toArray(new LinearRing[0]));
+    }
+
+    /**
+     * @param r positioned on exterior or interior
+     */
+    private LinearRing readRing(XMLStreamReader r, int dim) throws XMLStreamException {
+        LinearRing ring = null;
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            if (ring != null || !"LinearRing".equals(r.getLocalName())) {
+                throw new UnsupportedGMLException("Unsupported polygon boundary: " + r.getLocalName());
+            }
+            ring = gf.createLinearRing(readCoordinates(r, getDimension(r, dim)));
+        }
+        if (ring == null) {
+            throw new XMLStreamException("Empty polygon boundary");
+        }
+        return ring;
+    }
+
+    /**
+     * Surface with a single PolygonPatch
+     */
+    private Polygon readSurface(XMLStreamReader r, int dim) throws XMLStreamException {
+        Polygon polygon = null;
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            // patches in GML 3.2, polygonPatches in GML 3.1
+            while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+                if (polygon != null || !"PolygonPatch".equals(r.getLocalName())) {
+                    throw new UnsupportedGMLException("Unsupported surface patch: " + r.getLocalName());
+                }
+                polygon = readPolygon(r, dim);
+            }
+        }
+        if (polygon == null) {
+            throw new XMLStreamException("Surface without patches");
+        }
+        return polygon;
+    }
+
+    /**
+     * Curve with LineStringSegments, the segments are joined to a single LineString
+     */
+    private Coordinate[] readCurveSegments(XMLStreamReader r, int dim) throws XMLStreamException {
+        List<Coordinate> coords = new ArrayList<>();
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            // segments
+            while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+                if (!"LineStringSegment".equals(r.getLocalName())) {
+                    throw new UnsupportedGMLException("Unsupported curve segment: " + r.getLocalName());
+                }
+                Coordinate[] segment = readCoordinates(r, getDimension(r, dim));
+                int start = !coords.isEmpty() && segment.length > 0
+                        && coords.get(coords.size() - 1).equals2D(segment[0]) ? 1 : 0;
+                for (int i = start; i < segment.length; i++) {
+                    coords.add(segment[i]);
+                }
+            }
+        }
+        return coords.toArray(new Coordinate[0]);
+    }
+
+    private Geometry readMulti(XMLStreamReader r, String name, int dim) throws XMLStreamException {
+        List<Geometry> members = new ArrayList<>();
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            // pointMember, curveMembers, surfaceMember, geometryMember...
+            boolean empty = true;
+            while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+                members.add(read(r, dim));
+                empty = false;
+            }
+            if (empty) {
+                // most likely an xlink:href to a geometry elsewhere in the document
+                throw new UnsupportedGMLException("Empty or referenced geometry member in " + name);
+            }
+        }
+        switch (name) {
+        case "MultiPoint":
+            return gf.createMultiPoint(cast(members, Point.class, name));
+        case "MultiLineString":
+        case "MultiCurve":
+            return gf.createMultiLineString(cast(members, LineString.class, name));
+        case "MultiPolygon":
+        case "MultiSurface":
+            return gf.createMultiPolygon(cast(members, Polygon.class, name));
+        default:
+            return gf.createGeometryCollection(members.toArray(new Geometry[0]));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Geometry> T[] cast(List<Geometry> members, Class<T> type, String name) throws XMLStreamException {
+        T[] arr = (T[]) Array.newInstance(type, members.size());
+        for (int i = 0; i < arr.length; i++) {
+            Geometry g = members.get(i);
+            if (!type.isInstance(g)) {
+                throw new XMLStreamException("Unexpected " + g.getGeometryType() + " in " + name);
+            }
+            arr[i] = type.cast(g);
+        }
+        return arr;
+    }
+
+    /**
+     * Reads the pos, posList, coordinates or coord children of the current element.
+     * After calling this the reader is positioned on the END_ELEMENT of the current element.
+     */
+    private Coordinate[] readCoordinates(XMLStreamReader r, int dim) throws XMLStreamException {
+        List<Coordinate> coords = new ArrayList<>();
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if ("pos".equals(name) || "posList".equals(name)) {
+                int d = getDimension(r, dim);
+                addCoordinates(coords, parseDoubles(r.getElementText(), ' '), d);
+            } else if ("coordinates".equals(name)) {
+                readCoordinatesElement(r, coords);
+            } else if ("coord".equals(name)) {
+                readCoord(r, coords);
+            } else if ("pointProperty".equals(name) || "pointRep".equals(name)) {
+                Geometry point = null;
+                while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+                    point = read(r, dim);
+                }
+                if (!(point instanceof Point)) {
+                    throw new UnsupportedGMLException("Unsupported " + name);
+                }
+                coords.add(point.getCoordinate());
+            } else {
+                XmlHelper.skipElement(r);
+            }
+        }
+        return coords.toArray(new Coordinate[0]);
+    }
+
+    /**
+     * GML 2 style <coordinates cs="," ts=" ">x,y x,y</coordinates>
+     */
+    private static void readCoordinatesElement(XMLStreamReader r, List<Coordinate> coords) throws XMLStreamException {
+        String cs = r.getAttributeValue(null, "cs");
+        String ts = r.getAttributeValue(null, "ts");
+        String decimal = r.getAttributeValue(null, "decimal");
+        char csChar = cs == null || cs.isEmpty() ? ',' : cs.charAt(0);
+        char tsChar = ts == null || ts.isEmpty() ? ' ' : ts.charAt(0);
+        String text = r.getElementText();
+        if (decimal != null && !decimal.isEmpty() && decimal.charAt(0) != '.') {
+            text = text.replace(decimal.charAt(0), '.');
+        }
+        for (String tuple : split(text, tsChar)) {
+            double[] values = parseDoubles(tuple, csChar);
+            if (values.length > 0) {
+                addCoordinates(coords, values, values.length);
+            }
+        }
+    }
+
+    private static void readCoord(XMLStreamReader r, List<Coordinate> coords) throws XMLStreamException {
+        Coordinate c = new Coordinate(Double.NaN, Double.NaN);
+        while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            double value = Double.parseDouble(r.getElementText().trim());
+            if ("X".equals(name)) {
+                c.x = value;
+            } else if ("Y".equals(name)) {
+                c.y = value;
+            } else if ("Z".equals(name)) {
+                c.setZ(value);
+            }
+        }
+        coords.add(c);
+    }
+
+    private static void addCoordinates(List<Coordinate> coords, double[] values, int dim) throws XMLStreamException {
+        if (dim < 2 || values.length % dim != 0) {
+            throw new XMLStreamException("Invalid number of ordinates " + values.length + " for dimension " + dim);
+        }
+        for (int i = 0; i < values.length; i += dim) {
+            Coordinate c = dim > 2
+                    ? new Coordinate(values[i], values[i + 1], values[i + 2])
+                    : new Coordinate(values[i], values[i + 1]);
+            coords.add(c);
+        }
+    }
+
+    private static int getDimension(XMLStreamReader r, int inherited) throws XMLStreamException {
+        String dim = r.getAttributeValue(null, "srsDimension");
+        if (dim == null) {
+            // GML 3.1.1 posList/pos used "dimension"
+            dim = r.getAttributeValue(null, "dimension");
+        }
+        if (dim == null || dim.isEmpty()) {
+            return inherited;
+        }
+        try {
+            return Integer.parseInt(dim.trim());
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid srsDimension: " + dim);
+        }
+    }
+
+    /**
+     * Parses a list of numbers separated by the separator char or whitespace
+     */
+    static double[] parseDoubles(String text, char separator) throws XMLStreamException {
+        double[] values = new double[16];
+        int n = 0;
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && isSeparator(text.charAt(i), separator)) {
+                i++;
+            }
+            int start = i;
+            while (i < len && !isSeparator(text.charAt(i), separator)) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            if (n == values.length) {
+                double[] tmp = new double[n * 2];
+                System.arraycopy(values, 0, tmp, 0, n);
+                values = tmp;
+            }
+            try {
+                values[n++] = Double.parseDouble(text.substring(start, i));
+            } catch (NumberFormatException e) {
+                throw new XMLStreamException("Invalid coordinate value: " + text.substring(start, i));
+            }
+        }
+        double[] result = new double[n];
+        System.arraycopy(values, 0, result, 0, n);
+        return result;
+    }
+
+    private static boolean isSeparator(char c, char separator) {
+        return c == separator || Character.isWhitespace(c);
+    }
+
+    private static List<String> split(String text, char separator) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == separator
+                    || (separator == ' ' && Character.isWhitespace(text.charAt(i)))) {
+                if (i > start) {
+                    parts.add(text.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Thrown for valid GML that this reader doesn't handle
+     */
+    static class UnsupportedGMLException extends XMLStreamException {
+        UnsupportedGMLException(String msg) {
+            super(msg);
+        }
+    }
+}
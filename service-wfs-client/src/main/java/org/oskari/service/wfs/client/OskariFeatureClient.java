@@ -3,16 +3,19 @@ package org.oskari.service.wfs.client;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.PropertyUtil;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.store.ReprojectingFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.filter.Filter;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.service.user.UserLayerService;
 import org.oskari.service.wfs3.CoordinateTransformer;
+import org.oskari.service.wfs3.PaginatedFeatureCollection;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -35,7 +38,7 @@ public class OskariFeatureClient {
         if (nativeCRS == null) {
             try {
                 String nativeSrs = PropertyUtil.get(PROPERTY_NATIVE_SRS, "EPSG:4326");
-                nativeCRS = CRS.decode(nativeSrs, true);
+                nativeCRS = CRSRegistry.decode(nativeSrs, true);
             } catch (Exception e) {
                 throw new ServiceRuntimeException(ERR_NATIVE_SRS_DECODE_FAIL, e);
             }
@@ -48,18 +51,7 @@ public class OskariFeatureClient {
         CoordinateReferenceSystem nativeCRS = getNativeCRS();
         boolean needsTransform = !CRS.equalsIgnoreMetadata(nativeCRS, targetCRS);
 
-        // Request features in nativeCRS (of the installation)
-        // Most likely supported by all WFS layers
-        ReferencedEnvelope requestBbox = bbox;
-        if (needsTransform) {
-            try {
-                requestBbox = bbox.transform(nativeCRS, true);
-            } catch (Exception e) {
-                throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
-            }
-        }
-
-        SimpleFeatureCollection features = getFeaturesNoTransform(id, layer, requestBbox, nativeCRS, processor);
+        SimpleFeatureCollection features = getFeaturesNoTransform(id, layer, getRequestBbox(bbox, nativeCRS, needsTransform), nativeCRS, processor);
 
         if (!needsTransform) {
             return features;
@@ -67,13 +59,54 @@ public class OskariFeatureClient {
 
         // Transform features to targetCRS
         try {
-            CoordinateTransformer transformer = new CoordinateTransformer(nativeCRS, targetCRS);
+            CoordinateTransformer transformer = new CoordinateTransformer(nativeCRS, targetCRS,
+                    CRSRegistry.findMathTransform(nativeCRS, targetCRS));
             return transformer.transform(features);
         } catch (Exception e) {
             throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
         }
     }
 
+    /**
+     * Like getFeatures() but for reading a (possibly large) result once, for example when writing it to a file.
+     * Features are transformed to targetCRS as they are read instead of copying them to a new collection
+     * and pages of a paginated (OGC API Features) response are released once they have been read.
+     * The returned collection should only be iterated once.
+     */
+    public SimpleFeatureCollection getFeaturesForSinglePass(String id, OskariLayer layer, ReferencedEnvelope bbox,
+            CoordinateReferenceSystem targetCRS, Optional<UserLayerService> processor) {
+        CoordinateReferenceSystem nativeCRS = getNativeCRS();
+        boolean needsTransform = !CRS.equalsIgnoreMetadata(nativeCRS, targetCRS);
+
+        SimpleFeatureCollection features = getFeaturesNoTransform(id, layer, getRequestBbox(bbox, nativeCRS, needsTransform), nativeCRS, processor);
+        if (features instanceof PaginatedFeatureCollection) {
+            ((PaginatedFeatureCollection) features).setKeepPages(false);
+        }
+
+        if (!needsTransform) {
+            return features;
+        }
+        try {
+            return new ReprojectingFeatureCollection(features, nativeCRS, targetCRS);
+        } catch (Exception e) {
+            throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
+        }
+    }
+
+    /**
+     * Request features in nativeCRS (of the installation), most likely supported by all WFS layers
+     */
+    private ReferencedEnvelope getRequestBbox(ReferencedEnvelope bbox, CoordinateReferenceSystem nativeCRS, boolean needsTransform) {
+        if (!needsTransform) {
+            return bbox;
+        }
+        try {
+            return bbox.transform(nativeCRS, true);
+        } catch (Exception e) {
+            throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
+        }
+    }
+
     private SimpleFeatureCollection getFeaturesNoTransform(String id, OskariLayer layer,
             ReferencedEnvelope bbox, CoordinateReferenceSystem crs,
             Optional<UserLayerService> processor) {
@@ -1,5 +1,6 @@
 package org.oskari.service.wfs.client;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -12,4 +13,12 @@ public interface OskariGMLDecoder {
 
     public SimpleFeatureCollection decodeFeatureCollection(InputStream in, String username, String password) throws IOException, SAXException, ParserConfigurationException;
 
+    /**
+     * For responses that are already read to memory. Decoders that can read the response multiple times
+     * can use the array directly instead of copying it.
+     */
+    public default SimpleFeatureCollection decodeFeatureCollection(byte[] response, String username, String password) throws IOException, SAXException, ParserConfigurationException {
+        return decodeFeatureCollection(new ByteArrayInputStream(response), username, password);
+    }
+
 }
@@ -0,0 +1,648 @@
+package org.oskari.service.wfs.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.util.ProgressListener;
+import org.xml.sax.SAXException;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CRSRegistry;
+import fi.nls.oskari.util.IOHelper;
+import org.oskari.xml.XmlHelper;
+
+/**
+ * Decodes simple feature GML 3.1/3.2 feature collections with StAX without building a DOM
+ * or binding the application schema. The feature type (attribute names, value types and geometry types)
+ * is detected by reading through all the features of the response once. The features are not kept in memory,
+ * they are decoded from the response bytes each time the returned collection is iterated.
+ *
+ * Responses that aren't simple features (nested properties, curves, xlinks...) are passed on to
+ * the schema based fallback decoder.
+ */
+public class OskariGMLStreamingDecoder implements OskariGMLDecoder {
+
+    private static final Logger LOG = LogFactory.getLogger(OskariGMLStreamingDecoder.class);
+
+    private static final String NS_WFS = "http://www.opengis.net/wfs";
+    private static final String NS_WFS_20 = "http://www.opengis.net/wfs/2.0";
+    private static final String NS_XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    private static final Pattern INTEGER = Pattern.compile("-?(0|[1-9][0-9]{0,17})");
+    private static final Pattern DECIMAL = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][-+]?[0-9]+)?");
+
+    private static final XMLInputFactory XIF = createXMLInputFactory();
+
+    private final OskariGMLDecoder fallback;
+    private final GeometryFactory gf = new GeometryFactory();
+
+    /**
+     * @param fallback used for responses that can't be decoded without the schema, null for none
+     */
+    public OskariGMLStreamingDecoder(OskariGMLDecoder fallback) {
+        this.fallback = fallback;
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        // like XmlHelper.newXMLInputFactory() but namespace aware so GML elements can be recognized
+        XMLInputFactory factory = XmlHelper.newXMLInputFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    @Override
+    public SimpleFeatureCollection decodeFeatureCollection(InputStream in, String username, String password)
+            throws IOException, SAXException, ParserConfigurationException {
+        return decodeFeatureCollection(IOHelper.readBytes(in), username, password);
+    }
+
+    @Override
+    public SimpleFeatureCollection decodeFeatureCollection(byte[] response, String username, String password)
+            throws IOException, SAXException, ParserConfigurationException {
+        SchemaBuilder schema;
+        try {
+            schema = readSchema(response);
+        } catch (XMLStreamException | IllegalStateException e) {
+            if (fallback == null) {
+                throw new IOException("Failed to decode GML", e);
+            }
+            LOG.debug("Streaming GML decoding failed, using schema based parser:", e.getMessage());
+            return fallback.decodeFeatureCollection(response, username, password);
+        }
+        if (schema == null) {
+            return new DefaultFeatureCollection();
+        }
+        SimpleFeatureType featureType = schema.build();
+        ReferencedEnvelope bounds = new ReferencedEnvelope(schema.bounds, featureType.getCoordinateReferenceSystem());
+        return new StreamingFeatureCollection(featureType, bounds, schema.count, response);
+    }
+
+    /**
+     * Reads through all the features of the response to detect the feature type
+     * @return null if there are no features
+     * @throws XMLStreamException if the response can't be decoded without the schema
+     */
+    private SchemaBuilder readSchema(byte[] response) throws XMLStreamException {
+        RawFeatureReader reader = open(response);
+        try {
+            SchemaBuilder schema = null;
+            RawFeature f;
+            while ((f = reader.next()) != null) {
+                if (schema == null) {
+                    schema = new SchemaBuilder(f.namespace, f.typeName);
+                }
+                schema.add(f);
+            }
+            return schema;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private RawFeatureReader open(byte[] response) throws XMLStreamException {
+        XMLStreamReader r = XIF.createXMLStreamReader(new ByteArrayInputStream(response));
+        try {
+            readRoot(r);
+        } catch (XMLStreamException e) {
+            close(r);
+            throw e;
+        }
+        return new RawFeatureReader(r);
+    }
+
+    private static void close(XMLStreamReader r) {
+        if (r == null) {
+            return;
+        }
+        try {
+            r.close();
+        } catch (XMLStreamException ignore) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Moves the reader to the START_ELEMENT of the next feature. Expects the root element to be read already.
+     * @return false if there are no more features
+     */
+    private static boolean nextFeature(XMLStreamReader r) throws XMLStreamException {
+        int event;
+        while ((event = XmlHelper.nextElement(r)) != XMLStreamConstants.END_DOCUMENT) {
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String ns = r.getNamespaceURI();
+            if (!isWFS(ns) && !GMLGeometryReader.isGML(ns)) {
+                return true;
+            }
+            String name = r.getLocalName();
+            if ("FeatureCollection".equals(name)) {
+                // WFS 2.0 joins return tuples of features in nested collections
+                throw new GMLGeometryReader.UnsupportedGMLException("Nested feature collections");
+            }
+            if (!"member".equals(name) && !"featureMember".equals(name) && !"featureMembers".equals(name)) {
+                // boundedBy, additionalObjects, truncatedResponse...
+                XmlHelper.skipElement(r);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the reader to the START_ELEMENT of the root element
+     * @throws XMLStreamException if the root is not a feature collection
+     */
+    private static void readRoot(XMLStreamReader r) throws XMLStreamException {
+        if (XmlHelper.nextElement(r) != XMLStreamConstants.START_ELEMENT
+                || !"FeatureCollection".equals(r.getLocalName())
+                || !(isWFS(r.getNamespaceURI()) || GMLGeometryReader.isGML(r.getNamespaceURI()))) {
+            throw new XMLStreamException("Not a feature collection");
+        }
+    }
+
+    private static boolean isWFS(String ns) {
+        return NS_WFS.equals(ns) || NS_WFS_20.equals(ns);
+    }
+
+    private static boolean isNil(XMLStreamReader r) {
+        return "true".equals(r.getAttributeValue(NS_XSI, "nil"));
+    }
+
+    private static String getFeatureId(XMLStreamReader r) {
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            if ("id".equals(r.getAttributeLocalName(i)) && GMLGeometryReader.isGML(r.getAttributeNamespace(i))) {
+                return r.getAttributeValue(i);
+            }
+        }
+        // GML 2
+        return r.getAttributeValue(null, "fid");
+    }
+
+    /**
+     * Reads text content of a property. If the property contains an element the reader is left
+     * positioned on its START_ELEMENT and null is returned.
+     */
+    private static String readText(XMLStreamReader r, StringBuilder text) throws XMLStreamException {
+        text.setLength(0);
+        while (r.hasNext()) {
+            int event = r.next();
+            switch (event) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                text.append(r.getText());
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                return null;
+            case XMLStreamConstants.END_ELEMENT:
+                return text.toString();
+            default:
+                break;
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document");
+    }
+
+    /**
+     * Feature as read from the document, values are Strings (text content), GeometryValues or null (nil)
+     */
+    private static class RawFeature {
+        private final String namespace;
+        private final String typeName;
+        private final String fid;
+        private final Map<String, Object> values = new LinkedHashMap<>();
+
+        RawFeature(String namespace, String typeName, String fid) {
+            this.namespace = namespace;
+            this.typeName = typeName;
+            this.fid = fid;
+        }
+    }
+
+    private static class GeometryValue {
+        private final Class<? extends Geometry> binding;
+        private final String srsName;
+        private final Geometry geometry;
+
+        GeometryValue(Class<? extends Geometry> binding, String srsName, Geometry geometry) {
+            this.binding = binding;
+            this.srsName = srsName;
+            this.geometry = geometry;
+        }
+    }
+
+    /**
+     * Reads the features of the document one by one
+     */
+    private class RawFeatureReader {
+        private final XMLStreamReader r;
+        private final GMLGeometryReader geometryReader = new GMLGeometryReader(gf);
+        private final StringBuilder text = new StringBuilder();
+        private String typeName;
+        private boolean done;
+
+        RawFeatureReader(XMLStreamReader r) {
+            this.r = r;
+        }
+
+        /**
+         * @return next feature or null if there are no more features
+         * @throws XMLStreamException if the feature is not a simple feature
+         */
+        RawFeature next() throws XMLStreamException {
+            if (done) {
+                return null;
+            }
+            if (!nextFeature(r)) {
+                done = true;
+                close();
+                return null;
+            }
+            if (typeName == null) {
+                typeName = r.getLocalName();
+            } else if (!typeName.equals(r.getLocalName())) {
+                throw new GMLGeometryReader.UnsupportedGMLException("Multiple feature types in response");
+            }
+            RawFeature f = new RawFeature(r.getNamespaceURI(), r.getLocalName(), getFeatureId(r));
+            while (XmlHelper.nextElement(r) == XMLStreamConstants.START_ELEMENT) {
+                if (GMLGeometryReader.isGML(r.getNamespaceURI())) {
+                    // gml:boundedBy, gml:name etc are not part of the feature type
+                    XmlHelper.skipElement(r);
+                    continue;
+                }
+                String name = r.getLocalName();
+                if (isNil(r)) {
+                    f.values.put(name, null);
+                    XmlHelper.skipElement(r);
+                    continue;
+                }
+                String value = readText(r, text);
+                if (value != null) {
+                    f.values.put(name, value);
+                    continue;
+                }
+                // positioned on a child element
+                if (!GMLGeometryReader.isGML(r.getNamespaceURI())) {
+                    throw new GMLGeometryReader.UnsupportedGMLException("Complex property " + name);
+                }
+                Class<? extends Geometry> binding = GMLGeometryReader.getBinding(r.getLocalName());
+                if (binding == null) {
+                    throw new GMLGeometryReader.UnsupportedGMLException("Unsupported geometry " + r.getLocalName());
+                }
+                String srsName = r.getAttributeValue(null, "srsName");
+                f.values.put(name, new GeometryValue(binding, srsName, geometryReader.read(r)));
+                if (XmlHelper.nextElement(r) != XMLStreamConstants.END_ELEMENT) {
+                    throw new GMLGeometryReader.UnsupportedGMLException("Multiple values in " + name);
+                }
+            }
+            return f;
+        }
+
+        void close() {
+            done = true;
+            OskariGMLStreamingDecoder.close(r);
+        }
+    }
+
+    private static class SchemaBuilder {
+        private final String namespace;
+        private final String typeName;
+        private final Map<String, Property> properties = new LinkedHashMap<>();
+        private final Envelope bounds = new Envelope();
+        private int count;
+
+        SchemaBuilder(String namespace, String typeName) {
+            this.namespace = namespace;
+            this.typeName = typeName;
+        }
+
+        Property get(String name) {
+            return properties.computeIfAbsent(name, Property::new);
+        }
+
+        void add(RawFeature f) throws XMLStreamException {
+            count++;
+            for (Map.Entry<String, Object> e : f.values.entrySet()) {
+                Property property = get(e.getKey());
+                Object value = e.getValue();
+                if (value instanceof GeometryValue) {
+                    GeometryValue g = (GeometryValue) value;
+                    property.addGeometry(g.binding, g.srsName);
+                    if (g.geometry != null) {
+                        bounds.expandToInclude(g.geometry.getEnvelopeInternal());
+                    }
+                } else if (value != null) {
+                    property.addValue((String) value);
+                }
+            }
+        }
+
+        SimpleFeatureType build() {
+            SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+            b.setName(typeName);
+            if (namespace != null && !namespace.isEmpty()) {
+                b.setNamespaceURI(namespace);
+            }
+            String defaultGeometry = null;
+            for (Property p : properties.values()) {
+                if (p.geometry != null) {
+                    b.add(p.name, p.geometry, p.getCRS());
+                    if (defaultGeometry == null) {
+                        defaultGeometry = p.name;
+                    }
+                } else {
+                    b.add(p.name, p.getBinding());
+                }
+            }
+            if (defaultGeometry != null) {
+                b.setDefaultGeometry(defaultGeometry);
+            }
+            return b.buildFeatureType();
+        }
+    }
+
+    /**
+     * Collects the value types of a property over all the features
+     */
+    private static class Property {
+        private final String name;
+        private Class<?> binding;
+        private Class<? extends Geometry> geometry;
+        private String srsName;
+
+        Property(String name) {
+            this.name = name;
+        }
+
+        void addValue(String value) throws XMLStreamException {
+            String trimmed = value.trim();
+            if (trimmed.isEmpty()) {
+                return;
+            }
+            if (geometry != null) {
+                throw new GMLGeometryReader.UnsupportedGMLException("Mixed content in " + name);
+            }
+            binding = widen(binding, getValueType(trimmed));
+        }
+
+        void addGeometry(Class<? extends Geometry> type, String srs) throws XMLStreamException {
+            if (binding != null) {
+                throw new GMLGeometryReader.UnsupportedGMLException("Mixed content in " + name);
+            }
+            geometry = geometry == null || geometry.equals(type) ? type : Geometry.class;
+            if (srsName == null) {
+                srsName = srs;
+            }
+        }
+
+        Class<?> getBinding() {
+            return binding == null ? String.class : binding;
+        }
+
+        CoordinateReferenceSystem getCRS() {
+            if (srsName == null) {
+                return null;
+            }
+            try {
+                return CRSRegistry.decode(srsName);
+            } catch (Exception e) {
+                LOG.debug("Unable to decode srsName", srsName);
+                return null;
+            }
+        }
+
+        private static Class<?> getValueType(String value) {
+            if (INTEGER.matcher(value).matches()) {
+                return Long.class;
+            }
+            if (DECIMAL.matcher(value).matches()) {
+                return Double.class;
+            }
+            if ("true".equals(value) || "false".equals(value)) {
+                return Boolean.class;
+            }
+            return String.class;
+        }
+
+        private static Class<?> widen(Class<?> current, Class<?> type) {
+            if (current == null || current.equals(type)) {
+                return type;
+            }
+            boolean numbers = Number.class.isAssignableFrom(current) && Number.class.isAssignableFrom(type);
+            return numbers ? Double.class : String.class;
+        }
+    }
+
+    /**
+     * Features of the response decoded as they are iterated. The features are not kept, each call
+     * to features() decodes them again from the response so the response bytes are the only copy in memory.
+     */
+    private class StreamingFeatureCollection implements SimpleFeatureCollection {
+
+        private final SimpleFeatureType schema;
+        private final ReferencedEnvelope bounds;
+        private final int size;
+        private final byte[] response;
+
+        StreamingFeatureCollection(SimpleFeatureType schema, ReferencedEnvelope bounds, int size, byte[] response) {
+            this.schema = schema;
+            this.bounds = bounds;
+            this.size = size;
+            this.response = response;
+        }
+
+        private SimpleFeature toFeature(SimpleFeatureBuilder builder, RawFeature raw) {
+            for (Map.Entry<String, Object> e : raw.values.entrySet()) {
+                Object value = e.getValue();
+                if (value == null) {
+                    continue;
+                }
+                // the feature type was detected from all the features so every value fits it
+                AttributeDescriptor descriptor = schema.getDescriptor(e.getKey());
+                if (value instanceof GeometryValue) {
+                    builder.set(descriptor.getLocalName(), ((GeometryValue) value).geometry);
+                } else if (!(descriptor instanceof GeometryDescriptor)) {
+                    builder.set(descriptor.getLocalName(), convert((String) value, descriptor.getType().getBinding()));
+                }
+            }
+            return builder.buildFeature(raw.fid);
+        }
+
+        private List<SimpleFeature> getAll() {
+            List<SimpleFeature> features = new ArrayList<>(size);
+            try (SimpleFeatureIterator it = features()) {
+                while (it.hasNext()) {
+                    features.add(it.next());
+                }
+            }
+            return features;
+        }
+
+        @Override
+        public SimpleFeatureType getSchema() {
+            return schema;
+        }
+
+        @Override
+        public String getID() {
+            return "featureCollection";
+        }
+
+        @Override
+        public void accepts(FeatureVisitor visitor, ProgressListener progress) throws IOException {
+            try (SimpleFeatureIterator it = features()) {
+                while (it.hasNext()) {
+                    visitor.visit(it.next());
+                }
+            }
+        }
+
+        @Override
+        public ReferencedEnvelope getBounds() {
+            return new ReferencedEnvelope(bounds);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return getAll().contains(o);
+        }
+
+        @Override
+        public boolean containsAll(Collection<?> o) {
+            return getAll().containsAll(o);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return getAll().toArray();
+        }
+
+        @Override
+        public <O> O[] toArray(O[] a) {
+            return getAll().toArray(a);
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            final RawFeatureReader reader;
+            try {
+                reader = open(response);
+            } catch (XMLStreamException e) {
+                // the response was already read once when detecting the feature type
+                throw new IllegalStateException("Failed to decode features", e);
+            }
+            final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+            return new SimpleFeatureIterator() {
+                private SimpleFeature next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null) {
+                        next = readNext();
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public SimpleFeature next() throws NoSuchElementException {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    SimpleFeature f = next;
+                    next = null;
+                    return f;
+                }
+
+                private SimpleFeature readNext() {
+                    try {
+                        RawFeature raw = reader.next();
+                        return raw == null ? null : toFeature(builder, raw);
+                    } catch (XMLStreamException e) {
+                        reader.close();
+                        throw new IllegalStateException("Failed to decode feature", e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    reader.close();
+                }
+            };
+        }
+
+        @Override
+        public SimpleFeatureCollection subCollection(Filter filter) {
+            return new ListFeatureCollection(schema, getAll()).subCollection(filter);
+        }
+
+        @Override
+        public SimpleFeatureCollection sort(SortBy order) {
+            return new ListFeatureCollection(schema, getAll()).sort(order);
+        }
+    }
+
+    private static Object convert(String value, Class<?> binding) {
+        if (String.class.equals(binding)) {
+            return value;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (Long.class.equals(binding)) {
+            return INTEGER.matcher(trimmed).matches() ? Long.valueOf(trimmed) : null;
+        }
+        if (Double.class.equals(binding)) {
+            return DECIMAL.matcher(trimmed).matches() ? Double.valueOf(trimmed) : null;
+        }
+        if (Boolean.class.equals(binding)) {
+            return "true".equals(trimmed) || "false".equals(trimmed) ? Boolean.valueOf(trimmed) : null;
+        }
+        return value;
+    }
+
+}
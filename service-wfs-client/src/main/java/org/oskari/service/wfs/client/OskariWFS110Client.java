@@ -19,7 +19,7 @@ import fi.nls.oskari.service.ServiceRuntimeException;
  */
 public class OskariWFS110Client {
 
-    private static final OskariGML OSKARI_GML = new OskariGML();
+    private static final OskariGMLDecoder OSKARI_GML = new OskariGMLStreamingDecoder(new OskariGML());
 
     private OskariWFS110Client() {}
 
@@ -18,7 +18,7 @@ import java.util.Map;
  */
 public class OskariWFS2Client {
 
-    private static final OskariGML32 OSKARI_GML32 = new OskariGML32();
+    private static final OskariGMLDecoder OSKARI_GML32 = new OskariGMLStreamingDecoder(new OskariGML32());
 
     private OskariWFS2Client() {}
 
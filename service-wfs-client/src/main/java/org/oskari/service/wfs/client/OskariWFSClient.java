@@ -159,7 +159,7 @@ public class OskariWFSClient {
 
     private static SimpleFeatureCollection parseGML(byte[] response, CoordinateReferenceSystem crs, String url, String user, String pass, OskariGMLDecoder gmlDecoder) {
         try {
-            return gmlDecoder.decodeFeatureCollection(new ByteArrayInputStream(response), user, pass);
+            return gmlDecoder.decodeFeatureCollection(response, user, pass);
         } catch (Exception e) {
             LOG.info(e, "Unable to parse GML from", url);
             LOG.debug("Response from", url, "was:\n", new String(response, StandardCharsets.UTF_8));
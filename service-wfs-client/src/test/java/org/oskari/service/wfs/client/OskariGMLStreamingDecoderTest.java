@@ -0,0 +1,190 @@
+package org.oskari.service.wfs.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import fi.nls.oskari.util.IOHelper;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class OskariGMLStreamingDecoderTest {
+
+    private final OskariGMLStreamingDecoder decoder = new OskariGMLStreamingDecoder(null);
+
+    @Test
+    public void testGML31() throws Exception {
+        SimpleFeatureCollection fc;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("wfs110-gml31-features.xml")) {
+            fc = decoder.decodeFeatureCollection(in, null, null);
+        }
+        SimpleFeatureType schema = fc.getSchema();
+        assertEquals("rakennukset", schema.getTypeName());
+        assertEquals("geom", schema.getGeometryDescriptor().getLocalName());
+        assertEquals(MultiPolygon.class, schema.getGeometryDescriptor().getType().getBinding());
+        assertEquals(String.class, schema.getDescriptor("nimi").getType().getBinding());
+        // leading zeros must be kept
+        assertEquals(String.class, schema.getDescriptor("postinumero").getType().getBinding());
+        assertEquals(Long.class, schema.getDescriptor("kerroksia").getType().getBinding());
+        assertEquals(Double.class, schema.getDescriptor("kerrosala").getType().getBinding());
+        assertEquals(Boolean.class, schema.getDescriptor("suojeltu").getType().getBinding());
+        // gml:name and gml:boundedBy are not attributes of the feature type
+        assertNull(schema.getDescriptor("name"));
+        assertNull(schema.getDescriptor("boundedBy"));
+        assertEquals(2, fc.size());
+
+        try (SimpleFeatureIterator it = fc.features()) {
+            SimpleFeature f = it.next();
+            assertEquals("rakennukset.1", f.getID());
+            assertEquals("Kirjasto", f.getAttribute("nimi"));
+            assertEquals("00100", f.getAttribute("postinumero"));
+            assertEquals(3L, f.getAttribute("kerroksia"));
+            assertEquals(1250.5, f.getAttribute("kerrosala"));
+            assertEquals(Boolean.TRUE, f.getAttribute("suojeltu"));
+            assertNull(f.getAttribute("huom"));
+            MultiPolygon geom = (MultiPolygon) f.getDefaultGeometry();
+            assertEquals(1, geom.getNumGeometries());
+            Polygon polygon = (Polygon) geom.getGeometryN(0);
+            assertEquals(1, polygon.getNumInteriorRing());
+            assertEquals(new Coordinate(385100.0, 6671100.0), polygon.getExteriorRing().getCoordinateN(0));
+
+            f = it.next();
+            assertEquals("rakennukset.2", f.getID());
+            assertEquals("Uimahalli & sauna", f.getAttribute("nimi"));
+            assertEquals(980.0, f.getAttribute("kerrosala"));
+            assertNull(f.getAttribute("suojeltu"));
+            assertEquals("Peruskorjattu 2019", f.getAttribute("huom"));
+        }
+    }
+
+    @Test
+    public void testGML32() throws Exception {
+        SimpleFeatureCollection fc;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("wfs200-gml32-features.xml")) {
+            fc = decoder.decodeFeatureCollection(in, null, null);
+        }
+        SimpleFeatureType schema = fc.getSchema();
+        assertEquals("pysakit", schema.getTypeName());
+        assertEquals("msGeometry", schema.getGeometryDescriptor().getLocalName());
+        assertEquals(Double.class, schema.getDescriptor("linjoja").getType().getBinding());
+        assertEquals(3, fc.size());
+
+        try (SimpleFeatureIterator it = fc.features()) {
+            SimpleFeature f = it.next();
+            assertEquals("pysakit.1001", f.getID());
+            assertEquals("H1234", f.getAttribute("tunnus"));
+            assertEquals(4.0, f.getAttribute("linjoja"));
+            Point p = (Point) f.getDefaultGeometry();
+            assertEquals(385200.25, p.getX(), 0.0);
+            assertEquals(6671300.75, p.getY(), 0.0);
+
+            f = it.next();
+            p = (Point) f.getDefaultGeometry();
+            assertEquals(12.5, p.getCoordinate().getZ(), 0.0);
+
+            f = it.next();
+            assertEquals("H<1236>", f.getAttribute("tunnus"));
+            assertNull(f.getAttribute("linjoja"));
+            // segments are joined without duplicating the shared point
+            LineString line = (LineString) f.getDefaultGeometry();
+            assertEquals(3, line.getNumPoints());
+            assertTrue(line.getCoordinateN(2).equals2D(new Coordinate(385200, 6671000)));
+        }
+    }
+
+    @Test
+    public void testUnsupportedGeometryUsesFallback() throws Exception {
+        SimpleFeatureCollection expected = new DefaultFeatureCollection();
+        OskariGMLStreamingDecoder withFallback = new OskariGMLStreamingDecoder((in, user, pass) -> {
+            // the fallback gets the whole document
+            assertTrue(new String(IOHelper.readBytes(in), StandardCharsets.UTF_8).contains("<gml:Arc>"));
+            return expected;
+        });
+        byte[] gml;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("wfs200-gml32-arc.xml")) {
+            gml = IOHelper.readBytes(in);
+        }
+        assertSame(expected, withFallback.decodeFeatureCollection(new ByteArrayInputStream(gml), null, null));
+    }
+
+    @Test
+    public void testTypeIsDetectedFromAllFeatures() throws Exception {
+        int count = 1000;
+        StringBuilder gml = new StringBuilder();
+        gml.append("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs/2.0\"");
+        gml.append(" xmlns:gml=\"http://www.opengis.net/gml/3.2\" xmlns:test=\"http://test\">");
+        for (int i = 0; i < count; i++) {
+            // values change type well after the first features
+            String code = i < 500 ? Integer.toString(i) : "A" + i;
+            String amount = i < 500 ? Integer.toString(i) : i + ".5";
+            gml.append("<wfs:member><test:points gml:id=\"points.").append(i).append("\">");
+            gml.append("<test:code>").append(code).append("</test:code>");
+            gml.append("<test:amount>").append(amount).append("</test:amount>");
+            if (i == count - 1) {
+                // property that only the last feature has
+                gml.append("<test:extra>last</test:extra>");
+            }
+            gml.append("<test:geom><gml:Point srsName=\"EPSG:3067\"><gml:pos>").append(i).append(" 1</gml:pos></gml:Point></test:geom>");
+            gml.append("</test:points></wfs:member>");
+        }
+        gml.append("</wfs:FeatureCollection>");
+
+        SimpleFeatureCollection fc = decoder.decodeFeatureCollection(gml.toString().getBytes(StandardCharsets.UTF_8), null, null);
+        SimpleFeatureType schema = fc.getSchema();
+        assertEquals(String.class, schema.getDescriptor("code").getType().getBinding());
+        assertEquals(Double.class, schema.getDescriptor("amount").getType().getBinding());
+        assertEquals(String.class, schema.getDescriptor("extra").getType().getBinding());
+        assertEquals(count, fc.size());
+        assertEquals(0.0, fc.getBounds().getMinX(), 0.0);
+        assertEquals(count - 1, fc.getBounds().getMaxX(), 0.0);
+
+        // features are decoded again for each iteration
+        for (int pass = 0; pass < 2; pass++) {
+            try (SimpleFeatureIterator it = fc.features()) {
+                SimpleFeature first = it.next();
+                assertEquals("0", first.getAttribute("code"));
+                assertEquals(0.0, first.getAttribute("amount"));
+                assertNull(first.getAttribute("extra"));
+                SimpleFeature last = first;
+                while (it.hasNext()) {
+                    last = it.next();
+                }
+                assertEquals("points." + (count - 1), last.getID());
+                assertEquals("A999", last.getAttribute("code"));
+                assertEquals(999.5, last.getAttribute("amount"));
+                assertEquals("last", last.getAttribute("extra"));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyCollection() throws Exception {
+        String gml = "<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs/2.0\" numberMatched=\"0\" numberReturned=\"0\"/>";
+        SimpleFeatureCollection fc = decoder.decodeFeatureCollection(
+                new ByteArrayInputStream(gml.getBytes(StandardCharsets.UTF_8)), null, null);
+        assertTrue(fc.isEmpty());
+    }
+
+    @Test
+    public void testParseDoubles() throws Exception {
+        double[] values = GMLGeometryReader.parseDoubles(" 1.5  2\n-3e2\t4 ", ' ');
+        assertEquals(4, values.length);
+        assertEquals(1.5, values[0], 0.0);
+        assertEquals(-300.0, values[2], 0.0);
+        assertEquals(2, GMLGeometryReader.parseDoubles("1,2", ',').length);
+    }
+}
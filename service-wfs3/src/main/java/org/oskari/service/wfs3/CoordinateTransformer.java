@@ -39,6 +39,15 @@ public class CoordinateTransformer {
         this.transform = needsTransform ? CRS.findMathTransform(from, to) : null;
     }
 
+    /**
+     * @param transform transform from -> to, for example a cached one. null if no transform is needed
+     */
+    public CoordinateTransformer(CoordinateReferenceSystem from, CoordinateReferenceSystem to, MathTransform transform) {
+        this.from = from;
+        this.to = to;
+        this.transform = transform;
+    }
+
     public CoordinateReferenceSystem getA() {
         return from;
     }
@@ -0,0 +1,334 @@
+package org.oskari.service.wfs3;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTWriter;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Contains;
+import org.opengis.filter.spatial.Crosses;
+import org.opengis.filter.spatial.Disjoint;
+import org.opengis.filter.spatial.Equals;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.filter.spatial.Overlaps;
+import org.opengis.filter.spatial.Touches;
+import org.opengis.filter.spatial.Within;
+
+/**
+ * Encodes a Filter as CQL2 text (OGC 21-065)
+ *
+ * Only the comparison, logical, LIKE, BETWEEN, IS NULL and spatial predicates
+ * with a property on one side and a literal on the other are supported,
+ * anything else throws UnsupportedOperationException. Geometry literals
+ * are written as is, the caller is responsible for sending the matching filter-crs.
+ */
+class FilterToCQL2Text {
+
+    private static final Pattern SIMPLE_IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String defaultGeometryName;
+    private boolean geometryLiterals;
+
+    /**
+     * @param defaultGeometryName property name used for spatial filters that target the default geometry,
+     *                            spatial filters without a property name are not supported if this is null
+     */
+    FilterToCQL2Text(String defaultGeometryName) {
+        this.defaultGeometryName = defaultGeometryName;
+    }
+
+    /**
+     * @return true if any of the encoded filters had geometry literals
+     */
+    boolean hasGeometryLiterals() {
+        return geometryLiterals;
+    }
+
+    String encode(Filter filter) throws UnsupportedOperationException {
+        StringBuilder sb = new StringBuilder();
+        write(filter, sb);
+        return sb.toString();
+    }
+
+    private void write(Filter filter, StringBuilder sb) {
+        if (filter instanceof IncludeFilter) {
+            sb.append("TRUE");
+        } else if (filter instanceof ExcludeFilter) {
+            sb.append("FALSE");
+        } else if (filter instanceof And) {
+            writeLogical(((And) filter).getChildren(), " AND ", sb);
+        } else if (filter instanceof Or) {
+            writeLogical(((Or) filter).getChildren(), " OR ", sb);
+        } else if (filter instanceof Not) {
+            sb.append("NOT (");
+            write(((Not) filter).getFilter(), sb);
+            sb.append(')');
+        } else if (filter instanceof BinaryComparisonOperator) {
+            writeComparison((BinaryComparisonOperator) filter, sb);
+        } else if (filter instanceof PropertyIsLike) {
+            writeLike((PropertyIsLike) filter, sb);
+        } else if (filter instanceof PropertyIsBetween) {
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            writePropertyName(between.getExpression(), sb);
+            sb.append(" BETWEEN ");
+            writeLiteral(between.getLowerBoundary(), sb);
+            sb.append(" AND ");
+            writeLiteral(between.getUpperBoundary(), sb);
+        } else if (filter instanceof PropertyIsNull) {
+            writePropertyName(((PropertyIsNull) filter).getExpression(), sb);
+            sb.append(" IS NULL");
+        } else if (filter instanceof BBOX) {
+            writeBBOX((BBOX) filter, sb);
+        } else if (filter instanceof BinarySpatialOperator) {
+            writeSpatial((BinarySpatialOperator) filter, sb);
+        } else {
+            throw new UnsupportedOperationException("Not supported: " + filter.getClass().getSimpleName());
+        }
+    }
+
+    private void writeLogical(List<Filter> children, String op, StringBuilder sb) {
+        if (children == null || children.isEmpty()) {
+            throw new UnsupportedOperationException("Empty logical operator");
+        }
+        sb.append('(');
+        boolean first = true;
+        for (Filter child : children) {
+            if (!first) {
+                sb.append(op);
+            }
+            write(child, sb);
+            first = false;
+        }
+        sb.append(')');
+    }
+
+    private void writeComparison(BinaryComparisonOperator filter, StringBuilder sb) {
+        String op = getOperator(filter);
+        Expression property = filter.getExpression1();
+        Expression literal = filter.getExpression2();
+        if (property instanceof Literal && literal instanceof PropertyName) {
+            // 5 < foo => foo > 5
+            property = filter.getExpression2();
+            literal = filter.getExpression1();
+            op = flip(op);
+        }
+        if (!filter.isMatchingCase() && literal instanceof Literal
+                && ((Literal) literal).getValue() instanceof String) {
+            // Would require CASEI() from the Case-insensitive Comparison conformance class
+            throw new UnsupportedOperationException("Case-insensitive comparison not supported");
+        }
+        writePropertyName(property, sb);
+        sb.append(' ').append(op).append(' ');
+        writeLiteral(literal, sb);
+    }
+
+    private static String getOperator(BinaryComparisonOperator filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            return "=";
+        } else if (filter instanceof PropertyIsNotEqualTo) {
+            return "<>";
+        } else if (filter instanceof PropertyIsLessThan) {
+            return "<";
+        } else if (filter instanceof PropertyIsLessThanOrEqualTo) {
+            return "<=";
+        } else if (filter instanceof PropertyIsGreaterThan) {
+            return ">";
+        } else if (filter instanceof PropertyIsGreaterThanOrEqualTo) {
+            return ">=";
+        }
+        throw new UnsupportedOperationException("Not supported: " + filter.getClass().getSimpleName());
+    }
+
+    private static String flip(String op) {
+        switch (op) {
+        case "<": return ">";
+        case "<=": return ">=";
+        case ">": return "<";
+        case ">=": return "<=";
+        default: return op;
+        }
+    }
+
+    private void writeLike(PropertyIsLike filter, StringBuilder sb) {
+        if (!filter.isMatchingCase()) {
+            throw new UnsupportedOperationException("Case-insensitive LIKE not supported");
+        }
+        writePropertyName(filter.getExpression(), sb);
+        sb.append(" LIKE ");
+        writeString(toCQL2Pattern(filter.getLiteral(),
+                filter.getWildCard(), filter.getSingleChar(), filter.getEscape()), sb);
+    }
+
+    /**
+     * Convert a pattern with custom wild card, single char and escape characters
+     * to CQL2 pattern where % and _ are the wild cards and \ is the escape character
+     */
+    static String toCQL2Pattern(String pattern, String wildCard, String singleChar, String escape) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 8);
+        int i = 0;
+        while (i < pattern.length()) {
+            if (escape != null && !escape.isEmpty() && pattern.startsWith(escape, i)) {
+                i += escape.length();
+                if (i < pattern.length()) {
+                    appendLiteralChar(pattern.charAt(i++), sb);
+                }
+            } else if (wildCard != null && !wildCard.isEmpty() && pattern.startsWith(wildCard, i)) {
+                sb.append('%');
+                i += wildCard.length();
+            } else if (singleChar != null && !singleChar.isEmpty() && pattern.startsWith(singleChar, i)) {
+                sb.append('_');
+                i += singleChar.length();
+            } else {
+                appendLiteralChar(pattern.charAt(i++), sb);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendLiteralChar(char c, StringBuilder sb) {
+        if (c == '%' || c == '_' || c == '\\') {
+            sb.append('\\');
+        }
+        sb.append(c);
+    }
+
+    private void writeBBOX(BBOX filter, StringBuilder sb) {
+        Envelope env = (Envelope) filter.getBounds();
+        sb.append("S_INTERSECTS(");
+        writeGeometryPropertyName(filter.getExpression1(), sb);
+        sb.append(", BBOX(")
+                .append(env.getMinX()).append(',')
+                .append(env.getMinY()).append(',')
+                .append(env.getMaxX()).append(',')
+                .append(env.getMaxY())
+                .append("))");
+        geometryLiterals = true;
+    }
+
+    private void writeSpatial(BinarySpatialOperator filter, StringBuilder sb) {
+        Expression property = filter.getExpression1();
+        Expression literal = filter.getExpression2();
+        if (literal instanceof PropertyName && property instanceof Literal) {
+            if (filter instanceof Within || filter instanceof Contains) {
+                // Not symmetric
+                throw new UnsupportedOperationException("Geometry literal must be the second argument");
+            }
+            property = filter.getExpression2();
+            literal = filter.getExpression1();
+        }
+        if (!(literal instanceof Literal) || !(((Literal) literal).getValue() instanceof Geometry)) {
+            throw new UnsupportedOperationException("Expected a geometry literal");
+        }
+        Geometry geom = (Geometry) ((Literal) literal).getValue();
+        sb.append(getSpatialFunction(filter)).append('(');
+        writeGeometryPropertyName(property, sb);
+        sb.append(", ").append(new WKTWriter().write(geom)).append(')');
+        geometryLiterals = true;
+    }
+
+    private static String getSpatialFunction(BinarySpatialOperator filter) {
+        if (filter instanceof Intersects) {
+            return "S_INTERSECTS";
+        } else if (filter instanceof Disjoint) {
+            return "S_DISJOINT";
+        } else if (filter instanceof Equals) {
+            return "S_EQUALS";
+        } else if (filter instanceof Touches) {
+            return "S_TOUCHES";
+        } else if (filter instanceof Crosses) {
+            return "S_CROSSES";
+        } else if (filter instanceof Within) {
+            return "S_WITHIN";
+        } else if (filter instanceof Contains) {
+            return "S_CONTAINS";
+        } else if (filter instanceof Overlaps) {
+            return "S_OVERLAPS";
+        }
+        throw new UnsupportedOperationException("Not supported: " + filter.getClass().getSimpleName());
+    }
+
+    private void writeGeometryPropertyName(Expression e, StringBuilder sb) {
+        if (e instanceof PropertyName) {
+            String name = ((PropertyName) e).getPropertyName();
+            if (name != null && !name.isEmpty()) {
+                writeIdentifier(name, sb);
+                return;
+            }
+        } else if (e != null) {
+            throw new UnsupportedOperationException("Expected a PropertyName");
+        }
+        // Default geometry
+        if (defaultGeometryName == null) {
+            throw new UnsupportedOperationException("Default geometry property name not known");
+        }
+        writeIdentifier(defaultGeometryName, sb);
+    }
+
+    private static void writePropertyName(Expression e, StringBuilder sb) {
+        if (!(e instanceof PropertyName)) {
+            throw new UnsupportedOperationException("Expected a PropertyName");
+        }
+        writeIdentifier(((PropertyName) e).getPropertyName(), sb);
+    }
+
+    private static void writeIdentifier(String name, StringBuilder sb) {
+        if (SIMPLE_IDENTIFIER.matcher(name).matches()) {
+            sb.append(name);
+        } else {
+            sb.append('"').append(name.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    private static void writeLiteral(Expression e, StringBuilder sb) {
+        if (!(e instanceof Literal)) {
+            throw new UnsupportedOperationException("Expected a Literal");
+        }
+        Object value = ((Literal) e).getValue();
+        if (value instanceof String) {
+            writeString((String) value, sb);
+        } else if (value instanceof Boolean) {
+            sb.append((Boolean) value ? "TRUE" : "FALSE");
+        } else if (value instanceof BigDecimal) {
+            sb.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new UnsupportedOperationException("Not a finite number");
+            }
+            sb.append(d);
+        } else if (value instanceof Number) {
+            sb.append(value);
+        } else {
+            throw new UnsupportedOperationException("Literal type not supported: "
+                    + (value == null ? null : value.getClass().getSimpleName()));
+        }
+    }
+
+    private static void writeString(String value, StringBuilder sb) {
+        sb.append('\'').append(value.replace("'", "''")).append('\'');
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.oskari.service.wfs3;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +11,7 @@ import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.filter.FilterCapabilities;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.opengis.filter.And;
 import org.opengis.filter.ExcludeFilter;
 import org.opengis.filter.Filter;
@@ -64,21 +66,65 @@ import org.opengis.filter.temporal.TContains;
 import org.opengis.filter.temporal.TEquals;
 import org.opengis.filter.temporal.TOverlaps;
 
+import org.oskari.ogcapi.OGCAPIConformanceClass;
+
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.JSONHelper;
 
+/**
+ * Translates a Filter to OAPIF query parameters. The Core query parameters (bbox and
+ * simple property equality) are always available. If the layer capabilities state
+ * that the service supports filtering with CQL2 text the rest of the filter is sent
+ * as the filter parameter. The part of the filter that can't be sent to the service
+ * is returned to be applied locally.
+ */
 public class FilterToOAPIFCoreQuery implements FilterVisitor, ExpressionVisitor {
 
+    private static final Logger LOG = LogFactory.getLogger(FilterToOAPIFCoreQuery.class);
+
     static final String ATTRIBUTE_QUERYABLES = "queryables";
+    static final String CAPABILITIES_FILTER_CONFORMANCE = "filter-conformance";
+    private static final String CAPABILITIES_GEOMETRY_NAME = "geomName";
+
+    static final String PARAM_FILTER = "filter";
+    static final String PARAM_FILTER_LANG = "filter-lang";
+    static final String PARAM_FILTER_CRS = "filter-crs";
+    static final String FILTER_LANG_CQL2_TEXT = "cql2-text";
 
     private final OskariLayer layer;
+    private final boolean allowCQL2;
     private boolean insideAnd = false;
+    private boolean cql2Used = false;
 
     public FilterToOAPIFCoreQuery(OskariLayer layer) {
+        this(layer, true);
+    }
+
+    /**
+     * @param allowCQL2 false to only use the Core query parameters even if the service supports CQL2
+     */
+    public FilterToOAPIFCoreQuery(OskariLayer layer, boolean allowCQL2) {
         this.layer = layer;
+        this.allowCQL2 = allowCQL2;
+    }
+
+    /**
+     * @return true if the last call to toQueryParameters() added a CQL2 filter to the query
+     */
+    public boolean isCQL2Used() {
+        return cql2Used;
     }
 
     public Filter toQueryParameters(Filter filter, Map<String, String> query) {
+        cql2Used = false;
+        Set<String> conformance = getFilterConformance(layer);
+        // Don't override a filter set in the layer params
+        if (allowCQL2 && supportsCQL2Text(conformance) && !query.containsKey(PARAM_FILTER)) {
+            return toCQL2QueryParameters(filter, query, conformance);
+        }
+
         FilterCapabilities capabilities = createFilterCapabilities(layer);
         Set<String> queryables = getQueryables(layer);
 
@@ -133,6 +179,117 @@ public class FilterToOAPIFCoreQuery implements FilterVisitor, ExpressionVisitor
         return true;
     }
 
+    private Filter toCQL2QueryParameters(Filter filter, Map<String, String> query, Set<String> conformance) {
+        Filter flattenedFilter = flatten(filter);
+
+        // A top level BBOX is sent as the Core bbox parameter, the rest as CQL2
+        List<Filter> parts = flattenedFilter instanceof And
+                ? ((And) flattenedFilter).getChildren()
+                : Collections.singletonList(flattenedFilter);
+        BBOX bbox = null;
+        List<Filter> remaining = new ArrayList<>();
+        for (Filter part : parts) {
+            if (bbox == null && part instanceof BBOX) {
+                bbox = (BBOX) part;
+            } else {
+                remaining.add(part);
+            }
+        }
+        if (bbox != null) {
+            bbox.accept(this, query);
+        }
+        if (remaining.isEmpty()) {
+            return Filter.INCLUDE;
+        }
+        Filter rest = remaining.size() == 1
+                ? remaining.get(0)
+                : CommonFactoryFinder.getFilterFactory().and(remaining);
+
+        // Geometry literals are in the CRS the features are requested in, which is only known if the service supports it
+        String filterCrs = query.get("crs");
+        FilterCapabilities capabilities = createCQL2FilterCapabilities(conformance, filterCrs != null);
+        OAPIFFilterSplittingVisitor splitter = new OAPIFFilterSplittingVisitor(capabilities, getQueryables(layer));
+        rest.accept(splitter, null);
+
+        Filter preFilter = splitter.getFilterPre();
+        if (preFilter == Filter.INCLUDE) {
+            return splitter.getFilterPost();
+        }
+
+        FilterToCQL2Text encoder = new FilterToCQL2Text(getGeometryName(layer));
+        String cql2;
+        try {
+            cql2 = encoder.encode(preFilter);
+        } catch (UnsupportedOperationException e) {
+            LOG.debug("Filter can't be sent as CQL2, filtering locally:", e.getMessage());
+            return rest;
+        }
+        query.put(PARAM_FILTER, cql2);
+        query.put(PARAM_FILTER_LANG, FILTER_LANG_CQL2_TEXT);
+        if (encoder.hasGeometryLiterals()) {
+            query.put(PARAM_FILTER_CRS, filterCrs);
+        }
+        cql2Used = true;
+        return splitter.getFilterPost();
+    }
+
+    private static boolean supportsCQL2Text(Set<String> conformance) {
+        return (conformance.contains(OGCAPIConformanceClass.Filter.url)
+                || conformance.contains(OGCAPIConformanceClass.FeaturesFilter.url))
+                && conformance.contains(OGCAPIConformanceClass.CQL2Text.url)
+                && conformance.contains(OGCAPIConformanceClass.BasicCQL2.url);
+    }
+
+    private static FilterCapabilities createCQL2FilterCapabilities(Set<String> conformance, boolean allowSpatial) {
+        FilterCapabilities capabilities = new FilterCapabilities();
+
+        // Basic CQL2
+        capabilities.addType(FilterCapabilities.LOGICAL_OPENGIS);
+        capabilities.addType(FilterCapabilities.SIMPLE_COMPARISONS_OPENGIS);
+        capabilities.addType(FilterCapabilities.NULL_CHECK);
+
+        if (conformance.contains(OGCAPIConformanceClass.AdvancedComparisonOperators.url)) {
+            capabilities.addType(FilterCapabilities.LIKE);
+            capabilities.addType(FilterCapabilities.BETWEEN);
+        }
+
+        if (!allowSpatial) {
+            return capabilities;
+        }
+        if (conformance.contains(OGCAPIConformanceClass.SpatialFunctions.url)) {
+            capabilities.addType(FilterCapabilities.SPATIAL_BBOX);
+            capabilities.addType(FilterCapabilities.SPATIAL_INTERSECT);
+            capabilities.addType(FilterCapabilities.SPATIAL_DISJOINT);
+            capabilities.addType(FilterCapabilities.SPATIAL_EQUALS);
+            capabilities.addType(FilterCapabilities.SPATIAL_TOUCHES);
+            capabilities.addType(FilterCapabilities.SPATIAL_CROSSES);
+            capabilities.addType(FilterCapabilities.SPATIAL_WITHIN);
+            capabilities.addType(FilterCapabilities.SPATIAL_CONTAINS);
+            capabilities.addType(FilterCapabilities.SPATIAL_OVERLAPS);
+        } else if (conformance.contains(OGCAPIConformanceClass.BasicSpatialFunctions.url)) {
+            capabilities.addType(FilterCapabilities.SPATIAL_BBOX);
+            capabilities.addType(FilterCapabilities.SPATIAL_INTERSECT);
+        }
+        return capabilities;
+    }
+
+    private static Set<String> getFilterConformance(OskariLayer layer) {
+        JSONObject capabilities = layer.getCapabilities();
+        if (capabilities == null) {
+            return Collections.emptySet();
+        }
+        List<String> conformance = JSONHelper.getArrayAsList(capabilities.optJSONArray(CAPABILITIES_FILTER_CONFORMANCE));
+        return new HashSet<>(conformance);
+    }
+
+    private static String getGeometryName(OskariLayer layer) {
+        JSONObject capabilities = layer.getCapabilities();
+        if (capabilities == null) {
+            return null;
+        }
+        return capabilities.optString(CAPABILITIES_GEOMETRY_NAME, null);
+    }
+
     private FilterCapabilities createFilterCapabilities(OskariLayer layer) {
         // TODO: Determine capabilities based on layer
         FilterCapabilities capabilities = new FilterCapabilities();
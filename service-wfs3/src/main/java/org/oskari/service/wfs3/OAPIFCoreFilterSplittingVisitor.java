@@ -3,7 +3,6 @@ package org.oskari.service.wfs3;
 import java.util.Set;
 
 import org.geotools.filter.FilterCapabilities;
-import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.Or;
 import org.opengis.filter.PropertyIsEqualTo;
@@ -12,9 +11,8 @@ import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
 
 /**
- * Split a Filter into pre-filter and post-filter.
- * Pre-filter is the part the OAPIF server can handle and apply
- * Post-filter is the part oskari-server has to handle and apply to the response from the OAPIF server
+ * Split a Filter into pre-filter and post-filter for OAPIF servers
+ * that only conform to the Core conformance class.
  *
  * This class overrides visit(PropertyIsEqualTo) method as the super class
  * handles all SIMPLE_COMPARISONS_OPENGIS as same group and we don't want that
@@ -24,23 +22,10 @@ import org.opengis.filter.expression.PropertyName;
  * all children of the Or are simple PropertyIsEqualTo filters and that all
  * of them share the same PropertyName
  */
-class OAPIFCoreFilterSplittingVisitor extends PostPreProcessFilterSplittingVisitor {
-
-    private final Set<String> queryables;
+class OAPIFCoreFilterSplittingVisitor extends OAPIFFilterSplittingVisitor {
 
     public OAPIFCoreFilterSplittingVisitor(FilterCapabilities fcs, Set<String> queryables) {
-        super(fcs, null, null);
-        this.queryables = queryables;
-    }
-
-    @Override
-    public Object visit(PropertyName expression, Object notUsed) {
-        if (queryables == null || queryables.contains(expression.getPropertyName())) {
-            preStack.push(expression);
-        } else {
-            postStack.push(expression);
-        }
-        return null;
+        super(fcs, queryables);
     }
 
     @Override
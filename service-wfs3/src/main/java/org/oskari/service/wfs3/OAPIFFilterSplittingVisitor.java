@@ -0,0 +1,37 @@
+package org.oskari.service.wfs3;
+
+import java.util.Set;
+
+import org.geotools.filter.FilterCapabilities;
+import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Split a Filter into pre-filter and post-filter.
+ * Pre-filter is the part the OAPIF server can handle and apply
+ * Post-filter is the part oskari-server has to handle and apply to the response from the OAPIF server
+ *
+ * Filters referencing properties that aren't queryable are always
+ * left to the post-filter. If queryables is null every property is
+ * considered queryable.
+ */
+class OAPIFFilterSplittingVisitor extends PostPreProcessFilterSplittingVisitor {
+
+    private final Set<String> queryables;
+
+    public OAPIFFilterSplittingVisitor(FilterCapabilities fcs, Set<String> queryables) {
+        super(fcs, null, null);
+        this.queryables = queryables;
+    }
+
+    @Override
+    public Object visit(PropertyName expression, Object notUsed) {
+        if (queryables == null || queryables.contains(expression.getPropertyName())) {
+            preStack.push(expression);
+        } else {
+            postStack.push(expression);
+        }
+        return null;
+    }
+
+}
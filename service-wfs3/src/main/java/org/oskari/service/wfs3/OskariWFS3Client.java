@@ -3,7 +3,6 @@ package org.oskari.service.wfs3;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -28,6 +27,8 @@ import org.oskari.geojson.GeoJSONSchemaDetector;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -58,6 +59,8 @@ public class OskariWFS3Client {
     private static final int MAX_REDIRECTS = 5;
     private static final ObjectMapper OM = new ObjectMapper();
     private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
+    // Layers whose service advertised CQL2 support but rejected the filter we sent, filter these locally for a while
+    private static final Cache<Boolean> CQL2_REJECTED = CacheManager.getCache(OskariWFS3Client.class.getName() + "_cql2Rejected");
 
 
     private static CoordinateReferenceSystem CRS84;
@@ -115,8 +118,11 @@ public class OskariWFS3Client {
         query.putAll(JSONHelper.getObjectAsMap(layer.getParams()));
 
         Filter postFilter = Filter.INCLUDE;
+        boolean cql2 = false;
         if (filter != null) {
-            postFilter = new FilterToOAPIFCoreQuery(layer).toQueryParameters(filter, query);
+            FilterToOAPIFCoreQuery toQuery = new FilterToOAPIFCoreQuery(layer, !isCQL2Rejected(layer));
+            postFilter = toQuery.toQueryParameters(filter, query);
+            cql2 = toQuery.isCQL2Used();
         } else if (bbox != null) {
             addBboxToQuery(layer, bbox, query);
         }
@@ -124,38 +130,43 @@ public class OskariWFS3Client {
         Map<String, String> headers = Collections.singletonMap("Accept", CONTENT_TYPE_GEOJSON);
 
         try {
-            List<SimpleFeatureCollection> pages = new ArrayList<>();
-            int numFeatures = 0;
-
             HttpURLConnection conn = IOHelper.getConnection(path, user, pass, query, headers);
             conn = IOHelper.followRedirect(conn, user, pass, query, headers, MAX_REDIRECTS);
 
+            if (cql2 && conn.getResponseCode() == HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Service claims CQL2 support but didn't accept the filter, retry with Core parameters only
+                LOG.info("CQL2 filter rejected by", path, "- filtering locally instead. Filter was:",
+                        query.get(FilterToOAPIFCoreQuery.PARAM_FILTER));
+                conn.disconnect();
+                CQL2_REJECTED.put(getLayerKey(layer), Boolean.TRUE);
+                return getFeatures(layer, bbox, crs, filter);
+            }
             IOHelper.validateResponse(conn, CONTENT_TYPE_GEOJSON);
             Map<String, Object> geojson = readMap(conn);
             boolean ignoreGeometryProperties = true;
             SimpleFeatureType schema = GeoJSONSchemaDetector.getSchema(geojson, crs, ignoreGeometryProperties);
             SimpleFeatureCollection sfc = GeoJSONReader2.toFeatureCollection(geojson, schema, transformCRS84ToTargetCRS, postFilter);
-            numFeatures += sfc.size();
-            pages.add(sfc);
             String next = getLinkHref(geojson, "next");
 
-            while (next != null && numFeatures < hardLimit) {
-                // Blindly follow the next link, don't use the initial queryParameters
-                conn = IOHelper.getConnection(next, user, pass, null, headers);
-                conn = IOHelper.followRedirect(conn, user, pass, null, headers, MAX_REDIRECTS);
-
-                IOHelper.validateResponse(conn, CONTENT_TYPE_GEOJSON);
-                geojson = readMap(conn);
-                sfc = GeoJSONReader2.toFeatureCollection(geojson, schema, transformCRS84ToTargetCRS, postFilter);
-                numFeatures += sfc.size();
-                pages.add(sfc);
-                next = getLinkHref(geojson, "next");
+            if (next == null || sfc.size() >= hardLimit) {
+                return sfc;
             }
 
-            if (pages.size() == 1) {
-                return pages.get(0);
-            }
-            return new PaginatedFeatureCollection(pages, schema, "FeatureCollection", hardLimit);
+            // Load the rest of the pages in the background while the caller processes the first one
+            final MathTransform transform = transformCRS84ToTargetCRS;
+            final Filter pageFilter = postFilter;
+            PrefetchingPageIterator.PageLoader loader = url -> {
+                // Blindly follow the next link, don't use the initial queryParameters
+                HttpURLConnection c = IOHelper.getConnection(url, user, pass, null, headers);
+                c = IOHelper.followRedirect(c, user, pass, null, headers, MAX_REDIRECTS);
+                IOHelper.validateResponse(c, CONTENT_TYPE_GEOJSON);
+                Map<String, Object> page = readMap(c);
+                return new PrefetchingPageIterator.Page(
+                        GeoJSONReader2.toFeatureCollection(page, schema, transform, pageFilter),
+                        getLinkHref(page, "next"));
+            };
+            PrefetchingPageIterator remainingPages = new PrefetchingPageIterator(next, loader, sfc.size(), hardLimit);
+            return new PaginatedFeatureCollection(sfc, remainingPages, schema, "FeatureCollection", hardLimit);
         } catch (IOException e) {
             throw new ServiceRuntimeException("IOException occured", e);
         } catch (MismatchedDimensionException | TransformException e) {
@@ -163,6 +174,14 @@ public class OskariWFS3Client {
         }
     }
 
+    private static boolean isCQL2Rejected(OskariLayer layer) {
+        return CQL2_REJECTED.get(getLayerKey(layer)) != null;
+    }
+
+    private static String getLayerKey(OskariLayer layer) {
+        return layer.getUrl() + "|" + layer.getName();
+    }
+
     private static int clamp(int value, int min, int max) {
         if (value > max) {
             return max;
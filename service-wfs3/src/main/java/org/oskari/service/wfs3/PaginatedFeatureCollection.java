@@ -3,6 +3,7 @@ package org.oskari.service.wfs3;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -17,21 +18,91 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.util.ProgressListener;
 
+/**
+ * Features of a paginated response. Pages can be provided up front or as an iterator that
+ * loads them on demand (see PrefetchingPageIterator). Loaded pages are kept so the collection
+ * can be iterated multiple times, but features() only loads pages as the consumer advances
+ * so it can start working on the first page and stop early without waiting for the rest.
+ * See {@link #setKeepPages(boolean)} for reading a large collection once without keeping it in memory.
+ */
 public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     private final List<SimpleFeatureCollection> pages;
+    private Iterator<SimpleFeatureCollection> remainingPages;
     private final SimpleFeatureType schema;
     private final String collectionId;
     private final int maxSize;
+    private boolean keepPages = true;
+    // index of the first page still in pages, greater than zero when read pages have been released
+    private int firstPageIndex;
 
     public PaginatedFeatureCollection(List<SimpleFeatureCollection> pages,
             SimpleFeatureType schema, String collectionId, int maxSize) {
-        this.pages = pages;
+        this(pages, null, schema, collectionId, maxSize);
+    }
+
+    /**
+     * @param firstPage first page of the features
+     * @param remainingPages rest of the pages, loaded when needed
+     */
+    public PaginatedFeatureCollection(SimpleFeatureCollection firstPage, Iterator<SimpleFeatureCollection> remainingPages,
+            SimpleFeatureType schema, String collectionId, int maxSize) {
+        this(Collections.singletonList(firstPage), remainingPages, schema, collectionId, maxSize);
+    }
+
+    private PaginatedFeatureCollection(List<SimpleFeatureCollection> pages, Iterator<SimpleFeatureCollection> remainingPages,
+            SimpleFeatureType schema, String collectionId, int maxSize) {
+        this.pages = new ArrayList<>(pages);
+        this.remainingPages = remainingPages;
         this.schema = schema;
         this.collectionId = collectionId != null ? collectionId : "featureCollection";
         this.maxSize = maxSize;
     }
 
+    /**
+     * When set to false pages are released as soon as the next one is requested so only the
+     * page currently being read is kept in memory. The collection can then be iterated only once
+     * and methods that go through all the pages (size(), toArray() etc) can't be used after features().
+     * @param keepPages false to release pages once they have been read
+     */
+    public synchronized void setKeepPages(boolean keepPages) {
+        this.keepPages = keepPages;
+    }
+
+    /**
+     * @return page at index i or null if there are no more pages
+     * @throws IllegalStateException if the page has already been released
+     */
+    private synchronized SimpleFeatureCollection getPage(int i) {
+        while (i >= firstPageIndex + pages.size() && remainingPages != null) {
+            if (remainingPages.hasNext()) {
+                pages.add(remainingPages.next());
+            } else {
+                remainingPages = null;
+            }
+        }
+        if (!keepPages) {
+            while (firstPageIndex < i && !pages.isEmpty()) {
+                pages.remove(0);
+                firstPageIndex++;
+            }
+        }
+        int j = i - firstPageIndex;
+        if (j < 0) {
+            throw new IllegalStateException("Page " + i + " has already been released");
+        }
+        return j < pages.size() ? pages.get(j) : null;
+    }
+
+    private List<SimpleFeatureCollection> getAllPages() {
+        List<SimpleFeatureCollection> all = new ArrayList<>();
+        SimpleFeatureCollection page;
+        for (int i = 0; (page = getPage(i)) != null; i++) {
+            all.add(page);
+        }
+        return all;
+    }
+
     @Override
     public SimpleFeatureType getSchema() {
         return schema;
@@ -54,7 +125,8 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     @Override
     public boolean contains(Object o) {
-        for (SimpleFeatureCollection page : pages) {
+        SimpleFeatureCollection page;
+        for (int i = 0; (page = getPage(i)) != null; i++) {
             if (page.contains(o)) {
                 return true;
             }
@@ -74,7 +146,8 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     @Override
     public boolean isEmpty() {
-        for (SimpleFeatureCollection page : pages) {
+        SimpleFeatureCollection page;
+        for (int i = 0; (page = getPage(i)) != null; i++) {
             if (!page.isEmpty()) {
                 return false;
             }
@@ -84,7 +157,7 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     @Override
     public int size() {
-        int sum = pages.stream()
+        int sum = getAllPages().stream()
                 .mapToInt(SimpleFeatureCollection::size)
                 .sum();
         return Math.min(sum, maxSize);
@@ -94,7 +167,7 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
     public Object[] toArray() {
         Object[] a = new Object[size()];
         int i = 0;
-        for (SimpleFeatureCollection page : pages) {
+        for (SimpleFeatureCollection page : getAllPages()) {
             try (SimpleFeatureIterator it = page.features()) {
                 while (it.hasNext() && i < a.length) {
                     a[i++] = it.next();
@@ -112,7 +185,7 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
             return (O[]) toArray();
         }
         int i = 0;
-        for (SimpleFeatureCollection page : pages) {
+        for (SimpleFeatureCollection page : getAllPages()) {
             try (SimpleFeatureIterator it = page.features()) {
                 while (it.hasNext() && i < n) {
                     a[i++] = (O) it.next();
@@ -124,13 +197,13 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     @Override
     public SimpleFeatureIterator features() {
-        return new PaginatedIterator(pages.iterator(), maxSize);
+        return new PaginatedIterator(maxSize);
     }
 
     @Override
     public SimpleFeatureCollection subCollection(Filter filter) {
         List<SimpleFeatureCollection> filteredPages = new ArrayList<>();  
-        for (SimpleFeatureCollection page : pages) {
+        for (SimpleFeatureCollection page : getAllPages()) {
             SimpleFeatureCollection f = page.subCollection(filter);
             if (!f.isEmpty()) {
                 filteredPages.add(f);
@@ -146,17 +219,15 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
 
     class PaginatedIterator implements SimpleFeatureIterator {
 
-        private Iterator<SimpleFeatureCollection> pageIterator;
+        private int pageIndex;
         private SimpleFeatureIterator featureIterator;
         private SimpleFeature next;
         private boolean closed;
         private int i;
         private int maxSize;
 
-        private PaginatedIterator(Iterator<SimpleFeatureCollection> pageIterator, int maxSize) {
-            this.pageIterator = pageIterator;
-            this.featureIterator = pageIterator.hasNext() ? pageIterator.next().features() : null;
-            this.closed = featureIterator == null;
+        private PaginatedIterator(int maxSize) {
+            this.pageIndex = 0;
             this.i = 0;
             this.maxSize = maxSize;
         }
@@ -169,12 +240,17 @@ public class PaginatedFeatureCollection implements SimpleFeatureCollection {
             if (next != null) {
                 return true;
             }
-            while (!featureIterator.hasNext()) {
-                if (!pageIterator.hasNext()) {
+            while (featureIterator == null || !featureIterator.hasNext()) {
+                if (featureIterator != null) {
+                    featureIterator.close();
+                }
+                SimpleFeatureCollection page = getPage(pageIndex++);
+                if (page == null) {
+                    featureIterator = null;
                     close();
                     return false;
                 }
-                featureIterator = pageIterator.next().features();
+                featureIterator = page.features();
             }
             next = featureIterator.next();
             return true;
@@ -0,0 +1,220 @@
+package org.oskari.service.wfs3;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Iterates the pages of a paginated OGC API Features response by following the next links.
+ * The pages are loaded in the background ahead of the consumer, but at most readAhead pages
+ * are kept waiting. When the window is full the loading pauses and continues once the consumer
+ * takes a page, so a consumer that stops early doesn't leave threads or requests behind.
+ * If the shared loader pool is saturated the pages are loaded in the consumers thread instead.
+ */
+public class PrefetchingPageIterator implements Iterator<SimpleFeatureCollection> {
+
+    private static final Logger LOG = LogFactory.getLogger(PrefetchingPageIterator.class);
+
+    private static final String PROP_THREADS = "oskari.wfs3.prefetch.threads";
+    private static final String PROP_QUEUE = "oskari.wfs3.prefetch.queue";
+    private static final String PROP_READ_AHEAD = "oskari.wfs3.prefetch.pages";
+
+    private static ExecutorService executor;
+
+    /**
+     * Loads a single page
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        Page load(String url) throws Exception;
+    }
+
+    public static class Page {
+        private final SimpleFeatureCollection features;
+        private final String next;
+
+        /**
+         * @param features features of the page
+         * @param next url of the next page, null if this is the last one
+         */
+        public Page(SimpleFeatureCollection features, String next) {
+            this.features = features;
+            this.next = next;
+        }
+
+        public SimpleFeatureCollection getFeatures() {
+            return features;
+        }
+
+        public String getNext() {
+            return next;
+        }
+    }
+
+    private final PageLoader loader;
+    private final ExecutorService pool;
+    private final int readAhead;
+    private final int hardLimit;
+    private final Deque<SimpleFeatureCollection> ready = new ArrayDeque<>();
+
+    // guarded by this
+    private String nextUrl;
+    private int numFeatures;
+    private boolean loading;
+    private Exception error;
+
+    /**
+     * @param firstUrl url of the first page to load
+     * @param loader loads a page
+     * @param numFeatures number of features already read from previous pages
+     * @param hardLimit no more pages are loaded once this many features have been read
+     */
+    public PrefetchingPageIterator(String firstUrl, PageLoader loader, int numFeatures, int hardLimit) {
+        this(firstUrl, loader, numFeatures, hardLimit,
+                getExecutor(), Math.max(1, PropertyUtil.getOptional(PROP_READ_AHEAD, 2)));
+    }
+
+    PrefetchingPageIterator(String firstUrl, PageLoader loader, int numFeatures, int hardLimit,
+            ExecutorService pool, int readAhead) {
+        this.nextUrl = firstUrl;
+        this.loader = loader;
+        this.numFeatures = numFeatures;
+        this.hardLimit = hardLimit;
+        this.pool = pool;
+        this.readAhead = readAhead;
+        startLoading();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(1, PropertyUtil.getOptional(PROP_THREADS, 8));
+            int queue = Math.max(1, PropertyUtil.getOptional(PROP_QUEUE, 100));
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queue), r -> {
+                        Thread t = new Thread(r, "OAPIFPrefetch-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            tpe.allowCoreThreadTimeOut(true);
+            executor = tpe;
+        }
+        return executor;
+    }
+
+    private boolean hasMorePages() {
+        return nextUrl != null && numFeatures < hardLimit;
+    }
+
+    private synchronized void startLoading() {
+        if (loading || error != null || ready.size() >= readAhead || !hasMorePages()) {
+            return;
+        }
+        loading = true;
+        try {
+            pool.execute(this::loadPages);
+        } catch (RejectedExecutionException e) {
+            // the pages will be loaded on demand in next()
+            LOG.debug("Page prefetch queue is full, loading pages without prefetching");
+            loading = false;
+        }
+    }
+
+    private void loadPages() {
+        while (true) {
+            String url;
+            synchronized (this) {
+                if (error != null || ready.size() >= readAhead || !hasMorePages()) {
+                    loading = false;
+                    notifyAll();
+                    return;
+                }
+                url = nextUrl;
+            }
+            try {
+                Page page = loader.load(url);
+                synchronized (this) {
+                    addPage(page);
+                    notifyAll();
+                }
+            } catch (Exception e) {
+                synchronized (this) {
+                    error = e;
+                    loading = false;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void addPage(Page page) {
+        ready.add(page.features);
+        numFeatures += page.features.size();
+        nextUrl = page.next;
+    }
+
+    @Override
+    public boolean hasNext() {
+        String url;
+        synchronized (this) {
+            try {
+                while (ready.isEmpty() && loading) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceRuntimeException("Interrupted while waiting for the next page");
+            }
+            if (!ready.isEmpty()) {
+                return true;
+            }
+            if (error != null) {
+                throw new ServiceRuntimeException("Failed to load the next page", error);
+            }
+            if (!hasMorePages()) {
+                return false;
+            }
+            url = nextUrl;
+        }
+        // Not loading in the background, load the page in this thread
+        try {
+            Page page = loader.load(url);
+            synchronized (this) {
+                addPage(page);
+            }
+        } catch (Exception e) {
+            throw new ServiceRuntimeException("Failed to load the next page", e);
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleFeatureCollection next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SimpleFeatureCollection page;
+        synchronized (this) {
+            page = ready.poll();
+        }
+        // there's room in the window, continue loading
+        startLoading();
+        return page;
+    }
+
+}
@@ -1,6 +1,8 @@
 package org.oskari.service.wfs3;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
@@ -18,12 +20,15 @@ import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsLike;
 import org.opengis.filter.PropertyIsNotEqualTo;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.ogcapi.OGCAPIConformanceClass;
 
 import fi.nls.oskari.domain.map.OskariLayer;
 
@@ -212,6 +217,104 @@ public class FilterToOAPIFCoreTest {
         }
     }
 
+    @Test
+    public void testCQL2() throws NoSuchAuthorityCodeException, FactoryException, JSONException {
+        OskariLayer layer = createCQL2Layer(OGCAPIConformanceClass.AdvancedComparisonOperators);
+        FilterToOAPIFCoreQuery f = new FilterToOAPIFCoreQuery(layer);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+
+        double minEast = 500000.0;
+        double maxEast = 501000.0;
+        double minNorth = 6740263.0;
+        double maxNorth = 6741263.0;
+        CoordinateReferenceSystem tm35fin = CRS.decode("EPSG:3067");
+
+        Filter bbox = toBboxFilter(ff, minEast, minNorth, maxEast, maxNorth, tm35fin);
+        Filter gt = ff.greater(ff.property("foo"), ff.literal(5));
+        Filter like = ff.like(ff.property("name"), "Hel*", "*", ".", "!");
+        Filter or = ff.or(ff.equals(ff.property("owner"), ff.literal("O'Brien")), ff.isNull(ff.property("owner")));
+        Filter and = ff.and(Arrays.asList(bbox, gt, like, or));
+
+        Map<String, String> actual = new HashMap<>();
+        Filter postFilter = f.toQueryParameters(and, actual);
+
+        assertTrue(f.isCQL2Used());
+        assertEquals(Filter.INCLUDE, postFilter);
+        // BBOX is still sent with the Core parameters
+        assertEquals(String.format(Locale.US, "%f,%f,%f,%f", minEast, minNorth, maxEast, maxNorth), actual.get("bbox"));
+        assertEquals(FilterToOAPIFCoreQuery.FILTER_LANG_CQL2_TEXT, actual.get(FilterToOAPIFCoreQuery.PARAM_FILTER_LANG));
+        assertFalse(actual.containsKey(FilterToOAPIFCoreQuery.PARAM_FILTER_CRS));
+        String cql2 = actual.get(FilterToOAPIFCoreQuery.PARAM_FILTER);
+        assertTrue(cql2, cql2.contains("foo > 5"));
+        assertTrue(cql2, cql2.contains("name LIKE 'Hel%'"));
+        assertTrue(cql2, cql2.contains("(owner = 'O''Brien' OR owner IS NULL)"));
+        assertFalse(cql2, cql2.contains("geom"));
+    }
+
+    @Test
+    public void testCQL2WithoutAdvancedComparison() throws NoSuchAuthorityCodeException, FactoryException, JSONException {
+        OskariLayer layer = createCQL2Layer();
+        layer.setAttributes(new JSONObject().put(FilterToOAPIFCoreQuery.ATTRIBUTE_QUERYABLES, new JSONArray(Arrays.asList("foo", "name"))));
+        FilterToOAPIFCoreQuery f = new FilterToOAPIFCoreQuery(layer);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+
+        Filter gt = ff.less(ff.literal(5), ff.property("foo"));
+        Filter like = ff.like(ff.property("name"), "Hel*", "*", ".", "!");
+        Filter notQueryable = ff.equals(ff.property("bar"), ff.literal(1));
+        Filter and = ff.and(Arrays.asList(gt, like, notQueryable));
+
+        Map<String, String> actual = new HashMap<>();
+        Filter postFilter = f.toQueryParameters(and, actual);
+
+        // Literal on the left side is flipped
+        assertEquals("foo > 5", actual.get(FilterToOAPIFCoreQuery.PARAM_FILTER));
+        // LIKE requires Advanced Comparison Operators, bar isn't queryable
+        if (!(postFilter instanceof And)) {
+            fail();
+        }
+        assertEquals(2, ((And) postFilter).getChildren().size());
+        assertTrue(((And) postFilter).getChildren().stream().anyMatch(it -> it instanceof PropertyIsLike));
+    }
+
+    @Test
+    public void testCQL2NotAllowed() throws JSONException {
+        OskariLayer layer = createCQL2Layer(OGCAPIConformanceClass.AdvancedComparisonOperators);
+        FilterToOAPIFCoreQuery f = new FilterToOAPIFCoreQuery(layer, false);
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+
+        Filter gt = ff.greater(ff.property("foo"), ff.literal(5));
+
+        Map<String, String> actual = new HashMap<>();
+        Filter postFilter = f.toQueryParameters(gt, actual);
+
+        assertFalse(f.isCQL2Used());
+        assertTrue(actual.isEmpty());
+        assertTrue(postFilter instanceof PropertyIsGreaterThan);
+    }
+
+    @Test
+    public void testToCQL2Pattern() {
+        assertEquals("100%\\_x", FilterToCQL2Text.toCQL2Pattern("100*_x", "*", ".", "!"));
+        assertEquals("a*b_", FilterToCQL2Text.toCQL2Pattern("a!*b.", "*", ".", "!"));
+        assertEquals("50\\%", FilterToCQL2Text.toCQL2Pattern("50%", "*", ".", "!"));
+    }
+
+    private OskariLayer createCQL2Layer(OGCAPIConformanceClass... extra) throws JSONException {
+        JSONArray conformance = new JSONArray()
+                .put(OGCAPIConformanceClass.Filter.url)
+                .put(OGCAPIConformanceClass.CQL2Text.url)
+                .put(OGCAPIConformanceClass.BasicCQL2.url);
+        for (OGCAPIConformanceClass c : extra) {
+            conformance.put(c.url);
+        }
+        OskariLayer layer = new OskariLayer();
+        String tm35finURI = "http://www.opengis.net/def/crs/EPSG/0/3067";
+        layer.setCapabilities(new JSONObject()
+                .put("crs-uri", new JSONArray(Arrays.asList(tm35finURI)))
+                .put(FilterToOAPIFCoreQuery.CAPABILITIES_FILTER_CONFORMANCE, conformance));
+        return layer;
+    }
+
     private Filter toBboxFilter(FilterFactory ff,
             double x1, double y1, double x2, double y2,
             CoordinateReferenceSystem crs) {
@@ -1,24 +1,42 @@
 package org.oskari.service.wfs3;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.operation.predicate.RectangleIntersects;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.ogcapi.OGCAPIConformanceClass;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.service.ServiceException;
@@ -26,6 +44,119 @@ import fi.nls.oskari.util.JSONHelper;
 
 public class OskariWFS3ClientTest {
 
+    private static final String COLLECTION = "places";
+
+    private HttpServer server;
+    private boolean acceptCQL2;
+    private final List<Map<String, String>> requests = new ArrayList<>();
+
+    /**
+     * Stand-in OGC API Features server with a single collection of five points, "n" going from 1 to 5.
+     * If acceptCQL2 is true the server understands "n > 3", otherwise any filter is a bad request.
+     */
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // The services are told apart by the url of the layer, handle every path as the items of the collection
+        server.createContext("/", this::handleItems);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handleItems(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        requests.add(query);
+        String filter = query.get("filter");
+        int min = 1;
+        if (filter != null) {
+            if (!acceptCQL2 || !"n > 3".equals(filter)) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            min = 4;
+        }
+        StringBuilder features = new StringBuilder();
+        for (int n = min; n <= 5; n++) {
+            if (features.length() > 0) {
+                features.append(',');
+            }
+            features.append("{\"type\":\"Feature\",\"id\":").append(n)
+                    .append(",\"geometry\":{\"type\":\"Point\",\"coordinates\":[25.0,60.0]}")
+                    .append(",\"properties\":{\"n\":").append(n).append("}}");
+        }
+        byte[] body = ("{\"type\":\"FeatureCollection\",\"features\":[" + features + "],\"links\":[]}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/geo+json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String param : rawQuery.split("&")) {
+            int i = param.indexOf('=');
+            query.put(URLDecoder.decode(param.substring(0, i), "UTF-8"), URLDecoder.decode(param.substring(i + 1), "UTF-8"));
+        }
+        return query;
+    }
+
+    private OskariLayer createCQL2Layer(String name) throws Exception {
+        OskariLayer layer = new OskariLayer();
+        layer.setUrl("http://localhost:" + server.getAddress().getPort() + "/" + name);
+        layer.setName(COLLECTION);
+        layer.setCapabilities(new JSONObject().put(FilterToOAPIFCoreQuery.CAPABILITIES_FILTER_CONFORMANCE, new JSONArray()
+                .put(OGCAPIConformanceClass.Filter.url)
+                .put(OGCAPIConformanceClass.CQL2Text.url)
+                .put(OGCAPIConformanceClass.BasicCQL2.url)));
+        return layer;
+    }
+
+    @Test
+    public void testFilterIsSentAsCQL2() throws Exception {
+        acceptCQL2 = true;
+        OskariLayer layer = createCQL2Layer("accept");
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+        Filter filter = ff.greater(ff.property("n"), ff.literal(3));
+
+        SimpleFeatureCollection sfc = OskariWFS3Client.getFeatures(layer, null, OskariWFS3Client.getCRS84(), filter);
+
+        assertEquals(2, sfc.size());
+        assertEquals(1, requests.size());
+        assertEquals("n > 3", requests.get(0).get("filter"));
+        assertEquals("cql2-text", requests.get(0).get("filter-lang"));
+    }
+
+    @Test
+    public void testRejectedCQL2IsFilteredLocally() throws Exception {
+        acceptCQL2 = false;
+        OskariLayer layer = createCQL2Layer("reject");
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+        Filter filter = ff.greater(ff.property("n"), ff.literal(3));
+
+        SimpleFeatureCollection sfc = OskariWFS3Client.getFeatures(layer, null, OskariWFS3Client.getCRS84(), filter);
+
+        assertEquals(2, sfc.size());
+        assertEquals(2, requests.size());
+        assertEquals("n > 3", requests.get(0).get("filter"));
+        assertNull(requests.get(1).get("filter"));
+
+        // The service isn't sent CQL2 again
+        sfc = OskariWFS3Client.getFeatures(layer, null, OskariWFS3Client.getCRS84(), filter);
+        assertEquals(2, sfc.size());
+        assertEquals(3, requests.size());
+        assertNull(requests.get(2).get("filter"));
+    }
+
     @Ignore("Depends on outside service, results might vary")
     @Test
     public void testGetFeaturesBbox() throws ServiceException, IOException {
@@ -0,0 +1,85 @@
+package org.oskari.service.wfs3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class PaginatedFeatureCollectionTest {
+
+    private static final SimpleFeatureType SCHEMA = createSchema();
+    private static final int PAGE_SIZE = 3;
+    private static final int NUM_PAGES = 4;
+
+    private static SimpleFeatureType createSchema() {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("test");
+        b.add("page", Integer.class);
+        return b.buildFeatureType();
+    }
+
+    private static SimpleFeatureCollection page(int page) {
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            features.add(SimpleFeatureBuilder.build(SCHEMA, new Object[] { page }, page + "." + i));
+        }
+        return new ListFeatureCollection(SCHEMA, features);
+    }
+
+    private static PaginatedFeatureCollection create() {
+        List<SimpleFeatureCollection> remaining = new ArrayList<>();
+        for (int i = 1; i < NUM_PAGES; i++) {
+            remaining.add(page(i));
+        }
+        return new PaginatedFeatureCollection(page(0), remaining.iterator(), SCHEMA, "test", 1000);
+    }
+
+    private static int count(SimpleFeatureCollection fc) {
+        int n = 0;
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void testPagesAreKeptByDefault() {
+        PaginatedFeatureCollection fc = create();
+        assertEquals(PAGE_SIZE * NUM_PAGES, count(fc));
+        assertEquals(PAGE_SIZE * NUM_PAGES, count(fc));
+        assertEquals(PAGE_SIZE * NUM_PAGES, fc.size());
+    }
+
+    @Test
+    public void testReadPagesAreReleased() {
+        PaginatedFeatureCollection fc = create();
+        fc.setKeepPages(false);
+        assertEquals(PAGE_SIZE * NUM_PAGES, count(fc));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedPagesCantBeReadAgain() {
+        PaginatedFeatureCollection fc = create();
+        fc.setKeepPages(false);
+        try (SimpleFeatureIterator it = fc.features()) {
+            for (int i = 0; i <= PAGE_SIZE; i++) {
+                it.next();
+            }
+        }
+        // first page was released when the second one was requested
+        fc.features().hasNext();
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.oskari.service.wfs3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.After;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import fi.nls.oskari.service.ServiceRuntimeException;
+
+public class PrefetchingPageIteratorTest {
+
+    private static final SimpleFeatureType SCHEMA = createSchema();
+    private static final int PAGE_SIZE = 3;
+    private static final int NUM_PAGES = 5;
+
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static SimpleFeatureType createSchema() {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("test");
+        b.add("page", Integer.class);
+        return b.buildFeatureType();
+    }
+
+    /**
+     * Stand-in for the service, page urls are just the page numbers
+     */
+    private PrefetchingPageIterator.Page load(String url) {
+        loaded.incrementAndGet();
+        int page = Integer.parseInt(url);
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            features.add(SimpleFeatureBuilder.build(SCHEMA, new Object[] { page }, page + "." + i));
+        }
+        String next = page < NUM_PAGES ? Integer.toString(page + 1) : null;
+        return new PrefetchingPageIterator.Page(new ListFeatureCollection(SCHEMA, features), next);
+    }
+
+    @Test
+    public void testPagesInOrder() {
+        PrefetchingPageIterator it = new PrefetchingPageIterator("2", this::load, PAGE_SIZE, 100, pool, 2);
+        int expected = 2;
+        while (it.hasNext()) {
+            SimpleFeatureCollection page = it.next();
+            try (SimpleFeatureIterator features = page.features()) {
+                assertEquals(expected, features.next().getAttribute("page"));
+            }
+            expected++;
+        }
+        assertEquals(NUM_PAGES + 1, expected);
+        assertEquals(NUM_PAGES - 1, loaded.get());
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws Exception {
+        PrefetchingPageIterator it = new PrefetchingPageIterator("2", this::load, PAGE_SIZE, 100, pool, 1);
+        it.next();
+        // consumer stops here
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        // the page that was consumed and one page ahead of it
+        assertEquals(2, loaded.get());
+    }
+
+    @Test
+    public void testHardLimit() {
+        PrefetchingPageIterator it = new PrefetchingPageIterator("2", this::load, PAGE_SIZE, 2 * PAGE_SIZE, pool, 2);
+        assertTrue(it.hasNext());
+        it.next();
+        assertFalse(it.hasNext());
+        assertEquals(1, loaded.get());
+    }
+
+    @Test
+    public void testLoadsInCallerThreadWhenPoolIsFull() {
+        pool.shutdown();
+        PrefetchingPageIterator it = new PrefetchingPageIterator("2", this::load, PAGE_SIZE, 100, pool, 2);
+        int pages = 0;
+        while (it.hasNext()) {
+            it.next();
+            pages++;
+        }
+        assertEquals(NUM_PAGES - 1, pages);
+    }
+
+    @Test(expected = ServiceRuntimeException.class)
+    public void testLoadErrorIsThrown() {
+        PrefetchingPageIterator it = new PrefetchingPageIterator("2", url -> {
+            throw new IOException("Connection refused");
+        }, PAGE_SIZE, 100, pool, 2);
+        it.hasNext();
+    }
+
+    @Test
+    public void testPaginatedFeatureCollectionCanBeIteratedTwice() {
+        PrefetchingPageIterator.Page first = load("1");
+        PrefetchingPageIterator remaining = new PrefetchingPageIterator("2", this::load, PAGE_SIZE, 100, pool, 2);
+        SimpleFeatureCollection fc = new PaginatedFeatureCollection(
+                first.getFeatures(), remaining, SCHEMA, "test", 100);
+
+        // stop early
+        try (SimpleFeatureIterator it = fc.features()) {
+            assertEquals("1.0", it.next().getID());
+        }
+        assertEquals(NUM_PAGES * PAGE_SIZE, fc.size());
+        int count = 0;
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        }
+        assertEquals(NUM_PAGES * PAGE_SIZE, count);
+        assertEquals(NUM_PAGES, loaded.get());
+    }
+}